@@ -0,0 +1,50 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.common;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.UnstableApi;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link DataReader} that can expose data as {@link ByteBuffer} views onto its underlying
+ * storage (for example a memory-mapped file), allowing callers to consume data without copying it
+ * into an intermediate array.
+ */
+@UnstableApi
+public interface ByteBufferDataReader extends DataReader {
+
+  /**
+   * Reads up to {@code length} bytes of data from the input without copying them, if possible.
+   *
+   * <p>If data is returned, the read position is advanced past the returned bytes in the same way
+   * as for {@link #read(byte[], int, int)}. The returned buffer is read-only and is only valid
+   * until the next call to a method of this reader.
+   *
+   * <p>If the data cannot be exposed without copying, {@code length} is zero or the end of the
+   * currently available data has been reached, then {@code null} is returned, no data is consumed
+   * and the caller should use {@link #read(byte[], int, int)} instead. Hence this method never
+   * signals the end of the input itself.
+   *
+   * @param length The maximum number of bytes to read from the input.
+   * @return A buffer whose remaining bytes are the data that was read, or {@code null} if the data
+   *     cannot be read without copying.
+   * @throws IOException If an error occurs reading from the input.
+   */
+  @Nullable
+  ByteBuffer readBuffer(int length) throws IOException;
+}
@@ -139,6 +139,12 @@ public final class FileTypes {
   /** File type for the AVIF format. */
   public static final int AVIF = 21;
 
+  /**
+   * The number of leading bytes of a file inspected by {@link #inferFileTypeFromContent(byte[],
+   * int)}.
+   */
+  public static final int CONTENT_PREFIX_LENGTH = 189;
+
   @VisibleForTesting /* package */ static final String HEADER_CONTENT_TYPE = "Content-Type";
 
   private static final String EXTENSION_AC3 = ".ac3";
@@ -182,6 +188,9 @@ public final class FileTypes {
   private static final String EXTENSION_HEIF = ".heif";
   private static final String EXTENSION_AVIF = ".avif";
 
+  private static final int TS_PACKET_SIZE = 188;
+  private static final int TS_SYNC_BYTE = 0x47;
+
   private FileTypes() {}
 
   /** Returns the {@link Type} corresponding to the response headers provided. */
@@ -338,4 +347,108 @@ public final class FileTypes {
       return FileTypes.UNKNOWN;
     }
   }
+
+  /**
+   * Returns the {@link Type} indicated by the magic number at the start of a file.
+   *
+   * <p>The returned type is a hint for which extractor to try first, and the file may still turn
+   * out not to be of this type. Returns {@link #UNKNOWN} if the prefix doesn't start with a
+   * recognized magic number, or if it may belong to several file types (for example if it starts
+   * with an ID3 tag).
+   *
+   * @param data An array containing the first bytes of the file.
+   * @param length The number of valid bytes in {@code data}. Types whose magic number can only be
+   *     recognized from a longer prefix are not inferred. A length of {@link
+   *     #CONTENT_PREFIX_LENGTH} is sufficient to recognize all types.
+   */
+  public static @FileTypes.Type int inferFileTypeFromContent(byte[] data, int length) {
+    if (length < 2) {
+      return FileTypes.UNKNOWN;
+    }
+    int first16Bits = ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
+    if (length >= 12 && readInt(data, 4) == 0x66747970) {
+      // ftyp box. Check the major brand for image formats that use the ISOBMFF container.
+      int majorBrand = readInt(data, 8);
+      if (majorBrand == 0x68656963) { // heic
+        return FileTypes.HEIF;
+      } else if (majorBrand == 0x61766966) { // avif
+        return FileTypes.AVIF;
+      }
+      return FileTypes.MP4;
+    }
+    if (length >= 8) {
+      int boxType = readInt(data, 4);
+      if (boxType == 0x6D6F6F76 // moov
+          || boxType == 0x6D6F6F66 // moof
+          || boxType == 0x73747970 // styp
+          || boxType == 0x73696478) { // sidx
+        return FileTypes.MP4;
+      }
+    }
+    if (length >= 12 && readInt(data, 0) == 0x52494646) { // RIFF
+      int riffFormat = readInt(data, 8);
+      if (riffFormat == 0x57415645) { // WAVE
+        return FileTypes.WAV;
+      } else if (riffFormat == 0x41564920) { // AVI[space]
+        return FileTypes.AVI;
+      } else if (riffFormat == 0x57454250) { // WEBP
+        return FileTypes.WEBP;
+      }
+      return FileTypes.UNKNOWN;
+    }
+    if (length >= 5
+        && readInt(data, 0) == 0x2321414D // #!AM
+        && data[4] == 'R') {
+      return FileTypes.AMR;
+    }
+    if (length >= 4) {
+      switch (readInt(data, 0)) {
+        case 0x664C6143: // fLaC
+          return FileTypes.FLAC;
+        case 0x4F676753: // OggS
+          return FileTypes.OGG;
+        case 0x1A45DFA3: // EBML
+          return FileTypes.MATROSKA;
+        case 0x000001BA: // Pack header
+          return FileTypes.PS;
+        case 0x4D546864: // MThd
+          return FileTypes.MIDI;
+        case 0x89504E47: // [0x89]PNG
+          return FileTypes.PNG;
+        default:
+          break;
+      }
+      if ((readInt(data, 0) & 0xFFFFFF00) == 0x464C5600) { // FLV
+        return FileTypes.FLV;
+      }
+    }
+    if (length > TS_PACKET_SIZE
+        && (data[0] & 0xFF) == TS_SYNC_BYTE
+        && (data[TS_PACKET_SIZE] & 0xFF) == TS_SYNC_BYTE) {
+      return FileTypes.TS;
+    }
+    if (first16Bits == 0xFFD8) {
+      return FileTypes.JPEG;
+    } else if (first16Bits == 0x0B77) {
+      return FileTypes.AC3;
+    } else if (first16Bits == 0xAC40 || first16Bits == 0xAC41) {
+      return FileTypes.AC4;
+    } else if ((first16Bits & 0xFFF6) == 0xFFF0) {
+      // ADTS sync word with layer set to 0.
+      return FileTypes.ADTS;
+    } else if ((first16Bits & 0xFFE0) == 0xFFE0 && (first16Bits & 0x0006) != 0) {
+      // MPEG audio frame sync with a valid layer.
+      return FileTypes.MP3;
+    } else if (first16Bits == 0x424D) { // BM
+      return FileTypes.BMP;
+    }
+    return FileTypes.UNKNOWN;
+  }
+
+  private static int readInt(byte[] data, int offset) {
+    return ((data[offset] & 0xFF) << 24)
+        | ((data[offset + 1] & 0xFF) << 16)
+        | ((data[offset + 2] & 0xFF) << 8)
+        | (data[offset + 3] & 0xFF);
+  }
 }
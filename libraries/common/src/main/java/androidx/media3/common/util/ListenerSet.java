@@ -25,7 +25,7 @@ import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.FlagSet;
 import java.util.ArrayDeque;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.Arrays;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 /**
@@ -40,6 +40,10 @@ import org.checkerframework.checker.nullness.qual.NonNull;
  * <p>All methods must be called on the {@link Looper} passed to the constructor unless indicated
  * otherwise.
  *
+ * <p>Queuing and sending events doesn't allocate any memory once the set has reached a steady state
+ * (unless the set of listeners or the combination of event flags sent per {@link Looper} message
+ * queue iteration changes), so that it can be used for high-frequency events.
+ *
  * @param <T> The listener type.
  */
 @UnstableApi
@@ -75,13 +79,15 @@ public final class ListenerSet<T extends @NonNull Object> {
   }
 
   private static final int MSG_ITERATION_FINISHED = 1;
+  private static final int MAX_QUEUED_EVENT_POOL_SIZE = 50;
 
   private final Clock clock;
   private final HandlerWrapper handler;
   private final IterationFinishedEvent<T> iterationFinishedEvent;
-  private final CopyOnWriteArraySet<ListenerHolder<T>> listeners;
-  private final ArrayDeque<Runnable> flushingEvents;
-  private final ArrayDeque<Runnable> queuedEvents;
+  private final ListenerHolders<T> listeners;
+  private final ArrayDeque<QueuedEvent<T>> flushingEvents;
+  private final ArrayDeque<QueuedEvent<T>> queuedEvents;
+  private final ArrayDeque<QueuedEvent<T>> queuedEventPool;
   private final Object releasedLock;
 
   @GuardedBy("releasedLock")
@@ -100,7 +106,7 @@ public final class ListenerSet<T extends @NonNull Object> {
    */
   public ListenerSet(Looper looper, Clock clock, IterationFinishedEvent<T> iterationFinishedEvent) {
     this(
-        /* listeners= */ new CopyOnWriteArraySet<>(),
+        /* listeners= */ new ListenerHolders<>(),
         looper,
         clock,
         iterationFinishedEvent,
@@ -108,7 +114,7 @@ public final class ListenerSet<T extends @NonNull Object> {
   }
 
   private ListenerSet(
-      CopyOnWriteArraySet<ListenerHolder<T>> listeners,
+      ListenerHolders<T> listeners,
       Looper looper,
       Clock clock,
       IterationFinishedEvent<T> iterationFinishedEvent,
@@ -119,6 +125,7 @@ public final class ListenerSet<T extends @NonNull Object> {
     releasedLock = new Object();
     flushingEvents = new ArrayDeque<>();
     queuedEvents = new ArrayDeque<>();
+    queuedEventPool = new ArrayDeque<>();
     // It's safe to use "this" because we don't send a message before exiting the constructor.
     @SuppressWarnings("nullness:methodref.receiver.bound")
     HandlerWrapper handler = clock.createHandler(looper, this::handleMessage);
@@ -174,7 +181,7 @@ public final class ListenerSet<T extends @NonNull Object> {
       if (released) {
         return;
       }
-      listeners.add(new ListenerHolder<>(listener));
+      listeners.add(listener);
     }
   }
 
@@ -187,7 +194,7 @@ public final class ListenerSet<T extends @NonNull Object> {
    */
   public void remove(T listener) {
     verifyCurrentThread();
-    for (ListenerHolder<T> listenerHolder : listeners) {
+    for (ListenerHolder<T> listenerHolder : listeners.get()) {
       if (listenerHolder.listener.equals(listener)) {
         listenerHolder.release(iterationFinishedEvent);
         listeners.remove(listenerHolder);
@@ -204,7 +211,7 @@ public final class ListenerSet<T extends @NonNull Object> {
   /** Returns the number of added listeners. */
   public int size() {
     verifyCurrentThread();
-    return listeners.size();
+    return listeners.get().length;
   }
 
   /**
@@ -216,13 +223,13 @@ public final class ListenerSet<T extends @NonNull Object> {
    */
   public void queueEvent(int eventFlag, Event<T> event) {
     verifyCurrentThread();
-    CopyOnWriteArraySet<ListenerHolder<T>> listenerSnapshot = new CopyOnWriteArraySet<>(listeners);
-    queuedEvents.add(
-        () -> {
-          for (ListenerHolder<T> holder : listenerSnapshot) {
-            holder.invoke(eventFlag, event);
-          }
-        });
+    @Nullable QueuedEvent<T> queuedEvent = queuedEventPool.pollFirst();
+    if (queuedEvent == null) {
+      queuedEvent = new QueuedEvent<>();
+    }
+    // The listener array is never modified, so it can be used as a snapshot.
+    queuedEvent.set(listeners.get(), eventFlag, event);
+    queuedEvents.addLast(queuedEvent);
   }
 
   /** Notifies listeners of events previously enqueued with {@link #queueEvent(int, Event)}. */
@@ -235,15 +242,21 @@ public final class ListenerSet<T extends @NonNull Object> {
       handler.sendMessageAtFrontOfQueue(handler.obtainMessage(MSG_ITERATION_FINISHED));
     }
     boolean recursiveFlushInProgress = !flushingEvents.isEmpty();
-    flushingEvents.addAll(queuedEvents);
-    queuedEvents.clear();
+    while (!queuedEvents.isEmpty()) {
+      flushingEvents.addLast(queuedEvents.removeFirst());
+    }
     if (recursiveFlushInProgress) {
       // Recursive call to flush. Let the outer call handle the flush queue.
       return;
     }
     while (!flushingEvents.isEmpty()) {
-      flushingEvents.peekFirst().run();
+      QueuedEvent<T> queuedEvent = flushingEvents.peekFirst();
+      queuedEvent.invoke();
       flushingEvents.removeFirst();
+      queuedEvent.clear();
+      if (queuedEventPool.size() < MAX_QUEUED_EVENT_POOL_SIZE) {
+        queuedEventPool.addLast(queuedEvent);
+      }
     }
   }
 
@@ -270,7 +283,7 @@ public final class ListenerSet<T extends @NonNull Object> {
     synchronized (releasedLock) {
       released = true;
     }
-    for (ListenerHolder<T> listenerHolder : listeners) {
+    for (ListenerHolder<T> listenerHolder : listeners.get()) {
       listenerHolder.release(iterationFinishedEvent);
     }
     listeners.clear();
@@ -290,7 +303,7 @@ public final class ListenerSet<T extends @NonNull Object> {
   }
 
   private boolean handleMessage(Message message) {
-    for (ListenerHolder<T> holder : listeners) {
+    for (ListenerHolder<T> holder : listeners.get()) {
       holder.iterationFinished(iterationFinishedEvent);
       if (handler.hasMessages(MSG_ITERATION_FINISHED)) {
         // The invocation above triggered new events (and thus scheduled a new message). We need
@@ -309,31 +322,116 @@ public final class ListenerSet<T extends @NonNull Object> {
     checkState(Thread.currentThread() == handler.getLooper().getThread());
   }
 
+  /**
+   * The listeners of one or more {@linkplain #copy copies} of a listener set.
+   *
+   * <p>The listeners are stored in an array that is replaced on each modification and never
+   * modified itself, so that it can be used as a snapshot without copying it.
+   */
+  private static final class ListenerHolders<T extends @NonNull Object> {
+
+    private volatile ListenerHolder<T>[] holders;
+
+    public ListenerHolders() {
+      holders = createArray(/* length= */ 0);
+    }
+
+    /** Returns the current listeners. The returned array must not be modified. */
+    public ListenerHolder<T>[] get() {
+      return holders;
+    }
+
+    /** Adds a listener, unless an equal listener has already been added. */
+    public synchronized void add(T listener) {
+      ListenerHolder<T>[] holders = this.holders;
+      for (ListenerHolder<T> holder : holders) {
+        if (holder.listener.equals(listener)) {
+          return;
+        }
+      }
+      ListenerHolder<T>[] newHolders = Arrays.copyOf(holders, holders.length + 1);
+      newHolders[holders.length] = new ListenerHolder<>(listener);
+      this.holders = newHolders;
+    }
+
+    /** Removes a listener holder. */
+    public synchronized void remove(ListenerHolder<T> listenerHolder) {
+      ListenerHolder<T>[] holders = this.holders;
+      for (int i = 0; i < holders.length; i++) {
+        if (holders[i] == listenerHolder) {
+          ListenerHolder<T>[] newHolders = createArray(holders.length - 1);
+          System.arraycopy(holders, 0, newHolders, 0, i);
+          System.arraycopy(holders, i + 1, newHolders, i, holders.length - i - 1);
+          this.holders = newHolders;
+          return;
+        }
+      }
+    }
+
+    /** Removes all listeners. */
+    public synchronized void clear() {
+      holders = createArray(/* length= */ 0);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T extends @NonNull Object> ListenerHolder<T>[] createArray(int length) {
+      return (ListenerHolder<T>[]) new ListenerHolder[length];
+    }
+  }
+
+  /** An event queued for the listeners that were registered when it was queued. */
+  private static final class QueuedEvent<T extends @NonNull Object> {
+
+    @Nullable private ListenerHolder<T>[] listenerSnapshot;
+    private int eventFlag;
+    @Nullable private Event<T> event;
+
+    public void set(ListenerHolder<T>[] listenerSnapshot, int eventFlag, Event<T> event) {
+      this.listenerSnapshot = listenerSnapshot;
+      this.eventFlag = eventFlag;
+      this.event = event;
+    }
+
+    public void invoke() {
+      Event<T> event = Assertions.checkNotNull(this.event);
+      for (ListenerHolder<T> holder : Assertions.checkNotNull(listenerSnapshot)) {
+        holder.invoke(eventFlag, event);
+      }
+    }
+
+    public void clear() {
+      listenerSnapshot = null;
+      event = null;
+    }
+  }
+
   private static final class ListenerHolder<T extends @NonNull Object> {
 
     public final T listener;
 
-    private FlagSet.Builder flagsBuilder;
+    private int[] pendingFlags;
+    private int pendingFlagCount;
+    @Nullable private FlagSet lastNotifiedFlags;
     private boolean needsIterationFinishedEvent;
     private boolean released;
 
     public ListenerHolder(T listener) {
       this.listener = listener;
-      this.flagsBuilder = new FlagSet.Builder();
+      pendingFlags = new int[8];
     }
 
     public void release(IterationFinishedEvent<T> event) {
       released = true;
       if (needsIterationFinishedEvent) {
         needsIterationFinishedEvent = false;
-        event.invoke(listener, flagsBuilder.build());
+        event.invoke(listener, buildPendingFlags());
       }
     }
 
     public void invoke(int eventFlag, Event<T> event) {
       if (!released) {
         if (eventFlag != C.INDEX_UNSET) {
-          flagsBuilder.add(eventFlag);
+          addPendingFlag(eventFlag);
         }
         needsIterationFinishedEvent = true;
         event.invoke(listener);
@@ -344,13 +442,56 @@ public final class ListenerSet<T extends @NonNull Object> {
       if (!released && needsIterationFinishedEvent) {
         // Reset flags before invoking the listener to ensure we keep all new flags that are set by
         // recursive events triggered from this callback.
-        FlagSet flagsToNotify = flagsBuilder.build();
-        flagsBuilder = new FlagSet.Builder();
+        FlagSet flagsToNotify = buildPendingFlags();
         needsIterationFinishedEvent = false;
         event.invoke(listener, flagsToNotify);
       }
     }
 
+    private void addPendingFlag(int flag) {
+      for (int i = 0; i < pendingFlagCount; i++) {
+        if (pendingFlags[i] == flag) {
+          return;
+        }
+      }
+      if (pendingFlagCount == pendingFlags.length) {
+        pendingFlags = Arrays.copyOf(pendingFlags, pendingFlags.length * 2);
+      }
+      pendingFlags[pendingFlagCount++] = flag;
+    }
+
+    /**
+     * Returns a {@link FlagSet} containing the pending flags and resets them.
+     *
+     * <p>As {@link FlagSet} is immutable, the previously returned instance is returned again if it
+     * contains the same flags, which is usually the case for high-frequency events.
+     */
+    private FlagSet buildPendingFlags() {
+      @Nullable FlagSet flags = lastNotifiedFlags;
+      if (flags == null || !containsExactlyPendingFlags(flags)) {
+        FlagSet.Builder flagsBuilder = new FlagSet.Builder();
+        for (int i = 0; i < pendingFlagCount; i++) {
+          flagsBuilder.add(pendingFlags[i]);
+        }
+        flags = flagsBuilder.build();
+        lastNotifiedFlags = flags;
+      }
+      pendingFlagCount = 0;
+      return flags;
+    }
+
+    private boolean containsExactlyPendingFlags(FlagSet flags) {
+      if (flags.size() != pendingFlagCount) {
+        return false;
+      }
+      for (int i = 0; i < pendingFlagCount; i++) {
+        if (!flags.contains(pendingFlags[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+
     @Override
     public boolean equals(@Nullable Object other) {
       if (this == other) {
@@ -16,8 +16,10 @@
 package androidx.media3.common;
 
 import static androidx.media3.common.FileTypes.HEADER_CONTENT_TYPE;
+import static androidx.media3.common.FileTypes.inferFileTypeFromContent;
 import static androidx.media3.common.FileTypes.inferFileTypeFromMimeType;
 import static androidx.media3.common.FileTypes.inferFileTypeFromUri;
+import static androidx.media3.common.util.Util.getBytesFromHexString;
 import static com.google.common.truth.Truth.assertThat;
 
 import android.net.Uri;
@@ -94,4 +96,34 @@ public class FileTypesTest {
   public void inferFileFormat_fromEmptyUri_returnsUnknownFormat() {
     assertThat(inferFileTypeFromUri(Uri.EMPTY)).isEqualTo(FileTypes.UNKNOWN);
   }
+
+  @Test
+  public void inferFileFormat_fromContent_returnsExpectedFormat() {
+    byte[] mp4Prefix = getBytesFromHexString("0000001C6674797069736F6D00000200");
+    byte[] heifPrefix = getBytesFromHexString("0000001C667479706865696300000000");
+    byte[] flacPrefix = getBytesFromHexString("664C614300000022");
+
+    assertThat(inferFileTypeFromContent(mp4Prefix, mp4Prefix.length)).isEqualTo(FileTypes.MP4);
+    assertThat(inferFileTypeFromContent(heifPrefix, heifPrefix.length)).isEqualTo(FileTypes.HEIF);
+    assertThat(inferFileTypeFromContent(flacPrefix, flacPrefix.length)).isEqualTo(FileTypes.FLAC);
+  }
+
+  @Test
+  public void inferFileFormat_fromTsContent_requiresTwoSyncBytes() {
+    byte[] tsPrefix = new byte[FileTypes.CONTENT_PREFIX_LENGTH];
+    tsPrefix[0] = 0x47;
+    tsPrefix[188] = 0x47;
+
+    assertThat(inferFileTypeFromContent(tsPrefix, tsPrefix.length)).isEqualTo(FileTypes.TS);
+    assertThat(inferFileTypeFromContent(tsPrefix, /* length= */ 188))
+        .isEqualTo(FileTypes.UNKNOWN);
+  }
+
+  @Test
+  public void inferFileFormat_fromContentWithId3Tag_returnsUnknownFormat() {
+    byte[] id3Prefix = getBytesFromHexString("494433040000000000");
+
+    assertThat(inferFileTypeFromContent(id3Prefix, id3Prefix.length))
+        .isEqualTo(FileTypes.UNKNOWN);
+  }
 }
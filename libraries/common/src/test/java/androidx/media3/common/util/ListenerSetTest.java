@@ -15,6 +15,7 @@
  */
 package androidx.media3.common.util;
 
+import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -26,6 +27,8 @@ import android.os.Looper;
 import androidx.media3.common.C;
 import androidx.media3.common.FlagSet;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InOrder;
@@ -227,6 +230,31 @@ public class ListenerSetTest {
     // Asserts that negative event flag (INDEX_UNSET) can be used without throwing.
   }
 
+  @Test
+  public void flushEvents_sameEventFlagsInEachIteration_reusesIterationFinishedFlags() {
+    List<FlagSet> iterationFinishedFlags = new ArrayList<>();
+    ListenerSet<TestListener> listenerSet =
+        new ListenerSet<>(
+            Looper.myLooper(),
+            Clock.DEFAULT,
+            (listener, flags) -> iterationFinishedFlags.add(flags));
+    listenerSet.add(mock(TestListener.class));
+
+    for (int i = 0; i < 2; i++) {
+      listenerSet.queueEvent(EVENT_ID_1, TestListener::callback1);
+      listenerSet.queueEvent(EVENT_ID_2, TestListener::callback2);
+      listenerSet.flushEvents();
+      ShadowLooper.idleMainLooper();
+    }
+    listenerSet.sendEvent(EVENT_ID_1, TestListener::callback1);
+    ShadowLooper.idleMainLooper();
+
+    assertThat(iterationFinishedFlags).hasSize(3);
+    assertThat(iterationFinishedFlags.get(0)).isEqualTo(createFlagSet(EVENT_ID_1, EVENT_ID_2));
+    assertThat(iterationFinishedFlags.get(1)).isSameInstanceAs(iterationFinishedFlags.get(0));
+    assertThat(iterationFinishedFlags.get(2)).isEqualTo(createFlagSet(EVENT_ID_1));
+  }
+
   @Test
   public void add_withRecursion_onlyReceivesUpdatesForFutureEvents() {
     ListenerSet<TestListener> listenerSet =
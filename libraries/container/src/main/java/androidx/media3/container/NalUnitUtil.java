@@ -27,6 +27,7 @@ import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.Log;
 import androidx.media3.common.util.UnstableApi;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /** Utility methods for handling H.264/AVC and H.265/HEVC NAL units. */
@@ -235,59 +236,45 @@ public final class NalUnitUtil {
   private static final int H264_NAL_UNIT_TYPE_SPS = 7; // Sequence parameter set
   private static final int H265_NAL_UNIT_TYPE_PREFIX_SEI = 39;
 
-  private static final Object scratchEscapePositionsLock = new Object();
+  /** The minimum length of data for which {@link #unescapeStream} reads eight bytes at a time. */
+  private static final int MIN_WORD_SCAN_LENGTH = 32;
 
-  /**
-   * Temporary store for positions of escape codes in {@link #unescapeStream(byte[], int)}. Guarded
-   * by {@link #scratchEscapePositionsLock}.
-   */
-  private static int[] scratchEscapePositions = new int[10];
+  private static final long LOW_BIT_OF_EACH_BYTE = 0x0101010101010101L;
+  private static final long HIGH_BIT_OF_EACH_BYTE = 0x8080808080808080L;
 
   /**
    * Unescapes {@code data} up to the specified limit, replacing occurrences of [0, 0, 3] with [0,
    * 0]. The unescaped data is returned in-place, with the return value indicating its length.
    *
-   * <p>Executions of this method are mutually exclusive, so it should not be called with very large
-   * buffers.
-   *
    * @param data The data to unescape.
    * @param limit The limit (exclusive) of the data to unescape.
    * @return The length of the unescaped data.
    */
   public static int unescapeStream(byte[] data, int limit) {
-    synchronized (scratchEscapePositionsLock) {
-      int position = 0;
-      int scratchEscapeCount = 0;
-      while (position < limit) {
-        position = findNextUnescapeIndex(data, position, limit);
-        if (position < limit) {
-          if (scratchEscapePositions.length <= scratchEscapeCount) {
-            // Grow scratchEscapePositions to hold a larger number of positions.
-            scratchEscapePositions =
-                Arrays.copyOf(scratchEscapePositions, scratchEscapePositions.length * 2);
-          }
-          scratchEscapePositions[scratchEscapeCount++] = position;
-          position += 3;
-        }
-      }
-
-      int unescapedLength = limit - scratchEscapeCount;
-      int escapedPosition = 0; // The position being read from.
-      int unescapedPosition = 0; // The position being written to.
-      for (int i = 0; i < scratchEscapeCount; i++) {
-        int nextEscapePosition = scratchEscapePositions[i];
-        int copyLength = nextEscapePosition - escapedPosition;
+    @Nullable
+    ByteBuffer wordBuffer =
+        limit >= MIN_WORD_SCAN_LENGTH
+            ? ByteBuffer.wrap(data).order(ByteOrder.nativeOrder())
+            : null;
+    int escapedPosition = 0; // The position being read from.
+    int unescapedPosition = 0; // The position being written to.
+    while (escapedPosition < limit) {
+      // Data is only written before the escape code that was found last, so the search for the
+      // next one always reads escaped data.
+      int nextEscapePosition = findNextUnescapeIndex(data, wordBuffer, escapedPosition, limit);
+      int copyLength = nextEscapePosition - escapedPosition;
+      if (unescapedPosition != escapedPosition) {
         System.arraycopy(data, escapedPosition, data, unescapedPosition, copyLength);
-        unescapedPosition += copyLength;
-        data[unescapedPosition++] = 0;
-        data[unescapedPosition++] = 0;
-        escapedPosition += copyLength + 3;
       }
-
-      int remainingLength = unescapedLength - unescapedPosition;
-      System.arraycopy(data, escapedPosition, data, unescapedPosition, remainingLength);
-      return unescapedLength;
+      unescapedPosition += copyLength;
+      if (nextEscapePosition == limit) {
+        break;
+      }
+      data[unescapedPosition++] = 0;
+      data[unescapedPosition++] = 0;
+      escapedPosition = nextEscapePosition + 3;
     }
+    return unescapedPosition;
   }
 
   /**
@@ -886,15 +873,30 @@ public final class NalUnitUtil {
     prefixFlags[2] = false;
   }
 
-  private static int findNextUnescapeIndex(byte[] bytes, int offset, int limit) {
-    for (int i = offset; i < limit - 2; i++) {
-      if (bytes[i] == 0x00 && bytes[i + 1] == 0x00 && bytes[i + 2] == 0x03) {
-        return i;
+  private static int findNextUnescapeIndex(
+      byte[] bytes, @Nullable ByteBuffer wordBuffer, int offset, int limit) {
+    int i = offset;
+    while (i < limit - 2) {
+      if (wordBuffer != null && i + 8 <= limit && !containsZeroByte(wordBuffer.getLong(i))) {
+        // An escape code can't start at any of the eight bytes starting at i, as none of them is 0.
+        i += 8;
+        continue;
+      }
+      int windowLimit = min(i + 8, limit - 2);
+      for (; i < windowLimit; i++) {
+        if (bytes[i] == 0x00 && bytes[i + 1] == 0x00 && bytes[i + 2] == 0x03) {
+          return i;
+        }
       }
     }
     return limit;
   }
 
+  /** Returns whether any of the eight bytes in {@code word} is 0. */
+  private static boolean containsZeroByte(long word) {
+    return ((word - LOW_BIT_OF_EACH_BYTE) & ~word & HIGH_BIT_OF_EACH_BYTE) != 0;
+  }
+
   private static void skipScalingList(ParsableNalUnitBitArray bitArray, int size) {
     int lastScale = 8;
     int nextScale = 8;
@@ -157,6 +157,17 @@ public final class NalUnitUtilTest {
     assertUnescapeMatchesExpected("0000030200000300", "000002000000");
   }
 
+  @Test
+  public void unescapeModifiesLongBuffersWithStartCodes() {
+    assertUnescapeDoesNotModify("1122334455667788990011223344556677889900112233445566778899000004");
+    assertUnescapeMatchesExpected(
+        "000003011122334455667788990011223344556677889900112233445566778899AA00000302BB",
+        "0000011122334455667788990011223344556677889900112233445566778899AA000002BB");
+    assertUnescapeMatchesExpected(
+        "11223344556677880000030000030000030011223344556677889900112233445566778899",
+        "11223344556677880000000000000011223344556677889900112233445566778899");
+  }
+
   @Test
   public void discardToSps() {
     assertDiscardToSpsMatchesExpected("", "");
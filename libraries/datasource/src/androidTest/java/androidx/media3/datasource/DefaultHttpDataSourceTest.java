@@ -343,4 +343,34 @@ public class DefaultHttpDataSourceTest {
     Headers headers = mockWebServer.takeRequest(10, SECONDS).getHeaders();
     assertThat(headers.get("0")).isEqualTo("afterCreation");
   }
+
+  @Test
+  public void open_withConnectionReuseEnabled_reusesConnectionForSequentialRequests()
+      throws Exception {
+    MockWebServer mockWebServer = new MockWebServer();
+    byte[] responseBody = TestUtil.buildTestData(/* length= */ 100);
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(responseBody)));
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(responseBody)));
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/test-path").toString()).build();
+    DefaultHttpDataSource dataSource =
+        new DefaultHttpDataSource.Factory()
+            .setConnectTimeoutMs(1000)
+            .setReadTimeoutMs(1000)
+            .setConnectionReuseEnabled(true)
+            .createDataSource();
+
+    dataSource.open(dataSpec);
+    byte[] data1 = DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+    dataSource.open(dataSpec);
+    byte[] data2 = DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(data1).isEqualTo(responseBody);
+    assertThat(data2).isEqualTo(responseBody);
+    assertThat(mockWebServer.takeRequest(10, SECONDS).getSequenceNumber()).isEqualTo(0);
+    // A sequence number of 1 means the second request was sent on the same connection.
+    assertThat(mockWebServer.takeRequest(10, SECONDS).getSequenceNumber()).isEqualTo(1);
+  }
 }
@@ -25,19 +25,32 @@ import android.text.TextUtils;
 import androidx.annotation.DoNotInline;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
+import androidx.media3.common.ByteBufferDataReader;
 import androidx.media3.common.C;
 import androidx.media3.common.PlaybackException;
 import androidx.media3.common.util.Assertions;
+import androidx.media3.common.util.Log;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
-/** A {@link DataSource} for reading local files. */
+/**
+ * A {@link DataSource} for reading local files.
+ *
+ * <p>If {@linkplain Factory#setMemoryMappingEnabled(boolean) memory mapping is enabled}, the opened
+ * range of the file is mapped into memory and read without a system call per read. In this mode
+ * the data can also be read without copying through {@link #readBuffer(int)}.
+ */
 @UnstableApi
-public final class FileDataSource extends BaseDataSource {
+public final class FileDataSource extends BaseDataSource implements ByteBufferDataReader {
+
+  private static final String TAG = "FileDataSource";
 
   /** Thrown when a {@link FileDataSource} encounters an error reading a file. */
   public static class FileDataSourceException extends DataSourceException {
@@ -76,6 +89,7 @@ public final class FileDataSource extends BaseDataSource {
   public static final class Factory implements DataSource.Factory {
 
     @Nullable private TransferListener listener;
+    private boolean memoryMappingEnabled;
 
     /**
      * Sets a {@link TransferListener} for {@link FileDataSource} instances created by this factory.
@@ -89,9 +103,32 @@ public final class FileDataSource extends BaseDataSource {
       return this;
     }
 
+    /**
+     * Sets whether {@link FileDataSource} instances created by this factory map the opened range of
+     * the file into memory.
+     *
+     * <p>Memory mapping avoids a system call and a copy through the kernel for every read, and
+     * allows data to be read without copying through {@link FileDataSource#readBuffer(int)}. It is
+     * most effective for reading large files, such as fully cached or downloaded media. Opening a
+     * mapped range is more expensive than opening a file for regular reads, so it may be slower for
+     * very small files. Ranges that extend beyond the end of the file, or that are longer than
+     * {@link Integer#MAX_VALUE} bytes, are always read without memory mapping, as are ranges that
+     * fail to be mapped, for example because the process is running out of address space.
+     *
+     * <p>The default value is {@code false}.
+     *
+     * @param memoryMappingEnabled Whether to map opened files into memory.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setMemoryMappingEnabled(boolean memoryMappingEnabled) {
+      this.memoryMappingEnabled = memoryMappingEnabled;
+      return this;
+    }
+
     @Override
     public FileDataSource createDataSource() {
-      FileDataSource dataSource = new FileDataSource();
+      FileDataSource dataSource = new FileDataSource(memoryMappingEnabled);
       if (listener != null) {
         dataSource.addTransferListener(listener);
       }
@@ -99,13 +136,21 @@ public final class FileDataSource extends BaseDataSource {
     }
   }
 
+  private final boolean memoryMappingEnabled;
+
   @Nullable private RandomAccessFile file;
+  @Nullable private MappedByteBuffer mappedBuffer;
   @Nullable private Uri uri;
   private long bytesRemaining;
   private boolean opened;
 
   public FileDataSource() {
+    this(/* memoryMappingEnabled= */ false);
+  }
+
+  private FileDataSource(boolean memoryMappingEnabled) {
     super(/* isNetwork= */ false);
+    this.memoryMappingEnabled = memoryMappingEnabled;
   }
 
   @Override
@@ -127,6 +172,9 @@ public final class FileDataSource extends BaseDataSource {
           /* cause= */ null,
           PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE);
     }
+    if (memoryMappingEnabled && bytesRemaining > 0 && bytesRemaining <= Integer.MAX_VALUE) {
+      mappedBuffer = maybeMapFile(file, dataSpec.position, bytesRemaining);
+    }
 
     opened = true;
     transferStarted(dataSpec);
@@ -142,10 +190,15 @@ public final class FileDataSource extends BaseDataSource {
       return C.RESULT_END_OF_INPUT;
     } else {
       int bytesRead;
-      try {
-        bytesRead = castNonNull(file).read(buffer, offset, (int) min(bytesRemaining, length));
-      } catch (IOException e) {
-        throw new FileDataSourceException(e, PlaybackException.ERROR_CODE_IO_UNSPECIFIED);
+      if (mappedBuffer != null) {
+        bytesRead = (int) min(bytesRemaining, length);
+        mappedBuffer.get(buffer, offset, bytesRead);
+      } else {
+        try {
+          bytesRead = castNonNull(file).read(buffer, offset, (int) min(bytesRemaining, length));
+        } catch (IOException e) {
+          throw new FileDataSourceException(e, PlaybackException.ERROR_CODE_IO_UNSPECIFIED);
+        }
       }
 
       if (bytesRead > 0) {
@@ -157,6 +210,27 @@ public final class FileDataSource extends BaseDataSource {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Data can only be read without copying if memory mapping is {@linkplain
+   * Factory#setMemoryMappingEnabled(boolean) enabled} and the opened range could be mapped.
+   */
+  @Override
+  @Nullable
+  public ByteBuffer readBuffer(int length) {
+    if (mappedBuffer == null || length == 0 || bytesRemaining == 0) {
+      return null;
+    }
+    int bytesRead = (int) min(bytesRemaining, length);
+    ByteBuffer buffer = mappedBuffer.slice();
+    buffer.limit(bytesRead);
+    mappedBuffer.position(mappedBuffer.position() + bytesRead);
+    bytesRemaining -= bytesRead;
+    bytesTransferred(bytesRead);
+    return buffer;
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
@@ -174,6 +248,7 @@ public final class FileDataSource extends BaseDataSource {
       throw new FileDataSourceException(e, PlaybackException.ERROR_CODE_IO_UNSPECIFIED);
     } finally {
       file = null;
+      mappedBuffer = null;
       if (opened) {
         opened = false;
         transferEnded();
@@ -181,6 +256,27 @@ public final class FileDataSource extends BaseDataSource {
     }
   }
 
+  /**
+   * Maps the given range of the file into memory, or returns {@code null} if the range extends
+   * beyond the end of the file or can't be mapped. In this case the file is read as normal, so that
+   * reading past the end of the file results in the same behavior as when memory mapping is
+   * disabled.
+   */
+  @Nullable
+  private static MappedByteBuffer maybeMapFile(RandomAccessFile file, long position, long length) {
+    try {
+      if (position + length > file.length()) {
+        return null;
+      }
+      return file.getChannel().map(FileChannel.MapMode.READ_ONLY, position, length);
+    } catch (IOException e) {
+      // Mapping can fail if there's not enough address space (for example "Map failed"), in which
+      // case the file can still be read without mapping it.
+      Log.w(TAG, "Failed to map file, reading without memory mapping", e);
+      return null;
+    }
+  }
+
   private static RandomAccessFile openLocalFile(Uri uri) throws FileDataSourceException {
     try {
       return new RandomAccessFile(Assertions.checkNotNull(uri.getPath()), "r");
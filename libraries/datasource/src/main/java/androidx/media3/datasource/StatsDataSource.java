@@ -17,10 +17,12 @@ package androidx.media3.datasource;
 
 import android.net.Uri;
 import androidx.annotation.Nullable;
+import androidx.media3.common.ByteBufferDataReader;
 import androidx.media3.common.C;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.UnstableApi;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -30,7 +32,7 @@ import java.util.Map;
  * headers.
  */
 @UnstableApi
-public final class StatsDataSource implements DataSource {
+public final class StatsDataSource implements DataSource, ByteBufferDataReader {
 
   private final DataSource dataSource;
 
@@ -98,6 +100,25 @@ public final class StatsDataSource implements DataSource {
     return bytesRead;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Data can only be read without copying if the wrapped {@link DataSource} is a {@link
+   * ByteBufferDataReader}.
+   */
+  @Override
+  @Nullable
+  public ByteBuffer readBuffer(int length) throws IOException {
+    if (!(dataSource instanceof ByteBufferDataReader)) {
+      return null;
+    }
+    @Nullable ByteBuffer buffer = ((ByteBufferDataReader) dataSource).readBuffer(length);
+    if (buffer != null) {
+      this.bytesRead += buffer.remaining();
+    }
+    return buffer;
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
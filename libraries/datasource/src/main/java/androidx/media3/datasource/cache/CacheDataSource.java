@@ -15,6 +15,7 @@
  */
 package androidx.media3.datasource.cache;
 
+import static androidx.media3.common.util.Assertions.checkArgument;
 import static androidx.media3.common.util.Assertions.checkNotNull;
 import static androidx.media3.common.util.Util.castNonNull;
 import static java.lang.Math.min;
@@ -27,6 +28,7 @@ import static java.lang.annotation.ElementType.TYPE_USE;
 import android.net.Uri;
 import androidx.annotation.IntDef;
 import androidx.annotation.Nullable;
+import androidx.media3.common.ByteBufferDataReader;
 import androidx.media3.common.C;
 import androidx.media3.common.PlaybackException;
 import androidx.media3.common.PriorityTaskManager;
@@ -49,6 +51,8 @@ import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -60,7 +64,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
  * written into the cache.
  */
 @UnstableApi
-public final class CacheDataSource implements DataSource {
+public final class CacheDataSource implements DataSource, ByteBufferDataReader {
 
   /** {@link DataSource.Factory} for {@link CacheDataSource} instances. */
   public static final class Factory implements DataSource.Factory {
@@ -75,6 +79,7 @@ public final class CacheDataSource implements DataSource {
     private @C.Priority int upstreamPriority;
     private @CacheDataSource.Flags int flags;
     @Nullable private CacheDataSource.EventListener eventListener;
+    private long upstreamRangeCoalescingThreshold;
 
     public Factory() {
       cacheReadDataSourceFactory = new FileDataSource.Factory();
@@ -252,6 +257,29 @@ public final class CacheDataSource implements DataSource {
       return this;
     }
 
+    /**
+     * Sets the maximum length of cached data between two holes for which the holes are requested
+     * from upstream with a single request, or 0 to always request each hole separately.
+     *
+     * <p>When reading content with many small holes, requesting each hole separately incurs the
+     * overhead of an upstream request, such as a round trip to the server, for every hole. If the
+     * cached data between two holes is no longer than the threshold, it's instead requested from
+     * upstream together with the holes either side of it. The cached data is then read from
+     * upstream, and isn't written to the cache again. Holes that are locked by another writer are
+     * never coalesced.
+     *
+     * <p>The default is {@code 0}.
+     *
+     * @param upstreamRangeCoalescingThreshold The threshold, in bytes.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setUpstreamRangeCoalescingThreshold(long upstreamRangeCoalescingThreshold) {
+      checkArgument(upstreamRangeCoalescingThreshold >= 0);
+      this.upstreamRangeCoalescingThreshold = upstreamRangeCoalescingThreshold;
+      return this;
+    }
+
     @Override
     public CacheDataSource createDataSource() {
       return createDataSourceInternal(
@@ -319,7 +347,8 @@ public final class CacheDataSource implements DataSource {
           flags,
           upstreamPriorityTaskManager,
           upstreamPriority,
-          eventListener);
+          eventListener,
+          upstreamRangeCoalescingThreshold);
     }
   }
 
@@ -408,6 +437,8 @@ public final class CacheDataSource implements DataSource {
   private final DataSource upstreamDataSource;
   private final CacheKeyFactory cacheKeyFactory;
   @Nullable private final EventListener eventListener;
+  @Nullable private final HoleFilteringDataSink holeFilteringDataSink;
+  private final long upstreamRangeCoalescingThreshold;
 
   private final boolean blockOnCache;
   private final boolean ignoreCacheOnError;
@@ -421,6 +452,7 @@ public final class CacheDataSource implements DataSource {
   private long readPosition;
   private long bytesRemaining;
   @Nullable private CacheSpan currentHoleSpan;
+  private final List<CacheSpan> coalescedHoleSpans;
   private boolean seenCacheError;
   private boolean currentRequestIgnoresCache;
   private long totalCachedBytesRead;
@@ -523,7 +555,8 @@ public final class CacheDataSource implements DataSource {
         flags,
         /* upstreamPriorityTaskManager= */ null,
         /* upstreamPriority= */ C.PRIORITY_PLAYBACK,
-        eventListener);
+        eventListener,
+        /* upstreamRangeCoalescingThreshold= */ 0);
   }
 
   private CacheDataSource(
@@ -535,7 +568,8 @@ public final class CacheDataSource implements DataSource {
       @Flags int flags,
       @Nullable PriorityTaskManager upstreamPriorityTaskManager,
       @C.Priority int upstreamPriority,
-      @Nullable EventListener eventListener) {
+      @Nullable EventListener eventListener,
+      long upstreamRangeCoalescingThreshold) {
     this.cache = cache;
     this.cacheReadDataSource = cacheReadDataSource;
     this.cacheKeyFactory = cacheKeyFactory != null ? cacheKeyFactory : CacheKeyFactory.DEFAULT;
@@ -550,6 +584,12 @@ public final class CacheDataSource implements DataSource {
                 upstreamDataSource, upstreamPriorityTaskManager, upstreamPriority);
       }
       this.upstreamDataSource = upstreamDataSource;
+      if (cacheWriteDataSink != null && upstreamRangeCoalescingThreshold > 0) {
+        holeFilteringDataSink = new HoleFilteringDataSink(cacheWriteDataSink);
+        cacheWriteDataSink = holeFilteringDataSink;
+      } else {
+        holeFilteringDataSink = null;
+      }
       this.cacheWriteDataSource =
           cacheWriteDataSink != null
               ? new TeeDataSource(upstreamDataSource, cacheWriteDataSink)
@@ -557,8 +597,11 @@ public final class CacheDataSource implements DataSource {
     } else {
       this.upstreamDataSource = PlaceholderDataSource.INSTANCE;
       this.cacheWriteDataSource = null;
+      holeFilteringDataSink = null;
     }
     this.eventListener = eventListener;
+    this.upstreamRangeCoalescingThreshold = upstreamRangeCoalescingThreshold;
+    coalescedHoleSpans = new ArrayList<>();
   }
 
   /** Returns the {@link Cache} used by this instance. */
@@ -664,6 +707,43 @@ public final class CacheDataSource implements DataSource {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Data can only be read without copying whilst reading from the cache, and only if the cache
+   * read {@link DataSource} is a {@link ByteBufferDataReader} such as a {@link FileDataSource}
+   * with {@linkplain FileDataSource.Factory#setMemoryMappingEnabled(boolean) memory mapping
+   * enabled}.
+   */
+  @Override
+  @Nullable
+  public ByteBuffer readBuffer(int length) throws IOException {
+    if (length == 0
+        || bytesRemaining == 0
+        || readPosition >= checkCachePosition
+        || !isReadingFromCache()
+        || !(cacheReadDataSource instanceof ByteBufferDataReader)) {
+      return null;
+    }
+    try {
+      @Nullable
+      ByteBuffer buffer = ((ByteBufferDataReader) cacheReadDataSource).readBuffer(length);
+      if (buffer != null) {
+        int bytesRead = buffer.remaining();
+        totalCachedBytesRead += bytesRead;
+        readPosition += bytesRead;
+        currentDataSourceBytesRead += bytesRead;
+        if (bytesRemaining != C.LENGTH_UNSET) {
+          bytesRemaining -= bytesRead;
+        }
+      }
+      return buffer;
+    } catch (Throwable e) {
+      handleBeforeThrow(e);
+      throw e;
+    }
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
@@ -793,8 +873,20 @@ public final class CacheDataSource implements DataSource {
       }
     }
 
+    if (holeFilteringDataSink != null) {
+      // Clear any hole spans left behind by a coalesced open whose sink was never opened or closed,
+      // for example because the upstream open failed.
+      holeFilteringDataSink.setHoleSpans(null);
+    }
     if (nextSpan != null && nextSpan.isHoleSpan()) {
       currentHoleSpan = nextSpan;
+      if (holeFilteringDataSink != null) {
+        long length = maybeCoalesceHoles(key, nextSpan, nextDataSpec.length);
+        if (!coalescedHoleSpans.isEmpty()) {
+          nextDataSpec = nextDataSpec.buildUpon().setLength(length).build();
+          holeFilteringDataSink.setHoleSpans(buildHoleSpanList(nextSpan));
+        }
+      }
     }
     currentDataSource = nextDataSource;
     currentDataSpec = nextDataSpec;
@@ -860,7 +952,87 @@ public final class CacheDataSource implements DataSource {
         cache.releaseHoleSpan(currentHoleSpan);
         currentHoleSpan = null;
       }
+      releaseCoalescedHoleSpans();
+    }
+  }
+
+  /**
+   * Locks further holes that can be requested from upstream together with {@code holeSpan}, adding
+   * them to {@link #coalescedHoleSpans}.
+   *
+   * @param key The cache key.
+   * @param holeSpan The locked hole span that's about to be requested from upstream.
+   * @param length The length of the data that would be requested for {@code holeSpan} alone.
+   * @return The length of the data to request from upstream.
+   */
+  private long maybeCoalesceHoles(String key, CacheSpan holeSpan, long length) {
+    if (holeSpan.isOpenEnded() || length == bytesRemaining) {
+      // The request ends within the hole.
+      return length;
+    }
+    long endPosition = readPosition + length;
+    while (true) {
+      long remainingLength =
+          bytesRemaining == C.LENGTH_UNSET
+              ? C.LENGTH_UNSET
+              : readPosition + bytesRemaining - endPosition;
+      // The current end position is the start of cached data, since holes span up to the next
+      // cached span.
+      long cachedLength = cache.getCachedLength(key, endPosition, remainingLength);
+      if (cachedLength <= 0
+          || cachedLength > upstreamRangeCoalescingThreshold
+          || cachedLength == remainingLength) {
+        break;
+      }
+      long holePosition = endPosition + cachedLength;
+      @Nullable CacheSpan nextHoleSpan;
+      try {
+        nextHoleSpan =
+            cache.startReadWriteNonBlocking(
+                key,
+                holePosition,
+                remainingLength == C.LENGTH_UNSET
+                    ? C.LENGTH_UNSET
+                    : remainingLength - cachedLength);
+      } catch (CacheException e) {
+        break;
+      }
+      if (nextHoleSpan == null) {
+        // The hole is locked by another writer.
+        break;
+      }
+      if (nextHoleSpan.isCached) {
+        // The hole was filled concurrently.
+        break;
+      }
+      coalescedHoleSpans.add(nextHoleSpan);
+      if (nextHoleSpan.isOpenEnded()
+          || (remainingLength != C.LENGTH_UNSET
+              && nextHoleSpan.length >= remainingLength - cachedLength)) {
+        // The request ends within the hole.
+        return bytesRemaining;
+      }
+      endPosition = holePosition + nextHoleSpan.length;
+    }
+    return endPosition - readPosition;
+  }
+
+  private List<CacheSpan> buildHoleSpanList(CacheSpan firstHoleSpan) {
+    List<CacheSpan> holeSpans = new ArrayList<>(coalescedHoleSpans.size() + 1);
+    holeSpans.add(firstHoleSpan);
+    holeSpans.addAll(coalescedHoleSpans);
+    return holeSpans;
+  }
+
+  private void releaseCoalescedHoleSpans() {
+    if (holeFilteringDataSink != null) {
+      // The released holes may be written by others, so must no longer be written through the sink.
+      holeFilteringDataSink.setHoleSpans(null);
+    }
+    for (int i = 0; i < coalescedHoleSpans.size(); i++) {
+      cache.releaseHoleSpan(coalescedHoleSpans.get(i));
     }
+    coalescedHoleSpans.clear();
   }
 
   private void handleBeforeThrow(Throwable exception) {
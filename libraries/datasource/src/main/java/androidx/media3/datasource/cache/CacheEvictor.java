@@ -17,6 +17,7 @@ package androidx.media3.datasource.cache;
 
 import androidx.media3.common.C;
 import androidx.media3.common.util.UnstableApi;
+import java.util.List;
 
 /**
  * Evicts data from a {@link Cache}. Implementations should call {@link Cache#removeSpan(CacheSpan)}
@@ -44,4 +45,23 @@ public interface CacheEvictor extends Cache.Listener {
    * @param length The length of the data being written, or {@link C#LENGTH_UNSET} if unknown.
    */
   void onStartFile(Cache cache, String key, long position, long length);
+
+  /**
+   * Called when adjacent {@link CacheSpan CacheSpans} are coalesced into a single span. The new
+   * {@link CacheSpan} represents the same data as the ones it replaces, so evictors shouldn't
+   * treat it as newly added content.
+   *
+   * <p>{@link #onSpanAdded(Cache, CacheSpan)} and {@link #onSpanRemoved(Cache, CacheSpan)} are not
+   * called in addition to this method. The default implementation calls them instead.
+   *
+   * @param cache The source of the event.
+   * @param oldSpans The old {@link CacheSpan CacheSpans}, which have been removed from the cache.
+   * @param newSpan The new {@link CacheSpan}, which has been added to the cache.
+   */
+  default void onSpansCoalesced(Cache cache, List<CacheSpan> oldSpans, CacheSpan newSpan) {
+    for (int i = 0; i < oldSpans.size(); i++) {
+      onSpanRemoved(cache, oldSpans.get(i));
+    }
+    onSpanAdded(cache, newSpan);
+  }
 }
@@ -45,8 +45,8 @@ import java.util.TreeSet;
   /** Currently locked ranges. */
   private final ArrayList<Range> lockedRanges;
 
-  /** Metadata values. */
-  private DefaultContentMetadata metadata;
+  /** Metadata values. Volatile so that they can be read without holding the cache lock. */
+  private volatile DefaultContentMetadata metadata;
 
   /**
    * Creates a CachedContent.
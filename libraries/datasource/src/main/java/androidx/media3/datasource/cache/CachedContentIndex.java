@@ -30,6 +30,7 @@ import android.util.SparseBooleanArray;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
+import androidx.media3.common.C;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.AtomicFile;
 import androidx.media3.common.util.NullableType;
@@ -39,14 +40,18 @@ import androidx.media3.database.DatabaseProvider;
 import androidx.media3.database.VersionTable;
 import com.google.common.collect.ImmutableSet;
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -57,6 +62,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
@@ -69,10 +76,13 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 /* package */ class CachedContentIndex {
 
   /* package */ static final String FILE_NAME_ATOMIC = "cached_content_index.exi";
+  /* package */ static final String FILE_NAME_JOURNAL = "cached_content_index.exj";
 
   private static final int INCREMENTAL_METADATA_READ_LENGTH = 10 * 1024 * 1024;
 
-  private final HashMap<String, CachedContent> keyToContent;
+  // Concurrent so that SimpleCache can look up content whilst holding only a per-key lock. All
+  // modifications are still made whilst holding the lock on the SimpleCache instance.
+  private final ConcurrentHashMap<String, CachedContent> keyToContent;
 
   /**
    * Maps assigned ids to their corresponding keys. Also contains (id -> null) entries for ids that
@@ -108,7 +118,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   /** Returns whether the file is an index file. */
   public static boolean isIndexFile(String fileName) {
     // Atomic file backups add additional suffixes to the file name.
-    return fileName.startsWith(FILE_NAME_ATOMIC);
+    return fileName.startsWith(FILE_NAME_ATOMIC) || fileName.startsWith(FILE_NAME_JOURNAL);
   }
 
   /**
@@ -161,8 +171,44 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       @Nullable byte[] legacyStorageSecretKey,
       boolean legacyStorageEncrypt,
       boolean preferLegacyStorage) {
+    this(
+        databaseProvider,
+        legacyStorageDir,
+        legacyStorageSecretKey,
+        legacyStorageEncrypt,
+        preferLegacyStorage,
+        /* useJournalStorage= */ false);
+  }
+
+  /**
+   * Creates an instance supporting any of database, legacy and journal storage.
+   *
+   * @param databaseProvider Provides the database in which the index is stored, or {@code null} to
+   *     not use database storage.
+   * @param legacyStorageDir The directory in which any legacy or journal storage is stored, or
+   *     {@code null} to use only database storage.
+   * @param legacyStorageSecretKey A 16 byte AES key for reading, and optionally writing, legacy
+   *     storage.
+   * @param legacyStorageEncrypt Whether to encrypt when writing to legacy storage. Must be false if
+   *     {@code legacyStorageSecretKey} is null.
+   * @param preferLegacyStorage Whether to use prefer legacy storage if both storage types are
+   *     enabled. This option is only useful for downgrading from database storage back to legacy
+   *     storage. Ignored if {@code useJournalStorage} is true.
+   * @param useJournalStorage Whether to store the index in an append-only journal in {@code
+   *     legacyStorageDir}. If true, any existing database or legacy index is migrated into the
+   *     journal, preferring the database index if both are available. The journal is not
+   *     encrypted.
+   */
+  public CachedContentIndex(
+      @Nullable DatabaseProvider databaseProvider,
+      @Nullable File legacyStorageDir,
+      @Nullable byte[] legacyStorageSecretKey,
+      boolean legacyStorageEncrypt,
+      boolean preferLegacyStorage,
+      boolean useJournalStorage) {
     checkState(databaseProvider != null || legacyStorageDir != null);
-    keyToContent = new HashMap<>();
+    checkState(!useJournalStorage || legacyStorageDir != null);
+    keyToContent = new ConcurrentHashMap<>();
     idToKey = new SparseArray<>();
     removedIds = new SparseBooleanArray();
     newIds = new SparseBooleanArray();
@@ -177,7 +223,10 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
                 legacyStorageSecretKey,
                 legacyStorageEncrypt)
             : null;
-    if (databaseStorage == null || (legacyStorage != null && preferLegacyStorage)) {
+    if (useJournalStorage) {
+      storage = new JournalStorage(new File(checkNotNull(legacyStorageDir), FILE_NAME_JOURNAL));
+      previousStorage = databaseStorage != null ? databaseStorage : legacyStorage;
+    } else if (databaseStorage == null || (legacyStorage != null && preferLegacyStorage)) {
       storage = castNonNull(legacyStorage);
       previousStorage = databaseStorage;
     } else {
@@ -450,7 +499,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
      * @param idToKey The id to key map to populate with persisted data.
      * @throws IOException If an error occurs loading the index.
      */
-    void load(HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+    void load(Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
         throws IOException;
 
     /**
@@ -460,17 +509,17 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
      * @param content The key to content map to persist.
      * @throws IOException If an error occurs persisting the index.
      */
-    void storeFully(HashMap<String, CachedContent> content) throws IOException;
+    void storeFully(Map<String, CachedContent> content) throws IOException;
 
     /**
      * Ensures incremental changes to the index since the initial {@link #initialize(long)} or last
-     * {@link #storeFully(HashMap)} are persisted. The storage will have been notified of all such
+     * {@link #storeFully(Map)} are persisted. The storage will have been notified of all such
      * changes via {@link #onUpdate(CachedContent)} and {@link #onRemove(CachedContent, boolean)}.
      *
      * @param content The key to content map to persist.
      * @throws IOException If an error occurs persisting the index.
      */
-    void storeIncremental(HashMap<String, CachedContent> content) throws IOException;
+    void storeIncremental(Map<String, CachedContent> content) throws IOException;
 
     /**
      * Called when a {@link CachedContent} is added or updated.
@@ -544,7 +593,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
     @Override
     public void load(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
       checkState(!changed);
       if (!readFile(content, idToKey)) {
         content.clear();
@@ -554,13 +603,13 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     @Override
-    public void storeFully(HashMap<String, CachedContent> content) throws IOException {
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
       writeFile(content);
       changed = false;
     }
 
     @Override
-    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
       if (!changed) {
         return;
       }
@@ -578,7 +627,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     private boolean readFile(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
       if (!atomicFile.exists()) {
         return true;
       }
@@ -633,7 +682,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       return true;
     }
 
-    private void writeFile(HashMap<String, CachedContent> content) throws IOException {
+    private void writeFile(Map<String, CachedContent> content) throws IOException {
       @Nullable DataOutputStream output = null;
       try {
         OutputStream outputStream = atomicFile.startWrite();
@@ -732,6 +781,255 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
   }
 
+  /**
+   * {@link Storage} implementation that uses an append-only journal.
+   *
+   * <p>Each call to {@link #storeIncremental(Map)} appends one record per added, updated or removed
+   * {@link CachedContent} to the journal, rather than rewriting the whole index. When the number of
+   * records in the journal becomes large relative to the number of entries in the index, the
+   * journal is compacted by atomically replacing it with a snapshot containing one record per
+   * entry.
+   *
+   * <p>Each record is checksummed, so that a record that was only partially written (for example
+   * because the process was killed during a write) is detected when loading. Such a record, and any
+   * data after it, is discarded.
+   */
+  private static final class JournalStorage implements Storage {
+
+    private static final int VERSION = 1;
+
+    private static final int RECORD_TYPE_UPDATE = 1;
+    private static final int RECORD_TYPE_REMOVE = 2;
+
+    /** The minimum number of records in the journal before it's considered for compaction. */
+    private static final int COMPACTION_MIN_RECORD_COUNT = 1024;
+
+    /**
+     * The journal is compacted if it contains more than this many records per entry in the index.
+     */
+    private static final int COMPACTION_RECORDS_PER_ENTRY_THRESHOLD = 2;
+
+    private static final int HEADER_LENGTH = 4;
+
+    /** Upper bound on the payload length of a record, used to detect corrupt length fields. */
+    private static final int MAX_RECORD_PAYLOAD_LENGTH = INCREMENTAL_METADATA_READ_LENGTH * 2;
+
+    private final File file;
+    private final AtomicFile atomicFile;
+    private final SparseArray<@NullableType CachedContent> pendingUpdates;
+    private final ByteArrayOutputStream recordBuffer;
+    private final CRC32 crc;
+
+    private int recordCount;
+
+    public JournalStorage(File file) {
+      this.file = file;
+      atomicFile = new AtomicFile(file);
+      pendingUpdates = new SparseArray<>();
+      recordBuffer = new ByteArrayOutputStream();
+      crc = new CRC32();
+    }
+
+    @Override
+    public void initialize(long uid) {
+      // Do nothing. Journal storage uses a separate file for each cache.
+    }
+
+    @Override
+    public boolean exists() {
+      return atomicFile.exists();
+    }
+
+    @Override
+    public void delete() {
+      atomicFile.delete();
+      pendingUpdates.clear();
+      recordCount = 0;
+    }
+
+    @Override
+    public void load(Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+        throws IOException {
+      checkState(pendingUpdates.size() == 0);
+      recordCount = 0;
+      if (!atomicFile.exists()) {
+        return;
+      }
+      long validLength;
+      try (DataInputStream input =
+          new DataInputStream(new BufferedInputStream(atomicFile.openRead()))) {
+        if (input.readInt() != VERSION) {
+          throw new InvalidJournalException();
+        }
+        validLength = HEADER_LENGTH;
+        while (true) {
+          int recordLength = readRecord(input, content, idToKey);
+          if (recordLength == C.LENGTH_UNSET) {
+            break;
+          }
+          validLength += recordLength;
+          recordCount++;
+        }
+      } catch (InvalidJournalException | EOFException e) {
+        // The header is missing or invalid, so none of the journal can be trusted.
+        content.clear();
+        idToKey.clear();
+        atomicFile.delete();
+        recordCount = 0;
+        return;
+      }
+      if (validLength < file.length()) {
+        // Discard a partially written record at the end of the journal, so that records appended
+        // in the future are readable.
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+          randomAccessFile.setLength(validLength);
+        }
+      }
+    }
+
+    @Override
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
+      @Nullable DataOutputStream output = null;
+      try {
+        output = new DataOutputStream(new BufferedOutputStream(atomicFile.startWrite()));
+        output.writeInt(VERSION);
+        for (CachedContent cachedContent : content.values()) {
+          writeRecord(output, RECORD_TYPE_UPDATE, cachedContent.id, cachedContent);
+        }
+        atomicFile.endWrite(output);
+        // Avoid calling close twice.
+        output = null;
+      } finally {
+        Util.closeQuietly(output);
+      }
+      recordCount = content.size();
+      pendingUpdates.clear();
+    }
+
+    @Override
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
+      if (pendingUpdates.size() == 0) {
+        return;
+      }
+      int newRecordCount = recordCount + pendingUpdates.size();
+      if (!atomicFile.exists()
+          || (newRecordCount > COMPACTION_MIN_RECORD_COUNT
+              && newRecordCount > COMPACTION_RECORDS_PER_ENTRY_THRESHOLD * content.size())) {
+        storeFully(content);
+        return;
+      }
+      try (FileOutputStream fileOutputStream = new FileOutputStream(file, /* append= */ true)) {
+        DataOutputStream output =
+            new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+        for (int i = 0; i < pendingUpdates.size(); i++) {
+          @Nullable CachedContent cachedContent = pendingUpdates.valueAt(i);
+          if (cachedContent == null) {
+            writeRecord(output, RECORD_TYPE_REMOVE, pendingUpdates.keyAt(i), null);
+          } else {
+            writeRecord(output, RECORD_TYPE_UPDATE, cachedContent.id, cachedContent);
+          }
+        }
+        output.flush();
+        fileOutputStream.getFD().sync();
+      }
+      recordCount = newRecordCount;
+      pendingUpdates.clear();
+    }
+
+    @Override
+    public void onUpdate(CachedContent cachedContent) {
+      pendingUpdates.put(cachedContent.id, cachedContent);
+    }
+
+    @Override
+    public void onRemove(CachedContent cachedContent, boolean neverStored) {
+      if (neverStored) {
+        pendingUpdates.delete(cachedContent.id);
+      } else {
+        pendingUpdates.put(cachedContent.id, null);
+      }
+    }
+
+    /**
+     * Reads a record and applies it to {@code content} and {@code idToKey}.
+     *
+     * @return The length of the record in bytes, or {@link C#LENGTH_UNSET} if the end of the
+     *     journal or a partially written or corrupt record was reached.
+     */
+    private int readRecord(
+        DataInputStream input,
+        Map<String, CachedContent> content,
+        SparseArray<@NullableType String> idToKey)
+        throws IOException {
+      byte[] payload;
+      try {
+        int payloadLength = input.readInt();
+        if (payloadLength <= 0 || payloadLength > MAX_RECORD_PAYLOAD_LENGTH) {
+          return C.LENGTH_UNSET;
+        }
+        payload = new byte[payloadLength];
+        input.readFully(payload);
+        int checksum = input.readInt();
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        if (checksum != (int) crc.getValue()) {
+          return C.LENGTH_UNSET;
+        }
+      } catch (EOFException e) {
+        return C.LENGTH_UNSET;
+      }
+      DataInputStream payloadInput = new DataInputStream(new ByteArrayInputStream(payload));
+      int type = payloadInput.readByte();
+      int id = payloadInput.readInt();
+      @Nullable String oldKey = idToKey.get(id);
+      if (oldKey != null) {
+        idToKey.remove(id);
+        @Nullable CachedContent oldContent = content.get(oldKey);
+        // The key may already have been re-added with a different id.
+        if (oldContent != null && oldContent.id == id) {
+          content.remove(oldKey);
+        }
+      }
+      if (type == RECORD_TYPE_UPDATE) {
+        String key = payloadInput.readUTF();
+        DefaultContentMetadata metadata = readContentMetadata(payloadInput);
+        @Nullable CachedContent previousContent = content.get(key);
+        if (previousContent != null) {
+          idToKey.remove(previousContent.id);
+        }
+        content.put(key, new CachedContent(id, key, metadata));
+        idToKey.put(id, key);
+      } else if (type != RECORD_TYPE_REMOVE) {
+        return C.LENGTH_UNSET;
+      }
+      // Length field, payload and checksum.
+      return 4 + payload.length + 4;
+    }
+
+    private void writeRecord(
+        DataOutputStream output, int type, int id, @Nullable CachedContent cachedContent)
+        throws IOException {
+      recordBuffer.reset();
+      DataOutputStream payloadOutput = new DataOutputStream(recordBuffer);
+      payloadOutput.writeByte(type);
+      payloadOutput.writeInt(id);
+      if (cachedContent != null) {
+        payloadOutput.writeUTF(cachedContent.key);
+        writeContentMetadata(cachedContent.getMetadata(), payloadOutput);
+      }
+      payloadOutput.flush();
+      byte[] payload = recordBuffer.toByteArray();
+      crc.reset();
+      crc.update(payload, 0, payload.length);
+      output.writeInt(payload.length);
+      output.write(payload);
+      output.writeInt((int) crc.getValue());
+    }
+
+    /** Thrown when the journal header is invalid. */
+    private static final class InvalidJournalException extends IOException {}
+  }
+
   /** {@link Storage} implementation that uses an SQL database. */
   private static final class DatabaseStorage implements Storage {
 
@@ -801,7 +1099,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
     @Override
     public void load(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
         throws IOException {
       checkState(pendingUpdates.size() == 0);
       try {
@@ -844,7 +1142,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     @Override
-    public void storeFully(HashMap<String, CachedContent> content) throws IOException {
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
       try {
         SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
         writableDatabase.beginTransactionNonExclusive();
@@ -864,7 +1162,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     @Override
-    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
       if (pendingUpdates.size() == 0) {
         return;
       }
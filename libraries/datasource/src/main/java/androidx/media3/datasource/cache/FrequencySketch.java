@@ -0,0 +1,104 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static java.lang.Math.min;
+
+/**
+ * A compact, approximate frequency counter for cache keys.
+ *
+ * <p>The sketch is a count-min sketch with four rows of 4-bit counters, so frequencies saturate at
+ * 15. To favor recent popularity, all counters are halved once the number of recorded
+ * occurrences reaches ten times the width of the sketch.
+ */
+/* package */ final class FrequencySketch {
+
+  /** The maximum frequency that can be recorded for a key. */
+  public static final int MAX_FREQUENCY = 15;
+
+  private static final int DEPTH = 4;
+  private static final long[] SEEDS = {
+    0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L
+  };
+  private static final long RESET_MASK = 0x7777777777777777L;
+
+  private final long[] table;
+  private final int width;
+  private final int sampleSize;
+
+  private int size;
+
+  /**
+   * Creates an instance.
+   *
+   * @param width The number of counters in each row. Must be a power of two and at least 16.
+   */
+  public FrequencySketch(int width) {
+    checkArgument(width >= 16 && Integer.bitCount(width) == 1);
+    this.width = width;
+    table = new long[DEPTH * width / 16];
+    sampleSize = 10 * width;
+  }
+
+  /** Records an occurrence of {@code key}. */
+  public void increment(String key) {
+    int hash = key.hashCode();
+    boolean incremented = false;
+    for (int row = 0; row < DEPTH; row++) {
+      incremented |= incrementCounter(indexOf(hash, row));
+    }
+    if (incremented && ++size >= sampleSize) {
+      reset();
+    }
+  }
+
+  /** Returns the estimated number of recent occurrences of {@code key}. */
+  public int frequency(String key) {
+    int hash = key.hashCode();
+    int frequency = MAX_FREQUENCY;
+    for (int row = 0; row < DEPTH; row++) {
+      frequency = min(frequency, getCounter(indexOf(hash, row)));
+    }
+    return frequency;
+  }
+
+  private int indexOf(int hash, int row) {
+    long h = (hash + SEEDS[row]) * SEEDS[row];
+    h += h >>> 32;
+    return row * width + ((int) h & (width - 1));
+  }
+
+  private int getCounter(int index) {
+    return (int) ((table[index >>> 4] >>> ((index & 15) << 2)) & 0xF);
+  }
+
+  private boolean incrementCounter(int index) {
+    int shift = (index & 15) << 2;
+    if (((table[index >>> 4] >>> shift) & 0xF) == MAX_FREQUENCY) {
+      return false;
+    }
+    table[index >>> 4] += 1L << shift;
+    return true;
+  }
+
+  private void reset() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    size /= 2;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.datasource.DataSink;
+import androidx.media3.datasource.DataSpec;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A {@link DataSink} that forwards only the data that falls within a list of hole spans to an
+ * underlying {@link DataSink}.
+ *
+ * <p>Used by {@link CacheDataSource} when a single upstream request covers several holes and the
+ * cached data between them, so that the cached data isn't written to the cache a second time.
+ */
+/* package */ final class HoleFilteringDataSink implements DataSink {
+
+  private final DataSink dataSink;
+
+  @Nullable private List<CacheSpan> holeSpans;
+  @Nullable private DataSpec dataSpec;
+  private long position;
+  private int holeIndex;
+  private boolean dataSinkOpen;
+
+  /**
+   * @param dataSink The {@link DataSink} to which data within the hole spans is forwarded.
+   */
+  public HoleFilteringDataSink(DataSink dataSink) {
+    this.dataSink = dataSink;
+  }
+
+  /**
+   * Sets the hole spans to which the next opened {@link DataSpec} is restricted, or {@code null} if
+   * all data should be forwarded. Reset to {@code null} when the sink is closed.
+   *
+   * @param holeSpans The hole spans, ordered by position and not overlapping, or {@code null}.
+   */
+  public void setHoleSpans(@Nullable List<CacheSpan> holeSpans) {
+    this.holeSpans = holeSpans;
+  }
+
+  @Override
+  public void open(DataSpec dataSpec) throws IOException {
+    if (holeSpans == null) {
+      dataSink.open(dataSpec);
+      dataSinkOpen = true;
+      return;
+    }
+    this.dataSpec = dataSpec;
+    position = dataSpec.position;
+    holeIndex = 0;
+  }
+
+  @Override
+  public void write(byte[] buffer, int offset, int length) throws IOException {
+    @Nullable List<CacheSpan> holeSpans = this.holeSpans;
+    if (holeSpans == null) {
+      dataSink.write(buffer, offset, length);
+      return;
+    }
+    while (length > 0 && holeIndex < holeSpans.size()) {
+      CacheSpan holeSpan = holeSpans.get(holeIndex);
+      if (position < holeSpan.position) {
+        // Skip data that's already cached.
+        int skipLength = (int) min(length, holeSpan.position - position);
+        position += skipLength;
+        offset += skipLength;
+        length -= skipLength;
+        continue;
+      }
+      long holeEnd =
+          holeSpan.isOpenEnded() ? Long.MAX_VALUE : holeSpan.position + holeSpan.length;
+      if (!dataSinkOpen) {
+        openDataSinkForHole(holeEnd);
+      }
+      int writeLength = (int) min(length, holeEnd - position);
+      dataSink.write(buffer, offset, writeLength);
+      position += writeLength;
+      offset += writeLength;
+      length -= writeLength;
+      if (position == holeEnd) {
+        dataSinkOpen = false;
+        dataSink.close();
+        holeIndex++;
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    holeSpans = null;
+    dataSpec = null;
+    if (dataSinkOpen) {
+      dataSinkOpen = false;
+      dataSink.close();
+    }
+  }
+
+  private void openDataSinkForHole(long holeEnd) throws IOException {
+    DataSpec dataSpec = checkNotNull(this.dataSpec);
+    long endPosition =
+        dataSpec.length == C.LENGTH_UNSET
+            ? holeEnd
+            : min(holeEnd, dataSpec.position + dataSpec.length);
+    long length = endPosition == Long.MAX_VALUE ? C.LENGTH_UNSET : endPosition - position;
+    dataSink.open(dataSpec.subrange(position - dataSpec.position, length));
+    dataSinkOpen = true;
+  }
+}
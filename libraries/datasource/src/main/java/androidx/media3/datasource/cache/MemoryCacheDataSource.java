@@ -0,0 +1,394 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static androidx.media3.common.util.Assertions.checkStateNotNull;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.PlaybackException;
+import androidx.media3.common.util.Log;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.BaseDataSource;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSourceException;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link DataSource} that holds recently read segments in a {@link MemorySegmentCache}, so that
+ * reading the same segment again shortly afterwards doesn't go to the upstream {@link DataSource}.
+ *
+ * <p>A segment is identified by the cache key, position and length of the {@link DataSpec} used to
+ * read it, and is added to the memory cache once it's been read to the end. This suits live
+ * streams, for which segments are often read again within seconds, for example when retrying after
+ * an adaptive track selection or when seeking back within a short live window.
+ *
+ * <p>The upstream {@link DataSource} is typically a {@link CacheDataSource}, so that segments that
+ * are no longer in memory are read from disk. If a spill {@link Cache} is set using {@link
+ * Factory#setSpillCache(Cache, Executor)}, segments are also written into that cache
+ * asynchronously once they're held in memory. This allows the upstream {@link CacheDataSource} to
+ * be read-only, so that disk writes don't block the loading thread.
+ *
+ * <p>Reads served from memory are reported to {@link TransferListener TransferListeners} as
+ * non-network transfers. Hit counters are available from the {@link MemorySegmentCache}.
+ */
+@UnstableApi
+public final class MemoryCacheDataSource implements DataSource {
+
+  /** {@link DataSource.Factory} for {@link MemoryCacheDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    @Nullable private MemorySegmentCache memoryCache;
+    @Nullable private DataSource.Factory upstreamDataSourceFactory;
+    private CacheKeyFactory cacheKeyFactory;
+    @Nullable private Cache spillCache;
+    @Nullable private Executor spillExecutor;
+
+    /** Creates an instance. */
+    public Factory() {
+      cacheKeyFactory = CacheKeyFactory.DEFAULT;
+    }
+
+    /**
+     * Sets the {@link MemorySegmentCache} in which segments are held.
+     *
+     * <p>Must be called before the factory is used.
+     *
+     * @param memoryCache The {@link MemorySegmentCache}.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setMemoryCache(MemorySegmentCache memoryCache) {
+      this.memoryCache = memoryCache;
+      return this;
+    }
+
+    /**
+     * Sets the {@link DataSource.Factory} for upstream {@link DataSource DataSources}, which are
+     * used to read segments that aren't held in memory.
+     *
+     * <p>Must be called before the factory is used.
+     *
+     * @param upstreamDataSourceFactory The upstream {@link DataSource.Factory}.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setUpstreamDataSourceFactory(DataSource.Factory upstreamDataSourceFactory) {
+      this.upstreamDataSourceFactory = upstreamDataSourceFactory;
+      return this;
+    }
+
+    /**
+     * Sets the {@link CacheKeyFactory}.
+     *
+     * <p>The default is {@link CacheKeyFactory#DEFAULT}.
+     *
+     * @param cacheKeyFactory The {@link CacheKeyFactory}.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setCacheKeyFactory(CacheKeyFactory cacheKeyFactory) {
+      this.cacheKeyFactory = cacheKeyFactory;
+      return this;
+    }
+
+    /**
+     * Sets a {@link Cache} into which segments are written asynchronously once they're held in
+     * memory, or {@code null} if segments shouldn't be written to a {@link Cache}.
+     *
+     * <p>The default is {@code null}.
+     *
+     * @param spillCache The {@link Cache}, or {@code null}.
+     * @param spillExecutor The {@link Executor} on which segments are written into the {@link
+     *     Cache}.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setSpillCache(@Nullable Cache spillCache, Executor spillExecutor) {
+      this.spillCache = spillCache;
+      this.spillExecutor = spillExecutor;
+      return this;
+    }
+
+    @Override
+    public MemoryCacheDataSource createDataSource() {
+      return new MemoryCacheDataSource(
+          checkStateNotNull(memoryCache),
+          checkStateNotNull(upstreamDataSourceFactory).createDataSource(),
+          cacheKeyFactory,
+          spillCache,
+          spillCache != null ? checkNotNull(spillExecutor) : null);
+    }
+  }
+
+  private static final String TAG = "MemoryCacheDataSource";
+
+  private final MemorySegmentCache memoryCache;
+  private final DataSource upstreamDataSource;
+  private final SegmentDataSource segmentDataSource;
+  private final CacheKeyFactory cacheKeyFactory;
+  @Nullable private final Cache spillCache;
+  @Nullable private final Executor spillExecutor;
+
+  @Nullable private DataSource currentDataSource;
+  @Nullable private MemorySegmentCache.Segment currentSegment;
+  @Nullable private MemorySegmentCache.SegmentWriter segmentWriter;
+  @Nullable private DataSpec currentDataSpec;
+  @Nullable private String currentKey;
+  private boolean upstreamEndOfInputReached;
+
+  /**
+   * Creates an instance.
+   *
+   * @param memoryCache The {@link MemorySegmentCache} in which segments are held.
+   * @param upstreamDataSource The {@link DataSource} used to read segments that aren't held in
+   *     memory.
+   */
+  public MemoryCacheDataSource(MemorySegmentCache memoryCache, DataSource upstreamDataSource) {
+    this(
+        memoryCache,
+        upstreamDataSource,
+        CacheKeyFactory.DEFAULT,
+        /* spillCache= */ null,
+        /* spillExecutor= */ null);
+  }
+
+  private MemoryCacheDataSource(
+      MemorySegmentCache memoryCache,
+      DataSource upstreamDataSource,
+      CacheKeyFactory cacheKeyFactory,
+      @Nullable Cache spillCache,
+      @Nullable Executor spillExecutor) {
+    this.memoryCache = memoryCache;
+    this.upstreamDataSource = upstreamDataSource;
+    this.cacheKeyFactory = cacheKeyFactory;
+    this.spillCache = spillCache;
+    this.spillExecutor = spillExecutor;
+    segmentDataSource = new SegmentDataSource();
+  }
+
+  /** Returns the {@link MemorySegmentCache} used by this instance. */
+  public MemorySegmentCache getMemoryCache() {
+    return memoryCache;
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    checkNotNull(transferListener);
+    segmentDataSource.addTransferListener(transferListener);
+    upstreamDataSource.addTransferListener(transferListener);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    String key = cacheKeyFactory.buildCacheKey(dataSpec);
+    @Nullable
+    MemorySegmentCache.Segment segment =
+        memoryCache.acquireSegment(key, dataSpec.position, dataSpec.length);
+    if (segment != null) {
+      currentSegment = segment;
+      currentDataSource = segmentDataSource;
+      segmentDataSource.setSegment(segment);
+      return segmentDataSource.open(dataSpec);
+    }
+
+    currentDataSource = upstreamDataSource;
+    currentDataSpec = dataSpec;
+    currentKey = key;
+    upstreamEndOfInputReached = false;
+    long resolvedLength = upstreamDataSource.open(dataSpec);
+    if (resolvedLength == C.LENGTH_UNSET || resolvedLength <= memoryCache.getMaxSegmentLength()) {
+      segmentWriter = memoryCache.startWrite(key, dataSpec.position, dataSpec.length);
+    }
+    return resolvedLength;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    DataSource currentDataSource = checkNotNull(this.currentDataSource);
+    int bytesRead = currentDataSource.read(buffer, offset, length);
+    if (currentDataSource == upstreamDataSource) {
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        upstreamEndOfInputReached = true;
+      } else if (segmentWriter != null) {
+        segmentWriter.write(buffer, offset, bytesRead);
+      }
+    } else if (bytesRead != C.RESULT_END_OF_INPUT) {
+      memoryCache.onHitBytesRead(bytesRead);
+    }
+    return bytesRead;
+  }
+
+  @Nullable
+  @Override
+  public Uri getUri() {
+    return currentDataSource != null ? currentDataSource.getUri() : null;
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return currentDataSource == upstreamDataSource
+        ? upstreamDataSource.getResponseHeaders()
+        : Collections.emptyMap();
+  }
+
+  @Override
+  public void close() throws IOException {
+    @Nullable DataSource currentDataSource = this.currentDataSource;
+    this.currentDataSource = null;
+    if (currentDataSource == null) {
+      return;
+    }
+    if (currentDataSource == segmentDataSource) {
+      try {
+        segmentDataSource.close();
+      } finally {
+        memoryCache.release(checkNotNull(currentSegment));
+        currentSegment = null;
+      }
+      return;
+    }
+    @Nullable MemorySegmentCache.SegmentWriter segmentWriter = this.segmentWriter;
+    this.segmentWriter = null;
+    boolean segmentComplete = upstreamEndOfInputReached;
+    try {
+      upstreamDataSource.close();
+    } catch (IOException e) {
+      segmentComplete = false;
+      throw e;
+    } finally {
+      if (segmentWriter != null) {
+        if (segmentComplete) {
+          @Nullable MemorySegmentCache.Segment segment = segmentWriter.commit();
+          if (segment != null) {
+            spillOrRelease(segment, checkNotNull(currentDataSpec), checkNotNull(currentKey));
+          }
+        } else {
+          segmentWriter.abort();
+        }
+      }
+      currentDataSpec = null;
+      currentKey = null;
+    }
+  }
+
+  private void spillOrRelease(MemorySegmentCache.Segment segment, DataSpec dataSpec, String key) {
+    @Nullable Cache spillCache = this.spillCache;
+    @Nullable Executor spillExecutor = this.spillExecutor;
+    if (spillCache == null || spillExecutor == null || segment.length == 0) {
+      memoryCache.release(segment);
+      return;
+    }
+    DataSpec spillDataSpec = dataSpec.buildUpon().setLength(segment.length).setKey(key).build();
+    spillExecutor.execute(
+        () -> {
+          SegmentDataSource spillUpstreamDataSource = new SegmentDataSource();
+          spillUpstreamDataSource.setSegment(segment);
+          CacheWriter cacheWriter =
+              new CacheWriter(
+                  new CacheDataSource(spillCache, spillUpstreamDataSource),
+                  spillDataSpec,
+                  /* temporaryBuffer= */ null,
+                  /* progressListener= */ null);
+          try {
+            cacheWriter.cache();
+          } catch (IOException e) {
+            Log.w(TAG, "Failed to write segment to cache", e);
+          } finally {
+            memoryCache.release(segment);
+          }
+        });
+  }
+
+  /** A {@link DataSource} that reads from a {@link MemorySegmentCache.Segment}. */
+  private static final class SegmentDataSource extends BaseDataSource {
+
+    @Nullable private MemorySegmentCache.Segment segment;
+    @Nullable private Uri uri;
+    private long readPosition;
+    private long bytesRemaining;
+    private boolean opened;
+
+    public SegmentDataSource() {
+      super(/* isNetwork= */ false);
+    }
+
+    /** Sets the segment from which the next opened {@link DataSpec} is read. */
+    public void setSegment(MemorySegmentCache.Segment segment) {
+      this.segment = segment;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      MemorySegmentCache.Segment segment = checkNotNull(this.segment);
+      uri = dataSpec.uri;
+      transferInitializing(dataSpec);
+      readPosition = dataSpec.position - segment.segmentKey.position;
+      if (readPosition < 0 || readPosition > segment.length) {
+        throw new DataSourceException(PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE);
+      }
+      bytesRemaining = segment.length - readPosition;
+      if (dataSpec.length != C.LENGTH_UNSET) {
+        bytesRemaining = min(bytesRemaining, dataSpec.length);
+      }
+      opened = true;
+      transferStarted(dataSpec);
+      return bytesRemaining;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      } else if (bytesRemaining == 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesRead =
+          checkNotNull(segment)
+              .read(readPosition, buffer, offset, (int) min(length, bytesRemaining));
+      readPosition += bytesRead;
+      bytesRemaining -= bytesRead;
+      bytesTransferred(bytesRead);
+      return bytesRead;
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+      return uri;
+    }
+
+    @Override
+    public void close() {
+      if (opened) {
+        opened = false;
+        transferEnded();
+      }
+      uri = null;
+      segment = null;
+    }
+  }
+}
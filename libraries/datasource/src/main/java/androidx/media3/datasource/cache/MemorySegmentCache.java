@@ -0,0 +1,371 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkState;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.UnstableApi;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded in-memory cache of recently read segments, used by {@link MemoryCacheDataSource}.
+ *
+ * <p>Segment data is stored in fixed size blocks of direct (off-heap) memory, which are pooled and
+ * reused as segments are evicted. The total size of the blocks never exceeds the byte budget
+ * passed to the constructor. When space is required, the least recently used segments are evicted.
+ *
+ * <p>A single instance can be shared between multiple {@link MemoryCacheDataSource} instances. This
+ * class is thread-safe.
+ */
+@UnstableApi
+public final class MemorySegmentCache {
+
+  /** The default size of the memory blocks in which segments are stored, in bytes. */
+  public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+  private final int blockSize;
+  private final int maxBlockCount;
+  private final int maxSegmentBlockCount;
+  private final AtomicLong hitBytes;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<SegmentKey, Segment> segments;
+
+  @GuardedBy("this")
+  private final ArrayDeque<ByteBuffer> freeBlocks;
+
+  @GuardedBy("this")
+  private int usedBlockCount;
+
+  @GuardedBy("this")
+  private long hitCount;
+
+  @GuardedBy("this")
+  private long missCount;
+
+  /**
+   * Creates an instance using blocks of {@link #DEFAULT_BLOCK_SIZE}.
+   *
+   * @param maxBytes The maximum number of bytes of memory to use.
+   */
+  public MemorySegmentCache(long maxBytes) {
+    this(maxBytes, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxBytes The maximum number of bytes of memory to use. Must be at least {@code
+   *     blockSize}.
+   * @param blockSize The size of the memory blocks in which segments are stored, in bytes.
+   */
+  public MemorySegmentCache(long maxBytes, int blockSize) {
+    checkArgument(blockSize > 0 && maxBytes >= blockSize);
+    this.blockSize = blockSize;
+    maxBlockCount = (int) min(Integer.MAX_VALUE, maxBytes / blockSize);
+    // Don't allow a single segment to flush most of the cache.
+    maxSegmentBlockCount = max(1, maxBlockCount / 2);
+    segments = new LinkedHashMap<>(/* initialCapacity= */ 16, /* loadFactor= */ 0.75f, true);
+    freeBlocks = new ArrayDeque<>();
+    hitBytes = new AtomicLong();
+  }
+
+  /** Returns the maximum number of bytes of memory used by the cache. */
+  public long getMaxBytes() {
+    return (long) maxBlockCount * blockSize;
+  }
+
+  /** Returns the maximum length of a segment that can be held by the cache, in bytes. */
+  public long getMaxSegmentLength() {
+    return (long) maxSegmentBlockCount * blockSize;
+  }
+
+  /** Returns the number of bytes of memory currently used to hold segments. */
+  public synchronized long getUsedBytes() {
+    return (long) usedBlockCount * blockSize;
+  }
+
+  /** Returns the number of segment reads that were served from memory. */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of segment reads that couldn't be served from memory. */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the number of bytes read from segments that were served from memory. */
+  public long getHitBytes() {
+    return hitBytes.get();
+  }
+
+  /**
+   * Returns the fraction of segment reads that were served from memory, or 0 if there haven't been
+   * any reads.
+   */
+  public synchronized float getHitRatio() {
+    long requestCount = hitCount + missCount;
+    return requestCount == 0 ? 0 : (float) hitCount / requestCount;
+  }
+
+  /** Removes all segments from the cache. Segments that are being read are released once read. */
+  public synchronized void clear() {
+    Iterator<Segment> iterator = segments.values().iterator();
+    while (iterator.hasNext()) {
+      Segment segment = iterator.next();
+      iterator.remove();
+      evict(segment);
+    }
+  }
+
+  /**
+   * Returns the segment with the given key, position and requested length, or {@code null} if it's
+   * not in the cache. The returned segment is acquired, and must be {@link #release released} once
+   * it's no longer being read.
+   */
+  @Nullable
+  /* package */ synchronized Segment acquireSegment(String key, long position, long length) {
+    @Nullable Segment segment = segments.get(new SegmentKey(key, position, length));
+    if (segment == null) {
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    segment.referenceCount++;
+    return segment;
+  }
+
+  /**
+   * Starts writing a segment with the given key, position and requested length.
+   *
+   * @return A {@link SegmentWriter}, which must be either {@link SegmentWriter#commit() committed}
+   *     or {@link SegmentWriter#abort() aborted}.
+   */
+  /* package */ SegmentWriter startWrite(String key, long position, long length) {
+    return new SegmentWriter(new SegmentKey(key, position, length));
+  }
+
+  /**
+   * Records that {@code bytesRead} bytes were read from a segment returned by {@link
+   * #acquireSegment}. Called once per read, so doesn't lock the cache.
+   */
+  /* package */ void onHitBytesRead(int bytesRead) {
+    hitBytes.addAndGet(bytesRead);
+  }
+
+  /** Releases a segment acquired by {@link #acquireSegment}. */
+  /* package */ synchronized void release(Segment segment) {
+    checkState(segment.referenceCount > 0);
+    segment.referenceCount--;
+    if (segment.referenceCount == 0 && segment.evicted) {
+      freeBlocks(segment.blocks);
+    }
+  }
+
+  @Nullable
+  private synchronized ByteBuffer allocateBlock() {
+    while (usedBlockCount >= maxBlockCount) {
+      Iterator<Segment> iterator = segments.values().iterator();
+      if (!iterator.hasNext()) {
+        return null;
+      }
+      Segment segment = iterator.next();
+      iterator.remove();
+      evict(segment);
+    }
+    usedBlockCount++;
+    if (!freeBlocks.isEmpty()) {
+      return freeBlocks.removeFirst();
+    }
+    return ByteBuffer.allocateDirect(blockSize);
+  }
+
+  private synchronized void commit(Segment segment) {
+    @Nullable Segment previousSegment = segments.put(segment.segmentKey, segment);
+    if (previousSegment != null) {
+      evict(previousSegment);
+    }
+    segment.referenceCount++;
+  }
+
+  @GuardedBy("this")
+  private void evict(Segment segment) {
+    segment.evicted = true;
+    if (segment.referenceCount == 0) {
+      freeBlocks(segment.blocks);
+    }
+  }
+
+  private synchronized void freeBlocks(ArrayList<ByteBuffer> blocks) {
+    for (int i = 0; i < blocks.size(); i++) {
+      ByteBuffer block = blocks.get(i);
+      block.clear();
+      freeBlocks.addLast(block);
+    }
+    usedBlockCount -= blocks.size();
+    blocks.clear();
+  }
+
+  /** A segment of data held in memory. */
+  /* package */ static final class Segment {
+
+    public final SegmentKey segmentKey;
+    public final ArrayList<ByteBuffer> blocks;
+    public final int blockSize;
+    public long length;
+
+    // Guarded by the owning MemorySegmentCache.
+    private int referenceCount;
+    private boolean evicted;
+
+    private Segment(SegmentKey segmentKey, int blockSize) {
+      this.segmentKey = segmentKey;
+      this.blockSize = blockSize;
+      blocks = new ArrayList<>();
+    }
+
+    /**
+     * Reads data from the segment.
+     *
+     * @param position The position in the segment from which to read.
+     * @param buffer The buffer into which to read.
+     * @param offset The offset in the buffer.
+     * @param length The maximum number of bytes to read. The number of bytes read may be smaller
+     *     if the read crosses a block boundary or the end of the segment.
+     * @return The number of bytes read.
+     */
+    public int read(long position, byte[] buffer, int offset, int length) {
+      int blockIndex = (int) (position / blockSize);
+      int positionInBlock = (int) (position % blockSize);
+      int readLength =
+          (int) min(length, min(blockSize - positionInBlock, this.length - position));
+      ByteBuffer block = blocks.get(blockIndex);
+      // Blocks may be read by multiple threads at once.
+      synchronized (block) {
+        block.position(positionInBlock);
+        block.get(buffer, offset, readLength);
+      }
+      return readLength;
+    }
+  }
+
+  /** Writes a segment into the cache. */
+  /* package */ final class SegmentWriter {
+
+    private final Segment segment;
+    private boolean failed;
+
+    private SegmentWriter(SegmentKey segmentKey) {
+      segment = new Segment(segmentKey, blockSize);
+    }
+
+    /**
+     * Writes data to the end of the segment. If there isn't enough memory for the data, or the
+     * segment would be too large, then the write fails and the segment won't be added to the cache
+     * when {@link #commit()} is called.
+     */
+    public void write(byte[] buffer, int offset, int length) {
+      while (length > 0 && !failed) {
+        int positionInBlock = (int) (segment.length % blockSize);
+        if (positionInBlock == 0) {
+          @Nullable
+          ByteBuffer block =
+              segment.blocks.size() < maxSegmentBlockCount ? allocateBlock() : null;
+          if (block == null) {
+            failed = true;
+            freeBlocks(segment.blocks);
+            return;
+          }
+          segment.blocks.add(block);
+        }
+        ByteBuffer block = segment.blocks.get(segment.blocks.size() - 1);
+        int writeLength = min(length, blockSize - positionInBlock);
+        block.position(positionInBlock);
+        block.put(buffer, offset, writeLength);
+        segment.length += writeLength;
+        offset += writeLength;
+        length -= writeLength;
+      }
+    }
+
+    /**
+     * Adds the segment to the cache.
+     *
+     * @return The segment, acquired on behalf of the caller, or {@code null} if the segment
+     *     couldn't be added to the cache.
+     */
+    @Nullable
+    public Segment commit() {
+      if (failed) {
+        return null;
+      }
+      MemorySegmentCache.this.commit(segment);
+      return segment;
+    }
+
+    /** Discards the data that's been written. */
+    public void abort() {
+      if (!failed) {
+        failed = true;
+        freeBlocks(segment.blocks);
+      }
+    }
+  }
+
+  /* package */ static final class SegmentKey {
+
+    public final String key;
+    public final long position;
+    public final long length;
+
+    public SegmentKey(String key, long position, long length) {
+      this.key = key;
+      this.position = position;
+      this.length = length;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      SegmentKey other = (SegmentKey) o;
+      return position == other.position && length == other.length && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = key.hashCode();
+      result = 31 * result + (int) (position ^ (position >>> 32));
+      result = 31 * result + (int) (length ^ (length >>> 32));
+      return result;
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkNotNull;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Evicts cache files using a size-aware segmented least recently used policy, optionally combined
+ * with frequency based admission.
+ *
+ * <p>Newly added spans enter a probationary segment. Spans that are accessed again are promoted to
+ * a protected segment, which may occupy up to a configurable fraction of the cache. When the
+ * protected segment is full, its least recently used spans are demoted back to the probationary
+ * segment. Spans are always evicted from the probationary segment first, so content that is only
+ * accessed once, such as the spans written whilst seeking through a long piece of content, cannot
+ * flush content that is accessed repeatedly.
+ *
+ * <p>If frequency admission is enabled, the evictor additionally tracks how often each cache key
+ * is written or read in a compact {@link FrequencySketch}. Content is not admitted if making space
+ * for it would require evicting content whose key is used more frequently. Since cache keys are
+ * produced by a {@link CacheKeyFactory}, frequencies are tracked per resource rather than per
+ * span.
+ */
+@UnstableApi
+public final class SegmentedLeastRecentlyUsedCacheEvictor implements CacheEvictor {
+
+  /** The default fraction of the cache that may be occupied by the protected segment. */
+  public static final float DEFAULT_PROTECTED_FRACTION = 0.8f;
+
+  private static final int FREQUENCY_SKETCH_WIDTH = 4096;
+
+  private final long maxBytes;
+  private final long maxProtectedBytes;
+  private final boolean frequencyAdmissionEnabled;
+  private final TreeSet<CacheSpan> probationary;
+  private final TreeSet<CacheSpan> protectedSpans;
+  private final FrequencySketch frequencySketch;
+
+  private long probationarySize;
+  private long protectedSize;
+  private boolean cacheInitialized;
+
+  /**
+   * Creates an instance with the {@link #DEFAULT_PROTECTED_FRACTION default protected fraction}
+   * and frequency admission enabled.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   */
+  public SegmentedLeastRecentlyUsedCacheEvictor(long maxBytes) {
+    this(maxBytes, DEFAULT_PROTECTED_FRACTION, /* frequencyAdmissionEnabled= */ true);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param protectedFraction The fraction of {@code maxBytes} that may be occupied by spans in the
+   *     protected segment. Must be in the range [0, 1].
+   * @param frequencyAdmissionEnabled Whether to reject new content if making space for it would
+   *     require evicting more frequently used content.
+   */
+  public SegmentedLeastRecentlyUsedCacheEvictor(
+      long maxBytes, float protectedFraction, boolean frequencyAdmissionEnabled) {
+    checkArgument(protectedFraction >= 0 && protectedFraction <= 1);
+    this.maxBytes = maxBytes;
+    this.maxProtectedBytes = (long) (maxBytes * protectedFraction);
+    this.frequencyAdmissionEnabled = frequencyAdmissionEnabled;
+    probationary = new TreeSet<>(SegmentedLeastRecentlyUsedCacheEvictor::compare);
+    protectedSpans = new TreeSet<>(SegmentedLeastRecentlyUsedCacheEvictor::compare);
+    frequencySketch = new FrequencySketch(FREQUENCY_SKETCH_WIDTH);
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    cacheInitialized = true;
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    frequencySketch.increment(key);
+    if (length != C.LENGTH_UNSET) {
+      // If the content won't be admitted then there's no need to make space for it. The span will
+      // be evicted when it's added.
+      evictCache(cache, length, key);
+    }
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    probationary.add(span);
+    probationarySize += span.length;
+    // Spans added whilst the cache is being initialized were admitted previously.
+    if (!evictCache(cache, 0, cacheInitialized ? span.key : null)) {
+      cache.removeSpan(span);
+      evictCache(cache, 0, /* candidateKey= */ null);
+    }
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    if (probationary.remove(span)) {
+      probationarySize -= span.length;
+    } else if (protectedSpans.remove(span)) {
+      protectedSize -= span.length;
+    }
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    onSpanRemoved(cache, oldSpan);
+    frequencySketch.increment(newSpan.key);
+    addProtectedSpan(newSpan);
+    evictCache(cache, 0, /* candidateKey= */ null);
+  }
+
+  @Override
+  public void onSpansCoalesced(Cache cache, List<CacheSpan> oldSpans, CacheSpan newSpan) {
+    // The data was admitted when the old spans were added, so the coalesced span bypasses
+    // admission. It stays protected if any of the old spans was.
+    boolean wasProtected = false;
+    for (int i = 0; i < oldSpans.size(); i++) {
+      CacheSpan oldSpan = oldSpans.get(i);
+      if (protectedSpans.remove(oldSpan)) {
+        protectedSize -= oldSpan.length;
+        wasProtected = true;
+      } else if (probationary.remove(oldSpan)) {
+        probationarySize -= oldSpan.length;
+      }
+    }
+    if (wasProtected) {
+      addProtectedSpan(newSpan);
+    } else {
+      probationary.add(newSpan);
+      probationarySize += newSpan.length;
+    }
+    evictCache(cache, 0, /* candidateKey= */ null);
+  }
+
+  private void addProtectedSpan(CacheSpan span) {
+    protectedSpans.add(span);
+    protectedSize += span.length;
+    while (protectedSize > maxProtectedBytes && protectedSpans.size() > 1) {
+      CacheSpan demotedSpan = checkNotNull(protectedSpans.pollFirst());
+      protectedSize -= demotedSpan.length;
+      probationary.add(demotedSpan);
+      probationarySize += demotedSpan.length;
+    }
+  }
+
+  /**
+   * Evicts spans until there's {@code requiredSpace} bytes available.
+   *
+   * @param cache The cache from which to evict spans.
+   * @param requiredSpace The number of bytes required.
+   * @param candidateKey The key of the content for which space is being made, or {@code null} if
+   *     the content should always be admitted.
+   * @return Whether the content was admitted. If {@code false}, eviction stopped before the
+   *     required space was made available.
+   */
+  private boolean evictCache(Cache cache, long requiredSpace, @Nullable String candidateKey) {
+    while (probationarySize + protectedSize + requiredSpace > maxBytes) {
+      @Nullable
+      CacheSpan victim =
+          !probationary.isEmpty()
+              ? probationary.first()
+              : (!protectedSpans.isEmpty() ? protectedSpans.first() : null);
+      if (victim == null) {
+        break;
+      }
+      if (candidateKey != null
+          && frequencyAdmissionEnabled
+          && !victim.key.equals(candidateKey)
+          && frequencySketch.frequency(candidateKey) < frequencySketch.frequency(victim.key)) {
+        return false;
+      }
+      cache.removeSpan(victim);
+    }
+    return true;
+  }
+
+  private static int compare(CacheSpan lhs, CacheSpan rhs) {
+    long lastTouchTimestampDelta = lhs.lastTouchTimestamp - rhs.lastTouchTimestamp;
+    if (lastTouchTimestampDelta == 0) {
+      // Use the standard compareTo method as a tie-break.
+      return lhs.compareTo(rhs);
+    }
+    return lhs.lastTouchTimestamp < rhs.lastTouchTimestamp ? -1 : 1;
+  }
+}
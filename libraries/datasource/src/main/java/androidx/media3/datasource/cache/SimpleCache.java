@@ -15,7 +15,10 @@
  */
 package androidx.media3.datasource.cache;
 
+import static java.lang.Math.max;
+
 import android.os.ConditionVariable;
+import android.os.SystemClock;
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 import androidx.media3.common.C;
@@ -25,17 +28,28 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
 import androidx.media3.database.DatabaseIOException;
 import androidx.media3.database.DatabaseProvider;
+import com.google.common.io.ByteStreams;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /**
@@ -46,10 +60,211 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
  * <p>To delete a SimpleCache, use {@link #delete(File, DatabaseProvider)} rather than deleting the
  * directory and its contents directly. This is necessary to ensure that associated index data is
  * also removed.
+ *
+ * <p>By default all operations are serialized on the cache instance. When many threads query the
+ * cache concurrently (for example parallel segment downloads alongside playback), sharded locking
+ * can be enabled via {@link Builder#setLockShardCount(int)}. In this mode, read-only queries of the
+ * cached spans of a key only synchronize on a lock shared by a subset of the keys, and are not
+ * blocked by operations on keys belonging to other shards.
  */
 @UnstableApi
 public final class SimpleCache implements Cache {
 
+  /** A builder for {@link SimpleCache} instances. */
+  public static final class Builder {
+
+    private final File cacheDir;
+    private final CacheEvictor evictor;
+
+    @Nullable private DatabaseProvider databaseProvider;
+    @Nullable private byte[] legacyIndexSecretKey;
+    private boolean legacyIndexEncrypt;
+    private boolean preferLegacyIndex;
+    private int lockShardCount;
+    private boolean useJournalIndex;
+    @Nullable private Executor spanCoalescingExecutor;
+    private long maxCoalescedSpanLength;
+    @Nullable private Executor initializationExecutor;
+
+    /**
+     * Creates a builder.
+     *
+     * @param cacheDir A dedicated cache directory. The cache will delete any unrecognized files
+     *     from the directory. Hence the directory cannot be used to store other files.
+     * @param evictor The evictor to be used. For download use cases where cache eviction should not
+     *     occur, use {@link NoOpCacheEvictor}.
+     */
+    public Builder(File cacheDir, CacheEvictor evictor) {
+      this.cacheDir = cacheDir;
+      this.evictor = evictor;
+    }
+
+    /**
+     * Sets the {@link DatabaseProvider} that provides the database in which the cache index is
+     * stored, or {@code null} to use a legacy index. Using a database index is highly recommended
+     * for performance reasons.
+     *
+     * <p>The default value is {@code null}.
+     *
+     * @param databaseProvider The {@link DatabaseProvider}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setDatabaseProvider(@Nullable DatabaseProvider databaseProvider) {
+      this.databaseProvider = databaseProvider;
+      return this;
+    }
+
+    /**
+     * Sets the key for reading, and optionally writing, the legacy index. See {@link
+     * SimpleCache#SimpleCache(File, CacheEvictor, DatabaseProvider, byte[], boolean, boolean)}.
+     *
+     * <p>The default value is {@code null}, meaning the legacy index is not encrypted.
+     *
+     * @param legacyIndexSecretKey A 16 byte AES key, or {@code null}.
+     * @param legacyIndexEncrypt Whether to encrypt when writing to the legacy index. Must be {@code
+     *     false} if {@code legacyIndexSecretKey} is {@code null}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setLegacyIndexSecretKey(
+        @Nullable byte[] legacyIndexSecretKey, boolean legacyIndexEncrypt) {
+      this.legacyIndexSecretKey = legacyIndexSecretKey;
+      this.legacyIndexEncrypt = legacyIndexEncrypt;
+      return this;
+    }
+
+    /**
+     * Sets whether to use the legacy index even if a {@link DatabaseProvider} is provided. Should
+     * be {@code false} in nearly all cases. Setting this to {@code true} is only useful for
+     * downgrading from the database index back to the legacy index.
+     *
+     * <p>The default value is {@code false}.
+     *
+     * @param preferLegacyIndex Whether to prefer the legacy index.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setPreferLegacyIndex(boolean preferLegacyIndex) {
+      this.preferLegacyIndex = preferLegacyIndex;
+      return this;
+    }
+
+    /**
+     * Sets the number of lock shards used to guard the cached spans of each key, or 0 to guard all
+     * state with a single lock on the cache instance.
+     *
+     * <p>When sharded locking is enabled, {@link #getCachedSpans(String)}, {@link #isCached(String,
+     * long, long)}, {@link #getCachedLength(String, long, long)} and {@link
+     * #getCachedBytes(String, long, long)} only contend with operations on keys that map to the
+     * same shard, and {@link #getCacheSpace()} does not acquire any lock. Operations that modify
+     * the cache are still serialized. {@link #getKeys()} and {@link #getContentMetadata(String)}
+     * never acquire a lock, regardless of this setting.
+     *
+     * <p>The default value is 0.
+     *
+     * @param lockShardCount The number of lock shards, or 0 to disable sharded locking.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setLockShardCount(int lockShardCount) {
+      Assertions.checkArgument(lockShardCount >= 0);
+      this.lockShardCount = lockShardCount;
+      return this;
+    }
+
+    /**
+     * Sets whether to store the cache index in an append-only journal in the cache directory.
+     *
+     * <p>With a journal index, each modification of the index appends a small record to the
+     * journal rather than rewriting the whole index, which reduces the cost of frequently updating
+     * large indices. The journal is compacted when it becomes large relative to the index. Any
+     * existing database or legacy index is migrated into the journal when the cache is
+     * initialized.
+     *
+     * <p>The journal is not encrypted, even if a key is set with {@link
+     * #setLegacyIndexSecretKey(byte[], boolean)}.
+     *
+     * <p>The default value is {@code false}.
+     *
+     * @param useJournalIndex Whether to use a journal index.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setUseJournalIndex(boolean useJournalIndex) {
+      this.useJournalIndex = useJournalIndex;
+      return this;
+    }
+
+    /**
+     * Sets an {@link Executor} on which contiguous cached spans are merged into larger cache files
+     * in the background, or {@code null} to disable background coalescing.
+     *
+     * <p>Content written in many fragments, for example by a long progressive download through a
+     * {@link CacheDataSink}, is otherwise stored as one file per fragment. Merging the files
+     * reduces how often readers need to open new files, and reduces the time taken to initialize
+     * caches that contain very many files. Coalescing of a resource is scheduled after a writer
+     * releases its lock on the resource, and for all resources once the cache has been
+     * initialized. See {@link #coalesceSpans(String, long)} for details.
+     *
+     * <p>The default value is {@code null}.
+     *
+     * @param spanCoalescingExecutor The {@link Executor}, or {@code null}.
+     * @param maxCoalescedSpanLength The maximum length of a file created by coalescing, in bytes.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setSpanCoalescingExecutor(
+        @Nullable Executor spanCoalescingExecutor, long maxCoalescedSpanLength) {
+      Assertions.checkArgument(spanCoalescingExecutor == null || maxCoalescedSpanLength > 0);
+      this.spanCoalescingExecutor = spanCoalescingExecutor;
+      this.maxCoalescedSpanLength = maxCoalescedSpanLength;
+      return this;
+    }
+
+    /**
+     * Sets an {@link Executor} used to load the cache files in parallel during initialization, or
+     * {@code null} to load them on the initialization thread.
+     *
+     * <p>Cache files are distributed between a number of subdirectories of the cache directory.
+     * If an executor is set, the subdirectories are listed and their files are parsed in parallel
+     * on the executor. This reduces initialization time for caches containing very many files,
+     * particularly when a {@link DatabaseProvider} isn't set and the length of each file has to be
+     * read from the file system.
+     *
+     * <p>The default value is {@code null}.
+     *
+     * @param initializationExecutor The {@link Executor}, or {@code null}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setInitializationExecutor(@Nullable Executor initializationExecutor) {
+      this.initializationExecutor = initializationExecutor;
+      return this;
+    }
+
+    /** Builds the {@link SimpleCache}. */
+    public SimpleCache build() {
+      return new SimpleCache(
+          cacheDir,
+          evictor,
+          new CachedContentIndex(
+              databaseProvider,
+              cacheDir,
+              legacyIndexSecretKey,
+              legacyIndexEncrypt,
+              preferLegacyIndex,
+              useJournalIndex),
+          databaseProvider != null && !preferLegacyIndex
+              ? new CacheFileMetadataIndex(databaseProvider)
+              : null,
+          lockShardCount,
+          spanCoalescingExecutor,
+          maxCoalescedSpanLength,
+          initializationExecutor);
+    }
+  }
+
   private static final String TAG = "SimpleCache";
 
   /**
@@ -62,6 +277,9 @@ public final class SimpleCache implements Cache {
 
   private static final String UID_FILE_SUFFIX = ".uid";
 
+  private static final String TEMP_FILE_PREFIX = "coalesce";
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
   private static final HashSet<File> lockedCacheDirs = new HashSet<>();
 
   private final File cacheDir;
@@ -72,9 +290,28 @@ public final class SimpleCache implements Cache {
   private final Random random;
   private final boolean touchCacheSpans;
 
+  /**
+   * Locks guarding the cached spans of the keys in each shard, or {@code null} if sharded locking
+   * is disabled.
+   */
+  @Nullable private final Object[] spanLocks;
+
+  @Nullable private final Executor spanCoalescingExecutor;
+  private final long maxCoalescedSpanLength;
+  private final HashSet<String> keysPendingCoalescing;
+
+  @Nullable private final Executor initializationExecutor;
+  private final long constructionTimeMs;
+  private final ConditionVariable indexLoadedCondition;
+  private final ConditionVariable spansLoadedCondition;
+  private volatile boolean indexLoaded;
+  private volatile boolean spansLoaded;
+  private long initializationDurationMs;
+
   private long uid;
-  private long totalSpace;
-  private boolean released;
+  // Only written whilst holding the lock on the cache instance, but may be read without it.
+  private volatile long totalSpace;
+  private volatile boolean released;
   private @MonotonicNonNull CacheException initializationException;
 
   /**
@@ -212,6 +449,27 @@ public final class SimpleCache implements Cache {
       CacheEvictor evictor,
       CachedContentIndex contentIndex,
       @Nullable CacheFileMetadataIndex fileIndex) {
+    this(
+        cacheDir,
+        evictor,
+        contentIndex,
+        fileIndex,
+        /* lockShardCount= */ 0,
+        /* spanCoalescingExecutor= */ null,
+        /* maxCoalescedSpanLength= */ 0,
+        /* initializationExecutor= */ null);
+  }
+
+  /* package */ SimpleCache(
+      File cacheDir,
+      CacheEvictor evictor,
+      CachedContentIndex contentIndex,
+      @Nullable CacheFileMetadataIndex fileIndex,
+      int lockShardCount,
+      @Nullable Executor spanCoalescingExecutor,
+      long maxCoalescedSpanLength,
+      @Nullable Executor initializationExecutor) {
+    constructionTimeMs = SystemClock.elapsedRealtime();
     if (!lockFolder(cacheDir)) {
       throw new IllegalStateException("Another SimpleCache instance uses the folder: " + cacheDir);
     }
@@ -223,6 +481,21 @@ public final class SimpleCache implements Cache {
     listeners = new HashMap<>();
     random = new Random();
     touchCacheSpans = evictor.requiresCacheSpanTouches();
+    if (lockShardCount > 0) {
+      spanLocks = new Object[lockShardCount];
+      for (int i = 0; i < lockShardCount; i++) {
+        spanLocks[i] = new Object();
+      }
+    } else {
+      spanLocks = null;
+    }
+    this.spanCoalescingExecutor = spanCoalescingExecutor;
+    this.maxCoalescedSpanLength = maxCoalescedSpanLength;
+    keysPendingCoalescing = new HashSet<>();
+    this.initializationExecutor = initializationExecutor;
+    indexLoadedCondition = new ConditionVariable();
+    spansLoadedCondition = new ConditionVariable();
+    initializationDurationMs = C.TIME_UNSET;
     uid = UID_UNSET;
 
     // Start cache initialization.
@@ -234,6 +507,17 @@ public final class SimpleCache implements Cache {
           conditionVariable.open();
           initialize();
           SimpleCache.this.evictor.onCacheInitialized();
+          initializationDurationMs = SystemClock.elapsedRealtime() - constructionTimeMs;
+          // Unblock queries, including if initialization failed.
+          onIndexLoaded();
+          onSpansLoaded();
+          if (initializationException == null) {
+            for (CachedContent cachedContent : contentIndex.getAll()) {
+              if (cachedContent.getSpans().size() > 1) {
+                maybeScheduleSpanCoalescing(cachedContent.key);
+              }
+            }
+          }
         }
       }
     }.start();
@@ -251,6 +535,14 @@ public final class SimpleCache implements Cache {
     }
   }
 
+  /**
+   * Returns the time taken for the cache to become fully usable, in milliseconds, measured from
+   * when the cache was constructed. Blocks until initialization has completed.
+   */
+  public synchronized long getInitializationDurationMs() {
+    return initializationDurationMs;
+  }
+
   @Override
   public synchronized long getUid() {
     return uid;
@@ -302,23 +594,28 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
     Assertions.checkState(!released);
-    CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent == null || cachedContent.isEmpty()
-        ? new TreeSet<>()
-        : new TreeSet<CacheSpan>(cachedContent.getSpans());
+    blockUntilSpansLoaded();
+    synchronized (getSpanLock(key)) {
+      CachedContent cachedContent = contentIndex.get(key);
+      return cachedContent == null || cachedContent.isEmpty()
+          ? new TreeSet<>()
+          : new TreeSet<CacheSpan>(cachedContent.getSpans());
+    }
   }
 
   @Override
-  public synchronized Set<String> getKeys() {
+  public Set<String> getKeys() {
     Assertions.checkState(!released);
+    blockUntilIndexLoaded();
     return new HashSet<>(contentIndex.getKeys());
   }
 
   @Override
-  public synchronized long getCacheSpace() {
+  public long getCacheSpace() {
     Assertions.checkState(!released);
+    blockUntilSpansLoaded();
     return totalSpace;
   }
 
@@ -382,14 +679,7 @@ public final class SimpleCache implements Cache {
       removeStaleSpans();
     }
     evictor.onStartFile(this, key, position, length);
-    // Randomly distribute files into subdirectories with a uniform distribution.
-    File cacheSubDir = new File(cacheDir, Integer.toString(random.nextInt(SUBDIRECTORY_COUNT)));
-    if (!cacheSubDir.exists()) {
-      createCacheDirectories(cacheSubDir);
-    }
-    long lastTouchTimestamp = System.currentTimeMillis();
-    return SimpleCacheSpan.getCacheFile(
-        cacheSubDir, cachedContent.id, position, lastTouchTimestamp);
+    return createCacheFile(cachedContent, position, System.currentTimeMillis());
   }
 
   @Override
@@ -438,6 +728,7 @@ public final class SimpleCache implements Cache {
     cachedContent.unlockRange(holeSpan.position);
     contentIndex.maybeRemove(cachedContent.key);
     notifyAll();
+    maybeScheduleSpanCoalescing(holeSpan.key);
   }
 
   @Override
@@ -455,15 +746,98 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized boolean isCached(String key, long position, long length) {
+  public boolean isCached(String key, long position, long length) {
     Assertions.checkState(!released);
-    @Nullable CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent != null && cachedContent.getCachedBytesLength(position, length) >= length;
+    blockUntilSpansLoaded();
+    synchronized (getSpanLock(key)) {
+      @Nullable CachedContent cachedContent = contentIndex.get(key);
+      return cachedContent != null
+          && cachedContent.getCachedBytesLength(position, length) >= length;
+    }
+  }
+
+  @Override
+  public long getCachedLength(String key, long position, long length) {
+    Assertions.checkState(!released);
+    blockUntilSpansLoaded();
+    synchronized (getSpanLock(key)) {
+      return getCachedLengthInternal(key, position, length);
+    }
+  }
+
+  @Override
+  public long getCachedBytes(String key, long position, long length) {
+    Assertions.checkState(!released);
+    blockUntilSpansLoaded();
+    synchronized (getSpanLock(key)) {
+      return getCachedBytesInternal(key, position, length);
+    }
+  }
+
+  @Override
+  public synchronized void applyContentMetadataMutations(
+      String key, ContentMetadataMutations mutations) throws CacheException {
+    Assertions.checkState(!released);
+    checkInitialization();
+
+    synchronized (getSpanLock(key)) {
+      contentIndex.applyContentMetadataMutations(key, mutations);
+    }
+    try {
+      contentIndex.store();
+    } catch (IOException e) {
+      throw new CacheException(e);
+    }
   }
 
   @Override
-  public synchronized long getCachedLength(String key, long position, long length) {
+  public ContentMetadata getContentMetadata(String key) {
     Assertions.checkState(!released);
+    blockUntilIndexLoaded();
+    // The metadata is immutable and published through a volatile field, so as with getKeys no lock
+    // is needed, which allows it to be queried whilst the cache files are being loaded.
+    return contentIndex.getContentMetadata(key);
+  }
+
+  /**
+   * Merges contiguous cached spans of a resource into larger cache files.
+   *
+   * <p>Each run of contiguous spans is copied into a single new file, after which the new file
+   * replaces the spans in the cache. Whilst a run is being copied its range is locked, so it cannot
+   * be written concurrently, but it remains readable through the existing spans. Runs are skipped
+   * if their range is already locked by a writer, or if any of their spans are removed or modified
+   * whilst they are being copied.
+   *
+   * <p>As with eviction, a reader that has obtained one of the merged spans but has not yet opened
+   * its file will fail to open it, and should query the cache again.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param key The cache key of the resource.
+   * @param maxCoalescedSpanLength The maximum length of a file created by merging spans, in bytes.
+   * @return The number of cache files that were removed by merging.
+   * @throws CacheException If an error occurs updating the cache index.
+   */
+  @WorkerThread
+  public int coalesceSpans(String key, long maxCoalescedSpanLength) throws CacheException {
+    Assertions.checkArgument(maxCoalescedSpanLength > 0);
+    List<List<SimpleCacheSpan>> runs;
+    synchronized (this) {
+      Assertions.checkState(!released);
+      checkInitialization();
+      runs = getCoalescableRuns(key, maxCoalescedSpanLength);
+    }
+    int removedFileCount = 0;
+    for (int i = 0; i < runs.size(); i++) {
+      List<SimpleCacheSpan> run = runs.get(i);
+      if (coalesceRun(key, run)) {
+        removedFileCount += run.size() - 1;
+      }
+    }
+    return removedFileCount;
+  }
+
+  private long getCachedLengthInternal(String key, long position, long length) {
     if (length == C.LENGTH_UNSET) {
       length = Long.MAX_VALUE;
     }
@@ -471,8 +845,7 @@ public final class SimpleCache implements Cache {
     return cachedContent != null ? cachedContent.getCachedBytesLength(position, length) : -length;
   }
 
-  @Override
-  public synchronized long getCachedBytes(String key, long position, long length) {
+  private long getCachedBytesInternal(String key, long position, long length) {
     long endPosition = length == C.LENGTH_UNSET ? Long.MAX_VALUE : position + length;
     if (endPosition < 0) {
       // The calculation rolled over (length is probably Long.MAX_VALUE).
@@ -482,7 +855,7 @@ public final class SimpleCache implements Cache {
     long cachedBytes = 0;
     while (currentPosition < endPosition) {
       long maxRemainingLength = endPosition - currentPosition;
-      long blockLength = getCachedLength(key, currentPosition, maxRemainingLength);
+      long blockLength = getCachedLengthInternal(key, currentPosition, maxRemainingLength);
       if (blockLength > 0) {
         cachedBytes += blockLength;
       } else {
@@ -494,26 +867,6 @@ public final class SimpleCache implements Cache {
     return cachedBytes;
   }
 
-  @Override
-  public synchronized void applyContentMetadataMutations(
-      String key, ContentMetadataMutations mutations) throws CacheException {
-    Assertions.checkState(!released);
-    checkInitialization();
-
-    contentIndex.applyContentMetadataMutations(key, mutations);
-    try {
-      contentIndex.store();
-    } catch (IOException e) {
-      throw new CacheException(e);
-    }
-  }
-
-  @Override
-  public synchronized ContentMetadata getContentMetadata(String key) {
-    Assertions.checkState(!released);
-    return contentIndex.getContentMetadata(key);
-  }
-
   /** Ensures that the cache's in-memory representation has been initialized. */
   private void initialize() {
     if (!cacheDir.exists()) {
@@ -547,13 +900,15 @@ public final class SimpleCache implements Cache {
 
     try {
       contentIndex.initialize(uid);
+      // Keys and their metadata can be queried whilst the cache files are loaded.
+      onIndexLoaded();
       if (fileIndex != null) {
         fileIndex.initialize(uid);
         Map<String, CacheFileMetadata> fileMetadata = fileIndex.getAll();
-        loadDirectory(cacheDir, /* isRoot= */ true, files, fileMetadata);
+        loadCacheDirectory(files, fileMetadata);
         fileIndex.removeAll(fileMetadata.keySet());
       } else {
-        loadDirectory(cacheDir, /* isRoot= */ true, files, /* fileMetadata= */ null);
+        loadCacheDirectory(files, /* fileMetadata= */ null);
       }
     } catch (IOException e) {
       String message = "Failed to initialize cache indices: " + cacheDir;
@@ -570,6 +925,108 @@ public final class SimpleCache implements Cache {
     }
   }
 
+  /**
+   * Loads the root cache directory and its subdirectories, in parallel on the {@link
+   * #initializationExecutor} if one is set.
+   *
+   * @param files The files belonging to the root cache directory.
+   * @param fileMetadata A mutable map containing cache file metadata, keyed by file name. See
+   *     {@link #loadDirectory(File, boolean, File[], Map)}.
+   * @throws IOException If loading a subdirectory failed or was interrupted.
+   */
+  private void loadCacheDirectory(
+      File[] files, @Nullable Map<String, CacheFileMetadata> fileMetadata) throws IOException {
+    if (initializationExecutor == null) {
+      loadDirectory(cacheDir, /* isRoot= */ true, files, fileMetadata);
+      return;
+    }
+    List<File> rootFiles = new ArrayList<>();
+    List<FutureTask<LoadedDirectory>> tasks = new ArrayList<>();
+    for (File file : files) {
+      if (file.getName().indexOf('.') == -1) {
+        FutureTask<LoadedDirectory> task =
+            new FutureTask<>(() -> scanSubdirectory(file, fileMetadata));
+        tasks.add(task);
+        initializationExecutor.execute(task);
+      } else {
+        rootFiles.add(file);
+      }
+    }
+    // Wait for all of the scans to complete before merging, since the scans read the file metadata
+    // and the content index, which merging modifies.
+    List<LoadedDirectory> loadedDirectories = new ArrayList<>(tasks.size());
+    for (int i = 0; i < tasks.size(); i++) {
+      try {
+        loadedDirectories.add(tasks.get(i).get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      } catch (ExecutionException e) {
+        throw new IOException(e.getCause());
+      }
+    }
+    // Merge the results on this thread, which is the only thread that modifies the cache state.
+    for (int i = 0; i < loadedDirectories.size(); i++) {
+      LoadedDirectory loadedDirectory = loadedDirectories.get(i);
+      if (fileMetadata != null) {
+        fileMetadata.keySet().removeAll(loadedDirectory.fileNames);
+      }
+      for (int j = 0; j < loadedDirectory.spans.size(); j++) {
+        addSpan(loadedDirectory.spans.get(j));
+      }
+      for (int j = 0; j < loadedDirectory.unscannedFiles.size(); j++) {
+        loadFile(loadedDirectory.unscannedFiles.get(j), fileMetadata);
+      }
+    }
+    loadDirectory(cacheDir, /* isRoot= */ true, rootFiles.toArray(new File[0]), fileMetadata);
+  }
+
+  /**
+   * Lists and parses the cache files in a subdirectory of the cache directory. Called on the
+   * {@link #initializationExecutor}, so must not modify the state of the cache.
+   *
+   * @param directory The subdirectory.
+   * @param fileMetadata A map containing cache file metadata, keyed by file name, which is only
+   *     read. May be null if no file metadata is available.
+   * @return The {@link LoadedDirectory}.
+   */
+  private LoadedDirectory scanSubdirectory(
+      File directory, @Nullable Map<String, CacheFileMetadata> fileMetadata) {
+    LoadedDirectory loadedDirectory = new LoadedDirectory();
+    @Nullable File[] files = directory.listFiles();
+    if (files == null || files.length == 0) {
+      // See loadDirectory.
+      directory.delete();
+      return loadedDirectory;
+    }
+    for (File file : files) {
+      String fileName = file.getName();
+      if (!fileName.endsWith(SimpleCacheSpan.SUFFIX)) {
+        // Files from earlier versions need to be upgraded, which modifies the content index.
+        loadedDirectory.unscannedFiles.add(file);
+        continue;
+      }
+      loadedDirectory.fileNames.add(fileName);
+      long length = C.LENGTH_UNSET;
+      long lastTouchTimestamp = C.TIME_UNSET;
+      @Nullable
+      CacheFileMetadata metadata = fileMetadata != null ? fileMetadata.get(fileName) : null;
+      if (metadata != null) {
+        length = metadata.length;
+        lastTouchTimestamp = metadata.lastTouchTimestamp;
+      }
+      @Nullable
+      SimpleCacheSpan span =
+          SimpleCacheSpan.createCacheEntry(file, length, lastTouchTimestamp, contentIndex);
+      if (span != null) {
+        loadedDirectory.spans.add(span);
+      } else {
+        file.delete();
+      }
+    }
+    return loadedDirectory;
+  }
+
   /**
    * Loads a cache directory. If the root directory is passed, also loads any subdirectories.
    *
@@ -604,26 +1061,68 @@ public final class SimpleCache implements Cache {
           // Skip expected UID and index files in the root directory.
           continue;
         }
-        long length = C.LENGTH_UNSET;
-        long lastTouchTimestamp = C.TIME_UNSET;
-        @Nullable
-        CacheFileMetadata metadata = fileMetadata != null ? fileMetadata.remove(fileName) : null;
-        if (metadata != null) {
-          length = metadata.length;
-          lastTouchTimestamp = metadata.lastTouchTimestamp;
-        }
-        @Nullable
-        SimpleCacheSpan span =
-            SimpleCacheSpan.createCacheEntry(file, length, lastTouchTimestamp, contentIndex);
-        if (span != null) {
-          addSpan(span);
-        } else {
-          file.delete();
-        }
+        loadFile(file, fileMetadata);
       }
     }
   }
 
+  /**
+   * Loads a cache file, deleting it if it's not a valid cache file.
+   *
+   * @param file The file.
+   * @param fileMetadata A mutable map containing cache file metadata, keyed by file name, from
+   *     which the entry for the file is removed. May be null if no file metadata is available.
+   */
+  private void loadFile(File file, @Nullable Map<String, CacheFileMetadata> fileMetadata) {
+    String fileName = file.getName();
+    long length = C.LENGTH_UNSET;
+    long lastTouchTimestamp = C.TIME_UNSET;
+    @Nullable
+    CacheFileMetadata metadata = fileMetadata != null ? fileMetadata.remove(fileName) : null;
+    if (metadata != null) {
+      length = metadata.length;
+      lastTouchTimestamp = metadata.lastTouchTimestamp;
+    }
+    @Nullable
+    SimpleCacheSpan span =
+        SimpleCacheSpan.createCacheEntry(file, length, lastTouchTimestamp, contentIndex);
+    if (span != null) {
+      addSpan(span);
+    } else {
+      file.delete();
+    }
+  }
+
+  private void onIndexLoaded() {
+    indexLoaded = true;
+    indexLoadedCondition.open();
+  }
+
+  private void onSpansLoaded() {
+    spansLoaded = true;
+    spansLoadedCondition.open();
+  }
+
+  /**
+   * Blocks until the content index has been loaded during initialization. Returns immediately if
+   * called on the initialization thread.
+   */
+  private void blockUntilIndexLoaded() {
+    if (!indexLoaded && !Thread.holdsLock(this)) {
+      indexLoadedCondition.block();
+    }
+  }
+
+  /**
+   * Blocks until the cache files have been loaded during initialization. Returns immediately if
+   * called on the initialization thread.
+   */
+  private void blockUntilSpansLoaded() {
+    if (!spansLoaded && !Thread.holdsLock(this)) {
+      spansLoadedCondition.block();
+    }
+  }
+
   /**
    * Touches a cache span, returning the updated result. If the evictor does not require cache spans
    * to be touched, then this method does nothing and the span is returned without modification.
@@ -651,9 +1150,12 @@ public final class SimpleCache implements Cache {
       // updating the file index. Hence we only update the file if we don't have a file index.
       updateFile = true;
     }
-    SimpleCacheSpan newSpan =
-        Assertions.checkNotNull(contentIndex.get(key))
-            .setLastTouchTimestamp(span, lastTouchTimestamp, updateFile);
+    SimpleCacheSpan newSpan;
+    synchronized (getSpanLock(key)) {
+      newSpan =
+          Assertions.checkNotNull(contentIndex.get(key))
+              .setLastTouchTimestamp(span, lastTouchTimestamp, updateFile);
+    }
     notifySpanTouched(span, newSpan);
     return newSpan;
   }
@@ -684,21 +1186,255 @@ public final class SimpleCache implements Cache {
     }
   }
 
+  /**
+   * Schedules the spans of {@code key} to be coalesced on the {@link #spanCoalescingExecutor}, if
+   * one is set and coalescing of the key isn't already pending.
+   *
+   * @param key The cache key of the resource.
+   */
+  private synchronized void maybeScheduleSpanCoalescing(String key) {
+    if (spanCoalescingExecutor == null || released || !keysPendingCoalescing.add(key)) {
+      return;
+    }
+    spanCoalescingExecutor.execute(
+        () -> {
+          synchronized (SimpleCache.this) {
+            keysPendingCoalescing.remove(key);
+            if (released) {
+              return;
+            }
+          }
+          try {
+            coalesceSpans(key, maxCoalescedSpanLength);
+          } catch (CacheException | IllegalStateException e) {
+            // IllegalStateException is thrown if the cache is released concurrently.
+            Log.e(TAG, "Failed to coalesce spans for key: " + key, e);
+          }
+        });
+  }
+
+  /**
+   * Returns runs of two or more contiguous spans of {@code key}, each of which has a total length
+   * of at most {@code maxCoalescedSpanLength}.
+   */
+  private synchronized List<List<SimpleCacheSpan>> getCoalescableRuns(
+      String key, long maxCoalescedSpanLength) {
+    List<List<SimpleCacheSpan>> runs = new ArrayList<>();
+    @Nullable CachedContent cachedContent = contentIndex.get(key);
+    if (cachedContent == null) {
+      return runs;
+    }
+    List<SimpleCacheSpan> run = new ArrayList<>();
+    long runLength = 0;
+    for (SimpleCacheSpan span : cachedContent.getSpans()) {
+      boolean isContiguous = false;
+      if (!run.isEmpty()) {
+        SimpleCacheSpan previousSpan = run.get(run.size() - 1);
+        isContiguous = previousSpan.position + previousSpan.length == span.position;
+      }
+      if (!isContiguous || runLength + span.length > maxCoalescedSpanLength) {
+        if (run.size() > 1) {
+          runs.add(run);
+        }
+        run = new ArrayList<>();
+        runLength = 0;
+      }
+      run.add(span);
+      runLength += span.length;
+    }
+    if (run.size() > 1) {
+      runs.add(run);
+    }
+    return runs;
+  }
+
+  /**
+   * Merges a run of contiguous spans into a single cache file.
+   *
+   * @return Whether the spans were merged.
+   */
+  private boolean coalesceRun(String key, List<SimpleCacheSpan> run) throws CacheException {
+    long position = run.get(0).position;
+    long length = 0;
+    long lastTouchTimestamp = 0;
+    for (int i = 0; i < run.size(); i++) {
+      SimpleCacheSpan span = run.get(i);
+      length += span.length;
+      lastTouchTimestamp = max(lastTouchTimestamp, span.lastTouchTimestamp);
+    }
+
+    CachedContent cachedContent;
+    File tempFile;
+    synchronized (this) {
+      @Nullable CachedContent content = contentIndex.get(key);
+      if (released || content == null || !content.lockRange(position, length)) {
+        return false;
+      }
+      cachedContent = content;
+      try {
+        // The spans are copied into a temporary file, which is renamed once the run has been
+        // validated. Copying straight into a span file could overwrite one of the spans in the
+        // run, whose file name may be the same. A temporary file left behind is deleted when the
+        // cache is next initialized.
+        tempFile = createTempCacheFile();
+      } catch (CacheException e) {
+        cachedContent.unlockRange(position);
+        throw e;
+      }
+    }
+
+    boolean copied = false;
+    try (OutputStream outputStream = new FileOutputStream(tempFile)) {
+      for (int i = 0; i < run.size(); i++) {
+        SimpleCacheSpan span = run.get(i);
+        try (InputStream inputStream = new FileInputStream(Assertions.checkNotNull(span.file))) {
+          if (ByteStreams.copy(inputStream, outputStream) != span.length) {
+            throw new IOException("Unexpected cache file length: " + span.file);
+          }
+        }
+      }
+      copied = true;
+    } catch (IOException e) {
+      // The span files may have been removed or renamed concurrently.
+      Log.w(TAG, "Failed to copy spans for key: " + key, e);
+    }
+
+    synchronized (this) {
+      try {
+        @Nullable List<SimpleCacheSpan> currentSpans = copied ? getCurrentSpans(key, run) : null;
+        if (released || currentSpans == null) {
+          tempFile.delete();
+          return false;
+        }
+        // Preserve the recency of the most recently used span in the run, but make sure the name
+        // doesn't clash with an existing file or with one of the spans being replaced.
+        File file = createCacheFile(cachedContent, position, lastTouchTimestamp);
+        while (file.exists() || containsFileName(currentSpans, file.getName())) {
+          file = createCacheFile(cachedContent, position, ++lastTouchTimestamp);
+        }
+        if (!tempFile.renameTo(file)) {
+          Log.w(TAG, "Failed to rename coalesced cache file for key: " + key);
+          tempFile.delete();
+          return false;
+        }
+        SimpleCacheSpan coalescedSpan =
+            Assertions.checkNotNull(SimpleCacheSpan.createCacheEntry(file, length, contentIndex));
+        for (int i = 0; i < currentSpans.size(); i++) {
+          removeSpanInternal(currentSpans.get(i), /* notifyEvictor= */ false);
+        }
+        if (fileIndex != null) {
+          try {
+            fileIndex.set(file.getName(), length, coalescedSpan.lastTouchTimestamp);
+          } catch (IOException e) {
+            throw new CacheException(e);
+          }
+        }
+        // The coalesced span replaces data that was already admitted by the evictor, so the evictor
+        // is notified of the replacement rather than of a newly added span.
+        addSpan(coalescedSpan, /* notifyEvictor= */ false);
+        evictor.onSpansCoalesced(this, new ArrayList<>(currentSpans), coalescedSpan);
+        try {
+          contentIndex.store();
+        } catch (IOException e) {
+          throw new CacheException(e);
+        }
+        return true;
+      } finally {
+        cachedContent.unlockRange(position);
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Returns the current instances of the spans in {@code run}, which may differ from those in
+   * {@code run} if they've been touched, or {@code null} if any of the spans has been removed.
+   */
+  @Nullable
+  private List<SimpleCacheSpan> getCurrentSpans(String key, List<SimpleCacheSpan> run) {
+    @Nullable CachedContent cachedContent = contentIndex.get(key);
+    if (cachedContent == null) {
+      return null;
+    }
+    TreeSet<SimpleCacheSpan> spans = cachedContent.getSpans();
+    List<SimpleCacheSpan> currentSpans = new ArrayList<>(run.size());
+    for (int i = 0; i < run.size(); i++) {
+      SimpleCacheSpan span = run.get(i);
+      @Nullable SimpleCacheSpan currentSpan = spans.ceiling(span);
+      if (currentSpan == null
+          || currentSpan.position != span.position
+          || currentSpan.length != span.length) {
+        return null;
+      }
+      currentSpans.add(currentSpan);
+    }
+    return currentSpans;
+  }
+
+  private static boolean containsFileName(List<SimpleCacheSpan> spans, String fileName) {
+    for (int i = 0; i < spans.size(); i++) {
+      if (Assertions.checkNotNull(spans.get(i).file).getName().equals(fileName)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private File createCacheFile(CachedContent cachedContent, long position, long lastTouchTimestamp)
+      throws CacheException {
+    return SimpleCacheSpan.getCacheFile(
+        getRandomCacheSubdirectory(), cachedContent.id, position, lastTouchTimestamp);
+  }
+
+  /**
+   * Creates a new empty file in a cache subdirectory, whose name doesn't match that of a cache
+   * file, so that it's deleted when the cache is initialized.
+   */
+  private File createTempCacheFile() throws CacheException {
+    try {
+      return File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX, getRandomCacheSubdirectory());
+    } catch (IOException e) {
+      throw new CacheException(e);
+    }
+  }
+
+  private File getRandomCacheSubdirectory() throws CacheException {
+    // Randomly distribute files into subdirectories with a uniform distribution.
+    File cacheSubDir = new File(cacheDir, Integer.toString(random.nextInt(SUBDIRECTORY_COUNT)));
+    if (!cacheSubDir.exists()) {
+      createCacheDirectories(cacheSubDir);
+    }
+    return cacheSubDir;
+  }
+
   /**
    * Adds a cached span to the in-memory representation.
    *
    * @param span The span to be added.
    */
   private void addSpan(SimpleCacheSpan span) {
-    contentIndex.getOrAdd(span.key).addSpan(span);
+    addSpan(span, /* notifyEvictor= */ true);
+  }
+
+  private void addSpan(SimpleCacheSpan span, boolean notifyEvictor) {
+    synchronized (getSpanLock(span.key)) {
+      contentIndex.getOrAdd(span.key).addSpan(span);
+    }
     totalSpace += span.length;
-    notifySpanAdded(span);
+    notifySpanAdded(span, notifyEvictor);
   }
 
   private void removeSpanInternal(CacheSpan span) {
-    @Nullable CachedContent cachedContent = contentIndex.get(span.key);
-    if (cachedContent == null || !cachedContent.removeSpan(span)) {
-      return;
+    removeSpanInternal(span, /* notifyEvictor= */ true);
+  }
+
+  private void removeSpanInternal(CacheSpan span, boolean notifyEvictor) {
+    @Nullable CachedContent cachedContent;
+    synchronized (getSpanLock(span.key)) {
+      cachedContent = contentIndex.get(span.key);
+      if (cachedContent == null || !cachedContent.removeSpan(span)) {
+        return;
+      }
     }
     totalSpace -= span.length;
     if (fileIndex != null) {
@@ -712,7 +1448,20 @@ public final class SimpleCache implements Cache {
       }
     }
     contentIndex.maybeRemove(cachedContent.key);
-    notifySpanRemoved(span);
+    notifySpanRemoved(span, notifyEvictor);
+  }
+
+  /**
+   * Returns the lock that guards the cached spans of {@code key}. Modifications of the cached spans
+   * must hold both this lock and the lock on the cache instance, whereas read-only queries only
+   * need to hold this lock. If sharded locking is disabled, the cache instance itself is returned.
+   */
+  private Object getSpanLock(String key) {
+    if (spanLocks == null) {
+      return this;
+    }
+    int hash = key.hashCode();
+    return spanLocks[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % spanLocks.length];
   }
 
   /**
@@ -733,24 +1482,28 @@ public final class SimpleCache implements Cache {
     }
   }
 
-  private void notifySpanRemoved(CacheSpan span) {
+  private void notifySpanRemoved(CacheSpan span, boolean notifyEvictor) {
     @Nullable ArrayList<Listener> keyListeners = listeners.get(span.key);
     if (keyListeners != null) {
       for (int i = keyListeners.size() - 1; i >= 0; i--) {
         keyListeners.get(i).onSpanRemoved(this, span);
       }
     }
-    evictor.onSpanRemoved(this, span);
+    if (notifyEvictor) {
+      evictor.onSpanRemoved(this, span);
+    }
   }
 
-  private void notifySpanAdded(SimpleCacheSpan span) {
+  private void notifySpanAdded(SimpleCacheSpan span, boolean notifyEvictor) {
     @Nullable ArrayList<Listener> keyListeners = listeners.get(span.key);
     if (keyListeners != null) {
       for (int i = keyListeners.size() - 1; i >= 0; i--) {
         keyListeners.get(i).onSpanAdded(this, span);
       }
     }
-    evictor.onSpanAdded(this, span);
+    if (notifyEvictor) {
+      evictor.onSpanAdded(this, span);
+    }
   }
 
   private void notifySpanTouched(SimpleCacheSpan oldSpan, CacheSpan newSpan) {
@@ -820,4 +1573,21 @@ public final class SimpleCache implements Cache {
   private static synchronized void unlockFolder(File cacheDir) {
     lockedCacheDirs.remove(cacheDir.getAbsoluteFile());
   }
+
+  /** The result of scanning a subdirectory of the cache directory. */
+  private static final class LoadedDirectory {
+
+    /** The names of the scanned files. */
+    public final List<String> fileNames;
+    /** The spans for the valid scanned files. */
+    public final List<SimpleCacheSpan> spans;
+    /** Files that need to be loaded on the initialization thread. */
+    public final List<File> unscannedFiles;
+
+    public LoadedDirectory() {
+      fileNames = new ArrayList<>();
+      spans = new ArrayList<>();
+      unscannedFiles = new ArrayList<>();
+    }
+  }
 }
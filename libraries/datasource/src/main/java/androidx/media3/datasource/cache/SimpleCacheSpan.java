@@ -28,7 +28,7 @@ import java.util.regex.Pattern;
 
   /* package */ static final String COMMON_SUFFIX = ".exo";
 
-  private static final String SUFFIX = ".v3" + COMMON_SUFFIX;
+  /* package */ static final String SUFFIX = ".v3" + COMMON_SUFFIX;
   private static final Pattern CACHE_FILE_PATTERN_V1 =
       Pattern.compile("^(.+)\\.(\\d+)\\.(\\d+)\\.v1\\.exo$", Pattern.DOTALL);
   private static final Pattern CACHE_FILE_PATTERN_V2 =
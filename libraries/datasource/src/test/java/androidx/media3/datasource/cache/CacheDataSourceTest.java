@@ -24,17 +24,21 @@ import android.net.Uri;
 import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSource;
 import androidx.media3.datasource.DataSourceUtil;
 import androidx.media3.datasource.DataSpec;
 import androidx.media3.datasource.FileDataSource;
+import androidx.media3.datasource.TransferListener;
 import androidx.media3.test.utils.CacheAsserts;
 import androidx.media3.test.utils.FakeDataSet.FakeData;
 import androidx.media3.test.utils.FakeDataSource;
 import androidx.media3.test.utils.TestUtil;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -356,6 +360,66 @@ public final class CacheDataSourceTest {
     assertCacheEmpty(cache);
   }
 
+  @Test
+  public void readBuffer_fromMemoryMappedCache_readsCachedDataWithoutCopying() throws Exception {
+    // Read all data from upstream and write to cache.
+    CacheDataSource cacheDataSource =
+        createCacheDataSource(/* setReadException= */ false, /* unknownLength= */ false);
+    assertReadDataContentLength(
+        cacheDataSource, boundedDataSpec, /* unknownLength= */ false, /* customCacheKey= */ false);
+    CacheDataSource memoryMappedCacheDataSource =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setCacheReadDataSourceFactory(
+                new FileDataSource.Factory().setMemoryMappingEnabled(true))
+            .setUpstreamDataSourceFactory(() -> upstreamDataSource)
+            .createDataSource();
+
+    memoryMappedCacheDataSource.open(boundedDataSpec);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    int bufferReadCount = 0;
+    byte[] scratch = new byte[TEST_DATA.length];
+    while (true) {
+      @Nullable ByteBuffer buffer = memoryMappedCacheDataSource.readBuffer(TEST_DATA.length);
+      if (buffer != null) {
+        bufferReadCount++;
+        while (buffer.hasRemaining()) {
+          output.write(buffer.get());
+        }
+        continue;
+      }
+      int bytesRead = memoryMappedCacheDataSource.read(scratch, 0, scratch.length);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        break;
+      }
+      output.write(scratch, 0, bytesRead);
+    }
+    memoryMappedCacheDataSource.close();
+
+    assertThat(output.toByteArray()).isEqualTo(TEST_DATA);
+    assertThat(bufferReadCount).isGreaterThan(0);
+  }
+
+  @Test
+  public void readBuffer_fromUpstream_returnsNull() throws Exception {
+    CacheDataSource cacheDataSource =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setCacheReadDataSourceFactory(
+                new FileDataSource.Factory().setMemoryMappingEnabled(true))
+            .setUpstreamDataSourceFactory(
+                () -> {
+                  upstreamDataSource.getDataSet().newDefaultData().appendReadData(TEST_DATA);
+                  return upstreamDataSource;
+                })
+            .createDataSource();
+
+    cacheDataSource.open(boundedDataSpec);
+
+    assertThat(cacheDataSource.readBuffer(TEST_DATA.length)).isNull();
+    cacheDataSource.close();
+  }
+
   @Test
   public void switchToCacheSourceWithReadOnlyCacheDataSource() throws Exception {
     // Create a fake data source with a 1 MB default data.
@@ -522,6 +586,113 @@ public final class CacheDataSourceTest {
     cacheDataSource.close();
   }
 
+  @Test
+  public void upstreamRangeCoalescing_holesSeparatedBySmallCachedRanges_requestedTogether()
+      throws Exception {
+    byte[] data = TestUtil.buildTestData(100);
+    upstreamDataSource.getDataSet().newDefaultData().appendReadData(data);
+    cacheRange(/* position= */ 20, /* length= */ 5);
+    cacheRange(/* position= */ 50, /* length= */ 5);
+    upstreamDataSource.getAndClearOpenedDataSpecs();
+    CacheDataSource cacheDataSource =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(() -> upstreamDataSource)
+            .setUpstreamRangeCoalescingThreshold(5)
+            .createDataSource();
+
+    DataSpec dataSpec = buildDataSpec(/* position= */ 0, /* length= */ 100);
+    CacheAsserts.assertReadData(cacheDataSource, dataSpec, data);
+
+    DataSpec[] openedDataSpecs = upstreamDataSource.getAndClearOpenedDataSpecs();
+    assertThat(openedDataSpecs).hasLength(1);
+    assertThat(openedDataSpecs[0].position).isEqualTo(0);
+    assertThat(openedDataSpecs[0].length).isEqualTo(100);
+    CacheAsserts.assertDataCached(cache, dataSpec, data);
+    // The previously cached ranges aren't written to the cache a second time.
+    assertThat(cache.getCacheSpace()).isEqualTo(100);
+  }
+
+  @Test
+  public void upstreamRangeCoalescing_cachedRangeLongerThanThreshold_requestedSeparately()
+      throws Exception {
+    byte[] data = TestUtil.buildTestData(100);
+    upstreamDataSource.getDataSet().newDefaultData().appendReadData(data);
+    cacheRange(/* position= */ 20, /* length= */ 5);
+    cacheRange(/* position= */ 50, /* length= */ 10);
+    upstreamDataSource.getAndClearOpenedDataSpecs();
+    CacheDataSource cacheDataSource =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(() -> upstreamDataSource)
+            .setUpstreamRangeCoalescingThreshold(5)
+            .createDataSource();
+
+    DataSpec dataSpec = buildDataSpec(/* position= */ 0, /* length= */ 100);
+    CacheAsserts.assertReadData(cacheDataSource, dataSpec, data);
+
+    DataSpec[] openedDataSpecs = upstreamDataSource.getAndClearOpenedDataSpecs();
+    assertThat(openedDataSpecs).hasLength(2);
+    assertThat(openedDataSpecs[0].position).isEqualTo(0);
+    assertThat(openedDataSpecs[0].length).isEqualTo(50);
+    assertThat(openedDataSpecs[1].position).isEqualTo(60);
+    assertThat(openedDataSpecs[1].length).isEqualTo(40);
+    CacheAsserts.assertDataCached(cache, dataSpec, data);
+    assertThat(cache.getCacheSpace()).isEqualTo(100);
+  }
+
+  @Test
+  public void upstreamRangeCoalescing_upstreamOpenFailsAfterCoalescing_laterReadIsCached()
+      throws Exception {
+    byte[] data = TestUtil.buildTestData(100);
+    upstreamDataSource.getDataSet().newDefaultData().appendReadData(data);
+    cacheRange(/* position= */ 20, /* length= */ 5);
+    cacheRange(/* position= */ 50, /* length= */ 5);
+    FailingOpenDataSource failingUpstreamDataSource = new FailingOpenDataSource(upstreamDataSource);
+    CacheDataSource cacheDataSource =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(() -> failingUpstreamDataSource)
+            .setUpstreamRangeCoalescingThreshold(5)
+            .createDataSource();
+    failingUpstreamDataSource.failNextOpen = true;
+    try {
+      cacheDataSource.open(buildDataSpec(/* position= */ 0, /* length= */ 100));
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    } finally {
+      cacheDataSource.close();
+    }
+
+    DataSpec dataSpec = buildDataSpec(/* position= */ 60, /* length= */ 10);
+    byte[] expectedData = Arrays.copyOfRange(data, 60, 70);
+    CacheAsserts.assertReadData(cacheDataSource, dataSpec, expectedData);
+
+    CacheAsserts.assertDataCached(cache, dataSpec, expectedData);
+    assertThat(cache.getCacheSpace()).isEqualTo(20);
+  }
+
+  @Test
+  public void upstreamRangeCoalescingDisabled_requestsEachHoleSeparately() throws Exception {
+    byte[] data = TestUtil.buildTestData(100);
+    upstreamDataSource.getDataSet().newDefaultData().appendReadData(data);
+    cacheRange(/* position= */ 20, /* length= */ 5);
+    cacheRange(/* position= */ 50, /* length= */ 5);
+    upstreamDataSource.getAndClearOpenedDataSpecs();
+    CacheDataSource cacheDataSource =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(() -> upstreamDataSource)
+            .createDataSource();
+
+    DataSpec dataSpec = buildDataSpec(/* position= */ 0, /* length= */ 100);
+    CacheAsserts.assertReadData(cacheDataSource, dataSpec, data);
+
+    assertThat(upstreamDataSource.getAndClearOpenedDataSpecs()).hasLength(3);
+    CacheAsserts.assertDataCached(cache, dataSpec, data);
+  }
+
   private void assertCacheAndRead(DataSpec dataSpec, boolean unknownLength) throws IOException {
     assertCacheAndRead(dataSpec, unknownLength, /* cacheKeyFactory= */ null);
   }
@@ -636,6 +807,15 @@ public final class CacheDataSourceTest {
         cacheKeyFactory);
   }
 
+  private void cacheRange(long position, long length) throws IOException {
+    new CacheWriter(
+            new CacheDataSource(cache, upstreamDataSource),
+            buildDataSpec(position, length),
+            /* temporaryBuffer= */ null,
+            /* progressListener= */ null)
+        .cache();
+  }
+
   private DataSpec buildDataSpec(boolean unbounded, @Nullable String key) {
     return buildDataSpec(/* position= */ 0, unbounded ? C.LENGTH_UNSET : TEST_DATA.length, key);
   }
@@ -654,4 +834,51 @@ public final class CacheDataSourceTest {
         .setHttpRequestHeaders(httpRequestHeaders)
         .build();
   }
+
+  /** A {@link DataSource} that forwards to another, but can be made to fail the next open. */
+  private static final class FailingOpenDataSource implements DataSource {
+
+    private final DataSource dataSource;
+
+    public boolean failNextOpen;
+    private boolean opened;
+
+    public FailingOpenDataSource(DataSource dataSource) {
+      this.dataSource = dataSource;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+      dataSource.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      if (failNextOpen) {
+        failNextOpen = false;
+        throw new IOException("Simulated open failure");
+      }
+      opened = true;
+      return dataSource.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      return dataSource.read(buffer, offset, length);
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+      return dataSource.getUri();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (opened) {
+        opened = false;
+        dataSource.close();
+      }
+    }
+  }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import androidx.annotation.Nullable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Replays a trace of cache accesses against a {@link CacheEvictor}, and reports the resulting hit
+ * ratio and byte hit ratio.
+ *
+ * <p>Each resource is modelled as a single span. Accesses to resources that are not cached are
+ * treated as misses, after which the resource is written to the cache in full.
+ */
+/* package */ final class CacheEvictorTraceReplayer {
+
+  /** An access to a resource. */
+  public static final class Access {
+
+    public final String key;
+    public final long length;
+
+    public Access(String key, long length) {
+      this.key = key;
+      this.length = length;
+    }
+  }
+
+  /** The result of replaying a trace. */
+  public static final class Result {
+
+    public final int accessCount;
+    public final int hitCount;
+    public final long accessedBytes;
+    public final long hitBytes;
+
+    private Result(int accessCount, int hitCount, long accessedBytes, long hitBytes) {
+      this.accessCount = accessCount;
+      this.hitCount = hitCount;
+      this.accessedBytes = accessedBytes;
+      this.hitBytes = hitBytes;
+    }
+
+    /** Returns the fraction of accesses that were cache hits. */
+    public double getHitRatio() {
+      return accessCount == 0 ? 0 : (double) hitCount / accessCount;
+    }
+
+    /** Returns the fraction of accessed bytes that were read from the cache. */
+    public double getByteHitRatio() {
+      return accessedBytes == 0 ? 0 : (double) hitBytes / accessedBytes;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US, "hitRatio=%.3f, byteHitRatio=%.3f", getHitRatio(), getByteHitRatio());
+    }
+  }
+
+  private CacheEvictorTraceReplayer() {}
+
+  /**
+   * Replays {@code trace} against {@code evictor}.
+   *
+   * @param evictor The {@link CacheEvictor}. Must not have been used previously.
+   * @param trace The accesses to replay.
+   * @return The {@link Result}.
+   */
+  public static Result replay(CacheEvictor evictor, List<Access> trace) {
+    Map<String, CacheSpan> cachedSpans = new HashMap<>();
+    Cache cache = mock(Cache.class);
+    doAnswer(
+            invocation -> {
+              CacheSpan span = invocation.getArgument(0);
+              cachedSpans.remove(span.key);
+              evictor.onSpanRemoved((Cache) invocation.getMock(), span);
+              return null;
+            })
+        .when(cache)
+        .removeSpan(any());
+    evictor.onCacheInitialized();
+
+    int hitCount = 0;
+    long accessedBytes = 0;
+    long hitBytes = 0;
+    // Use a logical clock so that the order of accesses is unambiguous.
+    long timestamp = 0;
+    for (Access access : trace) {
+      accessedBytes += access.length;
+      @Nullable CacheSpan cachedSpan = cachedSpans.get(access.key);
+      if (cachedSpan != null) {
+        hitCount++;
+        hitBytes += access.length;
+        CacheSpan touchedSpan =
+            new CacheSpan(
+                access.key, /* position= */ 0, access.length, ++timestamp, /* file= */ null);
+        cachedSpans.put(access.key, touchedSpan);
+        evictor.onSpanTouched(cache, cachedSpan, touchedSpan);
+      } else {
+        evictor.onStartFile(cache, access.key, /* position= */ 0, access.length);
+        CacheSpan span =
+            new CacheSpan(
+                access.key, /* position= */ 0, access.length, ++timestamp, /* file= */ null);
+        cachedSpans.put(access.key, span);
+        evictor.onSpanAdded(cache, span);
+      }
+    }
+    return new Result(trace.size(), hitCount, accessedBytes, hitBytes);
+  }
+}
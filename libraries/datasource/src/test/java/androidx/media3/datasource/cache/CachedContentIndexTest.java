@@ -324,6 +324,134 @@ public class CachedContentIndexTest {
     assertThat(ContentMetadata.getContentLength(metadata2)).isEqualTo(2560);
   }
 
+  @Test
+  public void journalStoreAndLoad() throws Exception {
+    assertStoredAndLoadedEqual(newJournalInstance(), newJournalInstance());
+  }
+
+  @Test
+  public void journalStoreAndLoad_afterIncrementalUpdatesAndRemovals() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    index.getOrAdd("key1");
+    index.getOrAdd("key2");
+    index.store();
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataMutations.setContentLength(mutations, 100);
+    index.applyContentMetadataMutations("key1", mutations);
+    index.maybeRemove("key2");
+    index.getOrAdd("key3");
+    index.store();
+    // Re-add a removed key, which is assigned a different id.
+    index.getOrAdd("key2");
+    index.store();
+
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+
+    assertThat(index2.getKeys()).containsExactly("key1", "key2", "key3");
+    for (String key : index.getKeys()) {
+      assertThat(index2.get(key)).isEqualTo(index.get(key));
+    }
+    assertThat(ContentMetadata.getContentLength(index2.getContentMetadata("key1"))).isEqualTo(100);
+  }
+
+  @Test
+  public void journalLoad_withPartiallyWrittenRecord_discardsRecord() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    index.getOrAdd("key1");
+    index.store();
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL);
+    long validLength = journalFile.length();
+    try (FileOutputStream fos = new FileOutputStream(journalFile, /* append= */ true)) {
+      // A record length followed by a truncated payload.
+      fos.write(new byte[] {0, 0, 0, 20, 1, 0, 0});
+    }
+
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+    index2.getOrAdd("key2");
+    index2.store();
+    CachedContentIndex index3 = newJournalInstance();
+    index3.initialize(/* uid= */ 0);
+
+    assertThat(index2.getKeys()).containsExactly("key1", "key2");
+    assertThat(index3.getKeys()).containsExactly("key1", "key2");
+    assertThat(journalFile.length()).isGreaterThan(validLength);
+  }
+
+  @Test
+  public void journalLoad_withCorruptRecord_discardsRecordAndRemainder() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    index.getOrAdd("key1");
+    index.store();
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL);
+    long validLength = journalFile.length();
+    index.getOrAdd("key2");
+    index.store();
+    index.getOrAdd("key3");
+    index.store();
+    byte[] journal = TestUtil.getByteArrayFromFilePath(journalFile.getAbsolutePath());
+    // Corrupt the payload of the record for key2.
+    journal[(int) validLength + 6] ^= 0xFF;
+    try (FileOutputStream fos = new FileOutputStream(journalFile)) {
+      fos.write(journal);
+    }
+
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+
+    assertThat(index2.getKeys()).containsExactly("key1");
+    assertThat(journalFile.length()).isEqualTo(validLength);
+  }
+
+  @Test
+  public void journalStore_withManyUpdates_compactsJournal() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    index.getOrAdd("key1");
+    index.store();
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL);
+    long recordLength = journalFile.length() - 4;
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataMutations.setContentLength(mutations, 1);
+    index.applyContentMetadataMutations("key1", mutations);
+    index.store();
+    // Content metadata values have a fixed length, so all further updates have the same length.
+    recordLength = journalFile.length() - 4 - recordLength;
+
+    for (int i = 2; i <= 3000; i++) {
+      mutations = new ContentMetadataMutations();
+      ContentMetadataMutations.setContentLength(mutations, i);
+      index.applyContentMetadataMutations("key1", mutations);
+      index.store();
+    }
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+
+    assertThat(journalFile.length()).isLessThan(4 + 1100 * recordLength);
+    assertThat(ContentMetadata.getContentLength(index2.getContentMetadata("key1")))
+        .isEqualTo(3000);
+  }
+
+  @Test
+  public void journalInitialize_withLegacyIndex_migratesIndex() throws Exception {
+    CachedContentIndex legacyIndex = newLegacyInstance();
+    legacyIndex.initialize(/* uid= */ 0);
+    legacyIndex.getOrAdd("key1");
+    legacyIndex.getOrAdd("key2");
+    legacyIndex.store();
+
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+
+    assertThat(index.getKeys()).containsExactly("key1", "key2");
+    assertThat(new File(cacheDir, CachedContentIndex.FILE_NAME_ATOMIC).exists()).isFalse();
+    assertThat(new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL).exists()).isTrue();
+  }
+
   @Test
   public void assignIdForKeyAndGetKeyForId() {
     CachedContentIndex index = newInstance();
@@ -477,4 +605,14 @@ public class CachedContentIndexTest {
         /* legacyStorageEncrypt= */ key != null,
         /* preferLegacyStorage= */ true);
   }
+
+  private CachedContentIndex newJournalInstance() {
+    return new CachedContentIndex(
+        /* databaseProvider= */ null,
+        cacheDir,
+        /* legacyStorageSecretKey= */ null,
+        /* legacyStorageEncrypt= */ false,
+        /* preferLegacyStorage= */ false,
+        /* useJournalStorage= */ true);
+  }
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link FrequencySketch}. */
+@RunWith(AndroidJUnit4.class)
+public class FrequencySketchTest {
+
+  @Test
+  public void frequency_countsIncrements() {
+    FrequencySketch sketch = new FrequencySketch(/* width= */ 64);
+
+    sketch.increment("a");
+    sketch.increment("a");
+    sketch.increment("b");
+
+    assertThat(sketch.frequency("a")).isAtLeast(2);
+    assertThat(sketch.frequency("b")).isAtLeast(1);
+    assertThat(sketch.frequency("a")).isGreaterThan(sketch.frequency("b"));
+  }
+
+  @Test
+  public void frequency_saturatesAtMaxFrequency() {
+    FrequencySketch sketch = new FrequencySketch(/* width= */ 64);
+
+    for (int i = 0; i < 100; i++) {
+      sketch.increment("a");
+    }
+
+    assertThat(sketch.frequency("a")).isEqualTo(FrequencySketch.MAX_FREQUENCY);
+  }
+
+  @Test
+  public void frequency_afterManyIncrements_halvesCounts() {
+    FrequencySketch sketch = new FrequencySketch(/* width= */ 16);
+    for (int i = 0; i < FrequencySketch.MAX_FREQUENCY; i++) {
+      sketch.increment("a");
+    }
+
+    // Record occurrences of other keys until the counts are reset. The saturated counts of "a"
+    // can't be affected by collisions before then.
+    int incrementCount = 0;
+    while (sketch.frequency("a") == FrequencySketch.MAX_FREQUENCY && incrementCount < 1000) {
+      sketch.increment("key" + incrementCount++);
+    }
+
+    assertThat(sketch.frequency("a")).isAtMost(FrequencySketch.MAX_FREQUENCY / 2);
+  }
+}
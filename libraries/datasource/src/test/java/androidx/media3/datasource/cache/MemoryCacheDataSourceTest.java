@@ -0,0 +1,221 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSourceUtil;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.test.utils.CacheAsserts;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link MemoryCacheDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class MemoryCacheDataSourceTest {
+
+  private static final Uri TEST_URI = Uri.parse("https://www.test.com/data");
+  private static final int BLOCK_SIZE = 256;
+
+  private byte[] testData;
+  private FakeDataSource upstreamDataSource;
+  private MemorySegmentCache memoryCache;
+  private MemoryCacheDataSource memoryCacheDataSource;
+
+  @Before
+  public void setUp() {
+    testData = TestUtil.buildTestData(1000);
+    upstreamDataSource = new FakeDataSource();
+    upstreamDataSource.getDataSet().newDefaultData().appendReadData(testData);
+    memoryCache = new MemorySegmentCache(/* maxBytes= */ 4 * BLOCK_SIZE, BLOCK_SIZE);
+    memoryCacheDataSource = new MemoryCacheDataSource(memoryCache, upstreamDataSource);
+  }
+
+  @Test
+  public void readSegmentTwice_secondReadServedFromMemory() throws Exception {
+    DataSpec dataSpec = buildDataSpec(/* position= */ 100, /* length= */ 300);
+
+    byte[] data1 = readSegment(dataSpec);
+    byte[] data2 = readSegment(dataSpec);
+
+    byte[] expected = Arrays.copyOfRange(testData, 100, 400);
+    assertThat(data1).isEqualTo(expected);
+    assertThat(data2).isEqualTo(expected);
+    assertThat(upstreamDataSource.getAndClearOpenedDataSpecs()).hasLength(1);
+    assertThat(memoryCache.getHitCount()).isEqualTo(1);
+    assertThat(memoryCache.getMissCount()).isEqualTo(1);
+    assertThat(memoryCache.getHitBytes()).isEqualTo(300);
+  }
+
+  @Test
+  public void segmentServedFromMemoryClosedBeforeEnd_countsOnlyBytesRead() throws Exception {
+    DataSpec dataSpec = buildDataSpec(/* position= */ 100, /* length= */ 300);
+    readSegment(dataSpec);
+
+    try {
+      memoryCacheDataSource.open(dataSpec);
+      int bytesRead = memoryCacheDataSource.read(new byte[50], /* offset= */ 0, /* length= */ 50);
+      assertThat(bytesRead).isEqualTo(50);
+    } finally {
+      memoryCacheDataSource.close();
+    }
+
+    assertThat(memoryCache.getHitCount()).isEqualTo(1);
+    assertThat(memoryCache.getHitBytes()).isEqualTo(50);
+  }
+
+  @Test
+  public void readUnboundedSegmentTwice_secondReadServedFromMemory() throws Exception {
+    DataSpec dataSpec = buildDataSpec(/* position= */ 900, /* length= */ C.LENGTH_UNSET);
+
+    readSegment(dataSpec);
+    byte[] data = readSegment(dataSpec);
+
+    assertThat(data).isEqualTo(Arrays.copyOfRange(testData, 900, 1000));
+    assertThat(upstreamDataSource.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
+  @Test
+  public void segmentClosedBeforeEnd_isNotHeldInMemory() throws Exception {
+    DataSpec dataSpec = buildDataSpec(/* position= */ 0, /* length= */ 300);
+    memoryCacheDataSource.open(dataSpec);
+    memoryCacheDataSource.read(new byte[10], /* offset= */ 0, /* length= */ 10);
+    memoryCacheDataSource.close();
+
+    byte[] data = readSegment(dataSpec);
+
+    assertThat(data).isEqualTo(Arrays.copyOfRange(testData, 0, 300));
+    assertThat(upstreamDataSource.getAndClearOpenedDataSpecs()).hasLength(2);
+    assertThat(memoryCache.getUsedBytes()).isEqualTo(2 * BLOCK_SIZE);
+  }
+
+  @Test
+  public void segmentLargerThanMaxSegmentLength_isNotHeldInMemory() throws Exception {
+    DataSpec dataSpec = buildDataSpec(/* position= */ 0, /* length= */ 600);
+
+    readSegment(dataSpec);
+    byte[] data = readSegment(dataSpec);
+
+    assertThat(data).isEqualTo(Arrays.copyOfRange(testData, 0, 600));
+    assertThat(upstreamDataSource.getAndClearOpenedDataSpecs()).hasLength(2);
+    assertThat(memoryCache.getUsedBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void memoryBudgetExceeded_evictsLeastRecentlyUsedSegment() throws Exception {
+    DataSpec dataSpec1 = buildDataSpec(/* position= */ 0, /* length= */ 300);
+    DataSpec dataSpec2 = buildDataSpec(/* position= */ 300, /* length= */ 300);
+    DataSpec dataSpec3 = buildDataSpec(/* position= */ 600, /* length= */ 300);
+    readSegment(dataSpec1);
+    readSegment(dataSpec2);
+    upstreamDataSource.getAndClearOpenedDataSpecs();
+
+    readSegment(dataSpec3);
+    readSegment(dataSpec2);
+    readSegment(dataSpec3);
+
+    DataSpec[] openedDataSpecs = upstreamDataSource.getAndClearOpenedDataSpecs();
+    assertThat(openedDataSpecs).hasLength(1);
+    assertThat(openedDataSpecs[0].position).isEqualTo(600);
+    assertThat(memoryCache.getUsedBytes()).isAtMost(memoryCache.getMaxBytes());
+    readSegment(dataSpec1);
+    assertThat(upstreamDataSource.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
+  @Test
+  public void segmentEvictedWhileBeingRead_isReadCorrectly() throws Exception {
+    DataSpec dataSpec = buildDataSpec(/* position= */ 0, /* length= */ 300);
+    readSegment(dataSpec);
+    memoryCacheDataSource.open(dataSpec);
+    byte[] data = new byte[300];
+    int bytesRead = memoryCacheDataSource.read(data, /* offset= */ 0, /* length= */ 100);
+
+    // Fill the memory cache with other segments using a different data source.
+    MemoryCacheDataSource otherDataSource =
+        new MemoryCacheDataSource(memoryCache, upstreamDataSource);
+    readSegment(otherDataSource, buildDataSpec(/* position= */ 300, /* length= */ 300));
+    readSegment(otherDataSource, buildDataSpec(/* position= */ 600, /* length= */ 300));
+    readSegment(otherDataSource, buildDataSpec(/* position= */ 300, /* length= */ 300));
+    while (bytesRead < data.length) {
+      bytesRead +=
+          memoryCacheDataSource.read(data, /* offset= */ bytesRead, data.length - bytesRead);
+    }
+    memoryCacheDataSource.close();
+
+    assertThat(data).isEqualTo(Arrays.copyOfRange(testData, 0, 300));
+    assertThat(memoryCache.getUsedBytes()).isAtMost(memoryCache.getMaxBytes());
+  }
+
+  @Test
+  public void spillCacheSet_writesSegmentToCache() throws Exception {
+    File tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    SimpleCache cache =
+        new SimpleCache(tempFolder, new NoOpCacheEvictor(), TestUtil.getInMemoryDatabaseProvider());
+    try {
+      MemoryCacheDataSource memoryCacheDataSource =
+          new MemoryCacheDataSource.Factory()
+              .setMemoryCache(memoryCache)
+              .setUpstreamDataSourceFactory(() -> upstreamDataSource)
+              .setSpillCache(cache, Runnable::run)
+              .createDataSource();
+      DataSpec dataSpec = buildDataSpec(/* position= */ 100, /* length= */ 300);
+
+      readSegment(memoryCacheDataSource, dataSpec);
+
+      CacheAsserts.assertDataCached(cache, dataSpec, Arrays.copyOfRange(testData, 100, 400));
+      assertThat(upstreamDataSource.getAndClearOpenedDataSpecs()).hasLength(1);
+    } finally {
+      cache.release();
+      Util.recursiveDelete(tempFolder);
+    }
+  }
+
+  private byte[] readSegment(DataSpec dataSpec) throws IOException {
+    return readSegment(memoryCacheDataSource, dataSpec);
+  }
+
+  private static byte[] readSegment(MemoryCacheDataSource dataSource, DataSpec dataSpec)
+      throws IOException {
+    try {
+      dataSource.open(dataSpec);
+      return DataSourceUtil.readToEnd(dataSource);
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  private static DataSpec buildDataSpec(long position, long length) {
+    return new DataSpec.Builder()
+        .setUri(TEST_URI)
+        .setPosition(position)
+        .setLength(length)
+        .setFlags(DataSpec.FLAG_ALLOW_CACHE_FRAGMENTATION)
+        .build();
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import androidx.media3.datasource.cache.CacheEvictorTraceReplayer.Access;
+import androidx.media3.datasource.cache.CacheEvictorTraceReplayer.Result;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+/** Unit tests for {@link SegmentedLeastRecentlyUsedCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public class SegmentedLeastRecentlyUsedCacheEvictorTest {
+
+  @Test
+  public void contentBiggerThanMaxSizeDoesNotThrowException() {
+    int maxBytes = 100;
+    SegmentedLeastRecentlyUsedCacheEvictor evictor =
+        new SegmentedLeastRecentlyUsedCacheEvictor(maxBytes);
+    evictor.onCacheInitialized();
+    evictor.onStartFile(Mockito.mock(Cache.class), "key", 0, maxBytes + 1);
+  }
+
+  @Test
+  public void replay_repeatedlyAccessedContentSurvivesScan() {
+    List<Access> trace = new ArrayList<>();
+    addAccesses(trace, /* keyPrefix= */ "hot", /* keyCount= */ 10, /* length= */ 10);
+    addAccesses(trace, /* keyPrefix= */ "hot", /* keyCount= */ 10, /* length= */ 10);
+    addAccesses(trace, /* keyPrefix= */ "scan", /* keyCount= */ 100, /* length= */ 10);
+    addAccesses(trace, /* keyPrefix= */ "hot", /* keyCount= */ 10, /* length= */ 10);
+
+    Result result =
+        CacheEvictorTraceReplayer.replay(
+            new SegmentedLeastRecentlyUsedCacheEvictor(/* maxBytes= */ 200), trace);
+    Result lruResult =
+        CacheEvictorTraceReplayer.replay(
+            new LeastRecentlyUsedCacheEvictor(/* maxBytes= */ 200), trace);
+
+    // The second and final passes over the hot content are hits.
+    assertThat(result.hitCount).isEqualTo(20);
+    assertThat(lruResult.hitCount).isEqualTo(10);
+  }
+
+  @Test
+  public void replay_withFrequencyAdmission_rejectsInfrequentlyUsedContent() {
+    List<Access> trace = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      trace.add(new Access("frequent", /* length= */ 100));
+    }
+    trace.add(new Access("infrequent", /* length= */ 50));
+    trace.add(new Access("frequent", /* length= */ 100));
+
+    Result result =
+        CacheEvictorTraceReplayer.replay(
+            new SegmentedLeastRecentlyUsedCacheEvictor(/* maxBytes= */ 100), trace);
+    Result resultWithoutAdmission =
+        CacheEvictorTraceReplayer.replay(
+            new SegmentedLeastRecentlyUsedCacheEvictor(
+                /* maxBytes= */ 100,
+                SegmentedLeastRecentlyUsedCacheEvictor.DEFAULT_PROTECTED_FRACTION,
+                /* frequencyAdmissionEnabled= */ false),
+            trace);
+
+    assertThat(result.hitCount).isEqualTo(4);
+    assertThat(resultWithoutAdmission.hitCount).isEqualTo(3);
+  }
+
+  @Test
+  public void replay_workloadWithScans_improvesHitRatioOverExistingEvictors() {
+    long maxBytes = 6000;
+    List<Access> trace = new ArrayList<>();
+    Random random = new Random(/* seed= */ 0);
+    for (int round = 0; round < 20; round++) {
+      for (int i = 0; i < 200; i++) {
+        trace.add(new Access("hot" + random.nextInt(50), /* length= */ 100));
+      }
+      addAccesses(trace, /* keyPrefix= */ "scan" + round + "-", /* keyCount= */ 100, 100);
+    }
+
+    Result result =
+        CacheEvictorTraceReplayer.replay(
+            new SegmentedLeastRecentlyUsedCacheEvictor(maxBytes), trace);
+    Result lruResult =
+        CacheEvictorTraceReplayer.replay(new LeastRecentlyUsedCacheEvictor(maxBytes), trace);
+    Result noOpResult = CacheEvictorTraceReplayer.replay(new NoOpCacheEvictor(), trace);
+
+    String report = "slru: " + result + ", lru: " + lruResult + ", unbounded: " + noOpResult;
+    assertWithMessage(report).that(result.getHitRatio()).isGreaterThan(lruResult.getHitRatio());
+    assertWithMessage(report)
+        .that(result.getByteHitRatio())
+        .isGreaterThan(lruResult.getByteHitRatio());
+    assertWithMessage(report).that(result.getHitRatio()).isAtMost(noOpResult.getHitRatio());
+  }
+
+  private static void addAccesses(List<Access> trace, String keyPrefix, int keyCount, long length) {
+    for (int i = 0; i < keyCount; i++) {
+      trace.add(new Access(keyPrefix + i, length));
+    }
+  }
+}
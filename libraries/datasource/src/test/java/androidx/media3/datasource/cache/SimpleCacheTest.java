@@ -21,6 +21,7 @@ import static org.junit.Assert.assertThrows;
 import static org.mockito.Mockito.doAnswer;
 
 import android.net.Uri;
+import androidx.annotation.Nullable;
 import androidx.media3.common.util.Util;
 import androidx.media3.database.DatabaseProvider;
 import androidx.media3.datasource.cache.Cache.CacheException;
@@ -28,12 +29,19 @@ import androidx.media3.test.utils.TestUtil;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Bytes;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NavigableSet;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -629,6 +637,304 @@ public class SimpleCacheTest {
         () -> simpleCache.startReadWriteNonBlocking(KEY_1, 0, LENGTH_UNSET));
   }
 
+  @Test
+  public void builder_withShardedLocking_writeThenRead() throws Exception {
+    SimpleCache simpleCache =
+        new SimpleCache.Builder(cacheDir, new NoOpCacheEvictor())
+            .setDatabaseProvider(databaseProvider)
+            .setLockShardCount(4)
+            .build();
+
+    CacheSpan holeSpan1 = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    CacheSpan holeSpan2 = simpleCache.startReadWrite(KEY_2, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    addCache(simpleCache, KEY_2, 0, 10);
+    simpleCache.releaseHoleSpan(holeSpan1);
+    simpleCache.releaseHoleSpan(holeSpan2);
+
+    assertThat(simpleCache.getKeys()).containsExactly(KEY_1, KEY_2);
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(25);
+    assertThat(simpleCache.isCached(KEY_1, /* position= */ 0, /* length= */ 15)).isTrue();
+    assertThat(simpleCache.getCachedLength(KEY_2, /* position= */ 0, /* length= */ 20))
+        .isEqualTo(10);
+    assertCachedDataReadCorrect(simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET));
+  }
+
+  @Test
+  public void concurrentReadsAndWrites_withoutShardedLocking_cachesAllContent() throws Exception {
+    SimpleCache simpleCache =
+        new SimpleCache.Builder(cacheDir, new NoOpCacheEvictor())
+            .setDatabaseProvider(databaseProvider)
+            .build();
+
+    runConcurrentReadsAndWrites(simpleCache);
+  }
+
+  @Test
+  public void concurrentReadsAndWrites_withShardedLocking_cachesAllContent() throws Exception {
+    SimpleCache simpleCache =
+        new SimpleCache.Builder(cacheDir, new NoOpCacheEvictor())
+            .setDatabaseProvider(databaseProvider)
+            .setLockShardCount(8)
+            .build();
+
+    runConcurrentReadsAndWrites(simpleCache);
+  }
+
+  @Test
+  public void coalesceSpans_mergesContiguousSpans() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 10);
+    addCache(simpleCache, KEY_1, 10, 10);
+    addCache(simpleCache, KEY_1, 20, 5);
+    addCache(simpleCache, KEY_1, 30, 10);
+    simpleCache.releaseHoleSpan(holeSpan);
+
+    int removedFileCount =
+        simpleCache.coalesceSpans(KEY_1, /* maxCoalescedSpanLength= */ Long.MAX_VALUE);
+
+    assertThat(removedFileCount).isEqualTo(2);
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(35);
+    assertThat(getCacheFileCount(cacheDir)).isEqualTo(2);
+    NavigableSet<CacheSpan> spans = simpleCache.getCachedSpans(KEY_1);
+    assertThat(spans).hasSize(2);
+    CacheSpan coalescedSpan = spans.first();
+    assertThat(coalescedSpan.position).isEqualTo(0);
+    assertThat(coalescedSpan.length).isEqualTo(25);
+    try (FileInputStream inputStream = new FileInputStream(coalescedSpan.file)) {
+      assertThat(ByteStreams.toByteArray(inputStream))
+          .isEqualTo(
+              Bytes.concat(
+                  generateData(KEY_1, 0, 10),
+                  generateData(KEY_1, 10, 10),
+                  generateData(KEY_1, 20, 5)));
+    }
+    assertCachedDataReadCorrect(spans.last());
+
+    // The coalesced span should be persisted.
+    simpleCache.release();
+    simpleCache = getSimpleCache();
+    spans = simpleCache.getCachedSpans(KEY_1);
+    assertThat(spans).hasSize(2);
+    assertThat(spans.first().length).isEqualTo(25);
+  }
+
+  @Test
+  public void coalesceSpans_limitsCoalescedSpanLength() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    for (int i = 0; i < 5; i++) {
+      addCache(simpleCache, KEY_1, i * 10, 10);
+    }
+    simpleCache.releaseHoleSpan(holeSpan);
+
+    int removedFileCount = simpleCache.coalesceSpans(KEY_1, /* maxCoalescedSpanLength= */ 20);
+
+    assertThat(removedFileCount).isEqualTo(2);
+    NavigableSet<CacheSpan> spans = simpleCache.getCachedSpans(KEY_1);
+    List<Long> spanLengths = new ArrayList<>();
+    for (CacheSpan span : spans) {
+      spanLengths.add(span.length);
+    }
+    assertThat(spanLengths).containsExactly(20L, 20L, 10L).inOrder();
+    assertThat(simpleCache.getCachedLength(KEY_1, 0, LENGTH_UNSET)).isEqualTo(50);
+  }
+
+  @Test
+  public void coalesceSpans_withRangeLockedByWriter_doesNotMergeSpans() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 10);
+    addCache(simpleCache, KEY_1, 10, 10);
+
+    int removedFileCount =
+        simpleCache.coalesceSpans(KEY_1, /* maxCoalescedSpanLength= */ Long.MAX_VALUE);
+    simpleCache.releaseHoleSpan(holeSpan);
+
+    assertThat(removedFileCount).isEqualTo(0);
+    assertThat(simpleCache.getCachedSpans(KEY_1)).hasSize(2);
+  }
+
+  @Test
+  public void coalesceSpans_withSegmentedEvictor_keepsCoalescedSpanProtected() throws Exception {
+    SimpleCache simpleCache =
+        new SimpleCache(
+            cacheDir,
+            new SegmentedLeastRecentlyUsedCacheEvictor(
+                /* maxBytes= */ 40,
+                SegmentedLeastRecentlyUsedCacheEvictor.DEFAULT_PROTECTED_FRACTION,
+                /* frequencyAdmissionEnabled= */ false),
+            databaseProvider);
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 10);
+    addCache(simpleCache, KEY_1, 10, 10);
+    simpleCache.releaseHoleSpan(holeSpan);
+    // Reading the spans again promotes them to the protected segment.
+    simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    simpleCache.startReadWrite(KEY_1, 10, LENGTH_UNSET);
+
+    simpleCache.coalesceSpans(KEY_1, /* maxCoalescedSpanLength= */ Long.MAX_VALUE);
+    holeSpan = simpleCache.startReadWrite(KEY_2, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_2, 0, 10);
+    addCache(simpleCache, KEY_2, 10, 10);
+    addCache(simpleCache, KEY_2, 20, 10);
+    simpleCache.releaseHoleSpan(holeSpan);
+
+    // Content that is only written once is evicted before the coalesced span.
+    assertThat(simpleCache.getCachedSpans(KEY_1)).hasSize(1);
+    assertThat(simpleCache.getCachedLength(KEY_1, 0, LENGTH_UNSET)).isEqualTo(20);
+    assertThat(simpleCache.getCachedBytes(KEY_2, 0, LENGTH_UNSET)).isEqualTo(20);
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(40);
+  }
+
+  @Test
+  public void builder_withSpanCoalescingExecutor_coalescesSpansWhenWriterReleasesLock()
+      throws Exception {
+    SimpleCache simpleCache =
+        new SimpleCache.Builder(cacheDir, new NoOpCacheEvictor())
+            .setDatabaseProvider(databaseProvider)
+            .setSpanCoalescingExecutor(Runnable::run, /* maxCoalescedSpanLength= */ 1000)
+            .build();
+
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 10);
+    addCache(simpleCache, KEY_1, 10, 10);
+    addCache(simpleCache, KEY_1, 20, 10);
+    assertThat(simpleCache.getCachedSpans(KEY_1)).hasSize(3);
+    simpleCache.releaseHoleSpan(holeSpan);
+
+    assertThat(simpleCache.getCachedSpans(KEY_1)).hasSize(1);
+    assertThat(simpleCache.getCachedLength(KEY_1, 0, LENGTH_UNSET)).isEqualTo(30);
+    assertThat(getCacheFileCount(cacheDir)).isEqualTo(1);
+  }
+
+  @Test
+  public void builder_withInitializationExecutor_loadsAllCacheFiles() throws Exception {
+    assertLoadsAllCacheFilesWithInitializationExecutor(databaseProvider);
+  }
+
+  @Test
+  public void builder_withInitializationExecutorAndLegacyIndex_loadsAllCacheFiles()
+      throws Exception {
+    assertLoadsAllCacheFilesWithInitializationExecutor(/* databaseProvider= */ null);
+  }
+
+  private void assertLoadsAllCacheFilesWithInitializationExecutor(
+      @Nullable DatabaseProvider databaseProvider) throws Exception {
+    SimpleCache simpleCache =
+        new SimpleCache.Builder(cacheDir, new NoOpCacheEvictor())
+            .setDatabaseProvider(databaseProvider)
+            .build();
+    for (int i = 0; i < 10; i++) {
+      String key = "key" + i;
+      CacheSpan holeSpan = simpleCache.startReadWrite(key, 0, LENGTH_UNSET);
+      for (int j = 0; j < 5; j++) {
+        addCache(simpleCache, key, j * 10, 10);
+      }
+      simpleCache.releaseHoleSpan(holeSpan);
+    }
+    simpleCache.release();
+
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    try {
+      simpleCache =
+          new SimpleCache.Builder(cacheDir, new NoOpCacheEvictor())
+              .setDatabaseProvider(databaseProvider)
+              .setInitializationExecutor(executorService)
+              .build();
+
+      simpleCache.checkInitialization();
+      assertThat(simpleCache.getInitializationDurationMs()).isAtLeast(0);
+      assertThat(simpleCache.getKeys()).hasSize(10);
+      assertThat(simpleCache.getCacheSpace()).isEqualTo(500);
+      for (int i = 0; i < 10; i++) {
+        String key = "key" + i;
+        assertThat(simpleCache.getCachedSpans(key)).hasSize(5);
+        for (CacheSpan span : simpleCache.getCachedSpans(key)) {
+          assertCachedDataReadCorrect(span);
+        }
+      }
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  /**
+   * Writes content for several keys from concurrent threads, whilst other threads query the cached
+   * spans of random keys and check that the cached length of each key never decreases.
+   */
+  private static void runConcurrentReadsAndWrites(SimpleCache simpleCache) throws Exception {
+    int keyCount = 6;
+    int spansPerKey = 20;
+    int spanLength = 10;
+    int readerCount = 4;
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    CountDownLatch startLatch = new CountDownLatch(1);
+    CountDownLatch writersFinished = new CountDownLatch(keyCount);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < keyCount; i++) {
+      String key = "key" + i;
+      threads.add(
+          new Thread(
+              () -> {
+                try {
+                  startLatch.await();
+                  CacheSpan holeSpan = simpleCache.startReadWrite(key, 0, LENGTH_UNSET);
+                  for (int j = 0; j < spansPerKey; j++) {
+                    addCache(simpleCache, key, j * spanLength, spanLength);
+                  }
+                  simpleCache.releaseHoleSpan(holeSpan);
+                } catch (Throwable e) {
+                  error.compareAndSet(null, e);
+                } finally {
+                  writersFinished.countDown();
+                }
+              }));
+    }
+    for (int i = 0; i < readerCount; i++) {
+      Random random = new Random(i);
+      threads.add(
+          new Thread(
+              () -> {
+                long[] lastCachedLengths = new long[keyCount];
+                try {
+                  startLatch.await();
+                  while (writersFinished.getCount() > 0) {
+                    int keyIndex = random.nextInt(keyCount);
+                    String key = "key" + keyIndex;
+                    long cachedLength = simpleCache.getCachedLength(key, 0, LENGTH_UNSET);
+                    cachedLength = Math.max(cachedLength, 0);
+                    assertThat(cachedLength).isAtLeast(lastCachedLengths[keyIndex]);
+                    assertThat(simpleCache.getCachedBytes(key, 0, LENGTH_UNSET))
+                        .isAtLeast(cachedLength);
+                    assertThat(simpleCache.isCached(key, 0, cachedLength)).isTrue();
+                    assertThat(simpleCache.getCachedSpans(key).size())
+                        .isAtMost(spansPerKey);
+                    lastCachedLengths[keyIndex] = cachedLength;
+                  }
+                } catch (Throwable e) {
+                  error.compareAndSet(null, e);
+                }
+              }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    startLatch.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(error.get()).isNull();
+    assertThat(simpleCache.getCacheSpace()).isEqualTo((long) keyCount * spansPerKey * spanLength);
+    for (int i = 0; i < keyCount; i++) {
+      assertThat(simpleCache.getCachedSpans("key" + i)).hasSize(spansPerKey);
+      assertThat(simpleCache.getCachedLength("key" + i, 0, LENGTH_UNSET))
+          .isEqualTo(spansPerKey * spanLength);
+    }
+  }
+
   private SimpleCache getSimpleCache() {
     return new SimpleCache(cacheDir, new NoOpCacheEvictor(), databaseProvider);
   }
@@ -650,6 +956,22 @@ public class SimpleCacheTest {
     }
   }
 
+  private static int getCacheFileCount(File dir) {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return 0;
+    }
+    int count = 0;
+    for (File file : files) {
+      if (file.isDirectory()) {
+        count += getCacheFileCount(file);
+      } else if (file.getName().endsWith(SimpleCacheSpan.COMMON_SUFFIX)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
   private static void assertNoCacheFiles(File dir) {
     File[] files = dir.listFiles();
     if (files == null) {
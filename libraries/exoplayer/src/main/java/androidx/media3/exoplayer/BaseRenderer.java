@@ -31,6 +31,7 @@ import androidx.media3.common.util.Util;
 import androidx.media3.decoder.DecoderInputBuffer;
 import androidx.media3.decoder.DecoderInputBuffer.InsufficientCapacityException;
 import androidx.media3.exoplayer.analytics.PlayerId;
+import androidx.media3.exoplayer.mediacodec.BatchBuffer;
 import androidx.media3.exoplayer.source.MediaPeriod;
 import androidx.media3.exoplayer.source.MediaSource;
 import androidx.media3.exoplayer.source.SampleStream;
@@ -543,6 +544,25 @@ public abstract class BaseRenderer implements Renderer, RendererCapabilities {
     return result;
   }
 
+  /**
+   * Reads multiple consecutive samples from the enabled upstream source, appending them to {@code
+   * batchBuffer}. See {@link SampleStream#readDataBatch(BatchBuffer, long)} for the samples that
+   * can be read this way. {@link #readSource} should be used when this method returns 0.
+   *
+   * <p>This method may be called when the renderer is in the following states: {@link
+   * #STATE_ENABLED}, {@link #STATE_STARTED}.
+   *
+   * @param batchBuffer The {@link BatchBuffer} to which samples should be appended.
+   * @return The number of samples appended to {@code batchBuffer}.
+   */
+  protected final int readSourceBatch(BatchBuffer batchBuffer) {
+    int sampleCount = Assertions.checkNotNull(stream).readDataBatch(batchBuffer, streamOffsetUs);
+    if (sampleCount > 0) {
+      readingPositionUs = max(readingPositionUs, batchBuffer.getLastSampleTimeUs());
+    }
+    return sampleCount;
+  }
+
   /**
    * Attempts to skip to the keyframe before the specified position, or to the end of the stream if
    * {@code positionUs} is beyond it.
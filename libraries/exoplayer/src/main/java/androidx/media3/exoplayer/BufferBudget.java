@@ -0,0 +1,255 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkState;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.upstream.DefaultAllocator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A buffer memory budget shared by multiple {@link LoadControl} instances, for example by the
+ * players of an autoplaying feed, a picture-in-picture player and a preload manager.
+ *
+ * <p>Each {@link LoadControl} {@linkplain #register registers} its {@link DefaultAllocator} with a
+ * {@linkplain C.Priority priority} and {@linkplain Registration#setRequestedBytes requests} the
+ * number of bytes it would like to buffer. The budget is granted in descending priority order, so
+ * that the foreground player is served first and preloading only uses what's left. The target
+ * buffer size of each registered allocator is set to the number of bytes granted to it.
+ *
+ * <p>A registration can also request a minimum number of bytes, which is granted before the rest
+ * of the budget is distributed and even if the budget is exceeded as a result. This ensures a low
+ * priority player can always buffer enough to make progress instead of being starved completely.
+ *
+ * <p>When memory pressure rises, the app can reduce the budget with {@link #setTotalBudgetBytes},
+ * which lowers the granted sizes starting from the lowest priority, and call {@link #trim()} to
+ * release unused allocations held by all registered allocators.
+ *
+ * <p>This class is thread-safe, so it can be shared by players running on different playback
+ * threads.
+ */
+@UnstableApi
+public final class BufferBudget {
+
+  /** The registration of an allocator with a {@link BufferBudget}. */
+  public final class Registration {
+
+    private final DefaultAllocator allocator;
+
+    // Guarded by lock.
+    private @C.Priority int priority;
+    private int requestedBytes;
+    private int minimumBytes;
+    private int grantedBytes;
+    private boolean registered;
+
+    private Registration(DefaultAllocator allocator, @C.Priority int priority) {
+      this.allocator = allocator;
+      this.priority = priority;
+      registered = true;
+    }
+
+    /**
+     * Sets the {@link C.Priority} of the registration. Larger values indicate higher priorities.
+     */
+    public void setPriority(@C.Priority int priority) {
+      synchronized (lock) {
+        if (this.priority != priority) {
+          this.priority = priority;
+          updateGrantedBytes();
+        }
+      }
+    }
+
+    /**
+     * Sets the number of bytes the allocator would like to buffer, without a guaranteed minimum.
+     */
+    public void setRequestedBytes(int requestedBytes) {
+      setRequestedBytes(requestedBytes, /* minimumBytes= */ 0);
+    }
+
+    /**
+     * Sets the number of bytes the allocator would like to buffer.
+     *
+     * @param requestedBytes The number of bytes the allocator would like to buffer.
+     * @param minimumBytes The number of bytes granted regardless of the total budget and the
+     *     priority of other registrations, capped at {@code requestedBytes}.
+     */
+    public void setRequestedBytes(int requestedBytes, int minimumBytes) {
+      checkArgument(requestedBytes >= 0 && minimumBytes >= 0);
+      synchronized (lock) {
+        if (this.requestedBytes != requestedBytes || this.minimumBytes != minimumBytes) {
+          this.requestedBytes = requestedBytes;
+          this.minimumBytes = minimumBytes;
+          updateGrantedBytes();
+        }
+      }
+    }
+
+    /**
+     * Returns the number of bytes granted to the allocator, which is at most the number of
+     * {@linkplain #setRequestedBytes requested bytes} and at least the requested minimum.
+     */
+    public int getGrantedBytes() {
+      synchronized (lock) {
+        return grantedBytes;
+      }
+    }
+
+    /**
+     * Removes the registration from the budget. The target buffer size of the allocator is not
+     * changed.
+     */
+    public void unregister() {
+      synchronized (lock) {
+        checkState(registered);
+        registered = false;
+        registrations.remove(this);
+        updateGrantedBytes();
+      }
+    }
+  }
+
+  private final Object lock;
+
+  // Guarded by lock.
+  private final List<Registration> registrations;
+  private long totalBudgetBytes;
+
+  /**
+   * Creates an instance.
+   *
+   * @param totalBudgetBytes The total number of bytes that may be granted to all registered
+   *     allocators.
+   */
+  public BufferBudget(long totalBudgetBytes) {
+    checkArgument(totalBudgetBytes >= 0);
+    this.totalBudgetBytes = totalBudgetBytes;
+    lock = new Object();
+    registrations = new ArrayList<>();
+  }
+
+  /**
+   * Registers an allocator with the budget. Nothing is granted until {@linkplain
+   * Registration#setRequestedBytes bytes are requested}.
+   *
+   * @param allocator The {@link DefaultAllocator} whose target buffer size is controlled by the
+   *     budget.
+   * @param priority The {@link C.Priority} of the registration. Larger values indicate higher
+   *     priorities.
+   * @return The {@link Registration}.
+   */
+  public Registration register(DefaultAllocator allocator, @C.Priority int priority) {
+    synchronized (lock) {
+      Registration registration = new Registration(allocator, priority);
+      registrations.add(registration);
+      return registration;
+    }
+  }
+
+  /** Sets the total number of bytes that may be granted to all registered allocators. */
+  public void setTotalBudgetBytes(long totalBudgetBytes) {
+    checkArgument(totalBudgetBytes >= 0);
+    synchronized (lock) {
+      this.totalBudgetBytes = totalBudgetBytes;
+      updateGrantedBytes();
+    }
+  }
+
+  /** Returns the total number of bytes that may be granted to all registered allocators. */
+  public long getTotalBudgetBytes() {
+    synchronized (lock) {
+      return totalBudgetBytes;
+    }
+  }
+
+  /**
+   * Returns the total number of bytes currently granted to all registered allocators. May exceed
+   * the {@linkplain #getTotalBudgetBytes() total budget} if the requested minimums do.
+   */
+  public long getTotalBytesGranted() {
+    synchronized (lock) {
+      long totalBytesGranted = 0;
+      for (int i = 0; i < registrations.size(); i++) {
+        totalBytesGranted += registrations.get(i).grantedBytes;
+      }
+      return totalBytesGranted;
+    }
+  }
+
+  /** Returns the total number of bytes currently allocated by all registered allocators. */
+  public long getTotalBytesAllocated() {
+    synchronized (lock) {
+      long totalBytesAllocated = 0;
+      for (int i = 0; i < registrations.size(); i++) {
+        totalBytesAllocated += registrations.get(i).allocator.getTotalBytesAllocated();
+      }
+      return totalBytesAllocated;
+    }
+  }
+
+  /**
+   * Releases unused allocations held by all registered allocators beyond their granted sizes.
+   *
+   * <p>Should be called when the app is asked to reduce its memory usage.
+   */
+  public void trim() {
+    synchronized (lock) {
+      for (int i = 0; i < registrations.size(); i++) {
+        registrations.get(i).allocator.trim();
+      }
+    }
+  }
+
+  // Guarded by lock.
+  private void updateGrantedBytes() {
+    List<Registration> registrationsByPriority = new ArrayList<>(registrations);
+    // The sort is stable, so registrations with the same priority are served in registration order.
+    Collections.sort(
+        registrationsByPriority,
+        (first, second) -> Integer.compare(second.priority, first.priority));
+    // Minimums are granted first, so that the lower priorities are never starved completely.
+    long remainingBytes = totalBudgetBytes;
+    for (int i = 0; i < registrationsByPriority.size(); i++) {
+      Registration registration = registrationsByPriority.get(i);
+      remainingBytes -= getGuaranteedBytes(registration);
+    }
+    remainingBytes = max(0, remainingBytes);
+    for (int i = 0; i < registrationsByPriority.size(); i++) {
+      Registration registration = registrationsByPriority.get(i);
+      int guaranteedBytes = getGuaranteedBytes(registration);
+      int extraBytes = (int) min(registration.requestedBytes - guaranteedBytes, remainingBytes);
+      remainingBytes -= extraBytes;
+      int grantedBytes = guaranteedBytes + extraBytes;
+      if (grantedBytes != registration.grantedBytes) {
+        registration.grantedBytes = grantedBytes;
+        // Reducing the target buffer size releases unused allocations beyond the new target.
+        registration.allocator.setTargetBufferSize(grantedBytes);
+      }
+    }
+  }
+
+  private static int getGuaranteedBytes(Registration registration) {
+    return min(registration.requestedBytes, registration.minimumBytes);
+  }
+}
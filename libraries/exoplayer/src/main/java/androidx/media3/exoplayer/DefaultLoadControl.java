@@ -119,6 +119,8 @@ public class DefaultLoadControl implements LoadControl {
     private boolean prioritizeTimeOverSizeThresholds;
     private int backBufferDurationMs;
     private boolean retainBackBufferFromKeyframe;
+    @Nullable private BufferBudget bufferBudget;
+    private @C.Priority int bufferBudgetPriority;
     private boolean buildCalled;
 
     /** Constructs a new instance. */
@@ -131,6 +133,7 @@ public class DefaultLoadControl implements LoadControl {
       prioritizeTimeOverSizeThresholds = DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS;
       backBufferDurationMs = DEFAULT_BACK_BUFFER_DURATION_MS;
       retainBackBufferFromKeyframe = DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME;
+      bufferBudgetPriority = C.PRIORITY_PLAYBACK;
     }
 
     /**
@@ -238,6 +241,30 @@ public class DefaultLoadControl implements LoadControl {
       return this;
     }
 
+    /**
+     * Sets a {@link BufferBudget} shared with other {@link LoadControl} instances.
+     *
+     * <p>The target buffer size of the load control is limited to the number of bytes granted by
+     * the budget, which grants bytes to load controls in descending priority order. The priority
+     * can be changed later using {@link DefaultLoadControl#setBufferBudgetPriority(int)}. Each
+     * player is guaranteed up to {@link DefaultLoadControl#DEFAULT_MIN_BUFFER_SIZE} bytes
+     * regardless of its priority, even if this exceeds the budget.
+     *
+     * @param bufferBudget The {@link BufferBudget}.
+     * @param priority The {@link C.Priority} of the load control within the budget, for example
+     *     {@link C#PRIORITY_PLAYBACK} for a foreground player or {@link
+     *     C#PRIORITY_PLAYBACK_PRELOAD} for preloading.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    @CanIgnoreReturnValue
+    public Builder setBufferBudget(BufferBudget bufferBudget, @C.Priority int priority) {
+      checkState(!buildCalled);
+      this.bufferBudget = bufferBudget;
+      this.bufferBudgetPriority = priority;
+      return this;
+    }
+
     /** Creates a {@link DefaultLoadControl}. */
     public DefaultLoadControl build() {
       checkState(!buildCalled);
@@ -254,7 +281,9 @@ public class DefaultLoadControl implements LoadControl {
           targetBufferBytes,
           prioritizeTimeOverSizeThresholds,
           backBufferDurationMs,
-          retainBackBufferFromKeyframe);
+          retainBackBufferFromKeyframe,
+          bufferBudget,
+          bufferBudgetPriority);
     }
   }
 
@@ -269,8 +298,11 @@ public class DefaultLoadControl implements LoadControl {
   private final long backBufferDurationUs;
   private final boolean retainBackBufferFromKeyframe;
   private final HashMap<PlayerId, PlayerLoadingState> loadingStates;
+  @Nullable private final BufferBudget bufferBudget;
 
+  private volatile @C.Priority int bufferBudgetPriority;
   private long threadId;
+  @Nullable private BufferBudget.Registration bufferBudgetRegistration;
 
   /** Constructs a new instance, using the {@code DEFAULT_*} constants defined in this class. */
   public DefaultLoadControl() {
@@ -296,6 +328,32 @@ public class DefaultLoadControl implements LoadControl {
       boolean prioritizeTimeOverSizeThresholds,
       int backBufferDurationMs,
       boolean retainBackBufferFromKeyframe) {
+    this(
+        allocator,
+        minBufferMs,
+        maxBufferMs,
+        bufferForPlaybackMs,
+        bufferForPlaybackAfterRebufferMs,
+        targetBufferBytes,
+        prioritizeTimeOverSizeThresholds,
+        backBufferDurationMs,
+        retainBackBufferFromKeyframe,
+        /* bufferBudget= */ null,
+        /* bufferBudgetPriority= */ C.PRIORITY_PLAYBACK);
+  }
+
+  protected DefaultLoadControl(
+      DefaultAllocator allocator,
+      int minBufferMs,
+      int maxBufferMs,
+      int bufferForPlaybackMs,
+      int bufferForPlaybackAfterRebufferMs,
+      int targetBufferBytes,
+      boolean prioritizeTimeOverSizeThresholds,
+      int backBufferDurationMs,
+      boolean retainBackBufferFromKeyframe,
+      @Nullable BufferBudget bufferBudget,
+      @C.Priority int bufferBudgetPriority) {
     assertGreaterOrEqual(bufferForPlaybackMs, 0, "bufferForPlaybackMs", "0");
     assertGreaterOrEqual(
         bufferForPlaybackAfterRebufferMs, 0, "bufferForPlaybackAfterRebufferMs", "0");
@@ -317,10 +375,26 @@ public class DefaultLoadControl implements LoadControl {
     this.prioritizeTimeOverSizeThresholds = prioritizeTimeOverSizeThresholds;
     this.backBufferDurationUs = Util.msToUs(backBufferDurationMs);
     this.retainBackBufferFromKeyframe = retainBackBufferFromKeyframe;
+    this.bufferBudget = bufferBudget;
+    this.bufferBudgetPriority = bufferBudgetPriority;
     loadingStates = new HashMap<>();
     threadId = C.INDEX_UNSET;
   }
 
+  /**
+   * Sets the {@link C.Priority} of this load control within the {@link BufferBudget} set with
+   * {@link Builder#setBufferBudget}, for example when a preloading player moves to the foreground.
+   * Has no effect if no budget was set.
+   *
+   * <p>This method may be called from any thread. The new priority is applied the next time the
+   * player checks whether to continue loading.
+   *
+   * @param priority The {@link C.Priority}. Larger values indicate higher priorities.
+   */
+  public void setBufferBudgetPriority(@C.Priority int priority) {
+    bufferBudgetPriority = priority;
+  }
+
   @Override
   public void onPrepared(PlayerId playerId) {
     long currentThreadId = Thread.currentThread().getId();
@@ -382,7 +456,7 @@ public class DefaultLoadControl implements LoadControl {
   public boolean shouldContinueLoading(Parameters parameters) {
     PlayerLoadingState playerLoadingState = checkNotNull(loadingStates.get(parameters.playerId));
     boolean targetBufferSizeReached =
-        allocator.getTotalBytesAllocated() >= calculateTotalTargetBufferBytes();
+        allocator.getTotalBytesAllocated() >= getTargetBufferBytes();
     long minBufferUs = this.minBufferUs;
     if (parameters.playbackSpeed > 1) {
       // The playback speed is faster than real time, so scale up the minimum required media
@@ -419,7 +493,7 @@ public class DefaultLoadControl implements LoadControl {
     return minBufferDurationUs <= 0
         || bufferedDurationUs >= minBufferDurationUs
         || (!prioritizeTimeOverSizeThresholds
-            && allocator.getTotalBytesAllocated() >= calculateTotalTargetBufferBytes());
+            && allocator.getTotalBytesAllocated() >= getTargetBufferBytes());
   }
 
   /**
@@ -450,6 +524,15 @@ public class DefaultLoadControl implements LoadControl {
     return totalTargetBufferBytes;
   }
 
+  private int getTargetBufferBytes() {
+    if (bufferBudgetRegistration == null) {
+      return calculateTotalTargetBufferBytes();
+    }
+    bufferBudgetRegistration.setPriority(bufferBudgetPriority);
+    // The granted size never exceeds the requested total target buffer size.
+    return bufferBudgetRegistration.getGrantedBytes();
+  }
+
   private void resetPlayerLoadingState(PlayerId playerId) {
     PlayerLoadingState playerLoadingState = checkNotNull(loadingStates.get(playerId));
     playerLoadingState.targetBufferBytes =
@@ -467,7 +550,24 @@ public class DefaultLoadControl implements LoadControl {
 
   private void updateAllocator() {
     if (loadingStates.isEmpty()) {
+      if (bufferBudgetRegistration != null) {
+        bufferBudgetRegistration.unregister();
+        bufferBudgetRegistration = null;
+      }
       allocator.reset();
+    } else if (bufferBudget != null) {
+      if (bufferBudgetRegistration == null) {
+        bufferBudgetRegistration = bufferBudget.register(allocator, bufferBudgetPriority);
+      }
+      // The budget sets the target buffer size of the allocator to the granted size. Each player
+      // is guaranteed the minimum default buffer size, so that it's never starved by players with a
+      // higher priority and can always buffer enough to make progress.
+      int minimumBufferBytes = 0;
+      for (PlayerLoadingState state : loadingStates.values()) {
+        minimumBufferBytes += min(state.targetBufferBytes, DEFAULT_MIN_BUFFER_SIZE);
+      }
+      bufferBudgetRegistration.setRequestedBytes(
+          calculateTotalTargetBufferBytes(), minimumBufferBytes);
     } else {
       allocator.setTargetBufferSize(calculateTotalTargetBufferBytes());
     }
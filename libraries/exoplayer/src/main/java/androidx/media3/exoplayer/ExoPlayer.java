@@ -452,13 +452,35 @@ public interface ExoPlayer extends Player {
     public final long targetPreloadDurationUs;
 
     /**
-     * Creates an instance.
+     * The maximum number of upcoming playlist items that are prepared ahead of the loading item.
+     *
+     * <p>Preloaded items are prepared concurrently, so that manifests and initialization data of
+     * several upcoming items can be loaded while the current item is still buffering.
+     */
+    public final int maxPreloadedItemCount;
+
+    /**
+     * Creates an instance that preloads a single upcoming playlist item.
      *
      * @param targetPreloadDurationUs The target duration to preload, in microseconds or {@link
      *     C#TIME_UNSET} to disable preloading.
      */
     public PreloadConfiguration(long targetPreloadDurationUs) {
+      this(targetPreloadDurationUs, /* maxPreloadedItemCount= */ 1);
+    }
+
+    /**
+     * Creates an instance.
+     *
+     * @param targetPreloadDurationUs The target duration to preload, in microseconds or {@link
+     *     C#TIME_UNSET} to disable preloading.
+     * @param maxPreloadedItemCount The maximum number of upcoming playlist items to preload. Must
+     *     be greater than zero.
+     */
+    public PreloadConfiguration(long targetPreloadDurationUs, int maxPreloadedItemCount) {
+      checkArgument(maxPreloadedItemCount > 0);
       this.targetPreloadDurationUs = targetPreloadDurationUs;
+      this.maxPreloadedItemCount = maxPreloadedItemCount;
     }
   }
 
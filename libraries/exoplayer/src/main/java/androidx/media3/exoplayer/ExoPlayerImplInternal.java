@@ -949,6 +949,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
   private void setPreloadConfigurationInternal(PreloadConfiguration preloadConfiguration) {
     this.preloadConfiguration = preloadConfiguration;
     queue.updatePreloadConfiguration(playbackInfo.timeline, preloadConfiguration);
+    queue.preparePreloadPeriods(/* callback= */ this);
   }
 
   private void seekToCurrentPosition(boolean sendDiscontinuity) throws ExoPlaybackException {
@@ -2197,7 +2198,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
       MediaPeriodInfo info = queue.getNextMediaPeriodInfo(rendererPositionUs, playbackInfo);
       if (info != null) {
         MediaPeriodHolder mediaPeriodHolder = queue.enqueueNextMediaPeriodHolder(info);
-        mediaPeriodHolder.mediaPeriod.prepare(this, info.startPositionUs);
+        if (!mediaPeriodHolder.prepareCalled) {
+          mediaPeriodHolder.prepare(this, info.startPositionUs);
+        } else if (mediaPeriodHolder.preparedWhilePreloading) {
+          // The preparation callback was consumed while preloading, so handle it again now.
+          handler.obtainMessage(MSG_PERIOD_PREPARED, mediaPeriodHolder.mediaPeriod).sendToTarget();
+        }
         if (queue.getPlayingPeriod() == mediaPeriodHolder) {
           resetRendererPosition(info.startPositionUs);
         }
@@ -2327,6 +2333,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
     }
     lastPreloadPoolInvalidationTimeline = playbackInfo.timeline;
     queue.invalidatePreloadPool(playbackInfo.timeline);
+    queue.preparePreloadPeriods(/* callback= */ this);
   }
 
   private boolean replaceStreamsOrDisableRendererForTransition() throws ExoPlaybackException {
@@ -2509,7 +2516,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
   private void handlePeriodPrepared(MediaPeriod mediaPeriod) throws ExoPlaybackException {
     if (!queue.isLoading(mediaPeriod)) {
-      // Stale event.
+      @Nullable MediaPeriodHolder preloadHolder = queue.getPreloadHolderByMediaPeriod(mediaPeriod);
+      if (preloadHolder != null) {
+        // Defer track selection until the period is enqueued, as the track selector parameters and
+        // the timeline may change in the meantime.
+        preloadHolder.preparedWhilePreloading = true;
+      }
+      // Otherwise this is a stale event.
       return;
     }
     MediaPeriodHolder loadingPeriodHolder = queue.getLoadingPeriod();
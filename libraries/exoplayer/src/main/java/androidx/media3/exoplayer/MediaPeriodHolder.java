@@ -53,6 +53,15 @@ import java.io.IOException;
    */
   public final @NullableType SampleStream[] sampleStreams;
 
+  /** Whether {@link #prepare} has been called. */
+  public boolean prepareCalled;
+
+  /**
+   * Whether the media period finished preparing while it was in the preload pool, before {@link
+   * #handlePrepared} could be called.
+   */
+  public boolean preparedWhilePreloading;
+
   /** Whether the media period has finished preparing. */
   public boolean prepared;
 
@@ -183,6 +192,17 @@ import java.io.IOException;
     return !prepared ? 0 : mediaPeriod.getNextLoadPositionUs();
   }
 
+  /**
+   * Prepares the media period.
+   *
+   * @param callback The callback to be notified when the media period is prepared.
+   * @param positionUs The expected starting position of the media period, in microseconds.
+   */
+  public void prepare(MediaPeriod.Callback callback, long positionUs) {
+    prepareCalled = true;
+    mediaPeriod.prepare(callback, positionUs);
+  }
+
   /**
    * Handles period preparation.
    *
@@ -220,29 +220,41 @@ import java.util.List;
     return newPeriodHolder;
   }
 
-  /** Invalidates the preload pool. */
+  /**
+   * Invalidates the preload pool.
+   *
+   * <p>Up to {@link PreloadConfiguration#maxPreloadedItemCount} media period holders are kept for
+   * the windows following the loading period. Holders that are still needed are retained, all
+   * others are released.
+   */
   public void invalidatePreloadPool(Timeline timeline) {
     if (preloadConfiguration.targetPreloadDurationUs == C.TIME_UNSET || loading == null) {
       releasePreloadPool();
       return;
     }
-    MediaPeriodHolder loading = this.loading;
     List<MediaPeriodHolder> newPreloadPriorityList = new ArrayList<>();
-    Pair<Object, Long> defaultPositionOfNextWindow =
-        getDefaultPeriodPositionOfNextWindow(
-            timeline, loading.info.id.periodUid, /* defaultPositionProjectionUs= */ 0L);
-    if (defaultPositionOfNextWindow != null
-        && !timeline
-            .getWindow(
-                timeline.getPeriodByUid(defaultPositionOfNextWindow.first, period).windowIndex,
-                window)
-            .isLive()) {
+    Object previousPeriodUid = loading.info.id.periodUid;
+    long previousRendererPositionOffsetUs = loading.getRendererOffset();
+    long previousDurationUs = loading.info.durationUs;
+    while (newPreloadPriorityList.size() < preloadConfiguration.maxPreloadedItemCount) {
+      @Nullable
+      Pair<Object, Long> defaultPositionOfNextWindow =
+          getDefaultPeriodPositionOfNextWindow(
+              timeline, previousPeriodUid, /* defaultPositionProjectionUs= */ 0L);
+      if (defaultPositionOfNextWindow == null
+          || containsPeriodUid(newPreloadPriorityList, defaultPositionOfNextWindow.first)
+          || timeline
+              .getWindow(
+                  timeline.getPeriodByUid(defaultPositionOfNextWindow.first, period).windowIndex,
+                  window)
+              .isLive()) {
+        break;
+      }
       long windowSequenceNumber =
           resolvePeriodUidToWindowSequenceNumberInPreloadPeriods(defaultPositionOfNextWindow.first);
       if (windowSequenceNumber == C.INDEX_UNSET) {
         windowSequenceNumber = nextWindowSequenceNumber++;
       }
-      @Nullable
       MediaPeriodInfo nextInfo =
           getMediaPeriodInfoForPeriodPosition(
               timeline,
@@ -251,17 +263,56 @@ import java.util.List;
               windowSequenceNumber);
       @Nullable
       MediaPeriodHolder nextMediaPeriodHolder = removePreloadedMediaPeriodHolder(nextInfo);
+      // The holder's renderer position offset may be different and is reset when enqueuing.
+      long rendererPositionOffsetUs =
+          previousRendererPositionOffsetUs + previousDurationUs - nextInfo.startPositionUs;
       if (nextMediaPeriodHolder == null) {
-        // The holder's renderer position offset may be different and is reset when enqueuing.
-        long rendererPositionOffsetUs =
-            loading.getRendererOffset() + loading.info.durationUs - nextInfo.startPositionUs;
         nextMediaPeriodHolder = mediaPeriodHolderFactory.create(nextInfo, rendererPositionOffsetUs);
       }
       newPreloadPriorityList.add(nextMediaPeriodHolder);
+      if (nextInfo.durationUs == C.TIME_UNSET) {
+        // The start of the following window can't be determined yet.
+        break;
+      }
+      previousPeriodUid = nextInfo.id.periodUid;
+      previousRendererPositionOffsetUs = rendererPositionOffsetUs;
+      previousDurationUs = nextInfo.durationUs;
     }
     releaseAndResetPreloadPriorityList(newPreloadPriorityList);
   }
 
+  /**
+   * Prepares the media periods of the preload pool that haven't been prepared yet.
+   *
+   * <p>All periods are prepared concurrently. Only preparation is started, loading of media data
+   * is deferred until the period is enqueued as the loading period.
+   *
+   * @param callback The callback to be notified when a preloaded period is prepared.
+   */
+  public void preparePreloadPeriods(MediaPeriod.Callback callback) {
+    for (int i = 0; i < preloadPriorityList.size(); i++) {
+      MediaPeriodHolder mediaPeriodHolder = preloadPriorityList.get(i);
+      if (!mediaPeriodHolder.prepareCalled) {
+        mediaPeriodHolder.prepare(callback, mediaPeriodHolder.info.startPositionUs);
+      }
+    }
+  }
+
+  /**
+   * Returns the {@link MediaPeriodHolder} in the preload pool that holds the specified media
+   * period, or null if the media period isn't preloaded.
+   */
+  @Nullable
+  public MediaPeriodHolder getPreloadHolderByMediaPeriod(MediaPeriod mediaPeriod) {
+    for (int i = 0; i < preloadPriorityList.size(); i++) {
+      MediaPeriodHolder mediaPeriodHolder = preloadPriorityList.get(i);
+      if (mediaPeriodHolder.mediaPeriod == mediaPeriod) {
+        return mediaPeriodHolder;
+      }
+    }
+    return null;
+  }
+
   /** Removes all periods from the preload pool and releases them. */
   public void releasePreloadPool() {
     if (!preloadPriorityList.isEmpty()) {
@@ -280,6 +331,15 @@ import java.util.List;
     return null;
   }
 
+  private static boolean containsPeriodUid(List<MediaPeriodHolder> mediaPeriodHolders, Object uid) {
+    for (int i = 0; i < mediaPeriodHolders.size(); i++) {
+      if (mediaPeriodHolders.get(i).uid.equals(uid)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private void releaseAndResetPreloadPriorityList(List<MediaPeriodHolder> newPriorityList) {
     for (int i = 0; i < preloadPriorityList.size(); i++) {
       preloadPriorityList.get(i).release();
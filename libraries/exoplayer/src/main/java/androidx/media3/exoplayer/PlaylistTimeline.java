@@ -15,6 +15,7 @@
  */
 package androidx.media3.exoplayer;
 
+import androidx.annotation.Nullable;
 import androidx.media3.common.AdPlaybackState;
 import androidx.media3.common.C;
 import androidx.media3.common.Player;
@@ -37,6 +38,7 @@ import java.util.List;
   private final Timeline[] timelines;
   private final Object[] uids;
   private final HashMap<Object, Integer> childIndexByUid;
+  private final ShuffleOrder shuffleOrder;
 
   /** Creates an instance. */
   public PlaylistTimeline(
@@ -52,6 +54,7 @@ import java.util.List;
     firstPeriodInChildIndices = new int[childCount];
     firstWindowInChildIndices = new int[childCount];
     this.uids = uids;
+    this.shuffleOrder = shuffleOrder;
     childIndexByUid = new HashMap<>();
     int index = 0;
     int windowCount = 0;
@@ -119,6 +122,48 @@ import java.util.List;
     return periodCount;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Playlist timelines are typically compared after each playlist update, with the child
+   * timelines of unchanged playlist items being shared between both timelines. If all child
+   * timelines are shared and their order is the same, the timelines are known to be equal without
+   * comparing every window and period.
+   */
+  @Override
+  public boolean equals(@Nullable Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj instanceof PlaylistTimeline && sharesAllChildTimelinesWith((PlaylistTimeline) obj)) {
+      return true;
+    }
+    return super.equals(obj);
+  }
+
+  private boolean sharesAllChildTimelinesWith(PlaylistTimeline other) {
+    if (timelines.length != other.timelines.length) {
+      return false;
+    }
+    for (int i = 0; i < timelines.length; i++) {
+      if (timelines[i] != other.timelines[i] || !uids[i].equals(other.uids[i])) {
+        return false;
+      }
+    }
+    int childIndex = shuffleOrder.getFirstIndex();
+    if (childIndex != other.shuffleOrder.getFirstIndex()) {
+      return false;
+    }
+    while (childIndex != C.INDEX_UNSET) {
+      int nextChildIndex = shuffleOrder.getNextIndex(childIndex);
+      if (nextChildIndex != other.shuffleOrder.getNextIndex(childIndex)) {
+        return false;
+      }
+      childIndex = nextChildIndex;
+    }
+    return true;
+  }
+
   /**
    * Creates a copy of the timeline and wraps each child timeline with a {@link ForwardingTimeline}
    * that overrides {@link Timeline#getPeriod(int, Period, boolean)} to set the {@link
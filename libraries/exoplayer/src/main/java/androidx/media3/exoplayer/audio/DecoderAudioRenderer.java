@@ -166,6 +166,7 @@ public abstract class DecoderAudioRenderer<
   private final long[] pendingOutputStreamOffsetsUs;
   private int pendingOutputStreamOffsetCount;
   private boolean hasPendingReportedSkippedSilence;
+  private long nextBufferToWritePresentationTimeUs;
 
   public DecoderAudioRenderer() {
     this(/* eventHandler= */ null, /* eventListener= */ null);
@@ -227,6 +228,7 @@ public abstract class DecoderAudioRenderer<
     audioTrackNeedsConfigure = true;
     setOutputStreamOffsetUs(C.TIME_UNSET);
     pendingOutputStreamOffsetsUs = new long[MAX_PENDING_OUTPUT_STREAM_OFFSET_COUNT];
+    nextBufferToWritePresentationTimeUs = C.TIME_UNSET;
   }
 
   @Override
@@ -235,6 +237,24 @@ public abstract class DecoderAudioRenderer<
     return this;
   }
 
+  @Override
+  public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    if (nextBufferToWritePresentationTimeUs == C.TIME_UNSET) {
+      return super.getDurationToProgressUs(positionUs, elapsedRealtimeUs);
+    }
+    // The sink can accept more data once about half of the buffered duration has been played out.
+    long durationUs =
+        (long)
+            ((nextBufferToWritePresentationTimeUs - positionUs)
+                / audioSink.getPlaybackParameters().speed
+                / 2);
+    if (getState() == STATE_STARTED) {
+      // Account for the elapsed time since the start of this iteration of the rendering loop.
+      durationUs -= Util.msToUs(getClock().elapsedRealtime()) - elapsedRealtimeUs;
+    }
+    return max(DEFAULT_DURATION_TO_PROGRESS_US, durationUs);
+  }
+
   @Override
   public final @Capabilities int supportsFormat(Format format) {
     if (!MimeTypes.isAudio(format.sampleMimeType)) {
@@ -466,9 +486,12 @@ public abstract class DecoderAudioRenderer<
       decoderCounters.renderedOutputBufferCount++;
       outputBuffer.release();
       outputBuffer = null;
+      nextBufferToWritePresentationTimeUs = C.TIME_UNSET;
       return true;
     }
 
+    // The sink's buffers are full, so the buffer needs to be written again later.
+    nextBufferToWritePresentationTimeUs = outputBuffer.timeUs;
     return false;
   }
 
@@ -627,6 +650,7 @@ public abstract class DecoderAudioRenderer<
     allowPositionDiscontinuity = true;
     inputStreamEnded = false;
     outputStreamEnded = false;
+    nextBufferToWritePresentationTimeUs = C.TIME_UNSET;
     if (decoder != null) {
       flushDecoder();
     }
@@ -649,6 +673,7 @@ public abstract class DecoderAudioRenderer<
     audioTrackNeedsConfigure = true;
     setOutputStreamOffsetUs(C.TIME_UNSET);
     hasPendingReportedSkippedSilence = false;
+    nextBufferToWritePresentationTimeUs = C.TIME_UNSET;
     try {
       setSourceDrmSession(null);
       releaseDecoder();
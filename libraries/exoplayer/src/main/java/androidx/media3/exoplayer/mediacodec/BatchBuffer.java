@@ -16,16 +16,19 @@
 package androidx.media3.exoplayer.mediacodec;
 
 import static androidx.media3.common.util.Assertions.checkArgument;
+import static java.lang.Math.max;
 
 import androidx.annotation.IntRange;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
 import androidx.media3.decoder.DecoderInputBuffer;
 import java.nio.ByteBuffer;
 
 /** Buffer to which multiple sample buffers can be appended for batch processing */
-/* package */ final class BatchBuffer extends DecoderInputBuffer {
+@UnstableApi
+public final class BatchBuffer extends DecoderInputBuffer {
 
   /** The default maximum number of samples that can be appended before the buffer is full. */
   public static final int DEFAULT_MAX_SAMPLE_COUNT = 32;
@@ -84,6 +87,49 @@ import java.nio.ByteBuffer;
     return sampleCount > 0;
   }
 
+  /** Returns the number of samples that can be appended before the buffer is full. */
+  public int getRemainingSampleCapacity() {
+    return max(0, maxSampleCount - sampleCount);
+  }
+
+  /**
+   * Returns the number of bytes of sample data that can be appended before the buffer is full.
+   * Note that the first sample appended to an empty buffer is always accepted, regardless of its
+   * size.
+   */
+  public int getRemainingCapacityBytes() {
+    return data == null ? MAX_SIZE_BYTES : max(0, MAX_SIZE_BYTES - data.position());
+  }
+
+  /**
+   * Records that one or more samples have been appended to the buffer, after the caller wrote their
+   * data to {@link #data}.
+   *
+   * <p>The caller is responsible for respecting {@link #getRemainingSampleCapacity()} and {@link
+   * #getRemainingCapacityBytes()}, and for only appending samples that {@link
+   * #append(DecoderInputBuffer)} would accept.
+   *
+   * @param sampleCount The number of appended samples.
+   * @param firstSampleTimeUs The timestamp of the first appended sample.
+   * @param lastSampleTimeUs The timestamp of the last appended sample.
+   * @param firstSampleIsKeyFrame Whether the first appended sample is a key frame.
+   */
+  public void appendSamples(
+      @IntRange(from = 1) int sampleCount,
+      long firstSampleTimeUs,
+      long lastSampleTimeUs,
+      boolean firstSampleIsKeyFrame) {
+    checkArgument(sampleCount > 0);
+    if (this.sampleCount == 0) {
+      timeUs = firstSampleTimeUs;
+      if (firstSampleIsKeyFrame) {
+        setFlags(C.BUFFER_FLAG_KEY_FRAME);
+      }
+    }
+    this.sampleCount += sampleCount;
+    this.lastSampleTimeUs = lastSampleTimeUs;
+  }
+
   /**
    * Attempts to append the provided buffer.
    *
@@ -2420,6 +2420,15 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     FormatHolder formatHolder = getFormatHolder();
     bypassSampleBuffer.clear();
     while (true) {
+      if (canBypassReadBatch()) {
+        // Read as many plain samples as possible in one go, falling back to reading the next sample
+        // individually if none can be batched.
+        if (readSourceBatch(bypassBatchBuffer) > 0) {
+          largestQueuedPresentationTimeUs =
+              max(largestQueuedPresentationTimeUs, bypassBatchBuffer.getLastSampleTimeUs());
+          continue;
+        }
+      }
       bypassSampleBuffer.clear();
       @ReadDataResult int result = readSource(formatHolder, bypassSampleBuffer, /* readFlags= */ 0);
       switch (result) {
@@ -2492,6 +2501,18 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     }
   }
 
+  private boolean canBypassReadBatch() {
+    // Batched reads don't go through the Opus packetizer, and must not mix decode-only and regular
+    // samples. The latter is guaranteed once the batch buffer holds a sample that isn't
+    // decode-only, because batched reads stop at samples with smaller timestamps than their
+    // predecessors.
+    return !waitingForFirstSampleInFormat
+        && bypassBatchBuffer.hasSamples()
+        && outputFormat != null
+        && !Objects.equals(outputFormat.sampleMimeType, MimeTypes.AUDIO_OPUS)
+        && !isDecodeOnly(getLastResetPositionUs(), bypassBatchBuffer.getLastSampleTimeUs());
+  }
+
   private boolean haveBypassBatchBufferAndNewSampleSameDecodeOnlyState() {
     // TODO: b/295800114 - Splitting the batch buffer by decode-only state isn't safe for formats
     // where not every sample is a keyframe because the downstream component may receive encoded
@@ -15,6 +15,7 @@
  */
 package androidx.media3.exoplayer.offline;
 
+import static androidx.media3.common.util.Assertions.checkArgument;
 import static androidx.media3.common.util.Assertions.checkNotNull;
 
 import androidx.annotation.Nullable;
@@ -23,26 +24,51 @@ import androidx.media3.common.MediaItem;
 import androidx.media3.common.PriorityTaskManager;
 import androidx.media3.common.PriorityTaskManager.PriorityTooLowException;
 import androidx.media3.common.util.Assertions;
+import androidx.media3.common.util.ConditionVariable;
 import androidx.media3.common.util.RunnableFutureTask;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
 import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.cache.Cache;
 import androidx.media3.datasource.cache.CacheDataSource;
 import androidx.media3.datasource.cache.CacheWriter;
+import androidx.media3.datasource.cache.ContentMetadata;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
-/** A downloader for progressive media streams. */
+/**
+ * A downloader for progressive media streams.
+ *
+ * <p>If created with a maximum number of parallel downloads greater than one, and the length of the
+ * stream is known, the stream is split into byte ranges that are downloaded in parallel using the
+ * provided {@link Executor}. The ranges are sized so that each parallel download initially fetches
+ * a large range, with the ranges becoming smaller towards the end of the stream so that the
+ * parallel downloads finish at around the same time.
+ */
 @UnstableApi
 public final class ProgressiveDownloader implements Downloader {
 
+  /** The minimum length of a byte range that's downloaded in parallel with other ranges. */
+  private static final long MIN_RANGE_LENGTH = 1024 * 1024;
+
+  /** The maximum length of a byte range that's downloaded in parallel with other ranges. */
+  private static final long MAX_RANGE_LENGTH = 32 * 1024 * 1024;
+
+  private static final int BUFFER_SIZE_BYTES = 128 * 1024;
+
   private final Executor executor;
   private final DataSpec dataSpec;
+  private final CacheDataSource.Factory cacheDataSourceFactory;
   private final CacheDataSource dataSource;
   private final CacheWriter cacheWriter;
   @Nullable private final PriorityTaskManager priorityTaskManager;
+  private final int maxParallelDownloads;
+  private final ArrayList<RangeDownloadRunnable> activeRunnables;
+  private final ConditionVariable runnableFinishedCondition;
 
   @Nullable private ProgressListener progressListener;
   private volatile @MonotonicNonNull RunnableFutureTask<Void, IOException> downloadRunnable;
@@ -66,13 +92,34 @@ public final class ProgressiveDownloader implements Downloader {
    * @param mediaItem The media item with a uri to the stream to be downloaded.
    * @param cacheDataSourceFactory A {@link CacheDataSource.Factory} for the cache into which the
    *     download will be written.
-   * @param executor An {@link Executor} used to make requests for the media being downloaded. In
-   *     the future, providing an {@link Executor} that uses multiple threads may speed up the
-   *     download by allowing parts of it to be executed in parallel.
+   * @param executor An {@link Executor} used to make requests for the media being downloaded.
    */
   public ProgressiveDownloader(
       MediaItem mediaItem, CacheDataSource.Factory cacheDataSourceFactory, Executor executor) {
+    this(mediaItem, cacheDataSourceFactory, executor, /* maxParallelDownloads= */ 1);
+  }
+
+  /**
+   * Creates a new instance.
+   *
+   * @param mediaItem The media item with a uri to the stream to be downloaded.
+   * @param cacheDataSourceFactory A {@link CacheDataSource.Factory} for the cache into which the
+   *     download will be written.
+   * @param executor An {@link Executor} used to make requests for the media being downloaded. To
+   *     download byte ranges in parallel, the {@link Executor} must use at least {@code
+   *     maxParallelDownloads} threads.
+   * @param maxParallelDownloads The maximum number of byte ranges of the stream to download in
+   *     parallel. If {@code 1}, the stream is downloaded using a single request.
+   */
+  public ProgressiveDownloader(
+      MediaItem mediaItem,
+      CacheDataSource.Factory cacheDataSourceFactory,
+      Executor executor,
+      int maxParallelDownloads) {
+    checkArgument(maxParallelDownloads > 0);
     this.executor = Assertions.checkNotNull(executor);
+    this.cacheDataSourceFactory = cacheDataSourceFactory;
+    this.maxParallelDownloads = maxParallelDownloads;
     Assertions.checkNotNull(mediaItem.localConfiguration);
     dataSpec =
         new DataSpec.Builder()
@@ -86,6 +133,8 @@ public final class ProgressiveDownloader implements Downloader {
     cacheWriter =
         new CacheWriter(dataSource, dataSpec, /* temporaryBuffer= */ null, progressListener);
     priorityTaskManager = cacheDataSourceFactory.getUpstreamPriorityTaskManager();
+    activeRunnables = new ArrayList<>();
+    runnableFinishedCondition = new ConditionVariable();
   }
 
   @Override
@@ -95,6 +144,42 @@ public final class ProgressiveDownloader implements Downloader {
     if (priorityTaskManager != null) {
       priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
     }
+    try {
+      long contentLength = maxParallelDownloads > 1 ? resolveContentLength() : C.LENGTH_UNSET;
+      if (contentLength != C.LENGTH_UNSET && contentLength > MIN_RANGE_LENGTH) {
+        downloadRangesInParallel(contentLength);
+      } else {
+        downloadSequentially();
+      }
+    } finally {
+      if (priorityTaskManager != null) {
+        priorityTaskManager.remove(C.PRIORITY_DOWNLOAD);
+      }
+    }
+  }
+
+  @Override
+  public void cancel() {
+    synchronized (activeRunnables) {
+      isCanceled = true;
+      RunnableFutureTask<Void, IOException> downloadRunnable = this.downloadRunnable;
+      if (downloadRunnable != null) {
+        downloadRunnable.cancel(/* interruptIfRunning= */ true);
+      }
+      for (int i = 0; i < activeRunnables.size(); i++) {
+        activeRunnables.get(i).cancel(/* interruptIfRunning= */ true);
+      }
+    }
+    // Wake up the download thread if it's waiting for a range to finish.
+    runnableFinishedCondition.open();
+  }
+
+  @Override
+  public void remove() {
+    dataSource.getCache().removeResource(dataSource.getCacheKeyFactory().buildCacheKey(dataSpec));
+  }
+
+  private void downloadSequentially() throws IOException, InterruptedException {
     try {
       boolean finished = false;
       while (!finished && !isCanceled) {
@@ -135,24 +220,191 @@ public final class ProgressiveDownloader implements Downloader {
       // If the main download thread was interrupted as part of cancelation, then it's possible that
       // the runnable is still doing work. We need to wait until it's finished before returning.
       checkNotNull(downloadRunnable).blockUntilFinished();
-      if (priorityTaskManager != null) {
-        priorityTaskManager.remove(C.PRIORITY_DOWNLOAD);
+    }
+  }
+
+  /**
+   * Returns the length of the stream, opening a connection to resolve it if it's not already known
+   * to the cache, or {@link C#LENGTH_UNSET} if it can't be resolved.
+   */
+  private long resolveContentLength() throws IOException, InterruptedException {
+    Cache cache = dataSource.getCache();
+    String cacheKey = dataSource.getCacheKeyFactory().buildCacheKey(dataSpec);
+    long contentLength = ContentMetadata.getContentLength(cache.getContentMetadata(cacheKey));
+    if (contentLength != C.LENGTH_UNSET || isCanceled) {
+      return contentLength;
+    }
+    if (priorityTaskManager != null) {
+      priorityTaskManager.proceed(C.PRIORITY_DOWNLOAD);
+    }
+    // Opening an unbounded request writes the resolved length to the cache's content metadata.
+    RunnableFutureTask<Void, IOException> resolveLengthRunnable =
+        new RunnableFutureTask<Void, IOException>() {
+          @Override
+          protected Void doWork() throws IOException {
+            try {
+              dataSource.open(dataSpec);
+            } finally {
+              dataSource.close();
+            }
+            return null;
+          }
+        };
+    downloadRunnable = resolveLengthRunnable;
+    executor.execute(resolveLengthRunnable);
+    try {
+      resolveLengthRunnable.get();
+    } catch (ExecutionException e) {
+      Throwable cause = Assertions.checkNotNull(e.getCause());
+      if (cause instanceof PriorityTooLowException) {
+        // Fall back to downloading sequentially, which waits until the task is able to proceed.
+      } else if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else {
+        // The cause must be an uncaught Throwable type.
+        Util.sneakyThrow(cause);
       }
+    } finally {
+      resolveLengthRunnable.blockUntilFinished();
     }
+    return ContentMetadata.getContentLength(cache.getContentMetadata(cacheKey));
   }
 
-  @Override
-  public void cancel() {
-    isCanceled = true;
-    RunnableFutureTask<Void, IOException> downloadRunnable = this.downloadRunnable;
-    if (downloadRunnable != null) {
-      downloadRunnable.cancel(/* interruptIfRunning= */ true);
+  private void downloadRangesInParallel(long contentLength)
+      throws IOException, InterruptedException {
+    Cache cache = dataSource.getCache();
+    String cacheKey = dataSource.getCacheKeyFactory().buildCacheKey(dataSpec);
+    @Nullable
+    ProgressNotifier progressNotifier =
+        progressListener != null
+            ? new ProgressNotifier(
+                progressListener,
+                contentLength,
+                cache.getCachedBytes(cacheKey, /* position= */ 0, contentLength))
+            : null;
+    ArrayDeque<Range> pendingRanges = new ArrayDeque<>();
+    long pendingBytes = 0;
+    long position = 0;
+    while (position < contentLength) {
+      long blockLength = cache.getCachedLength(cacheKey, position, contentLength - position);
+      if (blockLength < 0) {
+        // There's a hole of length -blockLength.
+        blockLength = -blockLength;
+        pendingRanges.addLast(new Range(position, blockLength));
+        pendingBytes += blockLength;
+      }
+      position += blockLength;
+    }
+
+    ArrayDeque<CacheDataSource> recycledDataSources = new ArrayDeque<>();
+    ArrayDeque<byte[]> recycledBuffers = new ArrayDeque<>();
+    try {
+      while (!isCanceled && (!pendingRanges.isEmpty() || !activeRunnables.isEmpty())) {
+        if (!pendingRanges.isEmpty() && activeRunnables.size() < maxParallelDownloads) {
+          // Block until there aren't any higher priority tasks.
+          if (priorityTaskManager != null) {
+            priorityTaskManager.proceed(C.PRIORITY_DOWNLOAD);
+          }
+          Range range = pendingRanges.removeFirst();
+          long rangeLength = getRangeLength(pendingBytes);
+          if (range.length > rangeLength) {
+            pendingRanges.addFirst(
+                new Range(range.position + rangeLength, range.length - rangeLength));
+            range = new Range(range.position, rangeLength);
+          }
+          pendingBytes -= range.length;
+          RangeDownloadRunnable downloadRunnable =
+              new RangeDownloadRunnable(
+                  range,
+                  dataSpec.subrange(range.position, range.length),
+                  !recycledDataSources.isEmpty()
+                      ? recycledDataSources.removeFirst()
+                      : cacheDataSourceFactory.createDataSourceForDownloading(),
+                  !recycledBuffers.isEmpty()
+                      ? recycledBuffers.removeFirst()
+                      : new byte[BUFFER_SIZE_BYTES],
+                  progressNotifier);
+          addActiveRunnable(downloadRunnable);
+          executor.execute(
+              () -> {
+                downloadRunnable.run();
+                runnableFinishedCondition.open();
+              });
+          continue;
+        }
+
+        // Wait until at least one of the active runnables has finished.
+        runnableFinishedCondition.close();
+        boolean runnableFinished = false;
+        for (int i = activeRunnables.size() - 1; i >= 0; i--) {
+          RangeDownloadRunnable activeRunnable = activeRunnables.get(i);
+          if (!activeRunnable.isDone()) {
+            continue;
+          }
+          runnableFinished = true;
+          removeActiveRunnable(i);
+          recycledDataSources.addLast(activeRunnable.dataSource);
+          recycledBuffers.addLast(activeRunnable.temporaryBuffer);
+          try {
+            activeRunnable.get();
+          } catch (ExecutionException e) {
+            Throwable cause = Assertions.checkNotNull(e.getCause());
+            if (cause instanceof PriorityTooLowException) {
+              // Download the range again in a future loop iteration. Any part of it that was
+              // cached before the exception is skipped.
+              pendingRanges.addFirst(activeRunnable.range);
+              pendingBytes += activeRunnable.range.length;
+            } else if (cause instanceof IOException) {
+              throw (IOException) cause;
+            } else {
+              // The cause must be an uncaught Throwable type.
+              Util.sneakyThrow(cause);
+            }
+          }
+        }
+        if (!runnableFinished) {
+          runnableFinishedCondition.block();
+        }
+      }
+    } finally {
+      // If one of the runnables has thrown an exception, then it's possible there are other active
+      // runnables still doing work. We need to wait until they finish before exiting this method.
+      // Cancel them to speed this up.
+      for (int i = 0; i < activeRunnables.size(); i++) {
+        activeRunnables.get(i).cancel(/* interruptIfRunning= */ true);
+      }
+      for (int i = activeRunnables.size() - 1; i >= 0; i--) {
+        activeRunnables.get(i).blockUntilFinished();
+        removeActiveRunnable(i);
+      }
     }
   }
 
-  @Override
-  public void remove() {
-    dataSource.getCache().removeResource(dataSource.getCacheKeyFactory().buildCacheKey(dataSpec));
+  /**
+   * Returns the length of the next range to download, given the number of bytes that are still to
+   * be assigned to a range.
+   */
+  private long getRangeLength(long pendingBytes) {
+    // Dividing the remaining bytes between twice the number of parallel downloads means that early
+    // ranges are large, minimizing the number of requests, and that later ranges get progressively
+    // smaller, so that no single download is left fetching a large range on its own at the end.
+    return Util.constrainValue(
+        pendingBytes / (2L * maxParallelDownloads), MIN_RANGE_LENGTH, MAX_RANGE_LENGTH);
+  }
+
+  private void addActiveRunnable(RangeDownloadRunnable runnable) throws InterruptedException {
+    synchronized (activeRunnables) {
+      if (isCanceled) {
+        throw new InterruptedException();
+      }
+      activeRunnables.add(runnable);
+    }
+  }
+
+  private void removeActiveRunnable(int index) {
+    synchronized (activeRunnables) {
+      activeRunnables.remove(index);
+    }
   }
 
   private void onProgress(long contentLength, long bytesCached, long newBytesCached) {
@@ -165,4 +417,76 @@ public final class ProgressiveDownloader implements Downloader {
             : ((bytesCached * 100f) / contentLength);
     progressListener.onProgress(contentLength, bytesCached, percentDownloaded);
   }
+
+  private static final class Range {
+
+    public final long position;
+    public final long length;
+
+    public Range(long position, long length) {
+      this.position = position;
+      this.length = length;
+    }
+  }
+
+  private static final class RangeDownloadRunnable extends RunnableFutureTask<Void, IOException> {
+
+    public final Range range;
+    public final CacheDataSource dataSource;
+    public final byte[] temporaryBuffer;
+    private final CacheWriter cacheWriter;
+
+    public RangeDownloadRunnable(
+        Range range,
+        DataSpec dataSpec,
+        CacheDataSource dataSource,
+        byte[] temporaryBuffer,
+        @Nullable ProgressNotifier progressNotifier) {
+      this.range = range;
+      this.dataSource = dataSource;
+      this.temporaryBuffer = temporaryBuffer;
+      cacheWriter = new CacheWriter(dataSource, dataSpec, temporaryBuffer, progressNotifier);
+    }
+
+    @Override
+    protected Void doWork() throws IOException {
+      cacheWriter.cache();
+      return null;
+    }
+
+    @Override
+    protected void cancelWork() {
+      cacheWriter.cancel();
+    }
+  }
+
+  /** Aggregates the progress of the ranges that are downloaded in parallel. */
+  private static final class ProgressNotifier implements CacheWriter.ProgressListener {
+
+    private final ProgressListener progressListener;
+    private final long contentLength;
+
+    private long bytesDownloaded;
+
+    public ProgressNotifier(
+        ProgressListener progressListener, long contentLength, long bytesDownloaded) {
+      this.progressListener = progressListener;
+      this.contentLength = contentLength;
+      this.bytesDownloaded = bytesDownloaded;
+      progressListener.onProgress(contentLength, bytesDownloaded, getPercentDownloaded());
+    }
+
+    @Override
+    public synchronized void onProgress(long requestLength, long bytesCached, long newBytesCached) {
+      if (newBytesCached == 0) {
+        return;
+      }
+      bytesDownloaded += newBytesCached;
+      progressListener.onProgress(contentLength, bytesDownloaded, getPercentDownloaded());
+    }
+
+    private float getPercentDownloaded() {
+      return contentLength == 0 ? C.PERCENTAGE_UNSET : (bytesDownloaded * 100f) / contentLength;
+    }
+  }
 }
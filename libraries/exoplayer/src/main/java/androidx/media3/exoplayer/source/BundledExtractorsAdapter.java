@@ -19,12 +19,14 @@ import android.net.Uri;
 import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.DataReader;
+import androidx.media3.common.FileTypes;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.extractor.DefaultExtractorInput;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorUtil;
 import androidx.media3.extractor.ExtractorsFactory;
 import androidx.media3.extractor.PositionHolder;
 import androidx.media3.extractor.SniffFailure;
@@ -72,29 +74,35 @@ public final class BundledExtractorsAdapter implements ProgressiveMediaExtractor
     if (extractor != null) {
       return;
     }
-    Extractor[] extractors = extractorsFactory.createExtractors(uri, responseHeaders);
-    ImmutableList.Builder<SniffFailure> sniffFailures =
-        ImmutableList.builderWithExpectedSize(extractors.length);
-    if (extractors.length == 1) {
-      this.extractor = extractors[0];
-    } else {
-      for (Extractor extractor : extractors) {
-        try {
-          if (extractor.sniff(extractorInput)) {
-            this.extractor = extractor;
-            break;
-          } else {
-            List<SniffFailure> sniffFailureDetails = extractor.getSniffFailureDetails();
-            sniffFailures.addAll(sniffFailureDetails);
-          }
-        } catch (EOFException e) {
-          // Do nothing.
-        } finally {
-          Assertions.checkState(this.extractor != null || extractorInput.getPosition() == position);
-          extractorInput.resetPeekPosition();
-        }
+    ImmutableList.Builder<SniffFailure> sniffFailures = ImmutableList.builder();
+    Extractor[] shortlistedExtractors = new Extractor[0];
+    if (extractorsFactory.supportsCreatingExtractorsForFileType()) {
+      // Peek the start of the input once to try the extractors for the file type indicated by its
+      // magic number first. The peeked data is kept by the input, so sniffing other extractors
+      // doesn't load it again.
+      @FileTypes.Type int contentFileType = inferFileTypeFromContent(extractorInput);
+      if (contentFileType != FileTypes.UNKNOWN) {
+        shortlistedExtractors = extractorsFactory.createExtractorsForFileType(contentFileType);
+      }
+    }
+    @Nullable
+    Extractor sniffedExtractor =
+        sniffExtractors(
+            shortlistedExtractors,
+            /* skippedExtractors= */ new Extractor[0],
+            extractorInput,
+            position,
+            sniffFailures);
+    if (sniffedExtractor == null) {
+      Extractor[] extractors = extractorsFactory.createExtractors(uri, responseHeaders);
+      if (extractors.length == 1) {
+        sniffedExtractor = extractors[0];
+      } else {
+        sniffedExtractor =
+            sniffExtractors(
+                extractors, shortlistedExtractors, extractorInput, position, sniffFailures);
       }
-      if (extractor == null) {
+      if (sniffedExtractor == null) {
         throw new UnrecognizedInputFormatException(
             "None of the available extractors ("
                 + Joiner.on(", ")
@@ -108,7 +116,73 @@ public final class BundledExtractorsAdapter implements ProgressiveMediaExtractor
             sniffFailures.build());
       }
     }
-    extractor.init(output);
+    extractor = sniffedExtractor;
+    sniffedExtractor.init(output);
+  }
+
+  /**
+   * Returns the first extractor that sniffs the input successfully, or null if none does.
+   *
+   * @param extractors The extractors to sniff.
+   * @param skippedExtractors Extractors that have already been sniffed. Extractors with the same
+   *     underlying implementation class are not sniffed again.
+   * @param extractorInput The input to sniff.
+   * @param position The position of the input.
+   * @param sniffFailures A builder to which the sniff failure details are added.
+   */
+  @Nullable
+  private static Extractor sniffExtractors(
+      Extractor[] extractors,
+      Extractor[] skippedExtractors,
+      ExtractorInput extractorInput,
+      long position,
+      ImmutableList.Builder<SniffFailure> sniffFailures)
+      throws IOException {
+    @Nullable Extractor sniffedExtractor = null;
+    for (Extractor extractor : extractors) {
+      if (containsImplementationOf(skippedExtractors, extractor)) {
+        continue;
+      }
+      try {
+        if (extractor.sniff(extractorInput)) {
+          sniffedExtractor = extractor;
+          break;
+        } else {
+          List<SniffFailure> sniffFailureDetails = extractor.getSniffFailureDetails();
+          sniffFailures.addAll(sniffFailureDetails);
+        }
+      } catch (EOFException e) {
+        // Do nothing.
+      } finally {
+        Assertions.checkState(
+            sniffedExtractor != null || extractorInput.getPosition() == position);
+        extractorInput.resetPeekPosition();
+      }
+    }
+    return sniffedExtractor;
+  }
+
+  private static boolean containsImplementationOf(Extractor[] extractors, Extractor extractor) {
+    Class<?> implementationClass = extractor.getUnderlyingImplementation().getClass();
+    for (Extractor candidate : extractors) {
+      if (candidate.getUnderlyingImplementation().getClass() == implementationClass) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static @FileTypes.Type int inferFileTypeFromContent(ExtractorInput extractorInput)
+      throws IOException {
+    byte[] prefix = new byte[FileTypes.CONTENT_PREFIX_LENGTH];
+    int prefixLength;
+    try {
+      prefixLength =
+          ExtractorUtil.peekToLength(extractorInput, prefix, /* offset= */ 0, prefix.length);
+    } finally {
+      extractorInput.resetPeekPosition();
+    }
+    return FileTypes.inferFileTypeFromContent(prefix, prefixLength);
   }
 
   @Override
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Util.castNonNull;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.NullableType;
+import androidx.media3.extractor.TrackOutput.CryptoData;
+import java.util.Arrays;
+
+/**
+ * Stores the per-sample metadata of a {@link SampleQueue}, indexed by absolute sample index.
+ *
+ * <p>Metadata is stored in fixed-size chunks of primitive arrays. Growing the store adds a chunk
+ * rather than reallocating and copying the metadata of all queued samples, and chunks that only
+ * contain discarded samples are released (one of them is kept for reuse). Crypto data arrays are
+ * only allocated for chunks containing encrypted samples.
+ *
+ * <p>Each chunk also tracks the largest timestamp of its samples and of all samples in preceding
+ * chunks. These values are non-decreasing from chunk to chunk, which allows time-based searches to
+ * skip chunks using a binary search, even if timestamps within a chunk are not ordered.
+ */
+/* package */ final class ChunkedSampleMetadata {
+
+  /** The number of samples stored in each chunk. */
+  public static final int CHUNK_SIZE = 1024;
+
+  private static final int CHUNK_SIZE_SHIFT = 10;
+  private static final int CHUNK_INDEX_MASK = CHUNK_SIZE - 1;
+  private static final int INITIAL_CHUNK_ARRAY_LENGTH = 4;
+
+  private @NullableType Chunk[] chunks;
+  private int chunkCount;
+  private int firstChunkNumber;
+  @Nullable private Chunk spareChunk;
+
+  /** Creates an empty instance. */
+  public ChunkedSampleMetadata() {
+    chunks = new Chunk[INITIAL_CHUNK_ARRAY_LENGTH];
+  }
+
+  /** Releases all metadata. Indices subsequently passed to {@link #set} may start from 0 again. */
+  public void clear() {
+    if (chunkCount > 0) {
+      recycleChunk(castNonNull(chunks[0]));
+    }
+    Arrays.fill(chunks, 0, chunkCount, null);
+    chunkCount = 0;
+    firstChunkNumber = 0;
+  }
+
+  /**
+   * Sets the metadata of the sample at the specified index.
+   *
+   * @param index The absolute index of the sample. Must be either the index following the last
+   *     sample that was set since the last discard, or any index if the store is empty.
+   * @param timeUs The sample timestamp.
+   * @param offset The absolute position of the sample data in the data queue.
+   * @param size The size of the sample data.
+   * @param flags The sample {@link C.BufferFlags flags}.
+   * @param cryptoData The sample crypto data, or null if the sample is not encrypted.
+   */
+  public void set(
+      int index,
+      long timeUs,
+      long offset,
+      int size,
+      @C.BufferFlags int flags,
+      @Nullable CryptoData cryptoData) {
+    int chunkNumber = index >> CHUNK_SIZE_SHIFT;
+    if (chunkCount == 0) {
+      firstChunkNumber = chunkNumber;
+    }
+    int chunkIndex = chunkNumber - firstChunkNumber;
+    checkArgument(chunkIndex >= max(0, chunkCount - 1) && chunkIndex <= chunkCount);
+    if (chunkIndex == chunkCount) {
+      appendChunk();
+    }
+    Chunk chunk = castNonNull(chunks[chunkIndex]);
+    int indexInChunk = index & CHUNK_INDEX_MASK;
+    chunk.timesUs[indexInChunk] = timeUs;
+    chunk.offsets[indexInChunk] = offset;
+    chunk.sizes[indexInChunk] = size;
+    chunk.flags[indexInChunk] = flags;
+    if (cryptoData != null && chunk.cryptoDatas == null) {
+      chunk.cryptoDatas = new CryptoData[CHUNK_SIZE];
+    }
+    if (chunk.cryptoDatas != null) {
+      chunk.cryptoDatas[indexInChunk] = cryptoData;
+    }
+    chunk.largestTimeUs = max(chunk.largestTimeUs, timeUs);
+  }
+
+  /** Returns the timestamp of the sample at the specified index. */
+  public long getTimeUs(int index) {
+    return getChunk(index).timesUs[index & CHUNK_INDEX_MASK];
+  }
+
+  /** Returns the absolute data position of the sample at the specified index. */
+  public long getOffset(int index) {
+    return getChunk(index).offsets[index & CHUNK_INDEX_MASK];
+  }
+
+  /** Returns the data size of the sample at the specified index. */
+  public int getSize(int index) {
+    return getChunk(index).sizes[index & CHUNK_INDEX_MASK];
+  }
+
+  /** Returns the {@link C.BufferFlags flags} of the sample at the specified index. */
+  public @C.BufferFlags int getFlags(int index) {
+    return getChunk(index).flags[index & CHUNK_INDEX_MASK];
+  }
+
+  /** Returns the crypto data of the sample at the specified index. */
+  @Nullable
+  public CryptoData getCryptoData(int index) {
+    @NullableType CryptoData[] cryptoDatas = getChunk(index).cryptoDatas;
+    return cryptoDatas == null ? null : cryptoDatas[index & CHUNK_INDEX_MASK];
+  }
+
+  /**
+   * Returns an index in {@code [fromIndex, toIndex]} before which all samples starting at {@code
+   * fromIndex} have a timestamp smaller than {@code timeUs}.
+   *
+   * <p>The returned index is the start of the first chunk in the range that may contain a sample
+   * at or after {@code timeUs} (or {@code fromIndex} if that's the first chunk), or {@code
+   * toIndex} if there's no such chunk. Samples from the returned index onwards must still be
+   * checked individually.
+   *
+   * @param fromIndex The absolute index of the first sample in the range.
+   * @param toIndex The absolute index following the last sample in the range.
+   * @param timeUs The timestamp, in microseconds.
+   */
+  public int skipSamplesBefore(int fromIndex, int toIndex, long timeUs) {
+    if (fromIndex >= toIndex) {
+      return fromIndex;
+    }
+    int low = (fromIndex >> CHUNK_SIZE_SHIFT) - firstChunkNumber;
+    int high = ((toIndex - 1) >> CHUNK_SIZE_SHIFT) - firstChunkNumber;
+    if (castNonNull(chunks[high]).largestTimeUs < timeUs) {
+      return toIndex;
+    }
+    // Find the first chunk whose largest timestamp (including preceding chunks) is >= timeUs.
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (castNonNull(chunks[mid]).largestTimeUs < timeUs) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return max(fromIndex, (firstChunkNumber + low) << CHUNK_SIZE_SHIFT);
+  }
+
+  /**
+   * Releases chunks that only contain samples before the specified index.
+   *
+   * @param firstIndex The absolute index of the first sample that's still needed.
+   */
+  public void discardTo(int firstIndex) {
+    int discardChunkCount = min(chunkCount, (firstIndex >> CHUNK_SIZE_SHIFT) - firstChunkNumber);
+    if (discardChunkCount <= 0) {
+      return;
+    }
+    recycleChunk(castNonNull(chunks[0]));
+    System.arraycopy(chunks, discardChunkCount, chunks, 0, chunkCount - discardChunkCount);
+    Arrays.fill(chunks, chunkCount - discardChunkCount, chunkCount, null);
+    chunkCount -= discardChunkCount;
+    firstChunkNumber += discardChunkCount;
+  }
+
+  /**
+   * Releases chunks that only contain samples at or after the specified index.
+   *
+   * @param endIndex The absolute index following the last sample that's still needed.
+   */
+  public void discardFrom(int endIndex) {
+    int retainChunkCount =
+        max(0, min(chunkCount, ((endIndex - 1) >> CHUNK_SIZE_SHIFT) - firstChunkNumber + 1));
+    if (retainChunkCount == chunkCount) {
+      return;
+    }
+    recycleChunk(castNonNull(chunks[retainChunkCount]));
+    Arrays.fill(chunks, retainChunkCount, chunkCount, null);
+    chunkCount = retainChunkCount;
+  }
+
+  private Chunk getChunk(int index) {
+    return castNonNull(chunks[(index >> CHUNK_SIZE_SHIFT) - firstChunkNumber]);
+  }
+
+  private void appendChunk() {
+    if (chunkCount == chunks.length) {
+      // Only the chunk references are copied, not the metadata they contain.
+      chunks = Arrays.copyOf(chunks, chunks.length * 2);
+    }
+    Chunk chunk = spareChunk != null ? spareChunk : new Chunk();
+    spareChunk = null;
+    chunk.largestTimeUs =
+        chunkCount > 0 ? castNonNull(chunks[chunkCount - 1]).largestTimeUs : Long.MIN_VALUE;
+    chunks[chunkCount++] = chunk;
+  }
+
+  private void recycleChunk(Chunk chunk) {
+    // Don't keep crypto data alive, and don't assume the next samples will be encrypted.
+    chunk.cryptoDatas = null;
+    spareChunk = chunk;
+  }
+
+  private static final class Chunk {
+
+    public final long[] timesUs;
+    public final long[] offsets;
+    public final int[] sizes;
+    public final int[] flags;
+    @Nullable public @NullableType CryptoData[] cryptoDatas;
+    public long largestTimeUs;
+
+    public Chunk() {
+      timesUs = new long[CHUNK_SIZE];
+      offsets = new long[CHUNK_SIZE];
+      sizes = new int[CHUNK_SIZE];
+      flags = new int[CHUNK_SIZE];
+    }
+  }
+}
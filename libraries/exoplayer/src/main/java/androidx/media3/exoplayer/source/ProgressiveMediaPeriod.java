@@ -45,6 +45,7 @@ import androidx.media3.exoplayer.LoadingInfo;
 import androidx.media3.exoplayer.SeekParameters;
 import androidx.media3.exoplayer.drm.DrmSessionEventListener;
 import androidx.media3.exoplayer.drm.DrmSessionManager;
+import androidx.media3.exoplayer.mediacodec.BatchBuffer;
 import androidx.media3.exoplayer.source.SampleQueue.UpstreamFormatChangedListener;
 import androidx.media3.exoplayer.source.SampleStream.ReadFlags;
 import androidx.media3.exoplayer.trackselection.ExoTrackSelection;
@@ -54,6 +55,8 @@ import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy.LoadErrorInfo;
 import androidx.media3.exoplayer.upstream.Loader;
 import androidx.media3.exoplayer.upstream.Loader.LoadErrorAction;
 import androidx.media3.exoplayer.upstream.Loader.Loadable;
+import androidx.media3.exoplayer.upstream.LoaderThreadPool;
+import androidx.media3.exoplayer.util.ReleasableExecutor;
 import androidx.media3.extractor.DiscardingTrackOutput;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorOutput;
@@ -171,6 +174,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    * @param continueLoadingCheckIntervalBytes The number of bytes that should be loaded between each
    *     invocation of {@link Callback#onContinueLoadingRequested(SequenceableLoader)}.
    * @param singleSampleDurationUs The duration of media with a single sample in microseconds.
+   * @param downloadExecutor An optional {@link ReleasableExecutor} on which loads are run. If
+   *     {@code null}, loads are run on a dedicated thread.
    */
   // maybeFinishPrepare is not posted to the handler until initialization completes.
   @SuppressWarnings({"nullness:argument", "nullness:methodref.receiver.bound"})
@@ -186,7 +191,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       Allocator allocator,
       @Nullable String customCacheKey,
       int continueLoadingCheckIntervalBytes,
-      long singleSampleDurationUs) {
+      long singleSampleDurationUs,
+      @Nullable ReleasableExecutor downloadExecutor) {
     this.uri = uri;
     this.dataSource = dataSource;
     this.drmSessionManager = drmSessionManager;
@@ -197,7 +203,10 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     this.allocator = allocator;
     this.customCacheKey = customCacheKey;
     this.continueLoadingCheckIntervalBytes = continueLoadingCheckIntervalBytes;
-    loader = new Loader("ProgressiveMediaPeriod");
+    loader =
+        downloadExecutor != null
+            ? new Loader(downloadExecutor)
+            : new Loader("ProgressiveMediaPeriod");
     this.progressiveMediaExtractor = progressiveMediaExtractor;
     this.singleSampleDurationUs = singleSampleDurationUs;
     loadCondition = new ConditionVariable();
@@ -510,6 +519,15 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     return result;
   }
 
+  /* package */ int readDataBatch(
+      int sampleQueueIndex, BatchBuffer batchBuffer, long timeOffsetUs) {
+    if (suppressRead()) {
+      return 0;
+    }
+    maybeNotifyDownstreamFormat(sampleQueueIndex);
+    return sampleQueues[sampleQueueIndex].readBatch(batchBuffer, timeOffsetUs, loadingFinished);
+  }
+
   /* package */ int skipData(int track, long positionUs) {
     if (suppressRead()) {
       return 0;
@@ -985,6 +1003,11 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       return ProgressiveMediaPeriod.this.readData(track, formatHolder, buffer, readFlags);
     }
 
+    @Override
+    public int readDataBatch(BatchBuffer batchBuffer, long timeOffsetUs) {
+      return ProgressiveMediaPeriod.this.readDataBatch(track, batchBuffer, timeOffsetUs);
+    }
+
     @Override
     public int skipData(long positionUs) {
       return ProgressiveMediaPeriod.this.skipData(track, positionUs);
@@ -1075,7 +1098,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
           }
           while (result == Extractor.RESULT_CONTINUE && !loadCanceled) {
             try {
-              loadCondition.block();
+              // Lets a shared LoaderThreadPool run other loads whilst loading is paused.
+              LoaderThreadPool.block(loadCondition);
             } catch (InterruptedException e) {
               throw new InterruptedIOException();
             }
@@ -18,6 +18,7 @@ package androidx.media3.exoplayer.source;
 import static java.lang.Math.min;
 
 import androidx.annotation.Nullable;
+import androidx.media3.common.ByteBufferDataReader;
 import androidx.media3.common.C;
 import androidx.media3.common.DataReader;
 import androidx.media3.common.util.Assertions;
@@ -35,7 +36,14 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-/** A queue of media sample data. */
+/**
+ * A queue of media sample data.
+ *
+ * <p>When allocations are backed by a {@linkplain Allocation#directBuffer direct buffer}, data from
+ * a {@link ByteBufferDataReader} that can expose it without copying, such as a memory-mapped file,
+ * is copied straight into the allocation. Other {@link DataReader DataReaders} can only read into
+ * arrays, so their data is staged in an intermediate array and copied into the allocation again.
+ */
 /* package */ class SampleDataQueue {
 
   private static final int INITIAL_SCRATCH_SIZE = 32;
@@ -44,6 +52,9 @@ import java.util.Arrays;
   private final int allocationLength;
   private final ParsableByteArray scratch;
 
+  // Used by the loading thread to stage data that's written into direct allocations.
+  @Nullable private byte[] directWriteScratch;
+
   // References into the linked list of allocations.
   private AllocationNode firstAllocationNode;
   private AllocationNode readAllocationNode;
@@ -130,6 +141,19 @@ import java.util.Arrays;
     readAllocationNode = readSampleData(readAllocationNode, buffer, extrasHolder, scratch);
   }
 
+  /**
+   * Reads the data of one or more consecutive clear samples from the rolling buffer into {@code
+   * target}, and advances the read position to the end of the read data.
+   *
+   * @param target The buffer into which data should be written. Must have at least {@code length}
+   *     bytes remaining.
+   * @param absolutePosition The absolute position from which data should be read.
+   * @param length The number of bytes to read.
+   */
+  public void readToBuffer(ByteBuffer target, long absolutePosition, int length) {
+    readAllocationNode = readData(readAllocationNode, absolutePosition, target, length);
+  }
+
   /**
    * Peeks data from the rolling buffer to populate a decoder input buffer, without advancing the
    * read position.
@@ -174,11 +198,34 @@ import java.util.Arrays;
 
   public int sampleData(DataReader input, int length, boolean allowEndOfInput) throws IOException {
     length = preAppend(length);
-    int bytesAppended =
-        input.read(
-            writeAllocationNode.allocation.data,
-            writeAllocationNode.translateOffset(totalBytesWritten),
-            length);
+    @Nullable ByteBuffer directWriteBuffer = writeAllocationNode.directWriteBuffer;
+    int bytesAppended;
+    if (directWriteBuffer == null) {
+      bytesAppended =
+          input.read(
+              writeAllocationNode.allocation.data,
+              writeAllocationNode.translateOffset(totalBytesWritten),
+              length);
+    } else {
+      directWriteBuffer.position(writeAllocationNode.translateOffset(totalBytesWritten));
+      @Nullable
+      ByteBuffer inputBuffer =
+          input instanceof ByteBufferDataReader
+              ? ((ByteBufferDataReader) input).readBuffer(length)
+              : null;
+      if (inputBuffer != null) {
+        bytesAppended = inputBuffer.remaining();
+        directWriteBuffer.put(inputBuffer);
+      } else {
+        if (directWriteScratch == null) {
+          directWriteScratch = new byte[allocationLength];
+        }
+        bytesAppended = input.read(directWriteScratch, /* offset= */ 0, length);
+        if (bytesAppended > 0) {
+          directWriteBuffer.put(directWriteScratch, /* offset= */ 0, bytesAppended);
+        }
+      }
+    }
     if (bytesAppended == C.RESULT_END_OF_INPUT) {
       if (allowEndOfInput) {
         return C.RESULT_END_OF_INPUT;
@@ -192,10 +239,17 @@ import java.util.Arrays;
   public void sampleData(ParsableByteArray buffer, int length) {
     while (length > 0) {
       int bytesAppended = preAppend(length);
-      buffer.readBytes(
-          writeAllocationNode.allocation.data,
-          writeAllocationNode.translateOffset(totalBytesWritten),
-          bytesAppended);
+      @Nullable ByteBuffer directWriteBuffer = writeAllocationNode.directWriteBuffer;
+      if (directWriteBuffer == null) {
+        buffer.readBytes(
+            writeAllocationNode.allocation.data,
+            writeAllocationNode.translateOffset(totalBytesWritten),
+            bytesAppended);
+      } else {
+        directWriteBuffer.position(writeAllocationNode.translateOffset(totalBytesWritten));
+        directWriteBuffer.put(buffer.getData(), buffer.getPosition(), bytesAppended);
+        buffer.skipBytes(bytesAppended);
+      }
       length -= bytesAppended;
       postAppend(bytesAppended);
     }
@@ -404,8 +458,17 @@ import java.util.Arrays;
     int remaining = length;
     while (remaining > 0) {
       int toCopy = min(remaining, (int) (allocationNode.endPosition - absolutePosition));
-      Allocation allocation = allocationNode.allocation;
-      target.put(allocation.data, allocationNode.translateOffset(absolutePosition), toCopy);
+      @Nullable ByteBuffer directReadBuffer = allocationNode.directReadBuffer;
+      if (directReadBuffer == null) {
+        Allocation allocation = allocationNode.allocation;
+        target.put(allocation.data, allocationNode.translateOffset(absolutePosition), toCopy);
+      } else {
+        // Bulk copy without going through the Java heap.
+        int offset = allocationNode.translateOffset(absolutePosition);
+        directReadBuffer.limit(offset + toCopy).position(offset);
+        target.put(directReadBuffer);
+        directReadBuffer.limit(directReadBuffer.capacity());
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == allocationNode.endPosition) {
@@ -430,13 +493,19 @@ import java.util.Arrays;
     int remaining = length;
     while (remaining > 0) {
       int toCopy = min(remaining, (int) (allocationNode.endPosition - absolutePosition));
-      Allocation allocation = allocationNode.allocation;
-      System.arraycopy(
-          allocation.data,
-          allocationNode.translateOffset(absolutePosition),
-          target,
-          length - remaining,
-          toCopy);
+      @Nullable ByteBuffer directReadBuffer = allocationNode.directReadBuffer;
+      if (directReadBuffer == null) {
+        Allocation allocation = allocationNode.allocation;
+        System.arraycopy(
+            allocation.data,
+            allocationNode.translateOffset(absolutePosition),
+            target,
+            length - remaining,
+            toCopy);
+      } else {
+        directReadBuffer.position(allocationNode.translateOffset(absolutePosition));
+        directReadBuffer.get(target, length - remaining, toCopy);
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == allocationNode.endPosition) {
@@ -478,6 +547,18 @@ import java.util.Arrays;
      */
     @Nullable public AllocationNode next;
 
+    /**
+     * A view of the {@link #allocation}'s {@link Allocation#directBuffer} used by the loading
+     * thread, or {@code null} if the node is not initialized or the allocation isn't direct.
+     */
+    @Nullable public ByteBuffer directWriteBuffer;
+
+    /**
+     * A view of the {@link #allocation}'s {@link Allocation#directBuffer} used by the consuming
+     * thread, or {@code null} if the node is not initialized or the allocation isn't direct.
+     */
+    @Nullable public ByteBuffer directReadBuffer;
+
     /**
      * @param startPosition See {@link #startPosition}.
      * @param allocationLength The length of the {@link Allocation} with which this node will be
@@ -508,6 +589,11 @@ import java.util.Arrays;
     public void initialize(Allocation allocation, AllocationNode next) {
       this.allocation = allocation;
       this.next = next;
+      if (allocation.directBuffer != null) {
+        // The loading and consuming threads need independent positions and limits.
+        directWriteBuffer = allocation.directBuffer.duplicate();
+        directReadBuffer = allocation.directBuffer.duplicate();
+      }
     }
 
     /**
@@ -528,6 +614,8 @@ import java.util.Arrays;
      */
     public AllocationNode clear() {
       allocation = null;
+      directWriteBuffer = null;
+      directReadBuffer = null;
       AllocationNode temp = next;
       next = null;
       return temp;
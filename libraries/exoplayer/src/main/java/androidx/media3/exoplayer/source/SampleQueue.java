@@ -34,7 +34,6 @@ import androidx.media3.common.Format;
 import androidx.media3.common.MimeTypes;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.Log;
-import androidx.media3.common.util.NullableType;
 import androidx.media3.common.util.ParsableByteArray;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
@@ -47,6 +46,7 @@ import androidx.media3.exoplayer.drm.DrmSessionEventListener;
 import androidx.media3.exoplayer.drm.DrmSessionEventListener.EventDispatcher;
 import androidx.media3.exoplayer.drm.DrmSessionManager;
 import androidx.media3.exoplayer.drm.DrmSessionManager.DrmSessionReference;
+import androidx.media3.exoplayer.mediacodec.BatchBuffer;
 import androidx.media3.exoplayer.source.SampleStream.ReadFlags;
 import androidx.media3.exoplayer.upstream.Allocator;
 import androidx.media3.extractor.TrackOutput;
@@ -67,12 +67,19 @@ public class SampleQueue implements TrackOutput {
     void onUpstreamFormatChanged(Format format);
   }
 
-  @VisibleForTesting /* package */ static final int SAMPLE_CAPACITY_INCREMENT = 1000;
+  @VisibleForTesting
+  /* package */ static final int SAMPLE_CAPACITY_INCREMENT = ChunkedSampleMetadata.CHUNK_SIZE;
   private static final String TAG = "SampleQueue";
 
+  /** Flags of samples that {@link #readBatch} leaves to be read individually by {@link #read}. */
+  private static final int NON_BATCHABLE_SAMPLE_FLAGS =
+      C.BUFFER_FLAG_ENCRYPTED | C.BUFFER_FLAG_HAS_SUPPLEMENTAL_DATA | C.BUFFER_FLAG_LAST_SAMPLE;
+
   private final SampleDataQueue sampleDataQueue;
   private final SampleExtrasHolder extrasHolder;
   private final SpannedData<SharedSampleMetadata> sharedSampleMetadata;
+  private final ChunkedSampleMetadata sampleMetadata;
+  private final SpannedData<Long> sourceIds;
   @Nullable private final DrmSessionManager drmSessionManager;
   @Nullable private final DrmSessionEventListener.EventDispatcher drmEventDispatcher;
   @Nullable private UpstreamFormatChangedListener upstreamFormatChangeListener;
@@ -80,17 +87,8 @@ public class SampleQueue implements TrackOutput {
   @Nullable private Format downstreamFormat;
   @Nullable private DrmSession currentDrmSession;
 
-  private int capacity;
-  private long[] sourceIds;
-  private long[] offsets;
-  private int[] sizes;
-  private int[] flags;
-  private long[] timesUs;
-  private @NullableType CryptoData[] cryptoDatas;
-
   private int length;
   private int absoluteFirstIndex;
-  private int relativeFirstIndex;
   private int readPosition;
 
   private long startTimeUs;
@@ -167,13 +165,8 @@ public class SampleQueue implements TrackOutput {
     this.drmEventDispatcher = drmEventDispatcher;
     sampleDataQueue = new SampleDataQueue(allocator);
     extrasHolder = new SampleExtrasHolder();
-    capacity = SAMPLE_CAPACITY_INCREMENT;
-    sourceIds = new long[capacity];
-    offsets = new long[capacity];
-    timesUs = new long[capacity];
-    flags = new int[capacity];
-    sizes = new int[capacity];
-    cryptoDatas = new CryptoData[capacity];
+    sampleMetadata = new ChunkedSampleMetadata();
+    sourceIds = new SpannedData<>();
     sharedSampleMetadata =
         new SpannedData<>(/* removeCallback= */ metadata -> metadata.drmSessionReference.release());
     startTimeUs = Long.MIN_VALUE;
@@ -211,7 +204,6 @@ public class SampleQueue implements TrackOutput {
     sampleDataQueue.reset();
     length = 0;
     absoluteFirstIndex = 0;
-    relativeFirstIndex = 0;
     readPosition = 0;
     upstreamKeyframeRequired = true;
     startTimeUs = Long.MIN_VALUE;
@@ -219,6 +211,8 @@ public class SampleQueue implements TrackOutput {
     largestQueuedTimestampUs = Long.MIN_VALUE;
     isLastSampleQueued = false;
     sharedSampleMetadata.clear();
+    sampleMetadata.clear();
+    sourceIds.clear();
     if (resetUpstreamFormat) {
       unadjustedUpstreamFormat = null;
       upstreamFormat = null;
@@ -322,8 +316,7 @@ public class SampleQueue implements TrackOutput {
    * @return The source id.
    */
   public final synchronized long peekSourceId() {
-    int relativeReadIndex = getRelativeIndex(readPosition);
-    return hasNextSample() ? sourceIds[relativeReadIndex] : upstreamSourceId;
+    return hasNextSample() ? sourceIds.get(getReadIndex()) : upstreamSourceId;
   }
 
   /** Returns the upstream {@link Format} in which samples are being queued. */
@@ -371,7 +364,7 @@ public class SampleQueue implements TrackOutput {
 
   /** Returns the timestamp of the first sample, or {@link Long#MIN_VALUE} if the queue is empty. */
   public final synchronized long getFirstTimestampUs() {
-    return length == 0 ? Long.MIN_VALUE : timesUs[relativeFirstIndex];
+    return length == 0 ? Long.MIN_VALUE : sampleMetadata.getTimeUs(absoluteFirstIndex);
   }
 
   /**
@@ -397,7 +390,7 @@ public class SampleQueue implements TrackOutput {
       // A format can be read.
       return true;
     }
-    return mayReadSample(getRelativeIndex(readPosition));
+    return mayReadSample(getReadIndex());
   }
 
   /**
@@ -447,6 +440,32 @@ public class SampleQueue implements TrackOutput {
     return result;
   }
 
+  /**
+   * Attempts to read multiple consecutive samples from the queue into a {@link BatchBuffer},
+   * copying their data in a single pass.
+   *
+   * <p>Only samples that can be appended without any per-sample processing are read. Reading stops
+   * before a format change, an encrypted sample, a sample with supplemental data, the last sample
+   * of the stream, a sample whose timestamp is smaller than that of the preceding sample, and a
+   * sample whose data is not contiguous with that of the preceding sample. {@link #read} should be
+   * used when this method returns 0.
+   *
+   * @param batchBuffer The {@link BatchBuffer} to which samples should be appended.
+   * @param timeOffsetUs An offset to add to the timestamps of the appended samples.
+   * @param loadingFinished True if an empty queue should be considered the end of the stream.
+   * @return The number of samples appended to {@code batchBuffer}.
+   */
+  public int readBatch(BatchBuffer batchBuffer, long timeOffsetUs, boolean loadingFinished) {
+    int sampleCount = peekBatchMetadata(batchBuffer, timeOffsetUs, loadingFinished, extrasHolder);
+    if (sampleCount > 0) {
+      batchBuffer.ensureSpaceForWrite(extrasHolder.size);
+      sampleDataQueue.readToBuffer(
+          checkNotNull(batchBuffer.data), extrasHolder.offset, extrasHolder.size);
+      readPosition += sampleCount;
+    }
+    return sampleCount;
+  }
+
   /**
    * Attempts to seek the read position to the specified sample index.
    *
@@ -476,18 +495,16 @@ public class SampleQueue implements TrackOutput {
    */
   public final synchronized boolean seekTo(long timeUs, boolean allowTimeBeyondBuffer) {
     rewind();
-    int relativeReadIndex = getRelativeIndex(readPosition);
+    int readIndex = getReadIndex();
     if (!hasNextSample()
-        || timeUs < timesUs[relativeReadIndex]
+        || timeUs < sampleMetadata.getTimeUs(readIndex)
         || (timeUs > largestQueuedTimestampUs && !allowTimeBeyondBuffer)) {
       return false;
     }
     int offset =
         allSamplesAreSyncSamples
-            ? findSampleAfter(
-                relativeReadIndex, length - readPosition, timeUs, allowTimeBeyondBuffer)
-            : findSampleBefore(
-                relativeReadIndex, length - readPosition, timeUs, /* keyframe= */ true);
+            ? findSampleAfter(readIndex, length - readPosition, timeUs, allowTimeBeyondBuffer)
+            : findSampleBefore(readIndex, length - readPosition, timeUs, /* keyframe= */ true);
     if (offset == -1) {
       return false;
     }
@@ -506,15 +523,14 @@ public class SampleQueue implements TrackOutput {
    * @return The number of samples that need to be skipped, which may be equal to 0.
    */
   public final synchronized int getSkipCount(long timeUs, boolean allowEndOfQueue) {
-    int relativeReadIndex = getRelativeIndex(readPosition);
-    if (!hasNextSample() || timeUs < timesUs[relativeReadIndex]) {
+    int readIndex = getReadIndex();
+    if (!hasNextSample() || timeUs < sampleMetadata.getTimeUs(readIndex)) {
       return 0;
     }
     if (timeUs > largestQueuedTimestampUs && allowEndOfQueue) {
       return length - readPosition;
     }
-    int offset =
-        findSampleBefore(relativeReadIndex, length - readPosition, timeUs, /* keyframe= */ true);
+    int offset = findSampleBefore(readIndex, length - readPosition, timeUs, /* keyframe= */ true);
     if (offset == -1) {
       return 0;
     }
@@ -720,24 +736,79 @@ public class SampleQueue implements TrackOutput {
       return C.RESULT_FORMAT_READ;
     }
 
-    int relativeReadIndex = getRelativeIndex(readPosition);
-    if (!mayReadSample(relativeReadIndex)) {
+    int readIndex = getReadIndex();
+    if (!mayReadSample(readIndex)) {
       buffer.waitingForKeys = true;
       return C.RESULT_NOTHING_READ;
     }
 
-    buffer.setFlags(flags[relativeReadIndex]);
+    buffer.setFlags(sampleMetadata.getFlags(readIndex));
     if (readPosition == (length - 1) && (loadingFinished || isLastSampleQueued)) {
       buffer.addFlag(C.BUFFER_FLAG_LAST_SAMPLE);
     }
-    buffer.timeUs = timesUs[relativeReadIndex];
-    extrasHolder.size = sizes[relativeReadIndex];
-    extrasHolder.offset = offsets[relativeReadIndex];
-    extrasHolder.cryptoData = cryptoDatas[relativeReadIndex];
+    buffer.timeUs = sampleMetadata.getTimeUs(readIndex);
+    extrasHolder.size = sampleMetadata.getSize(readIndex);
+    extrasHolder.offset = sampleMetadata.getOffset(readIndex);
+    extrasHolder.cryptoData = sampleMetadata.getCryptoData(readIndex);
 
     return C.RESULT_BUFFER_READ;
   }
 
+  @SuppressWarnings("ReferenceEquality") // See comments in setUpstreamFormat.
+  private synchronized int peekBatchMetadata(
+      BatchBuffer batchBuffer,
+      long timeOffsetUs,
+      boolean loadingFinished,
+      SampleExtrasHolder extrasHolder) {
+    int maxSampleCount = batchBuffer.getRemainingSampleCapacity();
+    int maxSizeBytes = batchBuffer.getRemainingCapacityBytes();
+    boolean batchBufferEmpty = !batchBuffer.hasSamples();
+    long previousTimeUs =
+        batchBufferEmpty ? Long.MIN_VALUE : batchBuffer.getLastSampleTimeUs() - timeOffsetUs;
+    // The last sample of the stream is left to read(), which flags it as such.
+    int readableLength = loadingFinished || isLastSampleQueued ? length - 1 : length;
+    int sampleCount = 0;
+    long totalSize = 0;
+    long nextOffset = 0;
+    long firstTimeUs = 0;
+    boolean firstSampleIsKeyFrame = false;
+    while (readPosition + sampleCount < readableLength && sampleCount < maxSampleCount) {
+      int index = getReadIndex() + sampleCount;
+      long timeUs = sampleMetadata.getTimeUs(index);
+      int size = sampleMetadata.getSize(index);
+      long offset = sampleMetadata.getOffset(index);
+      @C.BufferFlags int flags = sampleMetadata.getFlags(index);
+      if ((flags & NON_BATCHABLE_SAMPLE_FLAGS) != 0
+          || timeUs < previousTimeUs
+          || (sampleCount > 0 && offset != nextOffset)
+          // The size limit is ignored for the first sample appended to an empty batch buffer.
+          || (totalSize + size > maxSizeBytes && (!batchBufferEmpty || sampleCount > 0))
+          || sharedSampleMetadata.get(index).format != downstreamFormat
+          || !mayReadSample(index)) {
+        break;
+      }
+      if (sampleCount == 0) {
+        extrasHolder.offset = offset;
+        firstTimeUs = timeUs;
+        firstSampleIsKeyFrame = (flags & C.BUFFER_FLAG_KEY_FRAME) != 0;
+      }
+      nextOffset = offset + size;
+      totalSize += size;
+      previousTimeUs = timeUs;
+      sampleCount++;
+    }
+    if (sampleCount > 0) {
+      extrasHolder.size = (int) totalSize;
+      extrasHolder.cryptoData = null;
+      batchBuffer.appendSamples(
+          sampleCount,
+          firstTimeUs + timeOffsetUs,
+          /* lastSampleTimeUs= */ previousTimeUs + timeOffsetUs,
+          firstSampleIsKeyFrame);
+    }
+    return sampleCount;
+  }
+
   private synchronized boolean setUpstreamFormat(Format format) {
     upstreamFormatRequired = false;
     if (Util.areEqual(format, upstreamFormat)) {
@@ -764,11 +835,11 @@ public class SampleQueue implements TrackOutput {
 
   private synchronized long discardSampleMetadataTo(
       long timeUs, boolean toKeyframe, boolean stopAtReadPosition) {
-    if (length == 0 || timeUs < timesUs[relativeFirstIndex]) {
+    if (length == 0 || timeUs < sampleMetadata.getTimeUs(absoluteFirstIndex)) {
       return C.INDEX_UNSET;
     }
     int searchLength = stopAtReadPosition && readPosition != length ? readPosition + 1 : length;
-    int discardCount = findSampleBefore(relativeFirstIndex, searchLength, timeUs, toKeyframe);
+    int discardCount = findSampleBefore(absoluteFirstIndex, searchLength, timeUs, toKeyframe);
     if (discardCount == -1) {
       return C.INDEX_UNSET;
     }
@@ -807,21 +878,20 @@ public class SampleQueue implements TrackOutput {
       @Nullable CryptoData cryptoData) {
     if (length > 0) {
       // Ensure sample data doesn't overlap.
-      int previousSampleRelativeIndex = getRelativeIndex(length - 1);
+      int previousSampleIndex = getWriteIndex() - 1;
       checkArgument(
-          offsets[previousSampleRelativeIndex] + sizes[previousSampleRelativeIndex] <= offset);
+          sampleMetadata.getOffset(previousSampleIndex)
+                  + sampleMetadata.getSize(previousSampleIndex)
+              <= offset);
     }
 
     isLastSampleQueued = (sampleFlags & C.BUFFER_FLAG_LAST_SAMPLE) != 0;
     largestQueuedTimestampUs = max(largestQueuedTimestampUs, timeUs);
 
-    int relativeEndIndex = getRelativeIndex(length);
-    timesUs[relativeEndIndex] = timeUs;
-    offsets[relativeEndIndex] = offset;
-    sizes[relativeEndIndex] = size;
-    flags[relativeEndIndex] = sampleFlags;
-    cryptoDatas[relativeEndIndex] = cryptoData;
-    sourceIds[relativeEndIndex] = upstreamSourceId;
+    sampleMetadata.set(getWriteIndex(), timeUs, offset, size, sampleFlags, cryptoData);
+    if (sourceIds.isEmpty() || sourceIds.getEndValue() != upstreamSourceId) {
+      sourceIds.appendSpan(getWriteIndex(), upstreamSourceId);
+    }
 
     if (sharedSampleMetadata.isEmpty()
         || !sharedSampleMetadata.getEndValue().format.equals(upstreamFormat)) {
@@ -836,38 +906,6 @@ public class SampleQueue implements TrackOutput {
     }
 
     length++;
-    if (length == capacity) {
-      // Increase the capacity.
-      int newCapacity = capacity + SAMPLE_CAPACITY_INCREMENT;
-      long[] newSourceIds = new long[newCapacity];
-      long[] newOffsets = new long[newCapacity];
-      long[] newTimesUs = new long[newCapacity];
-      int[] newFlags = new int[newCapacity];
-      int[] newSizes = new int[newCapacity];
-      CryptoData[] newCryptoDatas = new CryptoData[newCapacity];
-      int beforeWrap = capacity - relativeFirstIndex;
-      System.arraycopy(offsets, relativeFirstIndex, newOffsets, 0, beforeWrap);
-      System.arraycopy(timesUs, relativeFirstIndex, newTimesUs, 0, beforeWrap);
-      System.arraycopy(flags, relativeFirstIndex, newFlags, 0, beforeWrap);
-      System.arraycopy(sizes, relativeFirstIndex, newSizes, 0, beforeWrap);
-      System.arraycopy(cryptoDatas, relativeFirstIndex, newCryptoDatas, 0, beforeWrap);
-      System.arraycopy(sourceIds, relativeFirstIndex, newSourceIds, 0, beforeWrap);
-      int afterWrap = relativeFirstIndex;
-      System.arraycopy(offsets, 0, newOffsets, beforeWrap, afterWrap);
-      System.arraycopy(timesUs, 0, newTimesUs, beforeWrap, afterWrap);
-      System.arraycopy(flags, 0, newFlags, beforeWrap, afterWrap);
-      System.arraycopy(sizes, 0, newSizes, beforeWrap, afterWrap);
-      System.arraycopy(cryptoDatas, 0, newCryptoDatas, beforeWrap, afterWrap);
-      System.arraycopy(sourceIds, 0, newSourceIds, beforeWrap, afterWrap);
-      offsets = newOffsets;
-      timesUs = newTimesUs;
-      flags = newFlags;
-      sizes = newSizes;
-      cryptoDatas = newCryptoDatas;
-      sourceIds = newSourceIds;
-      relativeFirstIndex = 0;
-      capacity = newCapacity;
-    }
   }
 
   /**
@@ -896,9 +934,11 @@ public class SampleQueue implements TrackOutput {
     largestQueuedTimestampUs = max(largestDiscardedTimestampUs, getLargestTimestamp(length));
     isLastSampleQueued = discardCount == 0 && isLastSampleQueued;
     sharedSampleMetadata.discardFrom(discardFromIndex);
+    sampleMetadata.discardFrom(discardFromIndex);
+    sourceIds.discardFrom(discardFromIndex);
     if (length != 0) {
-      int relativeLastWriteIndex = getRelativeIndex(length - 1);
-      return offsets[relativeLastWriteIndex] + sizes[relativeLastWriteIndex];
+      int lastWriteIndex = getWriteIndex() - 1;
+      return sampleMetadata.getOffset(lastWriteIndex) + sampleMetadata.getSize(lastWriteIndex);
     }
     return 0;
   }
@@ -948,13 +988,13 @@ public class SampleQueue implements TrackOutput {
   /**
    * Returns whether it's possible to read the next sample.
    *
-   * @param relativeReadIndex The relative read index of the next sample.
+   * @param readIndex The absolute index of the next sample.
    * @return Whether it's possible to read the next sample.
    */
-  private boolean mayReadSample(int relativeReadIndex) {
+  private boolean mayReadSample(int readIndex) {
     return currentDrmSession == null
         || currentDrmSession.getState() == DrmSession.STATE_OPENED_WITH_KEYS
-        || ((flags[relativeReadIndex] & C.BUFFER_FLAG_ENCRYPTED) == 0
+        || ((sampleMetadata.getFlags(readIndex) & C.BUFFER_FLAG_ENCRYPTED) == 0
             && currentDrmSession.playClearSamplesWithoutKeys());
   }
 
@@ -963,33 +1003,39 @@ public class SampleQueue implements TrackOutput {
    * time. If {@code keyframe} is {@code true} then the sample is additionally required to be a
    * keyframe.
    *
-   * @param relativeStartIndex The relative index from which to start searching.
+   * @param startIndex The absolute index from which to start searching.
    * @param length The length of the range being searched.
    * @param timeUs The specified time, in microseconds.
    * @param keyframe Whether only keyframes should be considered.
-   * @return The offset from {@code relativeStartIndex} to the found sample, or -1 if no matching
-   *     sample was found.
+   * @return The offset from {@code startIndex} to the found sample, or -1 if no matching sample was
+   *     found.
    */
-  private int findSampleBefore(int relativeStartIndex, int length, long timeUs, boolean keyframe) {
-    // This could be optimized to use a binary search, however in practice callers to this method
-    // normally pass times near to the start of the search region. Hence it's unclear whether
-    // switching to a binary search would yield any real benefit.
+  private int findSampleBefore(int startIndex, int length, long timeUs, boolean keyframe) {
+    int endIndex = startIndex + length;
+    // All samples before searchIndex are earlier than timeUs, so the last suitable one among them
+    // is the best match found so far. This avoids stepping through them for large queues.
+    int searchIndex = sampleMetadata.skipSamplesBefore(startIndex, endIndex, timeUs);
     int sampleCountToTarget = -1;
-    int searchIndex = relativeStartIndex;
-    for (int i = 0; i < length && timesUs[searchIndex] <= timeUs; i++) {
-      if (!keyframe || (flags[searchIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+    for (int i = searchIndex - 1; i >= startIndex; i--) {
+      if (!keyframe || (sampleMetadata.getFlags(i) & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+        sampleCountToTarget = i - startIndex;
+        break;
+      }
+    }
+    for (; searchIndex < endIndex; searchIndex++) {
+      long sampleTimeUs = sampleMetadata.getTimeUs(searchIndex);
+      if (sampleTimeUs > timeUs) {
+        break;
+      }
+      if (!keyframe || (sampleMetadata.getFlags(searchIndex) & C.BUFFER_FLAG_KEY_FRAME) != 0) {
         // We've found a suitable sample.
-        sampleCountToTarget = i;
-        if (timesUs[searchIndex] == timeUs) {
+        sampleCountToTarget = searchIndex - startIndex;
+        if (sampleTimeUs == timeUs) {
           // Stop the search if we found a sample at the specified time to avoid returning a later
           // sample with the same exactly matching timestamp.
           break;
         }
       }
-      searchIndex++;
-      if (searchIndex == capacity) {
-        searchIndex = 0;
-      }
     }
     return sampleCountToTarget;
   }
@@ -998,24 +1044,22 @@ public class SampleQueue implements TrackOutput {
    * Finds the offset of the first sample in the specified range that's at or after the specified
    * time.
    *
-   * @param relativeStartIndex The relative index from which to start searching.
+   * @param startIndex The absolute index from which to start searching.
    * @param length The length of the range being searched.
    * @param timeUs The specified time, in microseconds.
    * @param allowTimeBeyondBuffer Whether {@code length} is returned if the {@code timeUs} is beyond
    *     the last buffer in the specified range.
-   * @return The offset from {@code relativeStartIndex} to the found sample, -1 if no sample is at
-   *     or after the specified time.
+   * @return The offset from {@code startIndex} to the found sample, -1 if no sample is at or after
+   *     the specified time.
    */
   private int findSampleAfter(
-      int relativeStartIndex, int length, long timeUs, boolean allowTimeBeyondBuffer) {
-    int searchIndex = relativeStartIndex;
-    for (int i = 0; i < length; i++) {
-      if (timesUs[searchIndex] >= timeUs) {
-        return i;
-      }
-      searchIndex++;
-      if (searchIndex == capacity) {
-        searchIndex = 0;
+      int startIndex, int length, long timeUs, boolean allowTimeBeyondBuffer) {
+    int endIndex = startIndex + length;
+    for (int searchIndex = sampleMetadata.skipSamplesBefore(startIndex, endIndex, timeUs);
+        searchIndex < endIndex;
+        searchIndex++) {
+      if (sampleMetadata.getTimeUs(searchIndex) >= timeUs) {
+        return searchIndex - startIndex;
       }
     }
     return allowTimeBeyondBuffer ? length : -1;
@@ -1030,13 +1074,9 @@ public class SampleQueue implements TrackOutput {
    */
   private int countUnreadSamplesBefore(long timeUs) {
     int count = length;
-    int relativeSampleIndex = getRelativeIndex(length - 1);
-    while (count > readPosition && timesUs[relativeSampleIndex] >= timeUs) {
+    while (count > readPosition
+        && sampleMetadata.getTimeUs(absoluteFirstIndex + count - 1) >= timeUs) {
       count--;
-      relativeSampleIndex--;
-      if (relativeSampleIndex == -1) {
-        relativeSampleIndex = capacity - 1;
-      }
     }
     return count;
   }
@@ -1053,22 +1093,22 @@ public class SampleQueue implements TrackOutput {
         max(largestDiscardedTimestampUs, getLargestTimestamp(discardCount));
     length -= discardCount;
     absoluteFirstIndex += discardCount;
-    relativeFirstIndex += discardCount;
-    if (relativeFirstIndex >= capacity) {
-      relativeFirstIndex -= capacity;
-    }
     readPosition -= discardCount;
     if (readPosition < 0) {
       readPosition = 0;
     }
-    sharedSampleMetadata.discardTo(absoluteFirstIndex);
-
+    long discardToOffset;
     if (length == 0) {
-      int relativeLastDiscardIndex = (relativeFirstIndex == 0 ? capacity : relativeFirstIndex) - 1;
-      return offsets[relativeLastDiscardIndex] + sizes[relativeLastDiscardIndex];
+      int lastDiscardIndex = absoluteFirstIndex - 1;
+      discardToOffset =
+          sampleMetadata.getOffset(lastDiscardIndex) + sampleMetadata.getSize(lastDiscardIndex);
     } else {
-      return offsets[relativeFirstIndex];
+      discardToOffset = sampleMetadata.getOffset(absoluteFirstIndex);
     }
+    sharedSampleMetadata.discardTo(absoluteFirstIndex);
+    sampleMetadata.discardTo(absoluteFirstIndex);
+    sourceIds.discardTo(absoluteFirstIndex);
+    return discardToOffset;
   }
 
   /**
@@ -1084,30 +1124,15 @@ public class SampleQueue implements TrackOutput {
       return Long.MIN_VALUE;
     }
     long largestTimestampUs = Long.MIN_VALUE;
-    int relativeSampleIndex = getRelativeIndex(length - 1);
-    for (int i = 0; i < length; i++) {
-      largestTimestampUs = max(largestTimestampUs, timesUs[relativeSampleIndex]);
-      if ((flags[relativeSampleIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+    for (int index = absoluteFirstIndex + length - 1; index >= absoluteFirstIndex; index--) {
+      largestTimestampUs = max(largestTimestampUs, sampleMetadata.getTimeUs(index));
+      if ((sampleMetadata.getFlags(index) & C.BUFFER_FLAG_KEY_FRAME) != 0) {
         break;
       }
-      relativeSampleIndex--;
-      if (relativeSampleIndex == -1) {
-        relativeSampleIndex = capacity - 1;
-      }
     }
     return largestTimestampUs;
   }
 
-  /**
-   * Returns the relative index for a given offset from the start of the queue.
-   *
-   * @param offset The offset, which must be in the range [0, length].
-   */
-  private int getRelativeIndex(int offset) {
-    int relativeIndex = relativeFirstIndex + offset;
-    return relativeIndex < capacity ? relativeIndex : relativeIndex - capacity;
-  }
-
   /** A holder for sample metadata not held by {@link DecoderInputBuffer}. */
   /* package */ static final class SampleExtrasHolder {
 
@@ -23,6 +23,7 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.decoder.DecoderInputBuffer;
 import androidx.media3.decoder.DecoderInputBuffer.InsufficientCapacityException;
 import androidx.media3.exoplayer.FormatHolder;
+import androidx.media3.exoplayer.mediacodec.BatchBuffer;
 import java.io.IOException;
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
@@ -119,6 +120,25 @@ public interface SampleStream {
   @ReadDataResult
   int readData(FormatHolder formatHolder, DecoderInputBuffer buffer, @ReadFlags int readFlags);
 
+  /**
+   * Attempts to read multiple consecutive samples from the stream, appending them to {@code
+   * batchBuffer}.
+   *
+   * <p>Only samples that can be appended without any per-sample processing are read. Reading stops
+   * at a format change, an encrypted sample, a sample with supplemental data and the last sample or
+   * end of the stream, all of which must be read with {@link #readData}. Callers should therefore
+   * fall back to {@link #readData} when this method returns 0.
+   *
+   * <p>The default implementation doesn't read any samples.
+   *
+   * @param batchBuffer The {@link BatchBuffer} to which samples should be appended.
+   * @param timeOffsetUs An offset to add to the timestamps of the appended samples.
+   * @return The number of samples appended to {@code batchBuffer}.
+   */
+  default int readDataBatch(BatchBuffer batchBuffer, long timeOffsetUs) {
+    return 0;
+  }
+
   /**
    * Attempts to skip to the keyframe before the specified position, or to the end of the stream if
    * {@code positionUs} is beyond it.
@@ -15,10 +15,13 @@
  */
 package androidx.media3.exoplayer.upstream;
 
+import androidx.annotation.Nullable;
 import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import java.nio.ByteBuffer;
 
 /**
- * An allocation within a byte array.
+ * An allocation within a byte array or a direct {@link ByteBuffer}.
  *
  * <p>The allocation's length is obtained by calling {@link
  * Allocator#getIndividualAllocationLength()} on the {@link Allocator} from which it was obtained.
@@ -29,12 +32,29 @@ public final class Allocation {
   /**
    * The array containing the allocated space. The allocated space might not be at the start of the
    * array, and so {@link #offset} must be used when indexing into it.
+   *
+   * <p>Empty if the allocation is backed by a {@link #directBuffer}.
    */
   public final byte[] data;
 
-  /** The offset of the allocated space in {@link #data}. */
+  /** The offset of the allocated space in {@link #data}, or 0 for a {@link #directBuffer}. */
   public final int offset;
 
+  /**
+   * The direct buffer containing the allocated space, or null if the allocation is backed by
+   * {@link #data}. The allocated space starts at index 0 of the buffer.
+   *
+   * <p>The buffer's position and limit must not be modified, because it may be accessed from
+   * multiple threads. Use {@link ByteBuffer#duplicate()} to obtain an independent view.
+   */
+  @Nullable public final ByteBuffer directBuffer;
+
+  /**
+   * The next allocation in a free list of a {@link ThreadLocalAllocationPool}, or null if this is
+   * the last allocation in the list or the allocation isn't in a free list.
+   */
+  @Nullable /* package */ Allocation nextFree;
+
   /**
    * @param data The array containing the allocated space.
    * @param offset The offset of the allocated space in {@code data}.
@@ -42,5 +62,15 @@ public final class Allocation {
   public Allocation(byte[] data, int offset) {
     this.data = data;
     this.offset = offset;
+    this.directBuffer = null;
+  }
+
+  /**
+   * @param directBuffer The direct buffer containing the allocated space, starting at index 0.
+   */
+  public Allocation(ByteBuffer directBuffer) {
+    this.data = Util.EMPTY_BYTE_ARRAY;
+    this.offset = 0;
+    this.directBuffer = directBuffer;
   }
 }
@@ -33,6 +33,8 @@ public final class DefaultAllocator implements Allocator {
   private final boolean trimOnReset;
   private final int individualAllocationSize;
   @Nullable private final byte[] initialAllocationBlock;
+  @Nullable private final ThreadLocalAllocationPool threadLocalAllocationPool;
+  @Nullable private final DirectAllocationFactory directAllocationFactory;
 
   private int targetBufferSize;
   private int allocatedCount;
@@ -64,10 +66,80 @@ public final class DefaultAllocator implements Allocator {
    */
   public DefaultAllocator(
       boolean trimOnReset, int individualAllocationSize, int initialAllocationCount) {
+    this(
+        trimOnReset,
+        individualAllocationSize,
+        initialAllocationCount,
+        /* threadLocalCachingEnabled= */ false);
+  }
+
+  /**
+   * Constructs an instance with some {@link Allocation}s created up front.
+   *
+   * <p>Note: {@link Allocation}s created up front will never be discarded by {@link #trim()}.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances. If set to false, trimming can
+   *     be forced by calling {@link #setTargetBufferSize(int)} manually when required.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   * @param initialAllocationCount The number of allocations to create up front.
+   * @param threadLocalCachingEnabled Whether {@link #allocate()} and {@link #release(Allocation)}
+   *     are lock-free. If true, released allocations are kept in a lock-free free list and each
+   *     allocating thread caches a small number of them, which reduces contention when several
+   *     loading threads write into the same allocator. A few allocations per allocating thread may
+   *     then be retained in addition to the target buffer size.
+   */
+  public DefaultAllocator(
+      boolean trimOnReset,
+      int individualAllocationSize,
+      int initialAllocationCount,
+      boolean threadLocalCachingEnabled) {
+    this(
+        trimOnReset,
+        individualAllocationSize,
+        initialAllocationCount,
+        threadLocalCachingEnabled,
+        /* useDirectBuffers= */ false);
+  }
+
+  /**
+   * Constructs an instance.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances. If set to false, trimming can
+   *     be forced by calling {@link #setTargetBufferSize(int)} manually when required.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   * @param initialAllocationCount The number of allocations to create up front. Must be 0 if
+   *     {@code useDirectBuffers} is true.
+   * @param threadLocalCachingEnabled Whether {@link #allocate()} and {@link #release(Allocation)}
+   *     are lock-free. See {@link #DefaultAllocator(boolean, int, int, boolean)}.
+   * @param useDirectBuffers Whether allocations are backed by direct {@link java.nio.ByteBuffer
+   *     ByteBuffers} outside of the Java heap, rather than by byte arrays. See {@link
+   *     Allocation#directBuffer}. This avoids heap pressure when buffering large amounts of media,
+   *     and allows sample data to be copied into direct decoder input buffers with bulk copies.
+   */
+  public DefaultAllocator(
+      boolean trimOnReset,
+      int individualAllocationSize,
+      int initialAllocationCount,
+      boolean threadLocalCachingEnabled,
+      boolean useDirectBuffers) {
     Assertions.checkArgument(individualAllocationSize > 0);
     Assertions.checkArgument(initialAllocationCount >= 0);
+    Assertions.checkArgument(!useDirectBuffers || initialAllocationCount == 0);
     this.trimOnReset = trimOnReset;
     this.individualAllocationSize = individualAllocationSize;
+    directAllocationFactory =
+        useDirectBuffers ? new DirectAllocationFactory(individualAllocationSize) : null;
+    if (threadLocalCachingEnabled) {
+      threadLocalAllocationPool =
+          new ThreadLocalAllocationPool(
+              individualAllocationSize, initialAllocationCount, directAllocationFactory);
+      availableAllocations = new Allocation[0];
+      initialAllocationBlock = null;
+      return;
+    }
+    threadLocalAllocationPool = null;
     this.availableCount = initialAllocationCount;
     this.availableAllocations = new Allocation[initialAllocationCount + AVAILABLE_EXTRA_CAPACITY];
     if (initialAllocationCount > 0) {
@@ -96,45 +168,37 @@ public final class DefaultAllocator implements Allocator {
   }
 
   @Override
-  public synchronized Allocation allocate() {
-    allocatedCount++;
-    Allocation allocation;
-    if (availableCount > 0) {
-      allocation = Assertions.checkNotNull(availableAllocations[--availableCount]);
-      availableAllocations[availableCount] = null;
-    } else {
-      allocation = new Allocation(new byte[individualAllocationSize], 0);
-      if (allocatedCount > availableAllocations.length) {
-        // Make availableAllocations be large enough to contain all allocations made by this
-        // allocator so that release() does not need to grow the availableAllocations array. See
-        // [Internal ref: b/209801945].
-        availableAllocations = Arrays.copyOf(availableAllocations, availableAllocations.length * 2);
-      }
+  public Allocation allocate() {
+    if (threadLocalAllocationPool != null) {
+      return threadLocalAllocationPool.allocate();
     }
-    return allocation;
+    return allocateSynchronized();
   }
 
   @Override
-  public synchronized void release(Allocation allocation) {
-    availableAllocations[availableCount++] = allocation;
-    allocatedCount--;
-    // Wake up threads waiting for the allocated size to drop.
-    notifyAll();
+  public void release(Allocation allocation) {
+    if (threadLocalAllocationPool != null) {
+      threadLocalAllocationPool.release(allocation);
+    } else {
+      releaseSynchronized(allocation);
+    }
   }
 
   @Override
-  public synchronized void release(@Nullable AllocationNode allocationNode) {
-    while (allocationNode != null) {
-      availableAllocations[availableCount++] = allocationNode.getAllocation();
-      allocatedCount--;
-      allocationNode = allocationNode.next();
+  public void release(@Nullable AllocationNode allocationNode) {
+    if (threadLocalAllocationPool != null) {
+      threadLocalAllocationPool.release(allocationNode);
+    } else {
+      releaseSynchronized(allocationNode);
     }
-    // Wake up threads waiting for the allocated size to drop.
-    notifyAll();
   }
 
   @Override
   public synchronized void trim() {
+    if (threadLocalAllocationPool != null) {
+      threadLocalAllocationPool.trim(targetBufferSize);
+      return;
+    }
     int targetAllocationCount = Util.ceilDivide(targetBufferSize, individualAllocationSize);
     int targetAvailableCount = max(0, targetAllocationCount - allocatedCount);
     if (targetAvailableCount >= availableCount) {
@@ -176,12 +240,57 @@ public final class DefaultAllocator implements Allocator {
   }
 
   @Override
-  public synchronized int getTotalBytesAllocated() {
-    return allocatedCount * individualAllocationSize;
+  public int getTotalBytesAllocated() {
+    if (threadLocalAllocationPool != null) {
+      return threadLocalAllocationPool.getAllocatedCount() * individualAllocationSize;
+    }
+    return getTotalBytesAllocatedSynchronized();
   }
 
   @Override
   public int getIndividualAllocationLength() {
     return individualAllocationSize;
   }
+
+  private synchronized Allocation allocateSynchronized() {
+    allocatedCount++;
+    Allocation allocation;
+    if (availableCount > 0) {
+      allocation = Assertions.checkNotNull(availableAllocations[--availableCount]);
+      availableAllocations[availableCount] = null;
+    } else {
+      allocation =
+          directAllocationFactory != null
+              ? directAllocationFactory.createAllocation()
+              : new Allocation(new byte[individualAllocationSize], 0);
+      if (allocatedCount > availableAllocations.length) {
+        // Make availableAllocations be large enough to contain all allocations made by this
+        // allocator so that release() does not need to grow the availableAllocations array. See
+        // [Internal ref: b/209801945].
+        availableAllocations = Arrays.copyOf(availableAllocations, availableAllocations.length * 2);
+      }
+    }
+    return allocation;
+  }
+
+  private synchronized void releaseSynchronized(Allocation allocation) {
+    availableAllocations[availableCount++] = allocation;
+    allocatedCount--;
+    // Wake up threads waiting for the allocated size to drop.
+    notifyAll();
+  }
+
+  private synchronized void releaseSynchronized(@Nullable AllocationNode allocationNode) {
+    while (allocationNode != null) {
+      availableAllocations[availableCount++] = allocationNode.getAllocation();
+      allocatedCount--;
+      allocationNode = allocationNode.next();
+    }
+    // Wake up threads waiting for the allocated size to drop.
+    notifyAll();
+  }
+
+  private synchronized int getTotalBytesAllocatedSynchronized() {
+    return allocatedCount * individualAllocationSize;
+  }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static java.lang.Math.max;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+/**
+ * Creates {@link Allocation Allocations} backed by direct {@link ByteBuffer ByteBuffers}.
+ *
+ * <p>Direct memory is allocated in slabs that are sliced into individual allocations, to reduce
+ * the number of native allocations and the overhead of each one. A slab's memory is freed once all
+ * allocations sliced from it have been garbage collected.
+ */
+/* package */ final class DirectAllocationFactory {
+
+  /** The target size of each slab, in bytes. */
+  private static final int TARGET_SLAB_SIZE = 1024 * 1024;
+
+  private final int individualAllocationSize;
+  private final int allocationsPerSlab;
+
+  @GuardedBy("this")
+  @Nullable
+  private ByteBuffer currentSlab;
+
+  /**
+   * Creates an instance.
+   *
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   */
+  public DirectAllocationFactory(int individualAllocationSize) {
+    this.individualAllocationSize = individualAllocationSize;
+    allocationsPerSlab = max(1, TARGET_SLAB_SIZE / individualAllocationSize);
+  }
+
+  /** Creates a new {@link Allocation} backed by a direct buffer. */
+  public synchronized Allocation createAllocation() {
+    @Nullable ByteBuffer slab = currentSlab;
+    if (slab == null || !slab.hasRemaining()) {
+      slab = ByteBuffer.allocateDirect(allocationsPerSlab * individualAllocationSize);
+      currentSlab = slab;
+    }
+    slab.limit(slab.position() + individualAllocationSize);
+    ByteBuffer directBuffer = slab.slice();
+    slab.position(slab.limit());
+    slab.limit(slab.capacity());
+    return new Allocation(directBuffer);
+  }
+}
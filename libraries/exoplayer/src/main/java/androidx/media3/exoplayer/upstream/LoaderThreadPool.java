@@ -0,0 +1,351 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static java.lang.Math.min;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.ConditionVariable;
+import androidx.media3.common.util.NullableType;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.util.ReleasableExecutor;
+import java.util.ArrayDeque;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of threads that can be shared between {@link Loader} instances.
+ *
+ * <p>By default each {@link Loader} creates its own thread. Passing executors created by {@link
+ * #createExecutor} to {@link Loader#Loader(ReleasableExecutor)} instead runs the loads of all of
+ * the loaders on at most {@code maxThreadCount} threads.
+ *
+ * <p>Each executor created by this pool runs its tasks one at a time, in the order in which they
+ * were passed to {@link ReleasableExecutor#execute}. A {@link Loader} therefore sees the same
+ * ordering as it does with a dedicated thread. When there are more executors with pending tasks
+ * than threads, tasks of executors with a higher priority run first, and tasks of executors with
+ * the same priority run in the order in which they became ready to run.
+ *
+ * <p>A load that runs for a long time holds its thread until it completes, and can starve the
+ * tasks of other executors if all threads are held. Loads that pause, such as those of {@link
+ * androidx.media3.exoplayer.source.ProgressiveMediaSource}, must therefore wait using {@link
+ * #block(ConditionVariable)}, which lets the pool start an extra thread whilst the load is paused.
+ * At most {@code maxThreadCount} extra threads are started, so the pool never has more than twice
+ * {@code maxThreadCount} threads. If more loads than that can be paused at once, for example
+ * because many media periods are preloaded, {@code maxThreadCount} must be increased accordingly.
+ *
+ * <p>Idle threads are stopped after a timeout and recreated on demand.
+ */
+@UnstableApi
+public final class LoaderThreadPool {
+
+  private static final String THREAD_NAME_PREFIX = "ExoPlayer:Loader:Pool-";
+  private static final long KEEP_ALIVE_TIME_MS = 10_000;
+
+  private static final ThreadLocal<@NullableType LoaderThreadPool> currentThreadPool =
+      new ThreadLocal<>();
+
+  private final int maxThreadCount;
+  private final ThreadPoolExecutor threadPoolExecutor;
+  private final AtomicLong taskSequenceNumber;
+
+  @GuardedBy("this")
+  private int blockedTaskCount;
+
+  @GuardedBy("this")
+  private int scheduledExecutorCount;
+
+  @GuardedBy("this")
+  private boolean released;
+
+  /**
+   * Blocks until {@code condition} is opened.
+   *
+   * <p>If called from a task of a {@link LoaderThreadPool}, the calling thread doesn't count
+   * towards the maximum number of threads of the pool whilst it's blocked, so that the tasks of
+   * other executors can run in the meantime. Otherwise, this is equivalent to {@link
+   * ConditionVariable#block()}.
+   *
+   * @param condition The {@link ConditionVariable} to wait for.
+   * @throws InterruptedException If the thread is interrupted.
+   */
+  public static void block(ConditionVariable condition) throws InterruptedException {
+    @Nullable LoaderThreadPool loaderThreadPool = currentThreadPool.get();
+    if (loaderThreadPool == null || condition.isOpen()) {
+      condition.block();
+      return;
+    }
+    loaderThreadPool.onTaskBlocked();
+    try {
+      condition.block();
+    } finally {
+      loaderThreadPool.onTaskUnblocked();
+    }
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxThreadCount The maximum number of threads.
+   */
+  public LoaderThreadPool(int maxThreadCount) {
+    this(maxThreadCount, new DefaultThreadFactory());
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxThreadCount The maximum number of threads.
+   * @param threadFactory The {@link ThreadFactory} used to create the threads. Where the runtime
+   *     supports them, this can be a factory for virtual threads.
+   */
+  public LoaderThreadPool(int maxThreadCount, ThreadFactory threadFactory) {
+    checkArgument(maxThreadCount > 0);
+    this.maxThreadCount = maxThreadCount;
+    threadPoolExecutor =
+        new ThreadPoolExecutor(
+            /* corePoolSize= */ maxThreadCount,
+            /* maximumPoolSize= */ maxThreadCount,
+            KEEP_ALIVE_TIME_MS,
+            TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(),
+            threadFactory);
+    threadPoolExecutor.allowCoreThreadTimeOut(true);
+    taskSequenceNumber = new AtomicLong();
+  }
+
+  /**
+   * Creates a {@link ReleasableExecutor} with {@link C#PRIORITY_PLAYBACK} that runs its tasks on
+   * this pool.
+   */
+  public ReleasableExecutor createExecutor() {
+    return createExecutor(C.PRIORITY_PLAYBACK);
+  }
+
+  /**
+   * Creates a {@link ReleasableExecutor} that runs its tasks on this pool.
+   *
+   * @param priority The {@link C.Priority} of the executor's tasks. Tasks of executors with a
+   *     higher priority run before tasks of executors with a lower priority.
+   * @return The {@link ReleasableExecutor}.
+   */
+  public ReleasableExecutor createExecutor(@C.Priority int priority) {
+    return new SerialExecutor(priority);
+  }
+
+  /** Returns the current number of threads in the pool. */
+  public int getThreadCount() {
+    return threadPoolExecutor.getPoolSize();
+  }
+
+  /** Returns the largest number of threads that have ever simultaneously been in the pool. */
+  public int getLargestThreadCount() {
+    return threadPoolExecutor.getLargestPoolSize();
+  }
+
+  /**
+   * Releases the pool. Tasks that have already been passed to executors of the pool are still run,
+   * but no further tasks are accepted. The threads are stopped once these tasks have completed.
+   *
+   * <p>After the pool is released, {@link ReleasableExecutor#execute} of its executors throws a
+   * {@link java.util.concurrent.RejectedExecutionException}, which means that {@link
+   * Loader#startLoading} throws for a {@link Loader} that uses one of them. The pool should
+   * therefore only be released once all such loaders have been released.
+   */
+  public synchronized void release() {
+    released = true;
+    if (scheduledExecutorCount == 0) {
+      threadPoolExecutor.shutdown();
+    }
+  }
+
+  private synchronized boolean isPoolReleased() {
+    return released;
+  }
+
+  /**
+   * Called when an executor with no pending tasks is passed a task.
+   *
+   * @return Whether the executor may schedule the task, which is the case unless the pool has been
+   *     released.
+   */
+  private synchronized boolean onExecutorScheduled() {
+    if (released) {
+      return false;
+    }
+    scheduledExecutorCount++;
+    return true;
+  }
+
+  /** Called when an executor has run all of its pending tasks. */
+  private synchronized void onExecutorDrained() {
+    scheduledExecutorCount--;
+    if (released && scheduledExecutorCount == 0) {
+      // The thread pool isn't shut down while tasks are pending, because executors schedule their
+      // next task only once the previous one has completed.
+      threadPoolExecutor.shutdown();
+    }
+  }
+
+  private synchronized void onTaskBlocked() {
+    blockedTaskCount++;
+    updatePoolSize();
+  }
+
+  private synchronized void onTaskUnblocked() {
+    blockedTaskCount--;
+    updatePoolSize();
+  }
+
+  @GuardedBy("this")
+  private void updatePoolSize() {
+    int poolSize = maxThreadCount + min(blockedTaskCount, maxThreadCount);
+    if (poolSize > threadPoolExecutor.getMaximumPoolSize()) {
+      // Grow the maximum first, since the core pool size can't exceed it. Growing the core pool
+      // size starts a new thread if there are queued tasks.
+      threadPoolExecutor.setMaximumPoolSize(poolSize);
+      threadPoolExecutor.setCorePoolSize(poolSize);
+    } else if (poolSize < threadPoolExecutor.getMaximumPoolSize()) {
+      // Excess threads are stopped once they become idle.
+      threadPoolExecutor.setCorePoolSize(poolSize);
+      threadPoolExecutor.setMaximumPoolSize(poolSize);
+    }
+  }
+
+  private final class SerialExecutor implements ReleasableExecutor {
+
+    private final @C.Priority int priority;
+
+    @GuardedBy("this")
+    private final ArrayDeque<Runnable> pendingTasks;
+
+    @GuardedBy("this")
+    private boolean scheduled;
+
+    @GuardedBy("this")
+    private boolean released;
+
+    public SerialExecutor(@C.Priority int priority) {
+      this.priority = priority;
+      pendingTasks = new ArrayDeque<>();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      synchronized (this) {
+        if (released) {
+          throw new RejectedExecutionException("Executor released");
+        }
+        if (scheduled ? isPoolReleased() : !onExecutorScheduled()) {
+          throw new RejectedExecutionException("Pool released");
+        }
+        pendingTasks.addLast(task);
+        if (scheduled) {
+          // The task will be run once the preceding tasks have finished.
+          return;
+        }
+        scheduled = true;
+      }
+      scheduleNextTask();
+    }
+
+    @Override
+    public synchronized void release() {
+      released = true;
+    }
+
+    private void scheduleNextTask() {
+      threadPoolExecutor.execute(
+          new PrioritizedTask(this, priority, taskSequenceNumber.getAndIncrement()));
+    }
+
+    private void runNextTask() {
+      @Nullable Runnable task;
+      synchronized (this) {
+        task = pendingTasks.pollFirst();
+      }
+      currentThreadPool.set(LoaderThreadPool.this);
+      try {
+        if (task != null) {
+          task.run();
+        }
+      } finally {
+        currentThreadPool.remove();
+        boolean hasPendingTasks;
+        synchronized (this) {
+          hasPendingTasks = !pendingTasks.isEmpty();
+          scheduled = hasPendingTasks;
+        }
+        if (hasPendingTasks) {
+          // Re-enter the queue rather than running the next task directly, so that tasks of
+          // executors with a higher priority can run in between.
+          scheduleNextTask();
+        } else {
+          onExecutorDrained();
+        }
+      }
+    }
+  }
+
+  private static final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+    private final SerialExecutor serialExecutor;
+    private final int priority;
+    private final long sequenceNumber;
+
+    public PrioritizedTask(SerialExecutor serialExecutor, int priority, long sequenceNumber) {
+      this.serialExecutor = serialExecutor;
+      this.priority = priority;
+      this.sequenceNumber = sequenceNumber;
+    }
+
+    @Override
+    public void run() {
+      serialExecutor.runNextTask();
+    }
+
+    @Override
+    public int compareTo(PrioritizedTask other) {
+      if (priority != other.priority) {
+        // Higher priority values run first.
+        return Integer.compare(other.priority, priority);
+      }
+      return Long.compare(sequenceNumber, other.sequenceNumber);
+    }
+  }
+
+  private static final class DefaultThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger threadCount;
+
+    public DefaultThreadFactory() {
+      threadCount = new AtomicInteger();
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      return new Thread(runnable, THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+    }
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static java.lang.Math.max;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.NullableType;
+import androidx.media3.common.util.Util;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A pool of {@link Allocation Allocations} that can be accessed concurrently from multiple threads
+ * without locking.
+ *
+ * <p>Released allocations are pushed onto a lock-free global free list. Allocating threads take
+ * batches of allocations from the free list into a thread-local cache, so that most calls to
+ * {@link #allocate()} don't touch any shared state other than the allocated count.
+ *
+ * <p>The free list is a Treiber stack that is linked through {@link Allocation#nextFree}, so that
+ * releasing allocations doesn't allocate memory. To avoid the ABA problem, entries are never
+ * popped individually. Instead, the whole list is detached with a single atomic swap, and any
+ * allocations that aren't needed are pushed back afterwards.
+ *
+ * <p>The thread-local caches are also kept in a registry, so that allocations left in the cache of
+ * a thread that has terminated are returned to the free list rather than leaked. This happens when
+ * the pool is trimmed, and when a new thread starts allocating.
+ */
+/* package */ final class ThreadLocalAllocationPool {
+
+  /** The maximum number of allocations moved into a thread-local cache at once. */
+  private static final int THREAD_LOCAL_CACHE_SIZE = 8;
+
+  private final int individualAllocationSize;
+  @Nullable private final byte[] initialAllocationBlock;
+  @Nullable private final DirectAllocationFactory directAllocationFactory;
+  private final AtomicInteger allocatedCount;
+  private final AtomicReference<@NullableType Allocation> freeList;
+  private final ThreadLocal<ThreadLocalCache> threadLocalCache;
+  private final ConcurrentLinkedQueue<ThreadLocalCache> threadLocalCaches;
+
+  /**
+   * Creates an instance.
+   *
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   * @param initialAllocationCount The number of allocations to create up front.
+   * @param directAllocationFactory The {@link DirectAllocationFactory} used to create new
+   *     allocations, or null to create allocations backed by byte arrays.
+   */
+  public ThreadLocalAllocationPool(
+      int individualAllocationSize,
+      int initialAllocationCount,
+      @Nullable DirectAllocationFactory directAllocationFactory) {
+    this.individualAllocationSize = individualAllocationSize;
+    this.directAllocationFactory = directAllocationFactory;
+    allocatedCount = new AtomicInteger();
+    freeList = new AtomicReference<>();
+    threadLocalCache = new ThreadLocal<>();
+    threadLocalCaches = new ConcurrentLinkedQueue<>();
+    if (initialAllocationCount > 0) {
+      initialAllocationBlock = new byte[initialAllocationCount * individualAllocationSize];
+      @Nullable Allocation head = null;
+      for (int i = initialAllocationCount - 1; i >= 0; i--) {
+        Allocation allocation =
+            new Allocation(initialAllocationBlock, /* offset= */ i * individualAllocationSize);
+        allocation.nextFree = head;
+        head = allocation;
+      }
+      freeList.set(head);
+    } else {
+      initialAllocationBlock = null;
+    }
+  }
+
+  /** Returns an {@link Allocation}, reusing a released one if possible. */
+  public Allocation allocate() {
+    allocatedCount.incrementAndGet();
+    @Nullable ThreadLocalCache cache = threadLocalCache.get();
+    if (cache == null) {
+      cache = new ThreadLocalCache(Thread.currentThread());
+      threadLocalCache.set(cache);
+      // New threads are typically started to replace terminated ones.
+      drainCachesOfTerminatedThreads();
+      threadLocalCaches.add(cache);
+    }
+    if (cache.head == null) {
+      cache.head = takeFromFreeList(THREAD_LOCAL_CACHE_SIZE);
+    }
+    @Nullable Allocation allocation = cache.head;
+    if (allocation == null) {
+      // The free list was empty, or was temporarily detached by another thread.
+      return directAllocationFactory != null
+          ? directAllocationFactory.createAllocation()
+          : new Allocation(new byte[individualAllocationSize], /* offset= */ 0);
+    }
+    cache.head = allocation.nextFree;
+    allocation.nextFree = null;
+    return allocation;
+  }
+
+  /** Releases a single {@link Allocation} back to the pool. */
+  public void release(Allocation allocation) {
+    push(/* first= */ allocation, /* last= */ allocation);
+    allocatedCount.decrementAndGet();
+  }
+
+  /**
+   * Releases all {@link Allocation Allocations} in the chain starting at the given {@link
+   * Allocator.AllocationNode}, pushing them onto the free list with a single atomic operation.
+   */
+  public void release(@Nullable Allocator.AllocationNode allocationNode) {
+    if (allocationNode == null) {
+      return;
+    }
+    Allocation first = allocationNode.getAllocation();
+    Allocation last = first;
+    int releasedCount = 1;
+    allocationNode = allocationNode.next();
+    while (allocationNode != null) {
+      Allocation allocation = allocationNode.getAllocation();
+      last.nextFree = allocation;
+      last = allocation;
+      releasedCount++;
+      allocationNode = allocationNode.next();
+    }
+    push(first, last);
+    allocatedCount.addAndGet(-releasedCount);
+  }
+
+  /**
+   * Discards released allocations so that the total size of allocated and released allocations
+   * doesn't exceed {@code targetBufferSize}, where possible.
+   *
+   * <p>Allocations backed by the initial allocation block are never discarded, and allocations
+   * held in the thread-local caches of live allocating threads can't be discarded.
+   */
+  public void trim(int targetBufferSize) {
+    drainCachesOfTerminatedThreads();
+    int targetAllocationCount = Util.ceilDivide(targetBufferSize, individualAllocationSize);
+    int targetAvailableCount = max(0, targetAllocationCount - allocatedCount.get());
+    @Nullable Allocation allocation = freeList.getAndSet(null);
+    // Split the free list into the allocations backed by the initial block, which are all kept, and
+    // the others.
+    @Nullable Allocation keptHead = null;
+    int keptCount = 0;
+    @Nullable Allocation otherHead = null;
+    while (allocation != null) {
+      @Nullable Allocation next = allocation.nextFree;
+      if (allocation.data == initialAllocationBlock) {
+        allocation.nextFree = keptHead;
+        keptHead = allocation;
+        keptCount++;
+      } else {
+        allocation.nextFree = otherHead;
+        otherHead = allocation;
+      }
+      allocation = next;
+    }
+    // Keep other allocations up to the target, and discard the rest.
+    allocation = otherHead;
+    while (allocation != null && keptCount < targetAvailableCount) {
+      @Nullable Allocation next = allocation.nextFree;
+      allocation.nextFree = keptHead;
+      keptHead = allocation;
+      keptCount++;
+      allocation = next;
+    }
+    if (keptHead != null) {
+      pushDetachedList(keptHead);
+    }
+  }
+
+  /** Returns the number of allocations that are currently allocated. */
+  public int getAllocatedCount() {
+    return allocatedCount.get();
+  }
+
+  /** Returns the allocations held in the caches of terminated threads to the free list. */
+  private void drainCachesOfTerminatedThreads() {
+    for (ThreadLocalCache cache : threadLocalCaches) {
+      @Nullable Thread owner = cache.owner.get();
+      // Thread termination happens-before isAlive() returning false, so the cache is safe to read.
+      // Only the thread that manages to remove the cache from the registry drains it.
+      if ((owner == null || !owner.isAlive()) && threadLocalCaches.remove(cache)) {
+        @Nullable Allocation head = cache.head;
+        cache.head = null;
+        if (head != null) {
+          pushDetachedList(head);
+        }
+      }
+    }
+  }
+
+  /**
+   * Takes up to {@code maxCount} allocations from the free list, returning them as a list linked
+   * through {@link Allocation#nextFree}.
+   */
+  @Nullable
+  private Allocation takeFromFreeList(int maxCount) {
+    @Nullable Allocation head = freeList.getAndSet(null);
+    if (head == null) {
+      return null;
+    }
+    Allocation last = head;
+    @Nullable Allocation remainder = head.nextFree;
+    int count = 1;
+    while (remainder != null && count < maxCount) {
+      last = remainder;
+      remainder = remainder.nextFree;
+      count++;
+    }
+    last.nextFree = null;
+    if (remainder != null) {
+      pushDetachedList(remainder);
+    }
+    return head;
+  }
+
+  /** Pushes a list of allocations from {@code first} to {@code last} onto the free list. */
+  private void push(Allocation first, Allocation last) {
+    while (true) {
+      @Nullable Allocation head = freeList.get();
+      last.nextFree = head;
+      if (freeList.compareAndSet(head, first)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Pushes a list that was previously detached from the free list back onto it, without walking
+   * to the end of the (potentially long) list.
+   */
+  private void pushDetachedList(Allocation list) {
+    while (!freeList.compareAndSet(null, list)) {
+      // Other threads released allocations in the meantime. Detach them and prepend them to the
+      // list being pushed. Only the newly released allocations need to be walked.
+      @Nullable Allocation released = freeList.getAndSet(null);
+      if (released != null) {
+        Allocation releasedTail = released;
+        @Nullable Allocation next = released.nextFree;
+        while (next != null) {
+          releasedTail = next;
+          next = next.nextFree;
+        }
+        releasedTail.nextFree = list;
+        list = released;
+      }
+    }
+  }
+
+  private static final class ThreadLocalCache {
+
+    public final WeakReference<Thread> owner;
+    @Nullable public Allocation head;
+
+    public ThreadLocalCache(Thread owner) {
+      this.owner = new WeakReference<>(owner);
+    }
+  }
+}
@@ -168,6 +168,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer
   private long totalVideoFrameProcessingOffsetUs;
   private int videoFrameProcessingOffsetCount;
   private long lastFrameReleaseTimeNs;
+  private long nextFrameReleaseRealtimeUs;
   private VideoSize decodedVideoSize;
   @Nullable private VideoSize reportedVideoSize;
   private int rendererPriority;
@@ -409,6 +410,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer
     outputResolution = Size.UNKNOWN;
     scalingMode = C.VIDEO_SCALING_MODE_DEFAULT;
     decodedVideoSize = VideoSize.UNKNOWN;
+    nextFrameReleaseRealtimeUs = C.TIME_UNSET;
     tunnelingAudioSessionId = C.AUDIO_SESSION_ID_UNSET;
     reportedVideoSize = null;
     rendererPriority = C.PRIORITY_PLAYBACK;
@@ -1031,6 +1033,21 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer
   protected void resetCodecStateForFlush() {
     super.resetCodecStateForFlush();
     buffersInCodecCount = 0;
+    nextFrameReleaseRealtimeUs = C.TIME_UNSET;
+  }
+
+  @Override
+  protected long getDurationToProgressUs(
+      boolean isOnBufferAvailableListenerRegistered, long positionUs, long elapsedRealtimeUs) {
+    if (!isOnBufferAvailableListenerRegistered || nextFrameReleaseRealtimeUs == C.TIME_UNSET) {
+      // Without buffer availability callbacks the codec needs to be polled.
+      return super.getDurationToProgressUs(
+          isOnBufferAvailableListenerRegistered, positionUs, elapsedRealtimeUs);
+    }
+    // The pending output buffer can't be released before it's within the release threshold, and
+    // the codec will wake up the playback loop if a new buffer becomes available in the meantime.
+    long durationUs = nextFrameReleaseRealtimeUs - Util.msToUs(getClock().elapsedRealtime());
+    return max(DEFAULT_DURATION_TO_PROGRESS_US, durationUs);
   }
 
   @Override
@@ -1343,6 +1360,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer
 
     long outputStreamOffsetUs = getOutputStreamOffsetUs();
     long presentationTimeUs = bufferPresentationTimeUs - outputStreamOffsetUs;
+    nextFrameReleaseRealtimeUs = C.TIME_UNSET;
 
     @VideoFrameReleaseControl.FrameReleaseAction
     int frameReleaseAction =
@@ -1414,6 +1432,10 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer
         updateVideoFrameProcessingOffsetCounters(videoFrameReleaseInfo.getEarlyUs());
         return true;
       case VideoFrameReleaseControl.FRAME_RELEASE_TRY_AGAIN_LATER:
+        nextFrameReleaseRealtimeUs =
+            Util.msToUs(getClock().elapsedRealtime())
+                + videoFrameReleaseInfo.getEarlyUs()
+                - VideoFrameReleaseControl.MAX_EARLY_US_THRESHOLD;
         return false;
       case VideoFrameReleaseControl.FRAME_RELEASE_SCHEDULED:
         return maybeReleaseFrame(checkStateNotNull(codec), bufferIndex, presentationTimeUs, format);
@@ -163,7 +163,7 @@ public final class VideoFrameReleaseControl {
   }
 
   /** The maximum earliest time, in microseconds, to release a frame on the surface. */
-  private static final long MAX_EARLY_US_THRESHOLD = 50_000;
+  /* package */ static final long MAX_EARLY_US_THRESHOLD = 50_000;
 
   private final FrameTimingEvaluator frameTimingEvaluator;
   private final VideoFrameReleaseHelper frameReleaseHelper;
@@ -324,9 +324,11 @@ public final class VideoFrameReleaseControl {
    *     taken approximately at the time the playback position was {@code positionUs}.
    * @param outputStreamStartPositionUs The stream's start position, in microseconds.
    * @param isLastFrame Whether the frame is known to contain the last frame of the current stream.
-   * @param frameReleaseInfo A {@link FrameReleaseInfo} that will be filled with detailed data only
-   *     if the method returns {@link #FRAME_RELEASE_IMMEDIATELY} or {@link
-   *     #FRAME_RELEASE_SCHEDULED}.
+   * @param frameReleaseInfo A {@link FrameReleaseInfo} that will be filled with detailed data. The
+   *     {@linkplain FrameReleaseInfo#getEarlyUs() early time} is set whatever action is returned,
+   *     including {@link #FRAME_RELEASE_TRY_AGAIN_LATER}. The {@linkplain
+   *     FrameReleaseInfo#getReleaseTimeNs() release time} is only guaranteed to be set if the
+   *     method returns {@link #FRAME_RELEASE_SCHEDULED}.
    * @return A {@link FrameReleaseAction} that should instruct the renderer whether to release the
    *     frame or not.
    */
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.common.C;
+import androidx.media3.exoplayer.upstream.Allocation;
+import androidx.media3.exoplayer.upstream.DefaultAllocator;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link BufferBudget}. */
+@RunWith(AndroidJUnit4.class)
+public class BufferBudgetTest {
+
+  private static final int SEGMENT_SIZE = C.DEFAULT_BUFFER_SEGMENT_SIZE;
+
+  @Test
+  public void setRequestedBytes_grantsBudgetInDescendingPriorityOrder() {
+    BufferBudget bufferBudget = new BufferBudget(/* totalBudgetBytes= */ 5 * SEGMENT_SIZE);
+    BufferBudget.Registration preload =
+        bufferBudget.register(createAllocator(), C.PRIORITY_PLAYBACK_PRELOAD);
+    BufferBudget.Registration foreground =
+        bufferBudget.register(createAllocator(), C.PRIORITY_PLAYBACK);
+
+    preload.setRequestedBytes(4 * SEGMENT_SIZE);
+    foreground.setRequestedBytes(3 * SEGMENT_SIZE);
+
+    assertThat(foreground.getGrantedBytes()).isEqualTo(3 * SEGMENT_SIZE);
+    assertThat(preload.getGrantedBytes()).isEqualTo(2 * SEGMENT_SIZE);
+    assertThat(bufferBudget.getTotalBytesGranted()).isEqualTo(5 * SEGMENT_SIZE);
+  }
+
+  @Test
+  public void setPriority_regrantsBudget() {
+    BufferBudget bufferBudget = new BufferBudget(/* totalBudgetBytes= */ 4 * SEGMENT_SIZE);
+    BufferBudget.Registration first = bufferBudget.register(createAllocator(), C.PRIORITY_PLAYBACK);
+    BufferBudget.Registration second =
+        bufferBudget.register(createAllocator(), C.PRIORITY_PLAYBACK_PRELOAD);
+    first.setRequestedBytes(3 * SEGMENT_SIZE);
+    second.setRequestedBytes(3 * SEGMENT_SIZE);
+
+    second.setPriority(C.PRIORITY_MAX);
+
+    assertThat(first.getGrantedBytes()).isEqualTo(SEGMENT_SIZE);
+    assertThat(second.getGrantedBytes()).isEqualTo(3 * SEGMENT_SIZE);
+  }
+
+  @Test
+  public void setTotalBudgetBytes_reducesLowestPriorityFirstAndTrimsAllocator() {
+    BufferBudget bufferBudget = new BufferBudget(/* totalBudgetBytes= */ 4 * SEGMENT_SIZE);
+    DefaultAllocator preloadAllocator = createAllocator();
+    BufferBudget.Registration foreground =
+        bufferBudget.register(createAllocator(), C.PRIORITY_PLAYBACK);
+    BufferBudget.Registration preload =
+        bufferBudget.register(preloadAllocator, C.PRIORITY_PLAYBACK_PRELOAD);
+    foreground.setRequestedBytes(2 * SEGMENT_SIZE);
+    preload.setRequestedBytes(2 * SEGMENT_SIZE);
+    Allocation allocation1 = preloadAllocator.allocate();
+    Allocation allocation2 = preloadAllocator.allocate();
+    preloadAllocator.release(allocation1);
+    preloadAllocator.release(allocation2);
+    preloadAllocator.allocate();
+
+    bufferBudget.setTotalBudgetBytes(3 * SEGMENT_SIZE);
+
+    assertThat(foreground.getGrantedBytes()).isEqualTo(2 * SEGMENT_SIZE);
+    assertThat(preload.getGrantedBytes()).isEqualTo(SEGMENT_SIZE);
+    // The released allocation beyond the new target was discarded, so a new one is created.
+    assertThat(preloadAllocator.allocate()).isNotSameInstanceAs(allocation1);
+    assertThat(bufferBudget.getTotalBytesAllocated()).isEqualTo(2 * SEGMENT_SIZE);
+  }
+
+  @Test
+  public void unregister_releasesGrantedBytesToOtherRegistrations() {
+    BufferBudget bufferBudget = new BufferBudget(/* totalBudgetBytes= */ 2 * SEGMENT_SIZE);
+    BufferBudget.Registration foreground =
+        bufferBudget.register(createAllocator(), C.PRIORITY_PLAYBACK);
+    BufferBudget.Registration preload =
+        bufferBudget.register(createAllocator(), C.PRIORITY_PLAYBACK_PRELOAD);
+    foreground.setRequestedBytes(2 * SEGMENT_SIZE);
+    preload.setRequestedBytes(2 * SEGMENT_SIZE);
+
+    foreground.unregister();
+
+    assertThat(preload.getGrantedBytes()).isEqualTo(2 * SEGMENT_SIZE);
+    assertThat(bufferBudget.getTotalBytesGranted()).isEqualTo(2 * SEGMENT_SIZE);
+  }
+
+  @Test
+  public void setRequestedBytes_withMinimum_grantsMinimumEvenIfBudgetIsExhausted() {
+    BufferBudget bufferBudget = new BufferBudget(/* totalBudgetBytes= */ 4 * SEGMENT_SIZE);
+    BufferBudget.Registration foreground =
+        bufferBudget.register(createAllocator(), C.PRIORITY_PLAYBACK);
+    BufferBudget.Registration preload =
+        bufferBudget.register(createAllocator(), C.PRIORITY_PLAYBACK_PRELOAD);
+
+    foreground.setRequestedBytes(
+        /* requestedBytes= */ 4 * SEGMENT_SIZE, /* minimumBytes= */ SEGMENT_SIZE);
+    preload.setRequestedBytes(
+        /* requestedBytes= */ 3 * SEGMENT_SIZE, /* minimumBytes= */ SEGMENT_SIZE);
+
+    // The minimum of the preload registration is granted before the rest of the budget.
+    assertThat(foreground.getGrantedBytes()).isEqualTo(3 * SEGMENT_SIZE);
+    assertThat(preload.getGrantedBytes()).isEqualTo(SEGMENT_SIZE);
+
+    bufferBudget.setTotalBudgetBytes(0);
+
+    assertThat(foreground.getGrantedBytes()).isEqualTo(SEGMENT_SIZE);
+    assertThat(preload.getGrantedBytes()).isEqualTo(SEGMENT_SIZE);
+    assertThat(bufferBudget.getTotalBytesGranted()).isEqualTo(2 * SEGMENT_SIZE);
+  }
+
+  private static DefaultAllocator createAllocator() {
+    return new DefaultAllocator(/* trimOnReset= */ true, SEGMENT_SIZE);
+  }
+}
@@ -791,6 +791,67 @@ public class DefaultLoadControlTest {
     assertThat(loadControl.calculateTotalTargetBufferBytes()).isEqualTo(0);
   }
 
+  @Test
+  public void shouldContinueLoading_withSharedBufferBudget_grantsBudgetByPriority() {
+    int preloadTargetBufferBytes =
+        DefaultLoadControl.DEFAULT_MIN_BUFFER_SIZE + 2 * C.DEFAULT_BUFFER_SEGMENT_SIZE;
+    BufferBudget bufferBudget =
+        new BufferBudget(
+            /* totalBudgetBytes= */ TARGET_BUFFER_BYTES
+                + DefaultLoadControl.DEFAULT_MIN_BUFFER_SIZE
+                + C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    builder.setBufferBudget(bufferBudget, C.PRIORITY_PLAYBACK);
+    build();
+    PlayerId preloadPlayerId = new PlayerId(/* playerName= */ "");
+    DefaultAllocator preloadAllocator =
+        new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    DefaultLoadControl preloadLoadControl =
+        buildWithBufferBudget(
+            preloadPlayerId,
+            preloadAllocator,
+            preloadTargetBufferBytes,
+            bufferBudget,
+            C.PRIORITY_PLAYBACK_PRELOAD);
+    while (preloadAllocator.getTotalBytesAllocated()
+        < DefaultLoadControl.DEFAULT_MIN_BUFFER_SIZE + C.DEFAULT_BUFFER_SEGMENT_SIZE) {
+      preloadAllocator.allocate();
+    }
+    LoadControl.Parameters preloadParameters = createParameters(preloadPlayerId);
+
+    // The preload load control is only granted its minimum plus what's left after the foreground
+    // load control.
+    assertThat(bufferBudget.getTotalBytesGranted()).isEqualTo(bufferBudget.getTotalBudgetBytes());
+    assertThat(preloadLoadControl.shouldContinueLoading(preloadParameters)).isFalse();
+
+    preloadLoadControl.setBufferBudgetPriority(C.PRIORITY_MAX);
+
+    assertThat(preloadLoadControl.shouldContinueLoading(preloadParameters)).isTrue();
+    makeSureTargetBufferBytesReached();
+    assertThat(loadControl.shouldContinueLoading(createParameters(playerId))).isFalse();
+  }
+
+  @Test
+  public void shouldContinueLoading_withExhaustedSharedBufferBudget_lowPriorityPlayerNotStarved() {
+    BufferBudget bufferBudget = new BufferBudget(/* totalBudgetBytes= */ TARGET_BUFFER_BYTES);
+    builder.setBufferBudget(bufferBudget, C.PRIORITY_PLAYBACK);
+    build();
+    makeSureTargetBufferBytesReached();
+    PlayerId preloadPlayerId = new PlayerId(/* playerName= */ "");
+    DefaultLoadControl preloadLoadControl =
+        buildWithBufferBudget(
+            preloadPlayerId,
+            new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+            TARGET_BUFFER_BYTES,
+            bufferBudget,
+            C.PRIORITY_PLAYBACK_PRELOAD);
+    LoadControl.Parameters preloadParameters = createParameters(preloadPlayerId);
+
+    // The minimum grant exceeds the budget, but the preload player can still buffer.
+    assertThat(bufferBudget.getTotalBytesGranted()).isEqualTo(2 * TARGET_BUFFER_BYTES);
+    assertThat(preloadLoadControl.shouldContinueLoading(preloadParameters)).isTrue();
+    assertThat(preloadLoadControl.shouldStartPlayback(preloadParameters)).isFalse();
+  }
+
   private void build() {
     builder.setAllocator(allocator).setTargetBufferBytes(TARGET_BUFFER_BYTES);
     loadControl = builder.build();
@@ -804,6 +865,42 @@ public class DefaultLoadControlTest {
         /* trackSelections= */ null);
   }
 
+  private DefaultLoadControl buildWithBufferBudget(
+      PlayerId otherPlayerId,
+      DefaultAllocator otherAllocator,
+      int targetBufferBytes,
+      BufferBudget bufferBudget,
+      @C.Priority int priority) {
+    DefaultLoadControl otherLoadControl =
+        new Builder()
+            .setAllocator(otherAllocator)
+            .setTargetBufferBytes(targetBufferBytes)
+            .setBufferBudget(bufferBudget, priority)
+            .build();
+    otherLoadControl.onPrepared(otherPlayerId);
+    otherLoadControl.onTracksSelected(
+        otherPlayerId,
+        timeline,
+        mediaPeriodId,
+        new Renderer[0],
+        /* trackGroups= */ null,
+        /* trackSelections= */ null);
+    return otherLoadControl;
+  }
+
+  private LoadControl.Parameters createParameters(PlayerId parametersPlayerId) {
+    return new LoadControl.Parameters(
+        parametersPlayerId,
+        timeline,
+        mediaPeriodId,
+        /* playbackPositionUs= */ 0L,
+        /* bufferedDurationUs= */ 0L,
+        SPEED,
+        /* playWhenReady= */ false,
+        /* rebuffering= */ false,
+        /* targetLiveOffsetUs= */ C.TIME_UNSET);
+  }
+
   private void makeSureTargetBufferBytesReached() {
     while (allocator.getTotalBytesAllocated() < TARGET_BUFFER_BYTES) {
       allocator.allocate();
@@ -1461,6 +1461,47 @@ public final class MediaPeriodQueueTest {
     assertThat(mediaPeriodHolderFactoryInfos).hasSize(3);
   }
 
+  @Test
+  public void
+      invalidatePreloadPool_withMaxPreloadedItemCountTwo_preloadHoldersCreatedForTwoWindows() {
+    setupTimelines(new FakeTimeline(), new FakeTimeline(), new FakeTimeline(), new FakeTimeline());
+    mediaPeriodQueue.updatePreloadConfiguration(
+        playbackInfo.timeline,
+        new PreloadConfiguration(
+            /* targetPreloadDurationUs= */ 5_000_000L, /* maxPreloadedItemCount= */ 2));
+    enqueueNext();
+
+    // Creates periods of the second and third window for preloading.
+    mediaPeriodQueue.invalidatePreloadPool(playbackInfo.timeline);
+
+    assertThat(mediaPeriodHolderFactoryInfos).hasSize(3);
+    assertThat(mediaPeriodHolderFactoryRendererPositionOffsets)
+        .containsExactly(1_000_000_000_000L, 1_000_010_000_000L, 1_000_020_000_000L)
+        .inOrder();
+    assertThat(mediaPeriodHolderFactoryInfos.get(1).id.periodUid)
+        .isEqualTo(playbackInfo.timeline.getUidOfPeriod(1));
+    assertThat(mediaPeriodHolderFactoryInfos.get(1).id.windowSequenceNumber).isEqualTo(1);
+    assertThat(mediaPeriodHolderFactoryInfos.get(2).id.periodUid)
+        .isEqualTo(playbackInfo.timeline.getUidOfPeriod(2));
+    assertThat(mediaPeriodHolderFactoryInfos.get(2).id.windowSequenceNumber).isEqualTo(2);
+
+    // Enqueue period of second window from preload pool and create period of fourth window.
+    enqueueNext();
+    mediaPeriodQueue.invalidatePreloadPool(playbackInfo.timeline);
+
+    assertThat(mediaPeriodHolderFactoryInfos).hasSize(4);
+    assertThat(mediaPeriodHolderFactoryInfos.get(3).id.periodUid)
+        .isEqualTo(playbackInfo.timeline.getUidOfPeriod(3));
+    assertThat(mediaPeriodHolderFactoryInfos.get(3).id.windowSequenceNumber).isEqualTo(3);
+
+    // Enqueue periods of third and fourth window from preload pool.
+    enqueueNext();
+    enqueueNext();
+    mediaPeriodQueue.invalidatePreloadPool(playbackInfo.timeline);
+
+    assertThat(mediaPeriodHolderFactoryInfos).hasSize(4);
+  }
+
   @Test
   public void invalidatePreloadPool_withThreeWindowsPreloadDisabled_preloadHoldersNotCreated() {
     List<MediaPeriod> releasedMediaPeriods = new ArrayList<>();
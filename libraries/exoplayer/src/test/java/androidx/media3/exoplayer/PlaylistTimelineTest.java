@@ -20,11 +20,13 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import androidx.media3.common.Timeline;
+import androidx.media3.exoplayer.source.ForwardingTimeline;
 import androidx.media3.exoplayer.source.ShuffleOrder;
 import androidx.media3.test.utils.FakeTimeline;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.common.collect.ImmutableList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -73,4 +75,59 @@ public class PlaylistTimelineTest {
       }
     }
   }
+
+  @Test
+  public void equals_withSharedChildTimelines_doesNotCompareWindows() {
+    AtomicInteger getWindowCount = new AtomicInteger();
+    Timeline childTimeline =
+        new ForwardingTimeline(new FakeTimeline(/* windowCount= */ 2)) {
+          @Override
+          public Window getWindow(
+              int windowIndex, Window window, long defaultPositionProjectionUs) {
+            getWindowCount.incrementAndGet();
+            return super.getWindow(windowIndex, window, defaultPositionProjectionUs);
+          }
+        };
+    ImmutableList<MediaSourceInfoHolder> mediaSourceInfoHolders =
+        ImmutableList.of(
+            createMediaSourceInfoHolder("uid1", childTimeline),
+            createMediaSourceInfoHolder("uid2", childTimeline));
+    PlaylistTimeline playlistTimeline1 =
+        new PlaylistTimeline(
+            mediaSourceInfoHolders,
+            new ShuffleOrder.DefaultShuffleOrder(new int[] {1, 0}, /* randomSeed= */ 0));
+    PlaylistTimeline playlistTimeline2 =
+        new PlaylistTimeline(
+            mediaSourceInfoHolders,
+            new ShuffleOrder.DefaultShuffleOrder(new int[] {1, 0}, /* randomSeed= */ 0));
+
+    assertThat(playlistTimeline1.equals(playlistTimeline2)).isTrue();
+    assertThat(getWindowCount.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void equals_withSharedChildTimelinesAndDifferentShuffleOrder_isNotEqual() {
+    ImmutableList<MediaSourceInfoHolder> mediaSourceInfoHolders =
+        ImmutableList.of(
+            createMediaSourceInfoHolder("uid1", new FakeTimeline()),
+            createMediaSourceInfoHolder("uid2", new FakeTimeline()),
+            createMediaSourceInfoHolder("uid3", new FakeTimeline()));
+    PlaylistTimeline playlistTimeline1 =
+        new PlaylistTimeline(
+            mediaSourceInfoHolders,
+            new ShuffleOrder.DefaultShuffleOrder(new int[] {0, 1, 2}, /* randomSeed= */ 0));
+    PlaylistTimeline playlistTimeline2 =
+        new PlaylistTimeline(
+            mediaSourceInfoHolders,
+            new ShuffleOrder.DefaultShuffleOrder(new int[] {2, 1, 0}, /* randomSeed= */ 0));
+
+    assertThat(playlistTimeline1).isNotEqualTo(playlistTimeline2);
+  }
+
+  private static MediaSourceInfoHolder createMediaSourceInfoHolder(Object uid, Timeline timeline) {
+    MediaSourceInfoHolder mediaSourceInfoHolder = mock(MediaSourceInfoHolder.class);
+    when(mediaSourceInfoHolder.getUid()).thenReturn(uid);
+    when(mediaSourceInfoHolder.getTimeline()).thenReturn(timeline);
+    return mediaSourceInfoHolder;
+  }
 }
@@ -26,6 +26,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.longThat;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -35,12 +36,14 @@ import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.Format;
 import androidx.media3.common.MimeTypes;
+import androidx.media3.common.PlaybackParameters;
 import androidx.media3.common.util.Clock;
 import androidx.media3.decoder.CryptoConfig;
 import androidx.media3.decoder.DecoderException;
 import androidx.media3.decoder.DecoderInputBuffer;
 import androidx.media3.decoder.SimpleDecoder;
 import androidx.media3.decoder.SimpleDecoderOutputBuffer;
+import androidx.media3.exoplayer.Renderer;
 import androidx.media3.exoplayer.RendererConfiguration;
 import androidx.media3.exoplayer.analytics.PlayerId;
 import androidx.media3.exoplayer.drm.DrmSessionEventListener;
@@ -252,6 +255,52 @@ public class DecoderAudioRendererTest {
     inOrderAudioSink.verify(mockAudioSink, times(2)).handleBuffer(any(), anyLong(), anyInt());
   }
 
+  @Test
+  public void getDurationToProgressUs_withAudioSinkBuffersFull_returnsCalculatedDuration()
+      throws Exception {
+    // Represents audio sink buffers being full when trying to write the 150000 us sample.
+    when(mockAudioSink.handleBuffer(any(), longThat(timeUs -> timeUs != 150_000), anyInt()))
+        .thenReturn(true);
+    when(mockAudioSink.getPlaybackParameters()).thenReturn(PlaybackParameters.DEFAULT);
+    FakeSampleStream fakeSampleStream =
+        new FakeSampleStream(
+            new DefaultAllocator(/* trimOnReset= */ true, /* individualAllocationSize= */ 1024),
+            /* mediaSourceEventDispatcher= */ null,
+            DrmSessionManager.DRM_UNSUPPORTED,
+            new DrmSessionEventListener.EventDispatcher(),
+            FORMAT,
+            ImmutableList.of(
+                oneByteSample(/* timeUs= */ 0, C.BUFFER_FLAG_KEY_FRAME),
+                oneByteSample(/* timeUs= */ 50_000),
+                oneByteSample(/* timeUs= */ 100_000),
+                oneByteSample(/* timeUs= */ 150_000),
+                END_OF_STREAM_ITEM));
+    fakeSampleStream.writeData(/* startPositionUs= */ 0);
+    audioRenderer.enable(
+        RendererConfiguration.DEFAULT,
+        new Format[] {FORMAT},
+        fakeSampleStream,
+        /* positionUs= */ 0,
+        /* joining= */ false,
+        /* mayRenderStartOfStream= */ true,
+        /* startPositionUs= */ 0,
+        /* offsetUs= */ 0,
+        new MediaSource.MediaPeriodId(new Object()));
+    long durationToProgressUsBeforeRender =
+        audioRenderer.getDurationToProgressUs(/* positionUs= */ 0, /* elapsedRealtimeUs= */ 0);
+
+    long durationToProgressUs = durationToProgressUsBeforeRender;
+    while (durationToProgressUs == durationToProgressUsBeforeRender) {
+      audioRenderer.render(/* positionUs= */ 0, /* elapsedRealtimeUs= */ 0);
+      durationToProgressUs =
+          audioRenderer.getDurationToProgressUs(/* positionUs= */ 0, /* elapsedRealtimeUs= */ 0);
+    }
+
+    assertThat(durationToProgressUsBeforeRender)
+        .isEqualTo(Renderer.DEFAULT_DURATION_TO_PROGRESS_US);
+    assertThat(durationToProgressUs).isEqualTo(75_000);
+  }
+
   private static final class FakeDecoder
       extends SimpleDecoder<DecoderInputBuffer, SimpleDecoderOutputBuffer, DecoderException> {
 
@@ -25,10 +25,13 @@ import androidx.media3.common.PriorityTaskManager;
 import androidx.media3.common.util.Util;
 import androidx.media3.database.DatabaseProvider;
 import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
 import androidx.media3.datasource.cache.Cache;
 import androidx.media3.datasource.cache.CacheDataSource;
+import androidx.media3.datasource.cache.CacheWriter;
 import androidx.media3.datasource.cache.NoOpCacheEvictor;
 import androidx.media3.datasource.cache.SimpleCache;
+import androidx.media3.test.utils.CacheAsserts;
 import androidx.media3.test.utils.FailOnCloseDataSink;
 import androidx.media3.test.utils.FakeDataSet;
 import androidx.media3.test.utils.FakeDataSource;
@@ -37,6 +40,11 @@ import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.After;
 import org.junit.Before;
@@ -173,6 +181,90 @@ public class ProgressiveDownloaderTest {
     assertThat(progressListener.bytesDownloaded).isEqualTo(2_000_000);
   }
 
+  @Test
+  public void download_withParallelDownloads_downloadsRangesInParallel() throws Exception {
+    Uri uri = Uri.parse("test:///test.mp4");
+    int contentLength = 5 * 1024 * 1024;
+    FakeDataSet data = new FakeDataSet();
+    data.newData(uri).appendReadData(contentLength);
+    List<FakeDataSource> upstreamDataSources = Collections.synchronizedList(new ArrayList<>());
+    DataSource.Factory upstreamDataSourceFactory =
+        () -> {
+          FakeDataSource dataSource = new FakeDataSource(data);
+          upstreamDataSources.add(dataSource);
+          return dataSource;
+        };
+    MediaItem mediaItem = MediaItem.fromUri(uri);
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(downloadCache)
+            .setUpstreamDataSourceFactory(upstreamDataSourceFactory);
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    ProgressiveDownloader downloader =
+        new ProgressiveDownloader(
+            mediaItem, cacheDataSourceFactory, executorService, /* maxParallelDownloads= */ 4);
+    TestProgressListener progressListener = new TestProgressListener();
+
+    try {
+      downloader.download(progressListener);
+    } finally {
+      executorService.shutdown();
+    }
+
+    assertThat(progressListener.bytesDownloaded).isEqualTo(contentLength);
+    CacheAsserts.assertCachedData(downloadCache, data);
+    List<DataSpec> rangeDataSpecs = new ArrayList<>();
+    for (FakeDataSource dataSource : upstreamDataSources) {
+      for (DataSpec dataSpec : dataSource.getAndClearOpenedDataSpecs()) {
+        if (dataSpec.length != C.LENGTH_UNSET) {
+          rangeDataSpecs.add(dataSpec);
+        }
+      }
+    }
+    assertThat(rangeDataSpecs.size()).isGreaterThan(1);
+    long totalRangeLength = 0;
+    for (DataSpec dataSpec : rangeDataSpecs) {
+      totalRangeLength += dataSpec.length;
+    }
+    assertThat(totalRangeLength).isEqualTo(contentLength);
+  }
+
+  @Test
+  public void download_withParallelDownloadsAndPartiallyCachedContent_downloadsMissingRanges()
+      throws Exception {
+    Uri uri = Uri.parse("test:///test.mp4");
+    int contentLength = 5 * 1024 * 1024;
+    FakeDataSet data = new FakeDataSet();
+    data.newData(uri).appendReadData(contentLength);
+    DataSource.Factory upstreamDataSourceFactory =
+        new FakeDataSource.Factory().setFakeDataSet(data);
+    MediaItem mediaItem = MediaItem.fromUri(uri);
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(downloadCache)
+            .setUpstreamDataSourceFactory(upstreamDataSourceFactory);
+    new CacheWriter(
+            cacheDataSourceFactory.createDataSource(),
+            new DataSpec(uri, /* position= */ 2 * 1024 * 1024, /* length= */ 1024 * 1024),
+            /* temporaryBuffer= */ null,
+            /* progressListener= */ null)
+        .cache();
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    ProgressiveDownloader downloader =
+        new ProgressiveDownloader(
+            mediaItem, cacheDataSourceFactory, executorService, /* maxParallelDownloads= */ 4);
+    TestProgressListener progressListener = new TestProgressListener();
+
+    try {
+      downloader.download(progressListener);
+    } finally {
+      executorService.shutdown();
+    }
+
+    assertThat(progressListener.bytesDownloaded).isEqualTo(contentLength);
+    CacheAsserts.assertCachedData(downloadCache, data);
+  }
+
   private static final class TestProgressListener implements Downloader.ProgressListener {
 
     public long bytesDownloaded;
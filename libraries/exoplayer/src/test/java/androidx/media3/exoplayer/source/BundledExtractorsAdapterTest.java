@@ -0,0 +1,245 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.common.DataReader;
+import androidx.media3.common.FileTypes;
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.ExtractorInput;
+import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorsFactory;
+import androidx.media3.extractor.PositionHolder;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link BundledExtractorsAdapter}. */
+@RunWith(AndroidJUnit4.class)
+public final class BundledExtractorsAdapterTest {
+
+  private static final Uri TEST_URI = Uri.parse("test://test");
+
+  @Test
+  public void init_withShortlistedExtractorSniffing_usesShortlistedExtractor() throws Exception {
+    FakeExtractor shortlistedExtractor = new FakeExtractor(/* sniffResult= */ true);
+    FakeExtractor otherExtractor = new OtherFakeExtractor(/* sniffResult= */ true);
+    FakeExtractorsFactory extractorsFactory =
+        new FakeExtractorsFactory(
+            /* supportsCreatingExtractorsForFileType= */ true,
+            /* shortlistedExtractors= */ new Extractor[] {shortlistedExtractor},
+            /* extractors= */ new Extractor[] {otherExtractor});
+    BundledExtractorsAdapter adapter = new BundledExtractorsAdapter(extractorsFactory);
+
+    init(adapter, new CountingDataReader(createMp4Data()));
+
+    assertThat(extractorsFactory.requestedFileTypes).containsExactly(FileTypes.MP4);
+    assertThat(extractorsFactory.createExtractorsCount).isEqualTo(0);
+    assertThat(shortlistedExtractor.initialized).isTrue();
+    assertThat(otherExtractor.sniffCount).isEqualTo(0);
+  }
+
+  @Test
+  public void init_withShortlistedExtractorNotSniffing_fallsBackToAllExtractors()
+      throws Exception {
+    FakeExtractor shortlistedExtractor = new FakeExtractor(/* sniffResult= */ false);
+    FakeExtractor repeatedExtractor = new FakeExtractor(/* sniffResult= */ false);
+    FakeExtractor otherExtractor = new OtherFakeExtractor(/* sniffResult= */ true);
+    FakeExtractorsFactory extractorsFactory =
+        new FakeExtractorsFactory(
+            /* supportsCreatingExtractorsForFileType= */ true,
+            /* shortlistedExtractors= */ new Extractor[] {shortlistedExtractor},
+            /* extractors= */ new Extractor[] {repeatedExtractor, otherExtractor});
+    BundledExtractorsAdapter adapter = new BundledExtractorsAdapter(extractorsFactory);
+
+    init(adapter, new CountingDataReader(createMp4Data()));
+
+    assertThat(extractorsFactory.requestedFileTypes).containsExactly(FileTypes.MP4);
+    assertThat(extractorsFactory.createExtractorsCount).isEqualTo(1);
+    assertThat(shortlistedExtractor.sniffCount).isEqualTo(1);
+    assertThat(shortlistedExtractor.initialized).isFalse();
+    // Extractors with the same implementation as a shortlisted extractor aren't sniffed again.
+    assertThat(repeatedExtractor.sniffCount).isEqualTo(0);
+    assertThat(otherExtractor.initialized).isTrue();
+  }
+
+  @Test
+  public void init_withUnknownFileType_doesNotCreateShortlistedExtractors() throws Exception {
+    FakeExtractor extractor = new FakeExtractor(/* sniffResult= */ false);
+    FakeExtractor otherExtractor = new OtherFakeExtractor(/* sniffResult= */ true);
+    FakeExtractorsFactory extractorsFactory =
+        new FakeExtractorsFactory(
+            /* supportsCreatingExtractorsForFileType= */ true,
+            /* shortlistedExtractors= */ new Extractor[0],
+            /* extractors= */ new Extractor[] {extractor, otherExtractor});
+    BundledExtractorsAdapter adapter = new BundledExtractorsAdapter(extractorsFactory);
+
+    init(adapter, new CountingDataReader(new byte[1000]));
+
+    assertThat(extractorsFactory.requestedFileTypes).isEmpty();
+    assertThat(extractorsFactory.createExtractorsCount).isEqualTo(1);
+    assertThat(extractor.sniffCount).isEqualTo(1);
+    assertThat(otherExtractor.initialized).isTrue();
+  }
+
+  @Test
+  public void init_withFactoryNotSupportingFileTypes_doesNotPeekContentPrefix()
+      throws Exception {
+    FakeExtractor extractor = new FakeExtractor(/* sniffResult= */ true);
+    FakeExtractor otherExtractor = new OtherFakeExtractor(/* sniffResult= */ false);
+    FakeExtractorsFactory extractorsFactory =
+        new FakeExtractorsFactory(
+            /* supportsCreatingExtractorsForFileType= */ false,
+            /* shortlistedExtractors= */ new Extractor[0],
+            /* extractors= */ new Extractor[] {extractor, otherExtractor});
+    BundledExtractorsAdapter adapter = new BundledExtractorsAdapter(extractorsFactory);
+    CountingDataReader dataReader = new CountingDataReader(createMp4Data());
+
+    init(adapter, dataReader);
+
+    assertThat(extractorsFactory.requestedFileTypes).isEmpty();
+    assertThat(extractor.initialized).isTrue();
+    assertThat(dataReader.bytesRead).isLessThan(FileTypes.CONTENT_PREFIX_LENGTH);
+  }
+
+  private static void init(BundledExtractorsAdapter adapter, CountingDataReader dataReader)
+      throws IOException {
+    adapter.init(
+        dataReader,
+        TEST_URI,
+        /* responseHeaders= */ ImmutableMap.of(),
+        /* position= */ 0,
+        /* length= */ dataReader.data.length,
+        ExtractorOutput.PLACEHOLDER);
+  }
+
+  /** Returns data starting with an ftyp box, from which the MP4 file type is inferred. */
+  private static byte[] createMp4Data() {
+    byte[] data = new byte[1000];
+    byte[] ftypBoxHeader = {0, 0, 0, 20, 'f', 't', 'y', 'p', 'i', 's', 'o', 'm'};
+    System.arraycopy(ftypBoxHeader, 0, data, 0, ftypBoxHeader.length);
+    return data;
+  }
+
+  private static final class FakeExtractorsFactory implements ExtractorsFactory {
+
+    public final List<Integer> requestedFileTypes;
+    public int createExtractorsCount;
+
+    private final boolean supportsCreatingExtractorsForFileType;
+    private final Extractor[] shortlistedExtractors;
+    private final Extractor[] extractors;
+
+    public FakeExtractorsFactory(
+        boolean supportsCreatingExtractorsForFileType,
+        Extractor[] shortlistedExtractors,
+        Extractor[] extractors) {
+      this.supportsCreatingExtractorsForFileType = supportsCreatingExtractorsForFileType;
+      this.shortlistedExtractors = shortlistedExtractors;
+      this.extractors = extractors;
+      requestedFileTypes = new ArrayList<>();
+    }
+
+    @Override
+    public Extractor[] createExtractors() {
+      createExtractorsCount++;
+      return extractors;
+    }
+
+    @Override
+    public boolean supportsCreatingExtractorsForFileType() {
+      return supportsCreatingExtractorsForFileType;
+    }
+
+    @Override
+    public Extractor[] createExtractorsForFileType(@FileTypes.Type int fileType) {
+      requestedFileTypes.add(fileType);
+      return shortlistedExtractors;
+    }
+  }
+
+  private static class FakeExtractor implements Extractor {
+
+    public int sniffCount;
+    public boolean initialized;
+
+    private final boolean sniffResult;
+
+    public FakeExtractor(boolean sniffResult) {
+      this.sniffResult = sniffResult;
+    }
+
+    @Override
+    public boolean sniff(ExtractorInput input) throws IOException {
+      sniffCount++;
+      input.peekFully(new byte[1], /* offset= */ 0, /* length= */ 1);
+      return sniffResult;
+    }
+
+    @Override
+    public void init(ExtractorOutput output) {
+      initialized = true;
+    }
+
+    @Override
+    public int read(ExtractorInput input, PositionHolder seekPosition) {
+      return RESULT_END_OF_INPUT;
+    }
+
+    @Override
+    public void seek(long position, long timeUs) {}
+
+    @Override
+    public void release() {}
+  }
+
+  /** A {@link FakeExtractor} with a different implementation class. */
+  private static final class OtherFakeExtractor extends FakeExtractor {
+
+    public OtherFakeExtractor(boolean sniffResult) {
+      super(sniffResult);
+    }
+  }
+
+  private static final class CountingDataReader implements DataReader {
+
+    public final byte[] data;
+    public int bytesRead;
+
+    public CountingDataReader(byte[] data) {
+      this.data = data;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      if (bytesRead == data.length) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesToRead = min(length, data.length - bytesRead);
+      System.arraycopy(data, bytesRead, buffer, offset, bytesToRead);
+      bytesRead += bytesToRead;
+      return bytesToRead;
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source;
+
+import static androidx.media3.exoplayer.source.ChunkedSampleMetadata.CHUNK_SIZE;
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.common.C;
+import androidx.media3.extractor.TrackOutput.CryptoData;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link ChunkedSampleMetadata}. */
+@RunWith(AndroidJUnit4.class)
+public final class ChunkedSampleMetadataTest {
+
+  @Test
+  public void setThenGet_acrossChunks_returnsStoredMetadata() {
+    ChunkedSampleMetadata metadata = new ChunkedSampleMetadata();
+    CryptoData cryptoData = new CryptoData(C.CRYPTO_MODE_AES_CTR, new byte[16], 0, 0);
+    int sampleCount = CHUNK_SIZE * 5 + 3;
+
+    for (int i = 0; i < sampleCount; i++) {
+      metadata.set(
+          i,
+          /* timeUs= */ i * 1000L,
+          /* offset= */ i * 10L,
+          /* size= */ 10,
+          i % 2 == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0,
+          i == CHUNK_SIZE + 1 ? cryptoData : null);
+    }
+
+    for (int i = 0; i < sampleCount; i++) {
+      assertThat(metadata.getTimeUs(i)).isEqualTo(i * 1000L);
+      assertThat(metadata.getOffset(i)).isEqualTo(i * 10L);
+      assertThat(metadata.getSize(i)).isEqualTo(10);
+      assertThat(metadata.getFlags(i)).isEqualTo(i % 2 == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0);
+      assertThat(metadata.getCryptoData(i)).isEqualTo(i == CHUNK_SIZE + 1 ? cryptoData : null);
+    }
+  }
+
+  @Test
+  public void discardToThenSet_keepsRetainedMetadata() {
+    ChunkedSampleMetadata metadata = new ChunkedSampleMetadata();
+    for (int i = 0; i < CHUNK_SIZE * 3; i++) {
+      setSample(metadata, i, /* timeUs= */ i);
+    }
+
+    metadata.discardTo(CHUNK_SIZE * 2 + 5);
+    for (int i = CHUNK_SIZE * 3; i < CHUNK_SIZE * 6; i++) {
+      setSample(metadata, i, /* timeUs= */ i);
+    }
+
+    for (int i = CHUNK_SIZE * 2 + 5; i < CHUNK_SIZE * 6; i++) {
+      assertThat(metadata.getTimeUs(i)).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void discardFromThenSet_overwritesDiscardedMetadata() {
+    ChunkedSampleMetadata metadata = new ChunkedSampleMetadata();
+    for (int i = 0; i < CHUNK_SIZE * 3; i++) {
+      setSample(metadata, i, /* timeUs= */ i);
+    }
+
+    metadata.discardFrom(CHUNK_SIZE + 2);
+    for (int i = CHUNK_SIZE + 2; i < CHUNK_SIZE * 2; i++) {
+      setSample(metadata, i, /* timeUs= */ -i);
+    }
+
+    assertThat(metadata.getTimeUs(CHUNK_SIZE + 1)).isEqualTo(CHUNK_SIZE + 1);
+    assertThat(metadata.getTimeUs(CHUNK_SIZE + 2)).isEqualTo(-(CHUNK_SIZE + 2));
+    assertThat(metadata.getTimeUs(CHUNK_SIZE * 2 - 1)).isEqualTo(-(CHUNK_SIZE * 2 - 1));
+  }
+
+  @Test
+  public void clearThenSet_restartsIndexing() {
+    ChunkedSampleMetadata metadata = new ChunkedSampleMetadata();
+    for (int i = 0; i < CHUNK_SIZE * 2; i++) {
+      setSample(metadata, i, /* timeUs= */ i);
+    }
+
+    metadata.clear();
+    setSample(metadata, /* index= */ 0, /* timeUs= */ 42);
+
+    assertThat(metadata.getTimeUs(0)).isEqualTo(42);
+  }
+
+  @Test
+  public void skipSamplesBefore_skipsChunksWithEarlierTimestamps() {
+    ChunkedSampleMetadata metadata = new ChunkedSampleMetadata();
+    int sampleCount = CHUNK_SIZE * 10;
+    for (int i = 0; i < sampleCount; i++) {
+      setSample(metadata, i, /* timeUs= */ i);
+    }
+
+    assertThat(metadata.skipSamplesBefore(/* fromIndex= */ 0, sampleCount, /* timeUs= */ 0))
+        .isEqualTo(0);
+    assertThat(metadata.skipSamplesBefore(/* fromIndex= */ 3, sampleCount, CHUNK_SIZE * 4 + 7))
+        .isEqualTo(CHUNK_SIZE * 4);
+    assertThat(
+            metadata.skipSamplesBefore(
+                /* fromIndex= */ CHUNK_SIZE * 4 + 10, sampleCount, CHUNK_SIZE * 4 + 7))
+        .isEqualTo(CHUNK_SIZE * 4 + 10);
+    assertThat(metadata.skipSamplesBefore(/* fromIndex= */ 0, sampleCount, sampleCount))
+        .isEqualTo(sampleCount);
+  }
+
+  @Test
+  public void skipSamplesBefore_withUnorderedTimestamps_doesNotSkipLaterSamples() {
+    ChunkedSampleMetadata metadata = new ChunkedSampleMetadata();
+    int sampleCount = CHUNK_SIZE * 4;
+    for (int i = 0; i < sampleCount; i++) {
+      setSample(metadata, i, /* timeUs= */ i);
+    }
+    // A sample in the second chunk with a much larger timestamp.
+    metadata.discardFrom(CHUNK_SIZE + 1);
+    setSample(metadata, CHUNK_SIZE + 1, /* timeUs= */ CHUNK_SIZE * 3);
+    for (int i = CHUNK_SIZE + 2; i < sampleCount; i++) {
+      setSample(metadata, i, /* timeUs= */ i);
+    }
+
+    assertThat(metadata.skipSamplesBefore(/* fromIndex= */ 0, sampleCount, CHUNK_SIZE * 3))
+        .isEqualTo(CHUNK_SIZE);
+  }
+
+  private static void setSample(ChunkedSampleMetadata metadata, int index, long timeUs) {
+    metadata.set(
+        index,
+        timeUs,
+        /* offset= */ index,
+        /* size= */ 1,
+        C.BUFFER_FLAG_KEY_FRAME,
+        /* cryptoData= */ null);
+  }
+}
@@ -25,13 +25,16 @@ import static androidx.media3.exoplayer.source.SampleStream.FLAG_PEEK;
 import static com.google.common.truth.Truth.assertThat;
 import static java.lang.Long.MAX_VALUE;
 import static java.lang.Long.MIN_VALUE;
+import static java.lang.Math.min;
 import static java.util.Arrays.copyOfRange;
 import static org.junit.Assert.assertArrayEquals;
 import static org.mockito.Mockito.when;
 
 import android.os.Looper;
 import androidx.annotation.Nullable;
+import androidx.media3.common.ByteBufferDataReader;
 import androidx.media3.common.C;
+import androidx.media3.common.DataReader;
 import androidx.media3.common.DrmInitData;
 import androidx.media3.common.Format;
 import androidx.media3.common.MimeTypes;
@@ -44,6 +47,7 @@ import androidx.media3.exoplayer.analytics.PlayerId;
 import androidx.media3.exoplayer.drm.DrmSession;
 import androidx.media3.exoplayer.drm.DrmSessionEventListener;
 import androidx.media3.exoplayer.drm.DrmSessionManager;
+import androidx.media3.exoplayer.mediacodec.BatchBuffer;
 import androidx.media3.exoplayer.upstream.Allocator;
 import androidx.media3.exoplayer.upstream.DefaultAllocator;
 import androidx.media3.extractor.TrackOutput;
@@ -52,6 +56,7 @@ import androidx.media3.test.utils.TestUtil;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.common.primitives.Bytes;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
@@ -408,6 +413,242 @@ public final class SampleQueueTest {
     assertAllocationCount(0);
   }
 
+  @Test
+  public void readMultiSamples_withDirectAllocations() {
+    allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ false,
+            ALLOCATION_SIZE,
+            /* initialAllocationCount= */ 0,
+            /* threadLocalCachingEnabled= */ false,
+            /* useDirectBuffers= */ true);
+    sampleQueue = new SampleQueue(allocator, mockDrmSessionManager, eventDispatcher);
+    inputBuffer = new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_DIRECT);
+
+    writeTestData();
+
+    assertAllocationCount(10);
+    assertReadTestData();
+    sampleQueue.discardToRead();
+    assertAllocationCount(0);
+  }
+
+  @Test
+  public void sampleDataFromDataReader_withDirectAllocations_readsWrittenData() throws Exception {
+    allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ false,
+            ALLOCATION_SIZE,
+            /* initialAllocationCount= */ 0,
+            /* threadLocalCachingEnabled= */ false,
+            /* useDirectBuffers= */ true);
+    sampleQueue = new SampleQueue(allocator, mockDrmSessionManager, eventDispatcher);
+    ParsableByteArray source = new ParsableByteArray(DATA);
+    DataReader dataReader =
+        (buffer, offset, length) -> {
+          int bytesRead = min(length, source.bytesLeft());
+          source.readBytes(buffer, offset, bytesRead);
+          return bytesRead;
+        };
+    sampleQueue.format(FORMAT_1);
+    int bytesWritten = 0;
+    while (bytesWritten < DATA.length) {
+      bytesWritten +=
+          sampleQueue.sampleData(
+              dataReader, DATA.length - bytesWritten, /* allowEndOfInput= */ false);
+    }
+    sampleQueue.sampleMetadata(
+        /* timeUs= */ 0, C.BUFFER_FLAG_KEY_FRAME, DATA.length, /* offset= */ 0, null);
+
+    assertReadFormat(/* formatRequired= */ false, FORMAT_1);
+    assertReadSample(
+        /* timeUs= */ 0,
+        /* isKeyFrame= */ true,
+        /* isEncrypted= */ false,
+        DATA,
+        /* offset= */ 0,
+        DATA.length);
+  }
+
+  @Test
+  public void sampleDataFromByteBufferDataReader_withDirectAllocations_readsWithoutStaging()
+      throws Exception {
+    allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ false,
+            ALLOCATION_SIZE,
+            /* initialAllocationCount= */ 0,
+            /* threadLocalCachingEnabled= */ false,
+            /* useDirectBuffers= */ true);
+    sampleQueue = new SampleQueue(allocator, mockDrmSessionManager, eventDispatcher);
+    ByteBuffer source = ByteBuffer.wrap(DATA).asReadOnlyBuffer();
+    ByteBufferDataReader dataReader =
+        new ByteBufferDataReader() {
+          @Override
+          public ByteBuffer readBuffer(int length) {
+            ByteBuffer buffer = source.slice();
+            buffer.limit(min(length, source.remaining()));
+            source.position(source.position() + buffer.remaining());
+            return buffer;
+          }
+
+          @Override
+          public int read(byte[] buffer, int offset, int length) {
+            throw new UnsupportedOperationException();
+          }
+        };
+    sampleQueue.format(FORMAT_1);
+    int bytesWritten = 0;
+    while (bytesWritten < DATA.length) {
+      bytesWritten +=
+          sampleQueue.sampleData(
+              dataReader, DATA.length - bytesWritten, /* allowEndOfInput= */ false);
+    }
+    sampleQueue.sampleMetadata(
+        /* timeUs= */ 0, C.BUFFER_FLAG_KEY_FRAME, DATA.length, /* offset= */ 0, null);
+
+    assertReadFormat(/* formatRequired= */ false, FORMAT_1);
+    assertReadSample(
+        /* timeUs= */ 0,
+        /* isKeyFrame= */ true,
+        /* isEncrypted= */ false,
+        DATA,
+        /* offset= */ 0,
+        DATA.length);
+  }
+
+  @Test
+  public void readBatch_readsContiguousSamplesInOnePass() {
+    writeFormat(FORMAT_1);
+    writeSample(new byte[] {1, 2}, /* timestampUs= */ 0, C.BUFFER_FLAG_KEY_FRAME);
+    writeSample(new byte[] {3}, /* timestampUs= */ 1000, /* sampleFlags= */ 0);
+    writeSample(new byte[] {4, 5, 6}, /* timestampUs= */ 2000, /* sampleFlags= */ 0);
+    assertReadFormat(/* formatRequired= */ false, FORMAT_1);
+    BatchBuffer batchBuffer = new BatchBuffer();
+
+    int sampleCount =
+        sampleQueue.readBatch(batchBuffer, /* timeOffsetUs= */ 10, /* loadingFinished= */ false);
+
+    assertThat(sampleCount).isEqualTo(3);
+    assertThat(batchBuffer.getSampleCount()).isEqualTo(3);
+    assertThat(batchBuffer.getFirstSampleTimeUs()).isEqualTo(10);
+    assertThat(batchBuffer.getLastSampleTimeUs()).isEqualTo(2010);
+    assertThat(batchBuffer.isKeyFrame()).isTrue();
+    batchBuffer.flip();
+    byte[] batchData = new byte[batchBuffer.data.remaining()];
+    batchBuffer.data.get(batchData);
+    assertThat(batchData).isEqualTo(new byte[] {1, 2, 3, 4, 5, 6});
+    assertThat(sampleQueue.getReadIndex()).isEqualTo(3);
+    assertReadNothing(/* formatRequired= */ false);
+  }
+
+  @Test
+  public void readBatch_beforeFormatIsRead_readsNothing() {
+    writeFormat(FORMAT_1);
+    writeSample(new byte[] {1}, /* timestampUs= */ 0, C.BUFFER_FLAG_KEY_FRAME);
+
+    int sampleCount =
+        sampleQueue.readBatch(
+            new BatchBuffer(), /* timeOffsetUs= */ 0, /* loadingFinished= */ false);
+
+    assertThat(sampleCount).isEqualTo(0);
+    assertReadFormat(/* formatRequired= */ false, FORMAT_1);
+  }
+
+  @Test
+  public void readBatch_withLoadingFinished_leavesLastSampleToRead() {
+    writeFormat(FORMAT_1);
+    writeSample(new byte[] {1}, /* timestampUs= */ 0, C.BUFFER_FLAG_KEY_FRAME);
+    writeSample(new byte[] {2}, /* timestampUs= */ 1000, /* sampleFlags= */ 0);
+    assertReadFormat(/* formatRequired= */ false, FORMAT_1);
+
+    int sampleCount =
+        sampleQueue.readBatch(
+            new BatchBuffer(), /* timeOffsetUs= */ 0, /* loadingFinished= */ true);
+    int result =
+        sampleQueue.read(
+            formatHolder, inputBuffer, /* readFlags= */ 0, /* loadingFinished= */ true);
+
+    assertThat(sampleCount).isEqualTo(1);
+    assertThat(result).isEqualTo(RESULT_BUFFER_READ);
+    assertThat(inputBuffer.timeUs).isEqualTo(1000);
+    assertThat(inputBuffer.isLastSample()).isTrue();
+  }
+
+  @Test
+  public void readBatch_stopsAtFormatChange() {
+    writeFormat(FORMAT_1);
+    writeSample(new byte[] {1}, /* timestampUs= */ 0, C.BUFFER_FLAG_KEY_FRAME);
+    writeSample(new byte[] {2}, /* timestampUs= */ 1000, /* sampleFlags= */ 0);
+    writeFormat(FORMAT_2);
+    writeSample(new byte[] {3}, /* timestampUs= */ 2000, C.BUFFER_FLAG_KEY_FRAME);
+    assertReadFormat(/* formatRequired= */ false, FORMAT_1);
+    BatchBuffer batchBuffer = new BatchBuffer();
+
+    int firstSampleCount =
+        sampleQueue.readBatch(batchBuffer, /* timeOffsetUs= */ 0, /* loadingFinished= */ false);
+    int secondSampleCount =
+        sampleQueue.readBatch(batchBuffer, /* timeOffsetUs= */ 0, /* loadingFinished= */ false);
+
+    assertThat(firstSampleCount).isEqualTo(2);
+    assertThat(secondSampleCount).isEqualTo(0);
+    assertReadFormat(/* formatRequired= */ false, FORMAT_2);
+  }
+
+  @Test
+  public void readBatch_stopsAtEncryptedSample() {
+    writeFormat(FORMAT_1);
+    writeSample(new byte[] {1}, /* timestampUs= */ 0, C.BUFFER_FLAG_KEY_FRAME);
+    writeSample(new byte[] {2}, /* timestampUs= */ 1000, C.BUFFER_FLAG_ENCRYPTED);
+    writeSample(new byte[] {3}, /* timestampUs= */ 2000, /* sampleFlags= */ 0);
+    assertReadFormat(/* formatRequired= */ false, FORMAT_1);
+    BatchBuffer batchBuffer = new BatchBuffer();
+
+    int firstSampleCount =
+        sampleQueue.readBatch(batchBuffer, /* timeOffsetUs= */ 0, /* loadingFinished= */ false);
+    int secondSampleCount =
+        sampleQueue.readBatch(batchBuffer, /* timeOffsetUs= */ 0, /* loadingFinished= */ false);
+
+    assertThat(firstSampleCount).isEqualTo(1);
+    assertThat(secondSampleCount).isEqualTo(0);
+    assertThat(sampleQueue.getReadIndex()).isEqualTo(1);
+  }
+
+  @Test
+  public void readBatch_stopsAtDecreasingTimestamp() {
+    writeFormat(FORMAT_1);
+    writeSample(new byte[] {1}, /* timestampUs= */ 0, C.BUFFER_FLAG_KEY_FRAME);
+    writeSample(new byte[] {2}, /* timestampUs= */ 2000, /* sampleFlags= */ 0);
+    writeSample(new byte[] {3}, /* timestampUs= */ 1000, /* sampleFlags= */ 0);
+    assertReadFormat(/* formatRequired= */ false, FORMAT_1);
+
+    int sampleCount =
+        sampleQueue.readBatch(
+            new BatchBuffer(), /* timeOffsetUs= */ 0, /* loadingFinished= */ false);
+
+    assertThat(sampleCount).isEqualTo(2);
+  }
+
+  @Test
+  public void readBatch_stopsAtGapInSampleData() {
+    // The standard test data has unused bytes between the first and second sample.
+    writeTestData();
+    assertReadFormat(/* formatRequired= */ false, FORMAT_1);
+
+    int sampleCount =
+        sampleQueue.readBatch(
+            new BatchBuffer(), /* timeOffsetUs= */ 0, /* loadingFinished= */ false);
+
+    assertThat(sampleCount).isEqualTo(1);
+    assertReadSample(
+        SAMPLE_TIMESTAMPS[1],
+        /* isKeyFrame= */ false,
+        /* isEncrypted= */ false,
+        DATA,
+        DATA.length - SAMPLE_OFFSETS[1] - SAMPLE_SIZES[1],
+        SAMPLE_SIZES[1]);
+  }
+
   @Test
   public void readMultiSamplesTwice() {
     writeTestData();
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.media3.exoplayer.upstream.Allocator.AllocationNode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link DefaultAllocator}. */
+@RunWith(JUnit4.class)
+public class DefaultAllocatorTest {
+
+  private static final int ALLOCATION_SIZE = 16;
+
+  @Test
+  public void allocateAndRelease_withThreadLocalCaching_updatesTotalBytesAllocated() {
+    DefaultAllocator allocator = createThreadLocalCachingAllocator(/* initialAllocationCount= */ 0);
+
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+    int totalBytesAllocatedAfterAllocate = allocator.getTotalBytesAllocated();
+    allocator.release(allocation1);
+    int totalBytesAllocatedAfterRelease = allocator.getTotalBytesAllocated();
+    allocator.release(new TestAllocationNode(allocation2, /* next= */ null));
+
+    assertThat(totalBytesAllocatedAfterAllocate).isEqualTo(2 * ALLOCATION_SIZE);
+    assertThat(totalBytesAllocatedAfterRelease).isEqualTo(ALLOCATION_SIZE);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  @Test
+  public void allocate_withThreadLocalCaching_reusesReleasedAllocations() {
+    DefaultAllocator allocator = createThreadLocalCachingAllocator(/* initialAllocationCount= */ 0);
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+    allocator.release(
+        new TestAllocationNode(allocation1, new TestAllocationNode(allocation2, /* next= */ null)));
+
+    Set<Allocation> reallocated = Collections.newSetFromMap(new IdentityHashMap<>());
+    reallocated.add(allocator.allocate());
+    reallocated.add(allocator.allocate());
+
+    assertThat(reallocated).containsExactly(allocation1, allocation2);
+  }
+
+  @Test
+  public void allocate_withThreadLocalCachingAndInitialAllocations_usesInitialBlock() {
+    DefaultAllocator allocator = createThreadLocalCachingAllocator(/* initialAllocationCount= */ 2);
+
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+
+    assertThat(allocation1.data).isSameInstanceAs(allocation2.data);
+    assertThat(allocation1.data).hasLength(2 * ALLOCATION_SIZE);
+    assertThat(allocation1.offset).isNotEqualTo(allocation2.offset);
+  }
+
+  @Test
+  public void trim_withThreadLocalCaching_keepsInitialAllocationsAndDiscardsOthers() {
+    DefaultAllocator allocator = createThreadLocalCachingAllocator(/* initialAllocationCount= */ 1);
+    Allocation initialAllocation = allocator.allocate();
+    Allocation otherAllocation = allocator.allocate();
+    allocator.release(initialAllocation);
+    allocator.release(otherAllocation);
+
+    allocator.trim();
+    Allocation reallocated1 = allocator.allocate();
+    Allocation reallocated2 = allocator.allocate();
+
+    assertThat(reallocated1).isSameInstanceAs(initialAllocation);
+    assertThat(reallocated2).isNotSameInstanceAs(otherAllocation);
+  }
+
+  @Test
+  public void trim_withThreadLocalCaching_reclaimsAllocationsCachedByTerminatedThread()
+      throws Exception {
+    DefaultAllocator allocator = createThreadLocalCachingAllocator(/* initialAllocationCount= */ 2);
+    // Moves both initial allocations into the thread-local cache of the thread.
+    Thread thread = new Thread(() -> allocator.release(allocator.allocate()));
+    thread.start();
+    thread.join();
+
+    allocator.trim();
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+
+    assertThat(allocation1.data).hasLength(2 * ALLOCATION_SIZE);
+    assertThat(allocation2.data).isSameInstanceAs(allocation1.data);
+  }
+
+  @Test
+  public void allocateAndRelease_withThreadLocalCachingFromMultipleThreads_neverSharesAllocations()
+      throws Exception {
+    DefaultAllocator allocator = createThreadLocalCachingAllocator(/* initialAllocationCount= */ 4);
+    int threadCount = 8;
+    int iterationCount = 1000;
+    ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+    List<Future<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      byte marker = (byte) i;
+      results.add(
+          executorService.submit(
+              () -> {
+                boolean allocationsExclusive = true;
+                for (int j = 0; j < iterationCount; j++) {
+                  Allocation allocation = allocator.allocate();
+                  allocation.data[allocation.offset] = marker;
+                  Thread.yield();
+                  allocationsExclusive &= allocation.data[allocation.offset] == marker;
+                  allocator.release(allocation);
+                }
+                return allocationsExclusive;
+              }));
+    }
+
+    for (Future<Boolean> result : results) {
+      assertThat(result.get()).isTrue();
+    }
+    executorService.shutdown();
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  @Test
+  public void allocate_withDirectBuffers_returnsDirectAllocationsOfIndividualSize() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ true,
+            ALLOCATION_SIZE,
+            /* initialAllocationCount= */ 0,
+            /* threadLocalCachingEnabled= */ false,
+            /* useDirectBuffers= */ true);
+
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+    allocation1.directBuffer.put(/* index= */ 0, (byte) 1);
+    allocation2.directBuffer.put(/* index= */ 0, (byte) 2);
+
+    assertThat(allocation1.directBuffer.isDirect()).isTrue();
+    assertThat(allocation1.directBuffer.capacity()).isEqualTo(ALLOCATION_SIZE);
+    assertThat(allocation1.data).isEmpty();
+    assertThat(allocation1.directBuffer.get(/* index= */ 0)).isEqualTo(1);
+    assertThat(allocation2.directBuffer.get(/* index= */ 0)).isEqualTo(2);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(2 * ALLOCATION_SIZE);
+  }
+
+  private static DefaultAllocator createThreadLocalCachingAllocator(int initialAllocationCount) {
+    return new DefaultAllocator(
+        /* trimOnReset= */ true,
+        ALLOCATION_SIZE,
+        initialAllocationCount,
+        /* threadLocalCachingEnabled= */ true);
+  }
+
+  private static final class TestAllocationNode implements AllocationNode {
+
+    private final Allocation allocation;
+    @Nullable private final AllocationNode next;
+
+    private TestAllocationNode(Allocation allocation, @Nullable AllocationNode next) {
+      this.allocation = allocation;
+      this.next = next;
+    }
+
+    @Override
+    public Allocation getAllocation() {
+      return allocation;
+    }
+
+    @Override
+    @Nullable
+    public AllocationNode next() {
+      return next;
+    }
+  }
+}
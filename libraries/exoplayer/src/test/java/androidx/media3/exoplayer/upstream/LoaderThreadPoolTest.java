@@ -0,0 +1,235 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.media3.common.C;
+import androidx.media3.common.util.ConditionVariable;
+import androidx.media3.exoplayer.util.ReleasableExecutor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link LoaderThreadPool}. */
+@RunWith(JUnit4.class)
+public class LoaderThreadPoolTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+
+  private LoaderThreadPool loaderThreadPool;
+
+  @Before
+  public void setUp() {
+    loaderThreadPool = new LoaderThreadPool(/* maxThreadCount= */ 2);
+  }
+
+  @After
+  public void tearDown() {
+    loaderThreadPool.release();
+  }
+
+  @Test
+  public void execute_runsTasksOfEachExecutorInOrder() throws Exception {
+    int executorCount = 5;
+    int taskCount = 100;
+    List<List<Integer>> executedTasks = new ArrayList<>();
+    CountDownLatch allTasksExecuted = new CountDownLatch(executorCount * taskCount);
+    for (int i = 0; i < executorCount; i++) {
+      ReleasableExecutor executor = loaderThreadPool.createExecutor();
+      List<Integer> executedTasksOfExecutor = Collections.synchronizedList(new ArrayList<>());
+      executedTasks.add(executedTasksOfExecutor);
+      for (int j = 0; j < taskCount; j++) {
+        int taskIndex = j;
+        executor.execute(
+            () -> {
+              executedTasksOfExecutor.add(taskIndex);
+              allTasksExecuted.countDown();
+            });
+      }
+    }
+
+    assertThat(allTasksExecuted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    for (List<Integer> executedTasksOfExecutor : executedTasks) {
+      assertThat(executedTasksOfExecutor).isInOrder();
+      assertThat(executedTasksOfExecutor).hasSize(taskCount);
+    }
+  }
+
+  @Test
+  public void execute_withManyExecutors_doesNotExceedMaxThreadCount() throws Exception {
+    int executorCount = 20;
+    CountDownLatch allTasksExecuted = new CountDownLatch(executorCount);
+    for (int i = 0; i < executorCount; i++) {
+      loaderThreadPool
+          .createExecutor()
+          .execute(
+              () -> {
+                try {
+                  Thread.sleep(/* millis= */ 5);
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+                allTasksExecuted.countDown();
+              });
+    }
+
+    assertThat(allTasksExecuted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(loaderThreadPool.getLargestThreadCount()).isAtMost(2);
+  }
+
+  @Test
+  public void execute_whenAllThreadsBusy_runsHigherPriorityExecutorFirst() throws Exception {
+    LoaderThreadPool singleThreadPool = new LoaderThreadPool(/* maxThreadCount= */ 1);
+    ConditionVariable unblock = new ConditionVariable();
+    ConditionVariable threadBlocked = new ConditionVariable();
+    singleThreadPool
+        .createExecutor()
+        .execute(
+            () -> {
+              threadBlocked.open();
+              unblock.blockUninterruptible();
+            });
+    assertThat(threadBlocked.block(TIMEOUT_MS)).isTrue();
+    List<Integer> executedPriorities = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch allTasksExecuted = new CountDownLatch(2);
+    singleThreadPool
+        .createExecutor(C.PRIORITY_DOWNLOAD)
+        .execute(
+            () -> {
+              executedPriorities.add(C.PRIORITY_DOWNLOAD);
+              allTasksExecuted.countDown();
+            });
+    singleThreadPool
+        .createExecutor(C.PRIORITY_PLAYBACK)
+        .execute(
+            () -> {
+              executedPriorities.add(C.PRIORITY_PLAYBACK);
+              allTasksExecuted.countDown();
+            });
+
+    unblock.open();
+
+    assertThat(allTasksExecuted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(executedPriorities)
+        .containsExactly(C.PRIORITY_PLAYBACK, C.PRIORITY_DOWNLOAD)
+        .inOrder();
+    singleThreadPool.release();
+  }
+
+  @Test
+  public void execute_whileAllThreadsBlockedInBlock_runsTasksOfOtherExecutors() throws Exception {
+    LoaderThreadPool singleThreadPool = new LoaderThreadPool(/* maxThreadCount= */ 1);
+    ConditionVariable unblock = new ConditionVariable();
+    ConditionVariable threadBlocked = new ConditionVariable();
+    CountDownLatch blockedTaskExecuted = new CountDownLatch(1);
+    singleThreadPool
+        .createExecutor()
+        .execute(
+            () -> {
+              threadBlocked.open();
+              try {
+                LoaderThreadPool.block(unblock);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              blockedTaskExecuted.countDown();
+            });
+    assertThat(threadBlocked.block(TIMEOUT_MS)).isTrue();
+    CountDownLatch otherTaskExecuted = new CountDownLatch(1);
+
+    singleThreadPool.createExecutor().execute(otherTaskExecuted::countDown);
+
+    assertThat(otherTaskExecuted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    unblock.open();
+    assertThat(blockedTaskExecuted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    singleThreadPool.release();
+  }
+
+  @Test
+  public void block_withManyBlockedTasks_doesNotExceedTwiceMaxThreadCount() throws Exception {
+    LoaderThreadPool singleThreadPool = new LoaderThreadPool(/* maxThreadCount= */ 1);
+    ConditionVariable unblock = new ConditionVariable();
+    int executorCount = 4;
+    CountDownLatch allTasksExecuted = new CountDownLatch(executorCount);
+    for (int i = 0; i < executorCount; i++) {
+      singleThreadPool
+          .createExecutor()
+          .execute(
+              () -> {
+                try {
+                  LoaderThreadPool.block(unblock);
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+                allTasksExecuted.countDown();
+              });
+    }
+
+    assertThat(allTasksExecuted.await(/* timeout= */ 100, TimeUnit.MILLISECONDS)).isFalse();
+    assertThat(singleThreadPool.getLargestThreadCount()).isEqualTo(2);
+    unblock.open();
+    assertThat(allTasksExecuted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(singleThreadPool.getLargestThreadCount()).isEqualTo(2);
+    singleThreadPool.release();
+  }
+
+  @Test
+  public void release_withPendingTasks_runsPendingTasks() throws Exception {
+    LoaderThreadPool singleThreadPool = new LoaderThreadPool(/* maxThreadCount= */ 1);
+    ConditionVariable unblock = new ConditionVariable();
+    ConditionVariable threadBlocked = new ConditionVariable();
+    ReleasableExecutor executor1 = singleThreadPool.createExecutor();
+    ReleasableExecutor executor2 = singleThreadPool.createExecutor();
+    executor1.execute(
+        () -> {
+          threadBlocked.open();
+          unblock.blockUninterruptible();
+        });
+    assertThat(threadBlocked.block(TIMEOUT_MS)).isTrue();
+    CountDownLatch pendingTasksExecuted = new CountDownLatch(3);
+    executor1.execute(pendingTasksExecuted::countDown);
+    executor1.execute(pendingTasksExecuted::countDown);
+    executor2.execute(pendingTasksExecuted::countDown);
+
+    singleThreadPool.release();
+    unblock.open();
+
+    assertThat(pendingTasksExecuted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThrows(RejectedExecutionException.class, () -> executor1.execute(() -> {}));
+    assertThrows(
+        RejectedExecutionException.class,
+        () -> singleThreadPool.createExecutor().execute(() -> {}));
+  }
+
+  @Test
+  public void execute_afterExecutorReleased_throwsRejectedExecutionException() {
+    ReleasableExecutor executor = loaderThreadPool.createExecutor();
+
+    executor.release();
+
+    assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}));
+  }
+}
@@ -304,6 +304,8 @@ public class VideoFrameReleaseControlTest {
                 /* isLastFrame= */ false,
                 frameReleaseInfo))
         .isEqualTo(VideoFrameReleaseControl.FRAME_RELEASE_TRY_AGAIN_LATER);
+    assertThat(frameReleaseInfo.getEarlyUs())
+        .isGreaterThan(VideoFrameReleaseControl.MAX_EARLY_US_THRESHOLD);
   }
 
   @Test
@@ -17,6 +17,8 @@ package androidx.media3.extractor;
 
 import static java.lang.Math.min;
 
+import androidx.annotation.Nullable;
+import androidx.media3.common.ByteBufferDataReader;
 import androidx.media3.common.C;
 import androidx.media3.common.DataReader;
 import androidx.media3.common.MediaLibraryInfo;
@@ -26,11 +28,17 @@ import androidx.media3.common.util.Util;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-/** An {@link ExtractorInput} that wraps a {@link DataReader}. */
+/**
+ * An {@link ExtractorInput} that wraps a {@link DataReader}.
+ *
+ * <p>If the wrapped {@link DataReader} is a {@link ByteBufferDataReader}, data that has not been
+ * peeked can also be read without copying through {@link #readBuffer(int)}.
+ */
 @UnstableApi
-public final class DefaultExtractorInput implements ExtractorInput {
+public final class DefaultExtractorInput implements ExtractorInput, ByteBufferDataReader {
 
   static {
     MediaLibraryInfo.registerModule("media3.extractor");
@@ -74,6 +82,28 @@ public final class DefaultExtractorInput implements ExtractorInput {
     return bytesRead;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Data can only be read without copying if the wrapped {@link DataReader} is a {@link
+   * ByteBufferDataReader} and there is no peeked data waiting to be read.
+   */
+  @Override
+  @Nullable
+  public ByteBuffer readBuffer(int length) throws IOException {
+    if (peekBufferLength != 0 || !(dataReader instanceof ByteBufferDataReader)) {
+      return null;
+    }
+    if (Thread.interrupted()) {
+      throw new InterruptedIOException();
+    }
+    @Nullable ByteBuffer buffer = ((ByteBufferDataReader) dataReader).readBuffer(length);
+    if (buffer != null) {
+      commitBytesRead(buffer.remaining());
+    }
+    return buffer;
+  }
+
   @Override
   public boolean readFully(byte[] target, int offset, int length, boolean allowEndOfInput)
       throws IOException {
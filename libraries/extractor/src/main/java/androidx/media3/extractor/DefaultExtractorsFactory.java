@@ -430,6 +430,22 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
         addExtractorsForFileType(fileType, extractors);
       }
     }
+    return maybeWrapWithSubtitleTranscoding(extractors);
+  }
+
+  @Override
+  public boolean supportsCreatingExtractorsForFileType() {
+    return true;
+  }
+
+  @Override
+  public synchronized Extractor[] createExtractorsForFileType(@FileTypes.Type int fileType) {
+    List<Extractor> extractors = new ArrayList<>(/* initialCapacity= */ 2);
+    addExtractorsForFileType(fileType, extractors);
+    return maybeWrapWithSubtitleTranscoding(extractors);
+  }
+
+  private Extractor[] maybeWrapWithSubtitleTranscoding(List<Extractor> extractors) {
     Extractor[] result = new Extractor[extractors.size()];
     for (int i = 0; i < extractors.size(); i++) {
       Extractor extractor = extractors.get(i);
@@ -16,6 +16,7 @@
 package androidx.media3.extractor;
 
 import android.net.Uri;
+import androidx.media3.common.FileTypes;
 import androidx.media3.common.MimeTypes;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.extractor.text.SubtitleParser;
@@ -80,4 +81,32 @@ public interface ExtractorsFactory {
   default Extractor[] createExtractors(Uri uri, Map<String, List<String>> responseHeaders) {
     return createExtractors();
   }
+
+  /**
+   * Returns whether {@link #createExtractorsForFileType(int)} may return extractors. If not, the
+   * start of the media isn't inspected to infer its file type.
+   *
+   * <p>The default implementation returns {@code false}.
+   */
+  default boolean supportsCreatingExtractorsForFileType() {
+    return false;
+  }
+
+  /**
+   * Returns an array of new {@link Extractor} instances for the given file type only.
+   *
+   * <p>Used to try the extractors for a file type inferred from the start of the media (see {@link
+   * FileTypes#inferFileTypeFromContent(byte[], int)}) before creating all other extractors. If none
+   * of the returned extractors can read the media, {@link #createExtractors(Uri, Map)} is used.
+   * Only called if {@link #supportsCreatingExtractorsForFileType()} returns {@code true}.
+   *
+   * <p>The default implementation returns an empty array.
+   *
+   * @param fileType The {@link FileTypes.Type} of the media to extract.
+   * @return The {@link Extractor} instances, which may be empty if the factory doesn't provide
+   *     extractors by file type.
+   */
+  default Extractor[] createExtractorsForFileType(@FileTypes.Type int fileType) {
+    return new Extractor[0];
+  }
 }
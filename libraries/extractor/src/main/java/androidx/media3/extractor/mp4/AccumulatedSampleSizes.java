@@ -0,0 +1,206 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.mp4;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+
+/**
+ * For each sample of each track in an MP4 file, provides the accumulated size of all samples which
+ * need to be read before this sample can be used, assuming that the samples of all tracks are
+ * interleaved in timestamp order.
+ *
+ * <p>Rather than storing a value for each sample, the state of the interleaving is stored as a
+ * checkpoint every {@link #CHECKPOINT_INTERVAL} samples. Checkpoints are created lazily as samples
+ * are requested, and values are computed by interleaving the samples from the closest preceding
+ * checkpoint. Each track also keeps the state of its last request, so that requesting the samples
+ * of a track sequentially doesn't require going back to a checkpoint.
+ *
+ * <p>This class is not thread-safe.
+ */
+/* package */ final class AccumulatedSampleSizes {
+
+  /** The number of interleaved samples between checkpoints. */
+  private static final int CHECKPOINT_INTERVAL = 64;
+
+  private final TrackSampleTable[] sampleTables;
+  private final int trackCount;
+
+  // The interleaving state before every CHECKPOINT_INTERVAL-th interleaved sample. The next sample
+  // indices of all tracks for a checkpoint are stored contiguously.
+  private final int[] checkpointNextSampleIndices;
+  private final long[] checkpointAccumulatedSizes;
+  private int checkpointCount;
+
+  // The interleaving state of the last request for each track.
+  private final InterleavingState[] trackStates;
+  // The interleaving state that has advanced furthest, from which new checkpoints are created.
+  private final InterleavingState latestState;
+
+  /**
+   * Creates an instance.
+   *
+   * @param sampleTables The sample tables of the tracks.
+   */
+  public AccumulatedSampleSizes(TrackSampleTable[] sampleTables) {
+    this.sampleTables = sampleTables;
+    trackCount = sampleTables.length;
+    long totalSampleCount = 0;
+    for (TrackSampleTable sampleTable : sampleTables) {
+      totalSampleCount += sampleTable.sampleCount;
+    }
+    int maxCheckpointCount = (int) (totalSampleCount / CHECKPOINT_INTERVAL) + 1;
+    checkpointNextSampleIndices = new int[maxCheckpointCount * trackCount];
+    checkpointAccumulatedSizes = new long[maxCheckpointCount];
+    trackStates = new InterleavingState[trackCount];
+    for (int i = 0; i < trackCount; i++) {
+      trackStates[i] = new InterleavingState();
+    }
+    latestState = new InterleavingState();
+    // The initial state is the first checkpoint.
+    checkpointCount = 1;
+  }
+
+  /**
+   * Returns the accumulated size of all samples which need to be read before the sample at {@code
+   * sampleIndex} of the track at {@code trackIndex} can be used.
+   */
+  public long get(int trackIndex, int sampleIndex) {
+    checkArgument(sampleIndex < sampleTables[trackIndex].sampleCount);
+    InterleavingState state = trackStates[trackIndex];
+    int checkpoint = getLastCheckpointBefore(trackIndex, sampleIndex);
+    if (state.nextSampleIndices[trackIndex] > sampleIndex
+        || state.interleavedSampleCount < (long) checkpoint * CHECKPOINT_INTERVAL) {
+      // The state of the last request has passed the sample, or is further from it than the
+      // closest checkpoint.
+      state.restoreCheckpoint(checkpoint);
+    }
+    while (true) {
+      int nextTrackIndex = state.getNextTrackIndex();
+      if (nextTrackIndex == trackIndex && state.nextSampleIndices[trackIndex] == sampleIndex) {
+        return state.accumulatedSize;
+      }
+      state.advance(nextTrackIndex);
+    }
+  }
+
+  /**
+   * Returns the index of the last created checkpoint at which the track at {@code trackIndex} has
+   * not yet passed the sample at {@code sampleIndex}.
+   */
+  private int getLastCheckpointBefore(int trackIndex, int sampleIndex) {
+    int low = 0;
+    int high = checkpointCount - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (checkpointNextSampleIndices[mid * trackCount + trackIndex] <= sampleIndex) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  private void maybeCreateCheckpoint(InterleavingState state) {
+    if (state.interleavedSampleCount <= latestState.interleavedSampleCount) {
+      return;
+    }
+    latestState.copyFrom(state);
+    if (state.interleavedSampleCount % CHECKPOINT_INTERVAL == 0) {
+      int checkpoint = (int) (state.interleavedSampleCount / CHECKPOINT_INTERVAL);
+      // States only ever advance one sample at a time, so checkpoints are created in order.
+      System.arraycopy(
+          state.nextSampleIndices,
+          /* srcPos= */ 0,
+          checkpointNextSampleIndices,
+          /* destPos= */ checkpoint * trackCount,
+          trackCount);
+      checkpointAccumulatedSizes[checkpoint] = state.accumulatedSize;
+      checkpointCount = checkpoint + 1;
+    }
+  }
+
+  /** The state of the interleaving of the samples of all tracks. */
+  private final class InterleavingState {
+
+    private final int[] nextSampleIndices;
+    private final long[] nextSampleTimesUs;
+    private long interleavedSampleCount;
+    private long accumulatedSize;
+
+    public InterleavingState() {
+      nextSampleIndices = new int[trackCount];
+      nextSampleTimesUs = new long[trackCount];
+      for (int i = 0; i < trackCount; i++) {
+        updateNextSampleTimeUs(i);
+      }
+    }
+
+    /**
+     * Returns the index of the track whose next sample is interleaved next. Samples with the same
+     * timestamp are interleaved in descending track order.
+     */
+    public int getNextTrackIndex() {
+      long minTimeUs = Long.MAX_VALUE;
+      int minTimeTrackIndex = -1;
+      for (int i = 0; i < trackCount; i++) {
+        if (nextSampleIndices[i] < sampleTables[i].sampleCount
+            && nextSampleTimesUs[i] <= minTimeUs) {
+          minTimeTrackIndex = i;
+          minTimeUs = nextSampleTimesUs[i];
+        }
+      }
+      return minTimeTrackIndex;
+    }
+
+    /** Interleaves the next sample of the track at {@code trackIndex}. */
+    public void advance(int trackIndex) {
+      accumulatedSize += sampleTables[trackIndex].getSize(nextSampleIndices[trackIndex]);
+      nextSampleIndices[trackIndex]++;
+      updateNextSampleTimeUs(trackIndex);
+      interleavedSampleCount++;
+      maybeCreateCheckpoint(this);
+    }
+
+    public void restoreCheckpoint(int checkpoint) {
+      System.arraycopy(
+          checkpointNextSampleIndices,
+          /* srcPos= */ checkpoint * trackCount,
+          nextSampleIndices,
+          /* destPos= */ 0,
+          trackCount);
+      for (int i = 0; i < trackCount; i++) {
+        updateNextSampleTimeUs(i);
+      }
+      interleavedSampleCount = (long) checkpoint * CHECKPOINT_INTERVAL;
+      accumulatedSize = checkpointAccumulatedSizes[checkpoint];
+    }
+
+    public void copyFrom(InterleavingState other) {
+      System.arraycopy(other.nextSampleIndices, 0, nextSampleIndices, 0, trackCount);
+      System.arraycopy(other.nextSampleTimesUs, 0, nextSampleTimesUs, 0, trackCount);
+      interleavedSampleCount = other.interleavedSampleCount;
+      accumulatedSize = other.accumulatedSize;
+    }
+
+    private void updateNextSampleTimeUs(int trackIndex) {
+      int sampleIndex = nextSampleIndices[trackIndex];
+      if (sampleIndex < sampleTables[trackIndex].sampleCount) {
+        nextSampleTimesUs[trackIndex] = sampleTables[trackIndex].getTimestampUs(sampleIndex);
+      }
+    }
+  }
+}
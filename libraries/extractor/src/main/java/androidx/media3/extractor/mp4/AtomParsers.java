@@ -133,30 +133,69 @@ import java.util.Objects;
         continue;
       }
       @Nullable
-      Track track =
-          modifyTrackFunction.apply(
-              parseTrak(
-                  atom,
-                  checkNotNull(moov.getLeafAtomOfType(Atom.TYPE_mvhd)),
-                  duration,
-                  drmInitData,
-                  ignoreEditLists,
-                  isQuickTime));
-      if (track == null) {
-        continue;
+      TrackSampleTable trackSampleTable =
+          parseTrakSampleTable(
+              atom,
+              checkNotNull(moov.getLeafAtomOfType(Atom.TYPE_mvhd)),
+              gaplessInfoHolder,
+              duration,
+              drmInitData,
+              ignoreEditLists,
+              isQuickTime,
+              modifyTrackFunction);
+      if (trackSampleTable != null) {
+        trackSampleTables.add(trackSampleTable);
       }
-      Atom.ContainerAtom stblAtom =
-          checkNotNull(
-              checkNotNull(
-                      checkNotNull(atom.getContainerAtomOfType(Atom.TYPE_mdia))
-                          .getContainerAtomOfType(Atom.TYPE_minf))
-                  .getContainerAtomOfType(Atom.TYPE_stbl));
-      TrackSampleTable trackSampleTable = parseStbl(track, stblAtom, gaplessInfoHolder);
-      trackSampleTables.add(trackSampleTable);
     }
     return trackSampleTables;
   }
 
+  /**
+   * Parses a trak atom and its sample table (defined in ISO/IEC 14496-12).
+   *
+   * <p>This allows a trak atom to be parsed as soon as it's been read, without waiting for the rest
+   * of the moov atom.
+   *
+   * @param trak Trak atom to decode.
+   * @param mvhd Movie header atom, used to get the timescale.
+   * @param gaplessInfoHolder Holder to populate with gapless playback information.
+   * @param duration The duration in units of the timescale declared in the mvhd atom, or {@link
+   *     C#TIME_UNSET} if the duration should be parsed from the tkhd atom.
+   * @param drmInitData {@link DrmInitData} to be included in the format, or {@code null}.
+   * @param ignoreEditLists Whether to ignore any edit lists in the trak box.
+   * @param isQuickTime True for QuickTime media. False otherwise.
+   * @param modifyTrackFunction A function to apply to the parsed {@link Track}.
+   * @return A {@link TrackSampleTable}, or {@code null} if the track's type isn't supported or the
+   *     track was removed by {@code modifyTrackFunction}.
+   * @throws ParserException Thrown if the trak atom can't be parsed.
+   */
+  @Nullable
+  public static TrackSampleTable parseTrakSampleTable(
+      Atom.ContainerAtom trak,
+      Atom.LeafAtom mvhd,
+      GaplessInfoHolder gaplessInfoHolder,
+      long duration,
+      @Nullable DrmInitData drmInitData,
+      boolean ignoreEditLists,
+      boolean isQuickTime,
+      Function<@NullableType Track, @NullableType Track> modifyTrackFunction)
+      throws ParserException {
+    @Nullable
+    Track track =
+        modifyTrackFunction.apply(
+            parseTrak(trak, mvhd, duration, drmInitData, ignoreEditLists, isQuickTime));
+    if (track == null) {
+      return null;
+    }
+    Atom.ContainerAtom stblAtom =
+        checkNotNull(
+            checkNotNull(
+                    checkNotNull(trak.getContainerAtomOfType(Atom.TYPE_mdia))
+                        .getContainerAtomOfType(Atom.TYPE_minf))
+                .getContainerAtomOfType(Atom.TYPE_stbl));
+    return parseStbl(track, stblAtom, gaplessInfoHolder);
+  }
+
   /**
    * Parses a udta atom.
    *
@@ -619,9 +658,17 @@ import java.util.Objects;
     long durationUs = Util.scaleLargeTimestamp(duration, C.MICROS_PER_SECOND, track.timescale);
 
     if (track.editListDurations == null) {
-      Util.scaleLargeTimestampsInPlace(timestamps, C.MICROS_PER_SECOND, track.timescale);
-      return new TrackSampleTable(
-          track, offsets, sizes, maximumSize, timestamps, flags, durationUs);
+      return TrackSampleTable.createWithUnscaledTimestamps(
+          track,
+          offsets,
+          sizes,
+          maximumSize,
+          timestamps,
+          /* timestampShift= */ 0,
+          /* timestampOffsetUs= */ 0,
+          /* clampTimestamps= */ false,
+          flags,
+          durationUs);
     }
 
     // See the BMFF spec (ISO/IEC 14496-12) subsection 8.6.6. Edit lists that require prerolling
@@ -651,12 +698,20 @@ import java.util.Objects;
             && encoderPadding <= Integer.MAX_VALUE) {
           gaplessInfoHolder.encoderDelay = (int) encoderDelay;
           gaplessInfoHolder.encoderPadding = (int) encoderPadding;
-          Util.scaleLargeTimestampsInPlace(timestamps, C.MICROS_PER_SECOND, track.timescale);
           long editedDurationUs =
               Util.scaleLargeTimestamp(
                   track.editListDurations[0], C.MICROS_PER_SECOND, track.movieTimescale);
-          return new TrackSampleTable(
-              track, offsets, sizes, maximumSize, timestamps, flags, editedDurationUs);
+          return TrackSampleTable.createWithUnscaledTimestamps(
+              track,
+              offsets,
+              sizes,
+              maximumSize,
+              timestamps,
+              /* timestampShift= */ 0,
+              /* timestampOffsetUs= */ 0,
+              /* clampTimestamps= */ false,
+              flags,
+              editedDurationUs);
         }
       }
     }
@@ -666,15 +721,19 @@ import java.util.Objects;
       // unfragmented files open to interpretation. We handle this as a special case and include all
       // samples in the edit.
       long editStartTime = checkNotNull(track.editListMediaTimes)[0];
-      for (int i = 0; i < timestamps.length; i++) {
-        timestamps[i] =
-            Util.scaleLargeTimestamp(
-                timestamps[i] - editStartTime, C.MICROS_PER_SECOND, track.timescale);
-      }
       durationUs =
           Util.scaleLargeTimestamp(duration - editStartTime, C.MICROS_PER_SECOND, track.timescale);
-      return new TrackSampleTable(
-          track, offsets, sizes, maximumSize, timestamps, flags, durationUs);
+      return TrackSampleTable.createWithUnscaledTimestamps(
+          track,
+          offsets,
+          sizes,
+          maximumSize,
+          timestamps,
+          /* timestampShift= */ editStartTime,
+          /* timestampOffsetUs= */ 0,
+          /* clampTimestamps= */ false,
+          flags,
+          durationUs);
     }
 
     // When applying edit lists, we need to include any partial clipped samples at the end to ensure
@@ -687,6 +746,8 @@ import java.util.Objects;
     int editedSampleCount = 0;
     int nextSampleIndex = 0;
     boolean copyMetadata = false;
+    int nonEmptyEditCount = 0;
+    int lastNonEmptyEditIndex = C.INDEX_UNSET;
     int[] startIndices = new int[track.editListDurations.length];
     int[] endIndices = new int[track.editListDurations.length];
     long[] editListMediaTimes = checkNotNull(track.editListMediaTimes);
@@ -723,16 +784,45 @@ import java.util.Objects;
         editedSampleCount += endIndices[i] - startIndices[i];
         copyMetadata |= nextSampleIndex != startIndices[i];
         nextSampleIndex = endIndices[i];
+        nonEmptyEditCount++;
+        lastNonEmptyEditIndex = i;
       }
     }
     copyMetadata |= editedSampleCount != sampleCount;
 
-    // Calculate edited sample timestamps and update the corresponding metadata arrays.
+    if (!copyMetadata && nonEmptyEditCount == 1) {
+      // All samples belong to the same edit, so the edit can be applied to the timestamps when
+      // they're accessed.
+      long ptsBeforeEdit = 0;
+      long totalPts = 0;
+      for (int i = 0; i < track.editListDurations.length; i++) {
+        if (i < lastNonEmptyEditIndex) {
+          ptsBeforeEdit += track.editListDurations[i];
+        }
+        totalPts += track.editListDurations[i];
+      }
+      return TrackSampleTable.createWithUnscaledTimestamps(
+          track,
+          offsets,
+          sizes,
+          maximumSize,
+          timestamps,
+          /* timestampShift= */ editListMediaTimes[lastNonEmptyEditIndex],
+          /* timestampOffsetUs= */ Util.scaleLargeTimestamp(
+              ptsBeforeEdit, C.MICROS_PER_SECOND, track.movieTimescale),
+          /* clampTimestamps= */ canTrimSamplesWithTimestampChange(track.type),
+          flags,
+          Util.scaleLargeTimestamp(totalPts, C.MICROS_PER_SECOND, track.movieTimescale));
+    }
+
+    // Calculate edited sample timestamps and update the corresponding metadata arrays. If no
+    // metadata needs to be copied, each sample keeps its index and its timestamp can be edited in
+    // place, which avoids holding a second timestamp array for long tracks.
     long[] editedOffsets = copyMetadata ? new long[editedSampleCount] : offsets;
     int[] editedSizes = copyMetadata ? new int[editedSampleCount] : sizes;
     int editedMaximumSize = copyMetadata ? 0 : maximumSize;
     int[] editedFlags = copyMetadata ? new int[editedSampleCount] : flags;
-    long[] editedTimestamps = new long[editedSampleCount];
+    long[] editedTimestamps = copyMetadata ? new long[editedSampleCount] : timestamps;
     long pts = 0;
     int sampleIndex = 0;
     for (int i = 0; i < track.editListDurations.length; i++) {
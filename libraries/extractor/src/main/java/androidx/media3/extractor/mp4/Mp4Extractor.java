@@ -181,6 +181,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
 
   private final ParsableByteArray atomHeader;
   private final ArrayDeque<ContainerAtom> containerAtoms;
+  private final List<TrackSampleTable> parsedTrackSampleTables;
   private final SefReader sefReader;
   private final List<Metadata.Entry> slowMotionMetadataEntries;
 
@@ -190,6 +191,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   private long atomSize;
   private int atomHeaderBytesRead;
   @Nullable private ParsableByteArray atomData;
+  private GaplessInfoHolder parsedTrackGaplessInfoHolder;
 
   private int sampleTrackIndex;
   private int sampleBytesRead;
@@ -201,7 +203,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   private ExtractorOutput extractorOutput;
   private Mp4Track[] tracks;
 
-  private long @MonotonicNonNull [][] accumulatedSampleSizes;
+  private @MonotonicNonNull AccumulatedSampleSizes accumulatedSampleSizes;
   private int firstVideoTrackIndex;
   private long durationUs;
   private @FileType int fileType;
@@ -251,6 +253,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     slowMotionMetadataEntries = new ArrayList<>();
     atomHeader = new ParsableByteArray(Atom.LONG_HEADER_SIZE);
     containerAtoms = new ArrayDeque<>();
+    parsedTrackSampleTables = new ArrayList<>();
+    parsedTrackGaplessInfoHolder = new GaplessInfoHolder();
     nalStartCode = new ParsableByteArray(NalUnitUtil.NAL_START_CODE);
     nalLength = new ParsableByteArray(4);
     scratch = new ParsableByteArray();
@@ -285,6 +289,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   @Override
   public void seek(long position, long timeUs) {
     containerAtoms.clear();
+    resetParsedTrackSampleTables();
     atomHeaderBytesRead = 0;
     sampleTrackIndex = C.INDEX_UNSET;
     sampleBytesRead = 0;
@@ -386,14 +391,14 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       if (sampleIndex == C.INDEX_UNSET) {
         return new SeekPoints(SeekPoint.START);
       }
-      long sampleTimeUs = sampleTable.timestampsUs[sampleIndex];
+      long sampleTimeUs = sampleTable.getTimestampUs(sampleIndex);
       firstTimeUs = sampleTimeUs;
-      firstOffset = sampleTable.offsets[sampleIndex];
+      firstOffset = sampleTable.getOffset(sampleIndex);
       if (sampleTimeUs < timeUs && sampleIndex < sampleTable.sampleCount - 1) {
         int secondSampleIndex = sampleTable.getIndexOfLaterOrEqualSynchronizationSample(timeUs);
         if (secondSampleIndex != C.INDEX_UNSET && secondSampleIndex != sampleIndex) {
-          secondTimeUs = sampleTable.timestampsUs[secondSampleIndex];
-          secondOffset = sampleTable.offsets[secondSampleIndex];
+          secondTimeUs = sampleTable.getTimestampUs(secondSampleIndex);
+          secondOffset = sampleTable.getOffset(secondSampleIndex);
         }
       }
     } else {
@@ -554,7 +559,11 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         containerAtoms.clear();
         parserState = STATE_READING_SAMPLE;
       } else if (!containerAtoms.isEmpty()) {
-        containerAtoms.peek().add(containerAtom);
+        ContainerAtom parentAtom = containerAtoms.peek();
+        if (containerAtom.type != Atom.TYPE_trak
+            || !maybeParseTrakAtom(parentAtom, containerAtom)) {
+          parentAtom.add(containerAtom);
+        }
       }
     }
     if (parserState != STATE_READING_SAMPLE) {
@@ -562,6 +571,47 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     }
   }
 
+  /**
+   * Parses the sample table of a trak atom as soon as it's been read, so that the trak atom's data
+   * doesn't need to be retained until the end of the moov atom.
+   *
+   * @param parentAtom The parent of the trak atom.
+   * @param trakAtom The trak atom.
+   * @return Whether the trak atom was parsed. If not, it should be parsed with the moov atom.
+   * @throws ParserException If the trak atom can't be parsed.
+   */
+  private boolean maybeParseTrakAtom(ContainerAtom parentAtom, ContainerAtom trakAtom)
+      throws ParserException {
+    @Nullable Atom.LeafAtom mvhd = parentAtom.getLeafAtomOfType(Atom.TYPE_mvhd);
+    if (parentAtom.type != Atom.TYPE_moov
+        || mvhd == null
+        || parentAtom.getContainerAtomOfType(Atom.TYPE_trak) != null) {
+      // The movie timescale isn't known yet, or an earlier trak atom is waiting to be parsed with
+      // the moov atom and the track order must be preserved.
+      return false;
+    }
+    @Nullable
+    TrackSampleTable trackSampleTable =
+        AtomParsers.parseTrakSampleTable(
+            trakAtom,
+            mvhd,
+            parsedTrackGaplessInfoHolder,
+            /* duration= */ C.TIME_UNSET,
+            /* drmInitData= */ null,
+            /* ignoreEditLists= */ (flags & FLAG_WORKAROUND_IGNORE_EDIT_LISTS) != 0,
+            /* isQuickTime= */ fileType == FILE_TYPE_QUICKTIME,
+            /* modifyTrackFunction= */ track -> track);
+    if (trackSampleTable != null) {
+      parsedTrackSampleTables.add(trackSampleTable);
+    }
+    return true;
+  }
+
+  private void resetParsedTrackSampleTables() {
+    parsedTrackSampleTables.clear();
+    parsedTrackGaplessInfoHolder = new GaplessInfoHolder();
+  }
+
   /** Updates the stored track metadata to reflect the contents of the specified moov atom. */
   private void processMoovAtom(ContainerAtom moov) throws ParserException {
     int firstVideoTrackIndex = C.INDEX_UNSET;
@@ -583,12 +633,22 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       mdtaMetadata = AtomParsers.parseMdtaFromMeta(meta);
     }
 
+    if (parsedTrackGaplessInfoHolder.hasGaplessInfo()) {
+      // Gapless information from the sample tables takes precedence over the udta metadata.
+      gaplessInfoHolder.encoderDelay = parsedTrackGaplessInfoHolder.encoderDelay;
+      gaplessInfoHolder.encoderPadding = parsedTrackGaplessInfoHolder.encoderPadding;
+    }
+
     Metadata mvhdMetadata =
         new Metadata(
             AtomParsers.parseMvhd(checkNotNull(moov.getLeafAtomOfType(Atom.TYPE_mvhd)).data));
 
+    // Parse any trak atoms that couldn't be parsed as soon as they were read. They follow the trak
+    // atoms that were parsed already.
     boolean ignoreEditLists = (flags & FLAG_WORKAROUND_IGNORE_EDIT_LISTS) != 0;
-    List<TrackSampleTable> trackSampleTables =
+    List<TrackSampleTable> trackSampleTables = new ArrayList<>(parsedTrackSampleTables);
+    resetParsedTrackSampleTables();
+    trackSampleTables.addAll(
         parseTraks(
             moov,
             gaplessInfoHolder,
@@ -596,7 +656,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
             /* drmInitData= */ null,
             ignoreEditLists,
             isQuickTime,
-            /* modifyTrackFunction= */ track -> track);
+            /* modifyTrackFunction= */ track -> track));
 
     int trackIndex = 0;
     for (int i = 0; i < trackSampleTables.size(); i++) {
@@ -655,7 +715,11 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     this.firstVideoTrackIndex = firstVideoTrackIndex;
     this.durationUs = durationUs;
     this.tracks = tracks.toArray(new Mp4Track[0]);
-    accumulatedSampleSizes = calculateAccumulatedSampleSizes(this.tracks);
+    TrackSampleTable[] sampleTables = new TrackSampleTable[this.tracks.length];
+    for (int i = 0; i < sampleTables.length; i++) {
+      sampleTables[i] = this.tracks[i].sampleTable;
+    }
+    accumulatedSampleSizes = new AccumulatedSampleSizes(sampleTables);
 
     extractorOutput.endTracks();
     extractorOutput.seekMap(this);
@@ -687,8 +751,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     Mp4Track track = tracks[sampleTrackIndex];
     TrackOutput trackOutput = track.trackOutput;
     int sampleIndex = track.sampleIndex;
-    long position = track.sampleTable.offsets[sampleIndex];
-    int sampleSize = track.sampleTable.sizes[sampleIndex];
+    long position = track.sampleTable.getOffset(sampleIndex, track.offsetCursor);
+    int sampleSize = track.sampleTable.getSize(sampleIndex);
     @Nullable TrueHdSampleRechunker trueHdSampleRechunker = track.trueHdSampleRechunker;
     long skipAmount = position - inputPosition + sampleBytesRead;
     if (skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE) {
@@ -759,8 +823,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       }
     }
 
-    long timeUs = track.sampleTable.timestampsUs[sampleIndex];
-    @C.BufferFlags int flags = track.sampleTable.flags[sampleIndex];
+    long timeUs = track.sampleTable.getTimestampUs(sampleIndex);
+    @C.BufferFlags int flags = track.sampleTable.getFlags(sampleIndex);
     if (trueHdSampleRechunker != null) {
       trueHdSampleRechunker.sampleMetadata(
           trackOutput, timeUs, flags, sampleSize, /* offset= */ 0, /* cryptoData= */ null);
@@ -807,8 +871,9 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       if (sampleIndex == track.sampleTable.sampleCount) {
         continue;
       }
-      long sampleOffset = track.sampleTable.offsets[sampleIndex];
-      long sampleAccumulatedBytes = castNonNull(accumulatedSampleSizes)[trackIndex][sampleIndex];
+      long sampleOffset = track.sampleTable.getOffset(sampleIndex, track.offsetCursor);
+      long sampleAccumulatedBytes =
+          castNonNull(accumulatedSampleSizes).get(trackIndex, sampleIndex);
       long skipAmount = sampleOffset - inputPosition;
       boolean requiresReload = skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE;
       if ((!requiresReload && preferredRequiresReload)
@@ -878,45 +943,6 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     }
   }
 
-  /**
-   * For each sample of each track, calculates accumulated size of all samples which need to be read
-   * before this sample can be used.
-   */
-  private static long[][] calculateAccumulatedSampleSizes(Mp4Track[] tracks) {
-    long[][] accumulatedSampleSizes = new long[tracks.length][];
-    int[] nextSampleIndex = new int[tracks.length];
-    long[] nextSampleTimesUs = new long[tracks.length];
-    boolean[] tracksFinished = new boolean[tracks.length];
-    for (int i = 0; i < tracks.length; i++) {
-      accumulatedSampleSizes[i] = new long[tracks[i].sampleTable.sampleCount];
-      nextSampleTimesUs[i] = tracks[i].sampleTable.timestampsUs[0];
-    }
-    long accumulatedSampleSize = 0;
-    int finishedTracks = 0;
-    while (finishedTracks < tracks.length) {
-      long minTimeUs = Long.MAX_VALUE;
-      int minTimeTrackIndex = -1;
-      for (int i = 0; i < tracks.length; i++) {
-        if (!tracksFinished[i] && nextSampleTimesUs[i] <= minTimeUs) {
-          minTimeTrackIndex = i;
-          minTimeUs = nextSampleTimesUs[i];
-        }
-      }
-      int trackSampleIndex = nextSampleIndex[minTimeTrackIndex];
-      accumulatedSampleSizes[minTimeTrackIndex][trackSampleIndex] = accumulatedSampleSize;
-      accumulatedSampleSize += tracks[minTimeTrackIndex].sampleTable.sizes[trackSampleIndex];
-      nextSampleIndex[minTimeTrackIndex] = ++trackSampleIndex;
-      if (trackSampleIndex < accumulatedSampleSizes[minTimeTrackIndex].length) {
-        nextSampleTimesUs[minTimeTrackIndex] =
-            tracks[minTimeTrackIndex].sampleTable.timestampsUs[trackSampleIndex];
-      } else {
-        tracksFinished[minTimeTrackIndex] = true;
-        finishedTracks++;
-      }
-    }
-    return accumulatedSampleSizes;
-  }
-
   /**
    * Adjusts a seek point offset to take into account the track with the given {@code sampleTable},
    * for a given {@code seekTimeUs}.
@@ -932,7 +958,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     if (sampleIndex == C.INDEX_UNSET) {
       return offset;
     }
-    long sampleOffset = sampleTable.offsets[sampleIndex];
+    long sampleOffset = sampleTable.getOffset(sampleIndex);
     return min(sampleOffset, offset);
   }
 
@@ -1028,6 +1054,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     public final Track track;
     public final TrackSampleTable sampleTable;
     public final TrackOutput trackOutput;
+    public final TrackSampleTable.OffsetCursor offsetCursor;
     @Nullable public final TrueHdSampleRechunker trueHdSampleRechunker;
 
     public int sampleIndex;
@@ -1036,6 +1063,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       this.track = track;
       this.sampleTable = sampleTable;
       this.trackOutput = trackOutput;
+      offsetCursor = new TrackSampleTable.OffsetCursor();
       trueHdSampleRechunker =
           MimeTypes.AUDIO_TRUEHD.equals(track.format.sampleMimeType)
               ? new TrueHdSampleRechunker()
@@ -15,37 +15,104 @@
  */
 package androidx.media3.extractor.mp4;
 
+import static androidx.media3.common.util.Util.castNonNull;
+import static java.lang.Math.max;
+
+import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.Util;
+import java.util.Arrays;
 
-/** Sample table for a track in an MP4 file. */
+/**
+ * Sample table for a track in an MP4 file.
+ *
+ * <p>Where samples follow a regular pattern, the table stores runs of samples rather than the
+ * values of each sample. This applies to samples with a fixed size, samples whose data is
+ * contiguous, runs of samples with a constant duration and tracks in which only some (or all)
+ * samples are synchronization samples. For long audio tracks this reduces the size of the table by
+ * up to an order of magnitude, at the cost of computing sample values on access.
+ */
 /* package */ final class TrackSampleTable {
 
+  /**
+   * The position of the last sample whose offset was computed using {@link #getOffset(int,
+   * OffsetCursor)}, which allows the offsets of subsequent samples to be computed without summing
+   * the sizes of the samples that precede them in their run.
+   *
+   * <p>A cursor must only be used with a single sample table, and from a single thread.
+   */
+  public static final class OffsetCursor {
+
+    private int index;
+    private int run;
+    private long offset;
+
+    /** Creates an instance. */
+    public OffsetCursor() {
+      index = C.INDEX_UNSET;
+    }
+  }
+
+  /**
+   * The minimum average number of samples per run for a property to be stored as runs rather than
+   * as a value for each sample.
+   */
+  private static final int MIN_SAMPLES_PER_RUN = 4;
+
+  /**
+   * The maximum number of samples in a run of contiguous samples whose sizes vary. This bounds the
+   * number of sample sizes that need to be summed to compute a sample offset.
+   */
+  private static final int MAX_VARIABLE_SIZE_OFFSET_RUN_LENGTH = 32;
+
   /** The track corresponding to this sample table. */
   public final Track track;
 
   /** Number of samples. */
   public final int sampleCount;
 
-  /** Sample offsets in bytes. */
-  public final long[] offsets;
+  /** Maximum sample size in bytes. */
+  public final int maximumSize;
 
-  /** Sample sizes in bytes. */
-  public final int[] sizes;
+  /** The duration of the track sample table in microseconds. */
+  public final long durationUs;
 
-  /** Maximum sample size in {@link #sizes}. */
-  public final int maximumSize;
+  // Sample offsets in bytes, or runs of samples with contiguous data if null.
+  @Nullable private final long[] offsets;
+  @Nullable private final int[] offsetRunStartIndices;
+  @Nullable private final long[] offsetRunStartOffsets;
 
-  /** Sample timestamps in microseconds. */
-  public final long[] timestampsUs;
+  // Sample sizes in bytes, or null if all samples have fixedSize.
+  @Nullable private final int[] sizes;
+  private final int fixedSize;
 
-  /** Sample flags. */
-  public final int[] flags;
+  // Sample timestamps in microseconds, or runs of samples with a constant duration if null. Run
+  // values and durations are in units of the track's timescale.
+  @Nullable private final long[] timestampsUs;
+  @Nullable private final int[] timestampRunStartIndices;
+  @Nullable private final long[] timestampRunStartValues;
+  @Nullable private final long[] timestampRunDeltas;
+  private final long timestampShift;
+  private final long timestampOffsetUs;
+  private final boolean clampTimestamps;
 
-  /** The duration of the track sample table in microseconds. */
-  public final long durationUs;
+  // Sample flags, or the sorted indices of the synchronization samples if null. If both are null
+  // then all samples are synchronization samples.
+  @Nullable private final int[] flags;
+  @Nullable private final int[] syncSampleIndices;
 
+  /**
+   * Creates an instance from sample timestamps in microseconds.
+   *
+   * @param track The track corresponding to this sample table.
+   * @param offsets Sample offsets in bytes.
+   * @param sizes Sample sizes in bytes.
+   * @param maximumSize Maximum sample size in {@code sizes}.
+   * @param timestampsUs Sample timestamps in microseconds.
+   * @param flags Sample flags.
+   * @param durationUs The duration of the track sample table in microseconds.
+   */
   public TrackSampleTable(
       Track track,
       long[] offsets,
@@ -54,23 +121,265 @@ import androidx.media3.common.util.Util;
       long[] timestampsUs,
       int[] flags,
       long durationUs) {
-    Assertions.checkArgument(sizes.length == timestampsUs.length);
-    Assertions.checkArgument(offsets.length == timestampsUs.length);
-    Assertions.checkArgument(flags.length == timestampsUs.length);
+    this(
+        track,
+        offsets,
+        sizes,
+        maximumSize,
+        timestampsUs,
+        /* timestampsAreScaled= */ true,
+        /* timestampShift= */ 0,
+        /* timestampOffsetUs= */ 0,
+        /* clampTimestamps= */ false,
+        flags,
+        durationUs);
+  }
+
+  /**
+   * Creates an instance from sample timestamps in units of the track's timescale, which allows
+   * runs of samples with a constant duration to be stored without a timestamp for each sample.
+   *
+   * <p>The timestamp of a sample in microseconds is {@code timestampOffsetUs} plus its timestamp
+   * minus {@code timestampShift}, scaled to microseconds. If {@code clampTimestamps} is true, the
+   * scaled value is clamped to be non-negative before {@code timestampOffsetUs} is added.
+   *
+   * @param track The track corresponding to this sample table.
+   * @param offsets Sample offsets in bytes.
+   * @param sizes Sample sizes in bytes.
+   * @param maximumSize Maximum sample size in {@code sizes}.
+   * @param timestamps Sample timestamps in units of the track's timescale. The array may be
+   *     modified.
+   * @param timestampShift The value to subtract from each timestamp before scaling, in units of
+   *     the track's timescale.
+   * @param timestampOffsetUs The value to add to each scaled timestamp, in microseconds.
+   * @param clampTimestamps Whether scaled timestamps are clamped to be non-negative.
+   * @param flags Sample flags.
+   * @param durationUs The duration of the track sample table in microseconds.
+   */
+  public static TrackSampleTable createWithUnscaledTimestamps(
+      Track track,
+      long[] offsets,
+      int[] sizes,
+      int maximumSize,
+      long[] timestamps,
+      long timestampShift,
+      long timestampOffsetUs,
+      boolean clampTimestamps,
+      int[] flags,
+      long durationUs) {
+    return new TrackSampleTable(
+        track,
+        offsets,
+        sizes,
+        maximumSize,
+        timestamps,
+        /* timestampsAreScaled= */ false,
+        timestampShift,
+        timestampOffsetUs,
+        clampTimestamps,
+        flags,
+        durationUs);
+  }
+
+  private TrackSampleTable(
+      Track track,
+      long[] offsets,
+      int[] sizes,
+      int maximumSize,
+      long[] timestamps,
+      boolean timestampsAreScaled,
+      long timestampShift,
+      long timestampOffsetUs,
+      boolean clampTimestamps,
+      int[] flags,
+      long durationUs) {
+    Assertions.checkArgument(sizes.length == timestamps.length);
+    Assertions.checkArgument(offsets.length == timestamps.length);
+    Assertions.checkArgument(flags.length == timestamps.length);
 
     this.track = track;
-    this.offsets = offsets;
-    this.sizes = sizes;
     this.maximumSize = maximumSize;
-    this.timestampsUs = timestampsUs;
-    this.flags = flags;
     this.durationUs = durationUs;
+    this.timestampShift = timestampShift;
+    this.timestampOffsetUs = timestampOffsetUs;
+    this.clampTimestamps = clampTimestamps;
     sampleCount = offsets.length;
-    if (flags.length > 0) {
-      flags[flags.length - 1] |= C.BUFFER_FLAG_LAST_SAMPLE;
+    int maxRunCount = sampleCount / MIN_SAMPLES_PER_RUN;
+
+    fixedSize = getFixedSize(sizes);
+    this.sizes = fixedSize == C.LENGTH_UNSET ? sizes : null;
+
+    int offsetRunCount =
+        encodeOffsetRuns(
+            offsets,
+            sizes,
+            /* hasFixedSize= */ fixedSize != C.LENGTH_UNSET,
+            /* runStartIndices= */ null,
+            /* runStartOffsets= */ null);
+    if (offsetRunCount <= maxRunCount) {
+      this.offsets = null;
+      offsetRunStartIndices = new int[offsetRunCount];
+      offsetRunStartOffsets = new long[offsetRunCount];
+      encodeOffsetRuns(
+          offsets,
+          sizes,
+          /* hasFixedSize= */ fixedSize != C.LENGTH_UNSET,
+          offsetRunStartIndices,
+          offsetRunStartOffsets);
+    } else {
+      this.offsets = offsets;
+      offsetRunStartIndices = null;
+      offsetRunStartOffsets = null;
+    }
+
+    int timestampRunCount =
+        timestampsAreScaled
+            ? Integer.MAX_VALUE
+            : encodeTimestampRuns(
+                timestamps,
+                /* runStartIndices= */ null,
+                /* runStartValues= */ null,
+                /* runDeltas= */ null);
+    if (timestampRunCount <= maxRunCount) {
+      timestampsUs = null;
+      timestampRunStartIndices = new int[timestampRunCount];
+      timestampRunStartValues = new long[timestampRunCount];
+      timestampRunDeltas = new long[timestampRunCount];
+      encodeTimestampRuns(
+          timestamps, timestampRunStartIndices, timestampRunStartValues, timestampRunDeltas);
+    } else {
+      if (!timestampsAreScaled) {
+        for (int i = 0; i < timestamps.length; i++) {
+          timestamps[i] = scaleTimestamp(timestamps[i]);
+        }
+      }
+      timestampsUs = timestamps;
+      timestampRunStartIndices = null;
+      timestampRunStartValues = null;
+      timestampRunDeltas = null;
+    }
+
+    int syncSampleCount = 0;
+    boolean hasOnlyKeyFrameFlags = true;
+    for (int sampleFlags : flags) {
+      if (sampleFlags == C.BUFFER_FLAG_KEY_FRAME) {
+        syncSampleCount++;
+      } else if (sampleFlags != 0) {
+        hasOnlyKeyFrameFlags = false;
+        break;
+      }
+    }
+    if (!hasOnlyKeyFrameFlags) {
+      this.flags = flags;
+      syncSampleIndices = null;
+      if (flags.length > 0) {
+        flags[flags.length - 1] |= C.BUFFER_FLAG_LAST_SAMPLE;
+      }
+    } else if (syncSampleCount == sampleCount) {
+      this.flags = null;
+      syncSampleIndices = null;
+    } else {
+      this.flags = null;
+      syncSampleIndices = new int[syncSampleCount];
+      int syncSampleIndex = 0;
+      for (int i = 0; i < flags.length; i++) {
+        if (flags[i] == C.BUFFER_FLAG_KEY_FRAME) {
+          syncSampleIndices[syncSampleIndex++] = i;
+        }
+      }
     }
   }
 
+  /** Returns the offset of the sample at the specified index, in bytes. */
+  public long getOffset(int index) {
+    if (offsets != null) {
+      return offsets[index];
+    }
+    int[] offsetRunStartIndices = castNonNull(this.offsetRunStartIndices);
+    int run = Util.binarySearchFloor(offsetRunStartIndices, index, true, false);
+    int runStartIndex = offsetRunStartIndices[run];
+    long offset = castNonNull(offsetRunStartOffsets)[run];
+    if (sizes == null) {
+      return offset + (long) (index - runStartIndex) * fixedSize;
+    }
+    for (int i = runStartIndex; i < index; i++) {
+      offset += sizes[i];
+    }
+    return offset;
+  }
+
+  /**
+   * Returns the offset of the sample at the specified index, in bytes.
+   *
+   * <p>Equivalent to {@link #getOffset(int)}, but resumes from the sample at the position of {@code
+   * cursor} where possible, and moves the cursor to the specified sample. This makes accessing
+   * samples sequentially cheaper than computing each offset from the start of its run.
+   *
+   * @param index The index of the sample.
+   * @param cursor The {@link OffsetCursor} used to access this sample table.
+   * @return The offset of the sample, in bytes.
+   */
+  public long getOffset(int index, OffsetCursor cursor) {
+    if (offsets != null) {
+      return offsets[index];
+    }
+    int[] offsetRunStartIndices = castNonNull(this.offsetRunStartIndices);
+    int run = cursor.run;
+    if (cursor.index == C.INDEX_UNSET
+        || index < cursor.index
+        || (run + 1 < offsetRunStartIndices.length && index >= offsetRunStartIndices[run + 1])) {
+      // The sample isn't at or after the cursor in the same run.
+      run = Util.binarySearchFloor(offsetRunStartIndices, index, true, false);
+      cursor.run = run;
+      cursor.index = offsetRunStartIndices[run];
+      cursor.offset = castNonNull(offsetRunStartOffsets)[run];
+    }
+    long offset = cursor.offset;
+    if (sizes == null) {
+      offset += (long) (index - cursor.index) * fixedSize;
+    } else {
+      for (int i = cursor.index; i < index; i++) {
+        offset += sizes[i];
+      }
+    }
+    cursor.index = index;
+    cursor.offset = offset;
+    return offset;
+  }
+
+  /** Returns the size of the sample at the specified index, in bytes. */
+  public int getSize(int index) {
+    return sizes != null ? sizes[index] : fixedSize;
+  }
+
+  /** Returns the timestamp of the sample at the specified index, in microseconds. */
+  public long getTimestampUs(int index) {
+    if (timestampsUs != null) {
+      return timestampsUs[index];
+    }
+    int[] timestampRunStartIndices = castNonNull(this.timestampRunStartIndices);
+    int run = Util.binarySearchFloor(timestampRunStartIndices, index, true, false);
+    long timestamp =
+        castNonNull(timestampRunStartValues)[run]
+            + (index - timestampRunStartIndices[run]) * castNonNull(timestampRunDeltas)[run];
+    return scaleTimestamp(timestamp);
+  }
+
+  /** Returns the {@link C.BufferFlags} of the sample at the specified index. */
+  public @C.BufferFlags int getFlags(int index) {
+    if (flags != null) {
+      return flags[index];
+    }
+    @C.BufferFlags int sampleFlags = 0;
+    if (syncSampleIndices == null || Arrays.binarySearch(syncSampleIndices, index) >= 0) {
+      sampleFlags |= C.BUFFER_FLAG_KEY_FRAME;
+    }
+    if (index == sampleCount - 1) {
+      sampleFlags |= C.BUFFER_FLAG_LAST_SAMPLE;
+    }
+    return sampleFlags;
+  }
+
   /**
    * Returns the sample index of the closest synchronization sample at or before the given
    * timestamp, if one is available.
@@ -81,13 +390,20 @@ import androidx.media3.common.util.Util;
   public int getIndexOfEarlierOrEqualSynchronizationSample(long timeUs) {
     // Video frame timestamps may not be sorted, so the behavior of this call can be undefined.
     // Frames are not reordered past synchronization samples so this works in practice.
-    int startIndex = Util.binarySearchFloor(timestampsUs, timeUs, true, false);
-    for (int i = startIndex; i >= 0; i--) {
-      if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
-        return i;
+    int startIndex = binarySearchFloorTimestamps(timeUs);
+    if (flags != null) {
+      for (int i = startIndex; i >= 0; i--) {
+        if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+          return i;
+        }
       }
+      return C.INDEX_UNSET;
+    }
+    if (syncSampleIndices == null) {
+      return startIndex >= 0 ? startIndex : C.INDEX_UNSET;
     }
-    return C.INDEX_UNSET;
+    int syncSampleIndex = Util.binarySearchFloor(syncSampleIndices, startIndex, true, false);
+    return syncSampleIndex >= 0 ? syncSampleIndices[syncSampleIndex] : C.INDEX_UNSET;
   }
 
   /**
@@ -98,12 +414,154 @@ import androidx.media3.common.util.Util;
    * @return index Index of the synchronization sample, or {@link C#INDEX_UNSET} if none.
    */
   public int getIndexOfLaterOrEqualSynchronizationSample(long timeUs) {
-    int startIndex = Util.binarySearchCeil(timestampsUs, timeUs, true, false);
-    for (int i = startIndex; i < timestampsUs.length; i++) {
-      if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
-        return i;
+    int startIndex = binarySearchCeilTimestamps(timeUs);
+    if (flags != null) {
+      for (int i = startIndex; i < sampleCount; i++) {
+        if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+          return i;
+        }
+      }
+      return C.INDEX_UNSET;
+    }
+    if (syncSampleIndices == null) {
+      return startIndex < sampleCount ? startIndex : C.INDEX_UNSET;
+    }
+    int syncSampleIndex = Util.binarySearchCeil(syncSampleIndices, startIndex, true, false);
+    return syncSampleIndex < syncSampleIndices.length
+        ? syncSampleIndices[syncSampleIndex]
+        : C.INDEX_UNSET;
+  }
+
+  private long scaleTimestamp(long timestamp) {
+    long timeUs =
+        Util.scaleLargeTimestamp(timestamp - timestampShift, C.MICROS_PER_SECOND, track.timescale);
+    if (clampTimestamps) {
+      timeUs = max(0, timeUs);
+    }
+    return timestampOffsetUs + timeUs;
+  }
+
+  /**
+   * Equivalent to {@link Util#binarySearchFloor(long[], long, boolean, boolean)} on the sample
+   * timestamps, with {@code inclusive} set to true and {@code stayInBounds} set to false.
+   */
+  private int binarySearchFloorTimestamps(long timeUs) {
+    if (timestampsUs != null) {
+      return Util.binarySearchFloor(
+          timestampsUs, timeUs, /* inclusive= */ true, /* stayInBounds= */ false);
+    }
+    int index = binarySearchTimestamps(timeUs);
+    if (index < 0) {
+      return -(index + 2);
+    }
+    while (--index >= 0 && getTimestampUs(index) == timeUs) {}
+    return index + 1;
+  }
+
+  /**
+   * Equivalent to {@link Util#binarySearchCeil(long[], long, boolean, boolean)} on the sample
+   * timestamps, with {@code inclusive} set to true and {@code stayInBounds} set to false.
+   */
+  private int binarySearchCeilTimestamps(long timeUs) {
+    if (timestampsUs != null) {
+      return Util.binarySearchCeil(
+          timestampsUs, timeUs, /* inclusive= */ true, /* stayInBounds= */ false);
+    }
+    int index = binarySearchTimestamps(timeUs);
+    if (index < 0) {
+      return ~index;
+    }
+    while (++index < sampleCount && getTimestampUs(index) == timeUs) {}
+    return index - 1;
+  }
+
+  /**
+   * Equivalent to {@link Arrays#binarySearch(long[], long)} on the sample timestamps, including
+   * for timestamps that aren't sorted.
+   */
+  private int binarySearchTimestamps(long timeUs) {
+    int low = 0;
+    int high = sampleCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midTimeUs = getTimestampUs(mid);
+      if (midTimeUs < timeUs) {
+        low = mid + 1;
+      } else if (midTimeUs > timeUs) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  /** Returns the size shared by all samples, or {@link C#LENGTH_UNSET} if sizes differ. */
+  private static int getFixedSize(int[] sizes) {
+    if (sizes.length == 0) {
+      return C.LENGTH_UNSET;
+    }
+    for (int i = 1; i < sizes.length; i++) {
+      if (sizes[i] != sizes[0]) {
+        return C.LENGTH_UNSET;
+      }
+    }
+    return sizes[0];
+  }
+
+  /**
+   * Splits samples into runs in which each sample's data directly follows the previous sample's
+   * data, and returns the number of runs. The start of each run is written to the output arrays if
+   * they are non-null.
+   */
+  private static int encodeOffsetRuns(
+      long[] offsets,
+      int[] sizes,
+      boolean hasFixedSize,
+      @Nullable int[] runStartIndices,
+      @Nullable long[] runStartOffsets) {
+    int runCount = 0;
+    int runLength = 0;
+    for (int i = 0; i < offsets.length; i++) {
+      if (i == 0
+          || offsets[i] != offsets[i - 1] + sizes[i - 1]
+          || (!hasFixedSize && runLength == MAX_VARIABLE_SIZE_OFFSET_RUN_LENGTH)) {
+        if (runStartIndices != null && runStartOffsets != null) {
+          runStartIndices[runCount] = i;
+          runStartOffsets[runCount] = offsets[i];
+        }
+        runCount++;
+        runLength = 0;
+      }
+      runLength++;
+    }
+    return runCount;
+  }
+
+  /**
+   * Splits samples into runs with a constant timestamp delta, and returns the number of runs. The
+   * start and delta of each run are written to the output arrays if they are non-null.
+   */
+  private static int encodeTimestampRuns(
+      long[] timestamps,
+      @Nullable int[] runStartIndices,
+      @Nullable long[] runStartValues,
+      @Nullable long[] runDeltas) {
+    int runCount = 0;
+    int i = 0;
+    while (i < timestamps.length) {
+      long delta = i + 1 < timestamps.length ? timestamps[i + 1] - timestamps[i] : 0;
+      if (runStartIndices != null && runStartValues != null && runDeltas != null) {
+        runStartIndices[runCount] = i;
+        runStartValues[runCount] = timestamps[i];
+        runDeltas[runCount] = delta;
+      }
+      runCount++;
+      i++;
+      while (i < timestamps.length && timestamps[i] - timestamps[i - 1] == delta) {
+        i++;
       }
     }
-    return C.INDEX_UNSET;
+    return runCount;
   }
 }
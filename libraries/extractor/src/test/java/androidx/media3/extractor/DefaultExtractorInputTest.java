@@ -24,12 +24,18 @@ import static org.junit.Assert.fail;
 import android.net.Uri;
 import androidx.media3.common.C;
 import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.FileDataSource;
 import androidx.media3.test.utils.FakeDataSource;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.Arrays;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 
 /** Test for {@link DefaultExtractorInput}. */
@@ -40,6 +46,8 @@ public class DefaultExtractorInputTest {
   private static final byte[] TEST_DATA = new byte[] {0, 1, 2, 3, 4, 5, 6, 7, 8};
   private static final int LARGE_TEST_DATA_LENGTH = 8192;
 
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
   @Test
   public void initialPosition() throws Exception {
     FakeDataSource testDataSource = buildDataSource();
@@ -605,6 +613,52 @@ public class DefaultExtractorInputTest {
     }
   }
 
+  @Test
+  public void readBuffer_withMemoryMappedFile_returnsDataWithoutCopying() throws Exception {
+    DefaultExtractorInput input =
+        new DefaultExtractorInput(buildMemoryMappedDataSource(), 0, C.LENGTH_UNSET);
+
+    ByteBuffer buffer = input.readBuffer(/* length= */ 4);
+    byte[] target = new byte[TEST_DATA.length - 4];
+    input.readFully(target, 0, target.length);
+
+    assertThat(buffer.remaining()).isEqualTo(4);
+    byte[] bufferData = new byte[4];
+    buffer.get(bufferData);
+    assertThat(bufferData).isEqualTo(copyOf(TEST_DATA, 4));
+    assertThat(target).isEqualTo(copyOfRange(TEST_DATA, 4, TEST_DATA.length));
+    assertThat(input.getPosition()).isEqualTo(TEST_DATA.length);
+    assertThat(input.readBuffer(/* length= */ 1)).isNull();
+  }
+
+  @Test
+  public void readBuffer_withPeekedData_returnsNull() throws Exception {
+    DefaultExtractorInput input =
+        new DefaultExtractorInput(buildMemoryMappedDataSource(), 0, C.LENGTH_UNSET);
+
+    input.advancePeekPosition(2);
+
+    assertThat(input.readBuffer(/* length= */ 4)).isNull();
+    assertThat(input.getPosition()).isEqualTo(0);
+  }
+
+  @Test
+  public void readBuffer_withDataReaderNotSupportingBuffers_returnsNull() throws Exception {
+    DefaultExtractorInput input = createDefaultExtractorInput();
+
+    assertThat(input.readBuffer(/* length= */ 4)).isNull();
+    assertThat(input.getPosition()).isEqualTo(0);
+  }
+
+  private FileDataSource buildMemoryMappedDataSource() throws Exception {
+    File file = tempFolder.newFile();
+    Files.write(file.toPath(), TEST_DATA);
+    FileDataSource dataSource =
+        new FileDataSource.Factory().setMemoryMappingEnabled(true).createDataSource();
+    dataSource.open(new DataSpec(Uri.fromFile(file)));
+    return dataSource;
+  }
+
   private static FakeDataSource buildDataSource() throws Exception {
     FakeDataSource testDataSource = new FakeDataSource();
     testDataSource
@@ -19,6 +19,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static java.util.Arrays.stream;
 
 import android.net.Uri;
+import androidx.media3.common.FileTypes;
 import androidx.media3.common.MimeTypes;
 import androidx.media3.extractor.amr.AmrExtractor;
 import androidx.media3.extractor.avi.AviExtractor;
@@ -136,6 +137,20 @@ public final class DefaultExtractorsFactoryTest {
         .inOrder();
   }
 
+  @Test
+  public void createExtractorsForFileType_createsOnlyExtractorsForFileType() {
+    DefaultExtractorsFactory defaultExtractorsFactory = new DefaultExtractorsFactory();
+
+    Extractor[] mp4Extractors = defaultExtractorsFactory.createExtractorsForFileType(FileTypes.MP4);
+    Extractor[] unknownExtractors =
+        defaultExtractorsFactory.createExtractorsForFileType(FileTypes.UNKNOWN);
+
+    assertThat(getUnderlyingExtractorClasses(mp4Extractors))
+        .containsExactly(FragmentedMp4Extractor.class, Mp4Extractor.class)
+        .inOrder();
+    assertThat(unknownExtractors).isEmpty();
+  }
+
   @Test
   public void subtitleTranscoding_enabledByDefault() {
     DefaultExtractorsFactory defaultExtractorsFactory = new DefaultExtractorsFactory();
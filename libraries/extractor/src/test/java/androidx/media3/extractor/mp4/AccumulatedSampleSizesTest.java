@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.mp4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.common.C;
+import androidx.media3.common.Format;
+import androidx.media3.common.MimeTypes;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link AccumulatedSampleSizes}. */
+@RunWith(AndroidJUnit4.class)
+public final class AccumulatedSampleSizesTest {
+
+  private static final long TIMESCALE = 90_000;
+
+  @Test
+  public void get_inAnyOrder_returnsSizeOfSamplesInterleavedInTimestampOrder() {
+    TrackSampleTable[] sampleTables = {
+      // Video with reordered frames, audio and a sparse metadata track.
+      createSampleTable(/* sampleCount= */ 900, /* sampleDuration= */ 3000, /* reorder= */ true),
+      createSampleTable(/* sampleCount= */ 1300, /* sampleDuration= */ 1920, /* reorder= */ false),
+      createSampleTable(/* sampleCount= */ 9, /* sampleDuration= */ 300_000, /* reorder= */ false)
+    };
+    long[][] expectedSizes = calculateAccumulatedSampleSizes(sampleTables);
+    AccumulatedSampleSizes accumulatedSampleSizes = new AccumulatedSampleSizes(sampleTables);
+    Random random = new Random(/* seed= */ 0);
+
+    // Seek far ahead before any checkpoints exist, then read all tracks sequentially.
+    assertThat(accumulatedSampleSizes.get(/* trackIndex= */ 1, /* sampleIndex= */ 1000))
+        .isEqualTo(expectedSizes[1][1000]);
+    for (int sampleIndex = 0; sampleIndex < 1300; sampleIndex++) {
+      for (int trackIndex = 0; trackIndex < sampleTables.length; trackIndex++) {
+        if (sampleIndex < sampleTables[trackIndex].sampleCount) {
+          assertThat(accumulatedSampleSizes.get(trackIndex, sampleIndex))
+              .isEqualTo(expectedSizes[trackIndex][sampleIndex]);
+        }
+      }
+    }
+    for (int i = 0; i < 1000; i++) {
+      int trackIndex = random.nextInt(sampleTables.length);
+      int sampleIndex = random.nextInt(sampleTables[trackIndex].sampleCount);
+      assertThat(accumulatedSampleSizes.get(trackIndex, sampleIndex))
+          .isEqualTo(expectedSizes[trackIndex][sampleIndex]);
+    }
+  }
+
+  /** Calculates the accumulated size of each sample by interleaving all samples up front. */
+  private static long[][] calculateAccumulatedSampleSizes(TrackSampleTable[] sampleTables) {
+    long[][] accumulatedSampleSizes = new long[sampleTables.length][];
+    int[] nextSampleIndices = new int[sampleTables.length];
+    int remainingSampleCount = 0;
+    for (int i = 0; i < sampleTables.length; i++) {
+      accumulatedSampleSizes[i] = new long[sampleTables[i].sampleCount];
+      remainingSampleCount += sampleTables[i].sampleCount;
+    }
+    long accumulatedSampleSize = 0;
+    while (remainingSampleCount-- > 0) {
+      long minTimeUs = Long.MAX_VALUE;
+      int minTimeTrackIndex = -1;
+      for (int i = 0; i < sampleTables.length; i++) {
+        if (nextSampleIndices[i] < sampleTables[i].sampleCount
+            && sampleTables[i].getTimestampUs(nextSampleIndices[i]) <= minTimeUs) {
+          minTimeTrackIndex = i;
+          minTimeUs = sampleTables[i].getTimestampUs(nextSampleIndices[i]);
+        }
+      }
+      int sampleIndex = nextSampleIndices[minTimeTrackIndex]++;
+      accumulatedSampleSizes[minTimeTrackIndex][sampleIndex] = accumulatedSampleSize;
+      accumulatedSampleSize += sampleTables[minTimeTrackIndex].getSize(sampleIndex);
+    }
+    return accumulatedSampleSizes;
+  }
+
+  private static TrackSampleTable createSampleTable(
+      int sampleCount, long sampleDuration, boolean reorder) {
+    long[] offsets = new long[sampleCount];
+    int[] sizes = new int[sampleCount];
+    long[] timestamps = new long[sampleCount];
+    int[] flags = new int[sampleCount];
+    long offset = 0;
+    for (int i = 0; i < sampleCount; i++) {
+      sizes[i] = 100 + (i * 37) % 500;
+      offsets[i] = offset;
+      offset += sizes[i];
+      // Swap the timestamps of pairs of frames, as with B-frames.
+      int presentationIndex = reorder && i % 3 != 0 ? (i % 3 == 1 ? i + 1 : i - 1) : i;
+      timestamps[i] = presentationIndex * sampleDuration;
+      flags[i] = C.BUFFER_FLAG_KEY_FRAME;
+    }
+    return TrackSampleTable.createWithUnscaledTimestamps(
+        new Track(
+            /* id= */ 1,
+            C.TRACK_TYPE_VIDEO,
+            TIMESCALE,
+            /* movieTimescale= */ 1000,
+            /* durationUs= */ C.TIME_UNSET,
+            new Format.Builder().setSampleMimeType(MimeTypes.VIDEO_H264).build(),
+            Track.TRANSFORMATION_NONE,
+            /* sampleDescriptionEncryptionBoxes= */ null,
+            /* nalUnitLengthFieldLength= */ 4,
+            /* editListDurations= */ null,
+            /* editListMediaTimes= */ null),
+        offsets,
+        sizes,
+        /* maximumSize= */ 600,
+        timestamps,
+        /* timestampShift= */ 0,
+        /* timestampOffsetUs= */ 0,
+        /* clampTimestamps= */ false,
+        flags,
+        /* durationUs= */ C.TIME_UNSET);
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.mp4;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.media3.common.C;
+import androidx.media3.common.Format;
+import androidx.media3.common.MimeTypes;
+import androidx.media3.common.util.Util;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link TrackSampleTable}. */
+@RunWith(AndroidJUnit4.class)
+public final class TrackSampleTableTest {
+
+  private static final long TIMESCALE = 44_100;
+
+  @Test
+  public void fixedSizeSamplesWithConstantDuration_returnsSampleValues() {
+    int sampleCount = 1000;
+    long[] offsets = new long[sampleCount];
+    int[] sizes = new int[sampleCount];
+    long[] timestamps = new long[sampleCount];
+    int[] flags = new int[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      // Chunks of 10 samples, with a gap between chunks.
+      offsets[i] = 1000 + (i / 10) * 1100 + (i % 10) * 100;
+      sizes[i] = 100;
+      timestamps[i] = i * 1024L;
+      flags[i] = C.BUFFER_FLAG_KEY_FRAME;
+    }
+
+    TrackSampleTable sampleTable =
+        TrackSampleTable.createWithUnscaledTimestamps(
+            createTrack(C.TRACK_TYPE_AUDIO),
+            offsets.clone(),
+            sizes.clone(),
+            /* maximumSize= */ 100,
+            timestamps.clone(),
+            /* timestampShift= */ 0,
+            /* timestampOffsetUs= */ 0,
+            /* clampTimestamps= */ false,
+            flags.clone(),
+            /* durationUs= */ C.TIME_UNSET);
+
+    assertThat(sampleTable.sampleCount).isEqualTo(sampleCount);
+    for (int i = 0; i < sampleCount; i++) {
+      assertThat(sampleTable.getOffset(i)).isEqualTo(offsets[i]);
+      assertThat(sampleTable.getSize(i)).isEqualTo(100);
+      assertThat(sampleTable.getTimestampUs(i))
+          .isEqualTo(Util.scaleLargeTimestamp(timestamps[i], C.MICROS_PER_SECOND, TIMESCALE));
+      assertThat(sampleTable.getFlags(i))
+          .isEqualTo(
+              i == sampleCount - 1
+                  ? C.BUFFER_FLAG_KEY_FRAME | C.BUFFER_FLAG_LAST_SAMPLE
+                  : C.BUFFER_FLAG_KEY_FRAME);
+    }
+    long timeUs = sampleTable.getTimestampUs(500);
+    assertThat(sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(timeUs)).isEqualTo(500);
+    assertThat(sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(timeUs + 1))
+        .isEqualTo(500);
+    assertThat(sampleTable.getIndexOfLaterOrEqualSynchronizationSample(timeUs + 1)).isEqualTo(501);
+    assertThat(sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(-1))
+        .isEqualTo(C.INDEX_UNSET);
+    assertThat(sampleTable.getIndexOfLaterOrEqualSynchronizationSample(Long.MAX_VALUE))
+        .isEqualTo(C.INDEX_UNSET);
+  }
+
+  @Test
+  public void variableSizeSamplesWithSyncSamples_matchesSampleTableFromTimestampsUs() {
+    int sampleCount = 600;
+    long[] offsets = new long[sampleCount];
+    int[] sizes = new int[sampleCount];
+    long[] timestamps = new long[sampleCount];
+    int[] flags = new int[sampleCount];
+    long offset = 0;
+    int maximumSize = 0;
+    for (int i = 0; i < sampleCount; i++) {
+      sizes[i] = 50 + (i * 37) % 200;
+      maximumSize = max(maximumSize, sizes[i]);
+      offsets[i] = offset;
+      offset += sizes[i];
+      // The sample duration changes halfway through.
+      timestamps[i] = i < 300 ? i * 1500L : 300 * 1500L + (i - 300) * 3000L;
+      flags[i] = i % 30 == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0;
+    }
+    long timestampShift = 3000;
+    long timestampOffsetUs = 1_000;
+    long[] timestampsUs = new long[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      timestampsUs[i] =
+          timestampOffsetUs
+              + max(
+                  0,
+                  Util.scaleLargeTimestamp(
+                      timestamps[i] - timestampShift, C.MICROS_PER_SECOND, TIMESCALE));
+    }
+
+    TrackSampleTable sampleTable =
+        TrackSampleTable.createWithUnscaledTimestamps(
+            createTrack(C.TRACK_TYPE_VIDEO),
+            offsets.clone(),
+            sizes.clone(),
+            maximumSize,
+            timestamps.clone(),
+            timestampShift,
+            timestampOffsetUs,
+            /* clampTimestamps= */ true,
+            flags.clone(),
+            /* durationUs= */ C.TIME_UNSET);
+    TrackSampleTable expectedSampleTable =
+        new TrackSampleTable(
+            createTrack(C.TRACK_TYPE_VIDEO),
+            offsets.clone(),
+            sizes.clone(),
+            maximumSize,
+            timestampsUs,
+            flags.clone(),
+            /* durationUs= */ C.TIME_UNSET);
+
+    for (int i = 0; i < sampleCount; i++) {
+      assertThat(sampleTable.getOffset(i)).isEqualTo(expectedSampleTable.getOffset(i));
+      assertThat(sampleTable.getSize(i)).isEqualTo(expectedSampleTable.getSize(i));
+      assertThat(sampleTable.getTimestampUs(i)).isEqualTo(expectedSampleTable.getTimestampUs(i));
+      assertThat(sampleTable.getFlags(i)).isEqualTo(expectedSampleTable.getFlags(i));
+    }
+    long lastTimestampUs = sampleTable.getTimestampUs(sampleCount - 1);
+    for (long timeUs = -10_000; timeUs < lastTimestampUs + 10_000; timeUs += 7_919) {
+      assertThat(sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(timeUs))
+          .isEqualTo(expectedSampleTable.getIndexOfEarlierOrEqualSynchronizationSample(timeUs));
+      assertThat(sampleTable.getIndexOfLaterOrEqualSynchronizationSample(timeUs))
+          .isEqualTo(expectedSampleTable.getIndexOfLaterOrEqualSynchronizationSample(timeUs));
+    }
+  }
+
+  @Test
+  public void getOffsetWithCursor_matchesGetOffset() {
+    int sampleCount = 1000;
+    long[] offsets = new long[sampleCount];
+    int[] sizes = new int[sampleCount];
+    long[] timestamps = new long[sampleCount];
+    int[] flags = new int[sampleCount];
+    long offset = 0;
+    for (int i = 0; i < sampleCount; i++) {
+      // Chunks of 50 samples of varying size, with a gap between chunks.
+      if (i % 50 == 0) {
+        offset += 1000;
+      }
+      sizes[i] = 50 + (i * 37) % 200;
+      offsets[i] = offset;
+      offset += sizes[i];
+      timestamps[i] = i * 1024L;
+      flags[i] = C.BUFFER_FLAG_KEY_FRAME;
+    }
+    TrackSampleTable sampleTable =
+        TrackSampleTable.createWithUnscaledTimestamps(
+            createTrack(C.TRACK_TYPE_AUDIO),
+            offsets.clone(),
+            sizes.clone(),
+            /* maximumSize= */ 250,
+            timestamps,
+            /* timestampShift= */ 0,
+            /* timestampOffsetUs= */ 0,
+            /* clampTimestamps= */ false,
+            flags,
+            /* durationUs= */ C.TIME_UNSET);
+    TrackSampleTable.OffsetCursor cursor = new TrackSampleTable.OffsetCursor();
+
+    for (int i = 0; i < sampleCount; i++) {
+      assertThat(sampleTable.getOffset(i, cursor)).isEqualTo(offsets[i]);
+    }
+    for (int i = sampleCount - 1; i >= 0; i -= 7) {
+      assertThat(sampleTable.getOffset(i, cursor)).isEqualTo(offsets[i]);
+      assertThat(sampleTable.getOffset(min(i + 40, sampleCount - 1), cursor))
+          .isEqualTo(offsets[min(i + 40, sampleCount - 1)]);
+    }
+  }
+
+  private static Track createTrack(@C.TrackType int type) {
+    return new Track(
+        /* id= */ 1,
+        type,
+        TIMESCALE,
+        /* movieTimescale= */ 1000,
+        /* durationUs= */ C.TIME_UNSET,
+        new Format.Builder()
+            .setSampleMimeType(
+                type == C.TRACK_TYPE_AUDIO ? MimeTypes.AUDIO_AAC : MimeTypes.VIDEO_H264)
+            .build(),
+        Track.TRANSFORMATION_NONE,
+        /* sampleDescriptionEncryptionBoxes= */ null,
+        /* nalUnitLengthFieldLength= */ 4,
+        /* editListDurations= */ null,
+        /* editListMediaTimes= */ null);
+  }
+}